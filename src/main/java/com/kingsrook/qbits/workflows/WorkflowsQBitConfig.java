@@ -22,10 +22,20 @@
 package com.kingsrook.qbits.workflows;
 
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlanCache;
+import com.kingsrook.qbits.workflows.execution.WorkflowRunLogSettings;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLogLevel;
+import com.kingsrook.qbits.workflows.processes.PurgeWorkflowRunLogsProcess;
+import com.kingsrook.qbits.workflows.triggers.TableTriggerWorkflowIdCache;
 import com.kingsrook.qbits.workflows.tracing.WorkflowRunLogTracer;
 import com.kingsrook.qbits.workflows.tracing.WorkflowTracerInterface;
+import com.kingsrook.qbits.workflows.tracing.WriteBehindWorkflowRunLogSettings;
+import com.kingsrook.qbits.workflows.tracing.WriteBehindWorkflowRunLogTracer;
 import com.kingsrook.qqq.api.model.metadata.ApiInstanceMetaData;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.instances.QInstanceValidator;
@@ -34,8 +44,10 @@ import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
 import com.kingsrook.qqq.backend.core.model.metadata.producers.MetaDataCustomizerInterface;
 import com.kingsrook.qqq.backend.core.model.metadata.qbits.QBitConfig;
 import com.kingsrook.qqq.backend.core.model.metadata.qbits.QBitMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.scheduleing.QScheduleMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
 import com.kingsrook.qqq.backend.core.utils.ClassPathUtils;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
 
 
 /*******************************************************************************
@@ -55,6 +67,31 @@ public class WorkflowsQBitConfig implements QBitConfig
 
    private boolean includeRecordWorkflows = true;
 
+   private int  workflowPlanCacheSize                = WorkflowPlanCache.DEFAULT_MAX_SIZE;
+   private long tableTriggerWorkflowIdCacheTtlMillis = TableTriggerWorkflowIdCache.DEFAULT_TTL_MILLIS;
+
+   private int                  recordWorkflowParallelism            = 1;
+   private Map<String, Integer> recordWorkflowParallelismByTableName = new HashMap<>();
+   private int                  recordWorkflowMaxThreads             = WorkflowsRegistry.DEFAULT_RECORD_WORKFLOW_MAX_THREADS;
+   private int                  recordWorkflowPageSize               = WorkflowsRegistry.DEFAULT_RECORD_WORKFLOW_PAGE_SIZE;
+
+   private boolean runTableTriggerWorkflowsInBatch = WorkflowsRegistry.DEFAULT_RUN_TABLE_TRIGGER_WORKFLOWS_IN_BATCH;
+
+   private WorkflowRunLogLevel defaultRunLogLevel           = WorkflowRunLogSettings.DEFAULT.defaultRunLogLevel();
+   private double              runLogSampleRate             = WorkflowRunLogSettings.DEFAULT.sampleRate();
+   private long                runLogSlowRunThresholdMillis = WorkflowRunLogSettings.DEFAULT.slowRunThresholdMillis();
+   private double              noOpRunLogSampleRate         = WorkflowRunLogSettings.DEFAULT.noOpRunSampleRate();
+
+   private int                                            runLogWriteBehindBatchSize      = WriteBehindWorkflowRunLogSettings.DEFAULT.batchSize();
+   private long                                           runLogWriteBehindMaxDelayMillis = WriteBehindWorkflowRunLogSettings.DEFAULT.maxDelayMillis();
+   private WriteBehindWorkflowRunLogTracer.OverflowPolicy runLogWriteBehindOverflowPolicy = WriteBehindWorkflowRunLogSettings.DEFAULT.overflowPolicy();
+
+   private Integer           runLogRetentionDays;
+   private Integer           errorRunLogRetentionDays;
+   private Integer           maxRunLogsPerWorkflow;
+   private int               runLogPurgeChunkSize = PurgeWorkflowRunLogsProcess.DEFAULT_CHUNK_SIZE;
+   private QScheduleMetaData runLogPurgeSchedule;
+
 
 
    /*******************************************************************************
@@ -96,6 +133,89 @@ public class WorkflowsQBitConfig implements QBitConfig
          qInstanceValidator.validateSimpleCodeReference("Workflows qbit config workflowTracerCodeReference", workflowTracerCodeReference, WorkflowTracerInterface.class);
          errors.addAll(qInstanceValidator.getErrors());
       }
+
+      if(workflowPlanCacheSize < 0)
+      {
+         errors.add("Workflows QBit workflowPlanCacheSize may not be negative.");
+      }
+
+      if(tableTriggerWorkflowIdCacheTtlMillis < 0)
+      {
+         errors.add("Workflows QBit tableTriggerWorkflowIdCacheTtlMillis may not be negative.");
+      }
+
+      if(recordWorkflowParallelism < 1)
+      {
+         errors.add("Workflows QBit recordWorkflowParallelism must be at least 1.");
+      }
+
+      for(Map.Entry<String, Integer> entry : CollectionUtils.nonNullMap(recordWorkflowParallelismByTableName).entrySet())
+      {
+         if(entry.getValue() == null || entry.getValue() < 1)
+         {
+            errors.add("Workflows QBit recordWorkflowParallelismByTableName value for table [" + entry.getKey() + "] must be at least 1.");
+         }
+      }
+
+      if(recordWorkflowPageSize < 1)
+      {
+         errors.add("Workflows QBit recordWorkflowPageSize must be at least 1.");
+      }
+
+      if(defaultRunLogLevel == null)
+      {
+         errors.add("Workflows QBit defaultRunLogLevel is required.");
+      }
+
+      if(runLogSampleRate < 0 || runLogSampleRate > 1)
+      {
+         errors.add("Workflows QBit runLogSampleRate must be between 0 and 1.");
+      }
+
+      if(runLogSlowRunThresholdMillis < 0)
+      {
+         errors.add("Workflows QBit runLogSlowRunThresholdMillis may not be negative.");
+      }
+
+      if(noOpRunLogSampleRate < 0 || noOpRunLogSampleRate > 1)
+      {
+         errors.add("Workflows QBit noOpRunLogSampleRate must be between 0 and 1.");
+      }
+
+      if(runLogWriteBehindBatchSize < 1)
+      {
+         errors.add("Workflows QBit runLogWriteBehindBatchSize must be at least 1.");
+      }
+
+      if(runLogWriteBehindMaxDelayMillis < 1)
+      {
+         errors.add("Workflows QBit runLogWriteBehindMaxDelayMillis must be at least 1.");
+      }
+
+      if(runLogWriteBehindOverflowPolicy == null)
+      {
+         errors.add("Workflows QBit runLogWriteBehindOverflowPolicy is required.");
+      }
+
+      if(runLogRetentionDays != null && runLogRetentionDays < 1)
+      {
+         errors.add("Workflows QBit runLogRetentionDays must be at least 1 (or null, to not purge run logs by age).");
+      }
+
+      if(errorRunLogRetentionDays != null && errorRunLogRetentionDays < 1)
+      {
+         errors.add("Workflows QBit errorRunLogRetentionDays must be at least 1 (or null, to not purge run logs with errors by age).");
+      }
+
+      if(maxRunLogsPerWorkflow != null && maxRunLogsPerWorkflow < 1)
+      {
+         errors.add("Workflows QBit maxRunLogsPerWorkflow must be at least 1 (or null, to not purge run logs by count).");
+      }
+
+      if(runLogPurgeChunkSize < 1)
+      {
+         errors.add("Workflows QBit runLogPurgeChunkSize must be at least 1.");
+      }
    }
 
 
@@ -306,4 +426,782 @@ public class WorkflowsQBitConfig implements QBitConfig
       return (this);
    }
 
+
+
+   /*******************************************************************************
+    * Getter for workflowPlanCacheSize
+    * @see #withWorkflowPlanCacheSize(int)
+    *******************************************************************************/
+   public int getWorkflowPlanCacheSize()
+   {
+      return (this.workflowPlanCacheSize);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for workflowPlanCacheSize
+    * @see #withWorkflowPlanCacheSize(int)
+    *******************************************************************************/
+   public void setWorkflowPlanCacheSize(int workflowPlanCacheSize)
+   {
+      this.workflowPlanCacheSize = workflowPlanCacheSize;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for workflowPlanCacheSize
+    *
+    * @param workflowPlanCacheSize
+    * Maximum number of compiled workflow revisions (WorkflowPlans) to keep in
+    * memory for the WorkflowExecutor to re-use across runs.  Least-recently-used
+    * plans are evicted beyond this size.  Set to 0 to disable plan caching.
+    * Default value is WorkflowPlanCache.DEFAULT_MAX_SIZE.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withWorkflowPlanCacheSize(int workflowPlanCacheSize)
+   {
+      this.workflowPlanCacheSize = workflowPlanCacheSize;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for tableTriggerWorkflowIdCacheTtlMillis
+    * @see #withTableTriggerWorkflowIdCacheTtlMillis(long)
+    *******************************************************************************/
+   public long getTableTriggerWorkflowIdCacheTtlMillis()
+   {
+      return (this.tableTriggerWorkflowIdCacheTtlMillis);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for tableTriggerWorkflowIdCacheTtlMillis
+    * @see #withTableTriggerWorkflowIdCacheTtlMillis(long)
+    *******************************************************************************/
+   public void setTableTriggerWorkflowIdCacheTtlMillis(long tableTriggerWorkflowIdCacheTtlMillis)
+   {
+      this.tableTriggerWorkflowIdCacheTtlMillis = tableTriggerWorkflowIdCacheTtlMillis;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for tableTriggerWorkflowIdCacheTtlMillis
+    *
+    * @param tableTriggerWorkflowIdCacheTtlMillis
+    * How long (in millis) the workflowId of a table trigger is cached for, once
+    * looked up.  Changes to triggers made in this server invalidate the cache
+    * right away - this bounds how long changes made elsewhere (e.g., by another
+    * server) can go unseen.  Set to 0 to disable caching.  Default value is
+    * TableTriggerWorkflowIdCache.DEFAULT_TTL_MILLIS.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withTableTriggerWorkflowIdCacheTtlMillis(long tableTriggerWorkflowIdCacheTtlMillis)
+   {
+      this.tableTriggerWorkflowIdCacheTtlMillis = tableTriggerWorkflowIdCacheTtlMillis;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for recordWorkflowParallelism
+    * @see #withRecordWorkflowParallelism(int)
+    *******************************************************************************/
+   public int getRecordWorkflowParallelism()
+   {
+      return (this.recordWorkflowParallelism);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for recordWorkflowParallelism
+    * @see #withRecordWorkflowParallelism(int)
+    *******************************************************************************/
+   public void setRecordWorkflowParallelism(int recordWorkflowParallelism)
+   {
+      this.recordWorkflowParallelism = recordWorkflowParallelism;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for recordWorkflowParallelism
+    *
+    * @param recordWorkflowParallelism
+    * Maximum number of records that the RunRecordWorkflow process (which is also
+    * what runs workflows from table triggers) will run a workflow against at the
+    * same time.  Each record's run gets its own context and transaction.  Default
+    * value is 1, meaning records are ran one at a time.  Can be overridden per
+    * table, via recordWorkflowParallelismByTableName.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRecordWorkflowParallelism(int recordWorkflowParallelism)
+   {
+      this.recordWorkflowParallelism = recordWorkflowParallelism;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for recordWorkflowParallelismByTableName
+    * @see #withRecordWorkflowParallelismByTableName(Map)
+    *******************************************************************************/
+   public Map<String, Integer> getRecordWorkflowParallelismByTableName()
+   {
+      return (this.recordWorkflowParallelismByTableName);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for recordWorkflowParallelismByTableName
+    * @see #withRecordWorkflowParallelismByTableName(Map)
+    *******************************************************************************/
+   public void setRecordWorkflowParallelismByTableName(Map<String, Integer> recordWorkflowParallelismByTableName)
+   {
+      this.recordWorkflowParallelismByTableName = recordWorkflowParallelismByTableName;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for recordWorkflowParallelismByTableName
+    *
+    * @param recordWorkflowParallelismByTableName
+    * Per-table overrides of recordWorkflowParallelism - e.g., to allow more
+    * records to run at once for a high-volume table, or to force a table whose
+    * workflows contend with each other to run one record at a time.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRecordWorkflowParallelismByTableName(Map<String, Integer> recordWorkflowParallelismByTableName)
+   {
+      this.recordWorkflowParallelismByTableName = recordWorkflowParallelismByTableName;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for recordWorkflowMaxThreads
+    * @see #withRecordWorkflowMaxThreads(int)
+    *******************************************************************************/
+   public int getRecordWorkflowMaxThreads()
+   {
+      return (this.recordWorkflowMaxThreads);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for recordWorkflowMaxThreads
+    * @see #withRecordWorkflowMaxThreads(int)
+    *******************************************************************************/
+   public void setRecordWorkflowMaxThreads(int recordWorkflowMaxThreads)
+   {
+      this.recordWorkflowMaxThreads = recordWorkflowMaxThreads;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for recordWorkflowMaxThreads
+    *
+    * @param recordWorkflowMaxThreads
+    * Maximum number of threads that records are ran through workflows on, when
+    * recordWorkflowParallelism (or a per-table value) is greater than 1.  One
+    * pool of this many threads is shared by all processes and table triggers
+    * in the instance, so it bounds the total, no matter how many run at once
+    * (records beyond that wait for a free thread).  Default value is 8.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRecordWorkflowMaxThreads(int recordWorkflowMaxThreads)
+   {
+      this.recordWorkflowMaxThreads = recordWorkflowMaxThreads;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for recordWorkflowPageSize
+    * @see #withRecordWorkflowPageSize(int)
+    *******************************************************************************/
+   public int getRecordWorkflowPageSize()
+   {
+      return (this.recordWorkflowPageSize);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for recordWorkflowPageSize
+    * @see #withRecordWorkflowPageSize(int)
+    *******************************************************************************/
+   public void setRecordWorkflowPageSize(int recordWorkflowPageSize)
+   {
+      this.recordWorkflowPageSize = recordWorkflowPageSize;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for recordWorkflowPageSize
+    *
+    * @param recordWorkflowPageSize
+    * Number of records that the RunRecordWorkflow process runs a workflow
+    * against at once.  Filters and join records are loaded for each page with
+    * one query per join (rather than one per record), and records updated by
+    * the workflow are written per page - so larger pages mean fewer queries,
+    * at the cost of holding more records in memory.  With parallelism, pages
+    * are made large enough to give each thread a few records, if this is
+    * smaller.  Default value is 100.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRecordWorkflowPageSize(int recordWorkflowPageSize)
+   {
+      this.recordWorkflowPageSize = recordWorkflowPageSize;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for defaultRunLogLevel
+    * @see #withDefaultRunLogLevel(WorkflowRunLogLevel)
+    *******************************************************************************/
+   public WorkflowRunLogLevel getDefaultRunLogLevel()
+   {
+      return (this.defaultRunLogLevel);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for defaultRunLogLevel
+    * @see #withDefaultRunLogLevel(WorkflowRunLogLevel)
+    *******************************************************************************/
+   public void setDefaultRunLogLevel(WorkflowRunLogLevel defaultRunLogLevel)
+   {
+      this.defaultRunLogLevel = defaultRunLogLevel;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for defaultRunLogLevel
+    *
+    * @param defaultRunLogLevel
+    * How runs of workflows are logged (as WorkflowRunLog & WorkflowRunLogStep
+    * records), for workflows that don't set their own runLogLevelId.  Default
+    * value is FULL.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withDefaultRunLogLevel(WorkflowRunLogLevel defaultRunLogLevel)
+   {
+      this.defaultRunLogLevel = defaultRunLogLevel;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for runLogSampleRate
+    * @see #withRunLogSampleRate(double)
+    *******************************************************************************/
+   public double getRunLogSampleRate()
+   {
+      return (this.runLogSampleRate);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runLogSampleRate
+    * @see #withRunLogSampleRate(double)
+    *******************************************************************************/
+   public void setRunLogSampleRate(double runLogSampleRate)
+   {
+      this.runLogSampleRate = runLogSampleRate;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runLogSampleRate
+    *
+    * @param runLogSampleRate
+    * For workflows with the SAMPLED run log level, the fraction (from 0 to 1)
+    * of runs that are logged with all of their steps.  Runs with errors, or that
+    * are slow, are always logged.  Default value is 0.05.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRunLogSampleRate(double runLogSampleRate)
+   {
+      this.runLogSampleRate = runLogSampleRate;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for runLogSlowRunThresholdMillis
+    * @see #withRunLogSlowRunThresholdMillis(long)
+    *******************************************************************************/
+   public long getRunLogSlowRunThresholdMillis()
+   {
+      return (this.runLogSlowRunThresholdMillis);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runLogSlowRunThresholdMillis
+    * @see #withRunLogSlowRunThresholdMillis(long)
+    *******************************************************************************/
+   public void setRunLogSlowRunThresholdMillis(long runLogSlowRunThresholdMillis)
+   {
+      this.runLogSlowRunThresholdMillis = runLogSlowRunThresholdMillis;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runLogSlowRunThresholdMillis
+    *
+    * @param runLogSlowRunThresholdMillis
+    * For workflows with the SAMPLED run log level, runs that take at least this
+    * many milliseconds are always logged (even if not sampled).  Default value
+    * is 10,000.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRunLogSlowRunThresholdMillis(long runLogSlowRunThresholdMillis)
+   {
+      this.runLogSlowRunThresholdMillis = runLogSlowRunThresholdMillis;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for noOpRunLogSampleRate
+    * @see #withNoOpRunLogSampleRate(double)
+    *******************************************************************************/
+   public double getNoOpRunLogSampleRate()
+   {
+      return (this.noOpRunLogSampleRate);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for noOpRunLogSampleRate
+    * @see #withNoOpRunLogSampleRate(double)
+    *******************************************************************************/
+   public void setNoOpRunLogSampleRate(double noOpRunLogSampleRate)
+   {
+      this.noOpRunLogSampleRate = noOpRunLogSampleRate;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for noOpRunLogSampleRate
+    *
+    * @param noOpRunLogSampleRate
+    * Fraction (between 0 and 1) of "no-op" runs - successful runs that didn't
+    * change anything (e.g., a record workflow whose record didn't match its
+    * filter) - whose run logs are stored, at run log levels that would
+    * otherwise store them.  The rest are only counted (e.g., in the
+    * runRecordWorkflow process summary).  Default value is 1 (store all).
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withNoOpRunLogSampleRate(double noOpRunLogSampleRate)
+   {
+      this.noOpRunLogSampleRate = noOpRunLogSampleRate;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for runLogWriteBehindBatchSize
+    * @see #withRunLogWriteBehindBatchSize(int)
+    *******************************************************************************/
+   public int getRunLogWriteBehindBatchSize()
+   {
+      return (this.runLogWriteBehindBatchSize);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runLogWriteBehindBatchSize
+    * @see #withRunLogWriteBehindBatchSize(int)
+    *******************************************************************************/
+   public void setRunLogWriteBehindBatchSize(int runLogWriteBehindBatchSize)
+   {
+      this.runLogWriteBehindBatchSize = runLogWriteBehindBatchSize;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runLogWriteBehindBatchSize
+    *
+    * @param runLogWriteBehindBatchSize
+    * If the workflowTracerCodeReference is a WriteBehindWorkflowRunLogTracer,
+    * the number of run logs it inserts at once (and the queue size at which it
+    * writes without waiting for runLogWriteBehindMaxDelayMillis).  Default value
+    * is WriteBehindWorkflowRunLogTracer.DEFAULT_BATCH_SIZE.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRunLogWriteBehindBatchSize(int runLogWriteBehindBatchSize)
+   {
+      this.runLogWriteBehindBatchSize = runLogWriteBehindBatchSize;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for runLogWriteBehindMaxDelayMillis
+    * @see #withRunLogWriteBehindMaxDelayMillis(long)
+    *******************************************************************************/
+   public long getRunLogWriteBehindMaxDelayMillis()
+   {
+      return (this.runLogWriteBehindMaxDelayMillis);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runLogWriteBehindMaxDelayMillis
+    * @see #withRunLogWriteBehindMaxDelayMillis(long)
+    *******************************************************************************/
+   public void setRunLogWriteBehindMaxDelayMillis(long runLogWriteBehindMaxDelayMillis)
+   {
+      this.runLogWriteBehindMaxDelayMillis = runLogWriteBehindMaxDelayMillis;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runLogWriteBehindMaxDelayMillis
+    *
+    * @param runLogWriteBehindMaxDelayMillis
+    * If the workflowTracerCodeReference is a WriteBehindWorkflowRunLogTracer,
+    * the longest time it waits for a full batch, before writing whatever run
+    * logs are queued.  Default value is
+    * WriteBehindWorkflowRunLogTracer.DEFAULT_MAX_DELAY_MILLIS.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRunLogWriteBehindMaxDelayMillis(long runLogWriteBehindMaxDelayMillis)
+   {
+      this.runLogWriteBehindMaxDelayMillis = runLogWriteBehindMaxDelayMillis;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for runLogWriteBehindOverflowPolicy
+    * @see #withRunLogWriteBehindOverflowPolicy(WriteBehindWorkflowRunLogTracer.OverflowPolicy)
+    *******************************************************************************/
+   public WriteBehindWorkflowRunLogTracer.OverflowPolicy getRunLogWriteBehindOverflowPolicy()
+   {
+      return (this.runLogWriteBehindOverflowPolicy);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runLogWriteBehindOverflowPolicy
+    * @see #withRunLogWriteBehindOverflowPolicy(WriteBehindWorkflowRunLogTracer.OverflowPolicy)
+    *******************************************************************************/
+   public void setRunLogWriteBehindOverflowPolicy(WriteBehindWorkflowRunLogTracer.OverflowPolicy runLogWriteBehindOverflowPolicy)
+   {
+      this.runLogWriteBehindOverflowPolicy = runLogWriteBehindOverflowPolicy;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runLogWriteBehindOverflowPolicy
+    *
+    * @param runLogWriteBehindOverflowPolicy
+    * If the workflowTracerCodeReference is a WriteBehindWorkflowRunLogTracer,
+    * what it does when a workflow finishes while its queue is full:  BLOCK
+    * (store the queued run logs on the finishing thread - the default), or DROP
+    * (discard the new run log).
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRunLogWriteBehindOverflowPolicy(WriteBehindWorkflowRunLogTracer.OverflowPolicy runLogWriteBehindOverflowPolicy)
+   {
+      this.runLogWriteBehindOverflowPolicy = runLogWriteBehindOverflowPolicy;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for runLogRetentionDays
+    * @see #withRunLogRetentionDays(Integer)
+    *******************************************************************************/
+   public Integer getRunLogRetentionDays()
+   {
+      return (this.runLogRetentionDays);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runLogRetentionDays
+    * @see #withRunLogRetentionDays(Integer)
+    *******************************************************************************/
+   public void setRunLogRetentionDays(Integer runLogRetentionDays)
+   {
+      this.runLogRetentionDays = runLogRetentionDays;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runLogRetentionDays
+    *
+    * @param runLogRetentionDays
+    * Number of days to keep workflow run logs (without errors) for, before the
+    * purgeWorkflowRunLogs process deletes them (and their steps).  Default value
+    * is null, meaning run logs are not purged by age.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRunLogRetentionDays(Integer runLogRetentionDays)
+   {
+      this.runLogRetentionDays = runLogRetentionDays;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for errorRunLogRetentionDays
+    * @see #withErrorRunLogRetentionDays(Integer)
+    *******************************************************************************/
+   public Integer getErrorRunLogRetentionDays()
+   {
+      return (this.errorRunLogRetentionDays);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for errorRunLogRetentionDays
+    * @see #withErrorRunLogRetentionDays(Integer)
+    *******************************************************************************/
+   public void setErrorRunLogRetentionDays(Integer errorRunLogRetentionDays)
+   {
+      this.errorRunLogRetentionDays = errorRunLogRetentionDays;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for errorRunLogRetentionDays
+    *
+    * @param errorRunLogRetentionDays
+    * Number of days to keep workflow run logs that had errors for, before the
+    * purgeWorkflowRunLogs process deletes them - generally longer than
+    * runLogRetentionDays.  Default value is null, meaning run logs with errors
+    * are not purged by age.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withErrorRunLogRetentionDays(Integer errorRunLogRetentionDays)
+   {
+      this.errorRunLogRetentionDays = errorRunLogRetentionDays;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for maxRunLogsPerWorkflow
+    * @see #withMaxRunLogsPerWorkflow(Integer)
+    *******************************************************************************/
+   public Integer getMaxRunLogsPerWorkflow()
+   {
+      return (this.maxRunLogsPerWorkflow);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for maxRunLogsPerWorkflow
+    * @see #withMaxRunLogsPerWorkflow(Integer)
+    *******************************************************************************/
+   public void setMaxRunLogsPerWorkflow(Integer maxRunLogsPerWorkflow)
+   {
+      this.maxRunLogsPerWorkflow = maxRunLogsPerWorkflow;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for maxRunLogsPerWorkflow
+    *
+    * @param maxRunLogsPerWorkflow
+    * Maximum number of run logs (without errors) to keep for each workflow - the
+    * purgeWorkflowRunLogs process deletes older ones beyond this count.  Default
+    * value is null, meaning run logs are not purged by count.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withMaxRunLogsPerWorkflow(Integer maxRunLogsPerWorkflow)
+   {
+      this.maxRunLogsPerWorkflow = maxRunLogsPerWorkflow;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for runLogPurgeChunkSize
+    * @see #withRunLogPurgeChunkSize(int)
+    *******************************************************************************/
+   public int getRunLogPurgeChunkSize()
+   {
+      return (this.runLogPurgeChunkSize);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runLogPurgeChunkSize
+    * @see #withRunLogPurgeChunkSize(int)
+    *******************************************************************************/
+   public void setRunLogPurgeChunkSize(int runLogPurgeChunkSize)
+   {
+      this.runLogPurgeChunkSize = runLogPurgeChunkSize;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runLogPurgeChunkSize
+    *
+    * @param runLogPurgeChunkSize
+    * Number of run logs that the purgeWorkflowRunLogs process deletes (with
+    * their steps) in each transaction.  Default value is
+    * PurgeWorkflowRunLogsProcess.DEFAULT_CHUNK_SIZE.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRunLogPurgeChunkSize(int runLogPurgeChunkSize)
+   {
+      this.runLogPurgeChunkSize = runLogPurgeChunkSize;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for runLogPurgeSchedule
+    * @see #withRunLogPurgeSchedule(QScheduleMetaData)
+    *******************************************************************************/
+   public QScheduleMetaData getRunLogPurgeSchedule()
+   {
+      return (this.runLogPurgeSchedule);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runLogPurgeSchedule
+    * @see #withRunLogPurgeSchedule(QScheduleMetaData)
+    *******************************************************************************/
+   public void setRunLogPurgeSchedule(QScheduleMetaData runLogPurgeSchedule)
+   {
+      this.runLogPurgeSchedule = runLogPurgeSchedule;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runLogPurgeSchedule
+    *
+    * @param runLogPurgeSchedule
+    * Schedule for running the purgeWorkflowRunLogs process.  Default value is
+    * null, meaning the process is not scheduled (but can still be ran manually).
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRunLogPurgeSchedule(QScheduleMetaData runLogPurgeSchedule)
+   {
+      this.runLogPurgeSchedule = runLogPurgeSchedule;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for runTableTriggerWorkflowsInBatch
+    * @see #withRunTableTriggerWorkflowsInBatch(boolean)
+    *******************************************************************************/
+   public boolean getRunTableTriggerWorkflowsInBatch()
+   {
+      return (this.runTableTriggerWorkflowsInBatch);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runTableTriggerWorkflowsInBatch
+    * @see #withRunTableTriggerWorkflowsInBatch(boolean)
+    *******************************************************************************/
+   public void setRunTableTriggerWorkflowsInBatch(boolean runTableTriggerWorkflowsInBatch)
+   {
+      this.runTableTriggerWorkflowsInBatch = runTableTriggerWorkflowsInBatch;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runTableTriggerWorkflowsInBatch
+    *
+    * @param runTableTriggerWorkflowsInBatch
+    * Control how workflows are ran for table triggers (record automations).  If
+    * true, the records that the automation provides are ran through the workflow
+    * directly, as batches (sharing the workflow, its plan, and any prefetched
+    * join records).  If false, the runRecordWorkflow process is ran once for
+    * each record (re-querying it).  Default value is true.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowsQBitConfig withRunTableTriggerWorkflowsInBatch(boolean runTableTriggerWorkflowsInBatch)
+   {
+      this.runTableTriggerWorkflowsInBatch = runTableTriggerWorkflowsInBatch;
+      return (this);
+   }
+
 }
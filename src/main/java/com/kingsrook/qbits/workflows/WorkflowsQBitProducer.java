@@ -24,6 +24,7 @@ package com.kingsrook.qbits.workflows;
 
 import java.util.List;
 import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.execution.WorkflowRunLogSettings;
 import com.kingsrook.qbits.workflows.implementations.recordworkflows.RecordWorkflowsDefinition;
 import com.kingsrook.qbits.workflows.model.Workflow;
 import com.kingsrook.qbits.workflows.model.WorkflowLink;
@@ -37,6 +38,7 @@ import com.kingsrook.qbits.workflows.model.WorkflowTestRun;
 import com.kingsrook.qbits.workflows.model.WorkflowTestRunScenario;
 import com.kingsrook.qbits.workflows.model.WorkflowTestScenario;
 import com.kingsrook.qbits.workflows.processes.StoreNewWorkflowRevisionProcess;
+import com.kingsrook.qbits.workflows.tracing.WriteBehindWorkflowRunLogSettings;
 import com.kingsrook.qbits.workflows.triggers.TableTriggerCustomizerForWorkflows;
 import com.kingsrook.qbits.workflows.triggers.WorkflowCustomTableTriggerRecordAutomationHandler;
 import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
@@ -99,6 +101,15 @@ public class WorkflowsQBitProducer implements QBitMetaDataProducer<WorkflowsQBit
       ////////////////////////////////////////////////////////////////////////////////////////
       WorkflowsRegistry workflowsRegistry = metaDataProducerMultiOutput.get(WorkflowsRegistry.class, WorkflowsRegistry.NAME);
       qInstance.add(workflowsRegistry);
+      workflowsRegistry.getWorkflowPlanCache().setMaxSize(workflowsQBitConfig.getWorkflowPlanCacheSize());
+      workflowsRegistry.getTableTriggerWorkflowIdCache().setTtlMillis(workflowsQBitConfig.getTableTriggerWorkflowIdCacheTtlMillis());
+      workflowsRegistry.setRecordWorkflowParallelism(workflowsQBitConfig.getRecordWorkflowParallelism(), workflowsQBitConfig.getRecordWorkflowParallelismByTableName());
+      workflowsRegistry.setRecordWorkflowMaxThreads(workflowsQBitConfig.getRecordWorkflowMaxThreads());
+      workflowsRegistry.setRecordWorkflowPageSize(workflowsQBitConfig.getRecordWorkflowPageSize());
+      workflowsRegistry.setWorkflowRunLogSettings(new WorkflowRunLogSettings(workflowsQBitConfig.getDefaultRunLogLevel(), workflowsQBitConfig.getRunLogSampleRate(), workflowsQBitConfig.getRunLogSlowRunThresholdMillis(), workflowsQBitConfig.getNoOpRunLogSampleRate()));
+      workflowsRegistry.setRunTableTriggerWorkflowsInBatch(workflowsQBitConfig.getRunTableTriggerWorkflowsInBatch());
+      workflowsRegistry.setWorkflowTracerCodeReference(workflowsQBitConfig.getWorkflowTracerCodeReference());
+      workflowsRegistry.setWriteBehindWorkflowRunLogSettings(new WriteBehindWorkflowRunLogSettings(workflowsQBitConfig.getRunLogWriteBehindBatchSize(), workflowsQBitConfig.getRunLogWriteBehindMaxDelayMillis(), workflowsQBitConfig.getRunLogWriteBehindOverflowPolicy()));
 
       if(workflowsQBitConfig.getIncludeRecordWorkflows())
       {
@@ -199,6 +210,15 @@ public class WorkflowsQBitProducer implements QBitMetaDataProducer<WorkflowsQBit
       ////////////////////////////////////////////////////////////////////////////////////////////
       tableTriggerTable.withCustomizer(TableCustomizers.PRE_INSERT_RECORD, new QCodeReference(TableTriggerCustomizerForWorkflows.class));
       tableTriggerTable.withCustomizer(TableCustomizers.PRE_UPDATE_RECORD, new QCodeReference(TableTriggerCustomizerForWorkflows.class));
+
+      ////////////////////////////////////////////////////////////////////////
+      // and post update/delete, to invalidate the cache of trigger         //
+      // workflowIds (used by the                                           //
+      // WorkflowCustomTableTriggerRecordAutomationHandler) after changes - //
+      // its entries also expire after a ttl, for any changes it misses     //
+      ////////////////////////////////////////////////////////////////////////
+      tableTriggerTable.withCustomizer(TableCustomizers.POST_UPDATE_RECORD, new QCodeReference(TableTriggerCustomizerForWorkflows.class));
+      tableTriggerTable.withCustomizer(TableCustomizers.POST_DELETE_RECORD, new QCodeReference(TableTriggerCustomizerForWorkflows.class));
    }
 
 
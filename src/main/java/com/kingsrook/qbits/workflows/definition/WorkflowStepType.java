@@ -26,12 +26,14 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import com.google.gson.reflect.TypeToken;
 import com.kingsrook.qbits.workflows.execution.WorkflowStepExecutorInterface;
 import com.kingsrook.qqq.backend.core.actions.customizers.QCodeLoader;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.instances.QInstanceEnricher;
 import com.kingsrook.qqq.backend.core.instances.QInstanceValidator;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
 import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
@@ -59,6 +61,8 @@ public class WorkflowStepType implements Serializable
    private ArrayList<QFieldMetaData> inputFields;
    private ArrayList<String>         inputWidgetNames;
 
+   private boolean isStateless = false;
+
 
 
    /***************************************************************************
@@ -83,6 +87,20 @@ public class WorkflowStepType implements Serializable
 
 
 
+   /***************************************************************************
+    * get the names of the fields (of the workflow's table) that a step of this
+    * type, with the given input values, reads or writes - used to let table
+    * triggers skip a workflow for a record when none of those fields changed.
+    * Return null if that can't be known (the default) - which means the
+    * workflow is always ran.
+    ***************************************************************************/
+   public Set<String> getFieldDependencies(Map<String, Serializable> inputValues, QRecord workflowRevision, QRecord workflow) throws QException
+   {
+      return (null);
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -445,4 +463,45 @@ public class WorkflowStepType implements Serializable
    }
 
 
+
+   /*******************************************************************************
+    * Getter for isStateless
+    * @see #withIsStateless(boolean)
+    *******************************************************************************/
+   public boolean getIsStateless()
+   {
+      return (this.isStateless);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for isStateless
+    * @see #withIsStateless(boolean)
+    *******************************************************************************/
+   public void setIsStateless(boolean isStateless)
+   {
+      this.isStateless = isStateless;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for isStateless
+    *
+    * @param isStateless
+    * Indicates that this step type's executor and validator keep no state between
+    * calls, so that single instances of them can be shared by every execution (on
+    * any thread).  If true, the WorkflowsRegistry resolves those instances once, when
+    * the step type is registered - using this step type object itself if it is the
+    * executor or validator class.  Default is false, in which case new instances are
+    * created for each use.
+    * @return this
+    *******************************************************************************/
+   public WorkflowStepType withIsStateless(boolean isStateless)
+   {
+      this.isStateless = isStateless;
+      return (this);
+   }
+
 }
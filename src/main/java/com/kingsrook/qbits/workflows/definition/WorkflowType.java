@@ -54,6 +54,8 @@ public class WorkflowType implements Serializable
 
    private ArrayList<WorkflowStepTypeCategory> stepTypeCategories;
 
+   private boolean isStateless = false;
+
 
 
    /***************************************************************************
@@ -303,4 +305,44 @@ public class WorkflowType implements Serializable
    }
 
 
+
+   /*******************************************************************************
+    * Getter for isStateless
+    * @see #withIsStateless(boolean)
+    *******************************************************************************/
+   public boolean getIsStateless()
+   {
+      return (this.isStateless);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for isStateless
+    * @see #withIsStateless(boolean)
+    *******************************************************************************/
+   public void setIsStateless(boolean isStateless)
+   {
+      this.isStateless = isStateless;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for isStateless
+    *
+    * @param isStateless
+    * Indicates that this workflow type's executor keeps no state between calls, so
+    * that a single instance of it can be shared by every run of workflows of this
+    * type (on any thread).  If true, the WorkflowsRegistry resolves that instance
+    * once, when the workflow type is registered.  Default is false, in which case a
+    * new instance is created for each run.
+    * @return this
+    *******************************************************************************/
+   public WorkflowType withIsStateless(boolean isStateless)
+   {
+      this.isStateless = isStateless;
+      return (this);
+   }
+
 }
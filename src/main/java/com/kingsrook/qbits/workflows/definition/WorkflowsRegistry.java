@@ -23,18 +23,40 @@ package com.kingsrook.qbits.workflows.definition;
 
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlanCache;
+import com.kingsrook.qbits.workflows.execution.WorkflowRunLogSettings;
+import com.kingsrook.qbits.workflows.execution.WorkflowStepExecutorInterface;
+import com.kingsrook.qbits.workflows.execution.WorkflowStepValidatorInterface;
+import com.kingsrook.qbits.workflows.execution.WorkflowTypeExecutorInterface;
+import com.kingsrook.qbits.workflows.implementations.recordworkflows.RecordWorkflowApiTranslationCache;
+import com.kingsrook.qbits.workflows.tracing.WorkflowTracerInterface;
+import com.kingsrook.qbits.workflows.tracing.WriteBehindWorkflowRunLogSettings;
+import com.kingsrook.qbits.workflows.tracing.WriteBehindWorkflowRunLogTracer;
+import com.kingsrook.qbits.workflows.triggers.TableTriggerChangeDetector;
+import com.kingsrook.qbits.workflows.triggers.TableTriggerWorkflowIdCache;
+import com.kingsrook.qqq.backend.core.actions.customizers.QCodeLoader;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.instances.QHelpContentPlugin;
 import com.kingsrook.qqq.backend.core.instances.QInstanceValidator;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
 import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
 import com.kingsrook.qqq.backend.core.model.metadata.QSupplementalInstanceMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
 import com.kingsrook.qqq.backend.core.model.metadata.help.QHelpContent;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
 import com.kingsrook.qqq.backend.core.utils.collections.ListBuilder;
 import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
 
@@ -50,9 +72,53 @@ public class WorkflowsRegistry implements QSupplementalInstanceMetaData, QHelpCo
 
    public static String NAME = WorkflowsRegistry.class.getName();
 
+   public static final int DEFAULT_RECORD_WORKFLOW_MAX_THREADS = 8;
+   public static final int DEFAULT_RECORD_WORKFLOW_PAGE_SIZE   = 100;
+
+   public static final boolean DEFAULT_RUN_TABLE_TRIGGER_WORKFLOWS_IN_BATCH = true;
+
+   private static final ThreadLocal<Boolean> IS_RECORD_WORKFLOW_THREAD = ThreadLocal.withInitial(() -> false);
+
    private Map<String, WorkflowType>     workflowTypes;
    private Map<String, WorkflowStepType> workflowStepTypes;
 
+   ///////////////////////////////////////////////////////////////////////////
+   // shared instances of executors & validators for stateless types, keyed //
+   // by type name - resolved when the types are registered.                //
+   ///////////////////////////////////////////////////////////////////////////
+   private Map<String, WorkflowStepExecutorInterface>  workflowStepExecutors  = new ConcurrentHashMap<>();
+   private Map<String, WorkflowStepValidatorInterface> workflowStepValidators = new ConcurrentHashMap<>();
+   private Map<String, WorkflowTypeExecutorInterface>  workflowTypeExecutors  = new ConcurrentHashMap<>();
+
+   private WorkflowPlanCache           workflowPlanCache           = new WorkflowPlanCache();
+   private TableTriggerWorkflowIdCache tableTriggerWorkflowIdCache = new TableTriggerWorkflowIdCache();
+   private TableTriggerChangeDetector  tableTriggerChangeDetector  = new TableTriggerChangeDetector();
+
+   private RecordWorkflowApiTranslationCache recordWorkflowApiTranslationCache = new RecordWorkflowApiTranslationCache();
+
+   private int                  recordWorkflowPageSize               = DEFAULT_RECORD_WORKFLOW_PAGE_SIZE;
+   private int                  recordWorkflowParallelism            = 1;
+   private Map<String, Integer> recordWorkflowParallelismByTableName = new HashMap<>();
+
+   ///////////////////////////////////////////////////////////////////////////
+   // pool of threads that record workflows are ran on in parallel - shared //
+   // by all processes & triggers, so the total number of threads is capped //
+   ///////////////////////////////////////////////////////////////////////////
+   private int             recordWorkflowMaxThreads = DEFAULT_RECORD_WORKFLOW_MAX_THREADS;
+   private ExecutorService recordWorkflowExecutorService;
+
+   private WorkflowRunLogSettings workflowRunLogSettings = WorkflowRunLogSettings.DEFAULT;
+
+   private boolean        runTableTriggerWorkflowsInBatch = DEFAULT_RUN_TABLE_TRIGGER_WORKFLOWS_IN_BATCH;
+   private QCodeReference workflowTracerCodeReference;
+
+   ///////////////////////////////////////////////////////////////////////////
+   // write-behind tracers hold a queue (and a thread) across runs - so one //
+   // instance of each is shared, keyed by code reference name.             //
+   ///////////////////////////////////////////////////////////////////////////
+   private WriteBehindWorkflowRunLogSettings    writeBehindWorkflowRunLogSettings = WriteBehindWorkflowRunLogSettings.DEFAULT;
+   private Map<String, WorkflowTracerInterface> sharedWorkflowTracers             = new ConcurrentHashMap<>();
+
 
 
    /*******************************************************************************
@@ -134,6 +200,186 @@ public class WorkflowsRegistry implements QSupplementalInstanceMetaData, QHelpCo
 
 
 
+   /***************************************************************************
+    * get the cache of compiled workflow plans (keyed by revision id) used by
+    * the WorkflowExecutor for workflows in this instance.
+    ***************************************************************************/
+   public WorkflowPlanCache getWorkflowPlanCache()
+   {
+      return (workflowPlanCache);
+   }
+
+
+
+   /***************************************************************************
+    * get the cache of workflow ids (keyed by table trigger id) used by the
+    * WorkflowCustomTableTriggerRecordAutomationHandler in this instance.
+    ***************************************************************************/
+   public TableTriggerWorkflowIdCache getTableTriggerWorkflowIdCache()
+   {
+      return (tableTriggerWorkflowIdCache);
+   }
+
+
+
+   /***************************************************************************
+    * get the record of dependency field values that table triggers use to
+    * skip re-running workflows against unchanged records in this instance.
+    ***************************************************************************/
+   public TableTriggerChangeDetector getTableTriggerChangeDetector()
+   {
+      return (tableTriggerChangeDetector);
+   }
+
+
+
+   /***************************************************************************
+    * get the cache of API field name & filter translations used by record
+    * workflows (whose revisions use an API version) in this instance.
+    ***************************************************************************/
+   public RecordWorkflowApiTranslationCache getRecordWorkflowApiTranslationCache()
+   {
+      return (recordWorkflowApiTranslationCache);
+   }
+
+
+
+   /***************************************************************************
+    * get the max number of records to run a record workflow against at the
+    * same time, for a table - from the per-table setting if there is one, else
+    * the default.  See WorkflowsQBitConfig.withRecordWorkflowParallelism.
+    ***************************************************************************/
+   public int getRecordWorkflowParallelism(String tableName)
+   {
+      Integer parallelism = recordWorkflowParallelismByTableName.get(tableName);
+      return (Math.max(1, parallelism == null ? recordWorkflowParallelism : parallelism));
+   }
+
+
+
+   /***************************************************************************
+    * get the instance-wide settings for how workflow runs are logged.
+    ***************************************************************************/
+   public WorkflowRunLogSettings getWorkflowRunLogSettings()
+   {
+      return (workflowRunLogSettings);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public void setWorkflowRunLogSettings(WorkflowRunLogSettings workflowRunLogSettings)
+   {
+      this.workflowRunLogSettings = workflowRunLogSettings;
+   }
+
+
+
+   /***************************************************************************
+    * set the parallelism settings for record workflows (e.g., from the
+    * WorkflowsQBitConfig).
+    ***************************************************************************/
+   public void setRecordWorkflowParallelism(int recordWorkflowParallelism, Map<String, Integer> recordWorkflowParallelismByTableName)
+   {
+      this.recordWorkflowParallelism = recordWorkflowParallelism;
+      this.recordWorkflowParallelismByTableName = new HashMap<>(CollectionUtils.nonNullMap(recordWorkflowParallelismByTableName));
+   }
+
+
+
+   /***************************************************************************
+    * get the number of records per page that the RunRecordWorkflow process
+    * runs a workflow against at once.  See
+    * WorkflowsQBitConfig.withRecordWorkflowPageSize.
+    ***************************************************************************/
+   public int getRecordWorkflowPageSize()
+   {
+      return (recordWorkflowPageSize);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public void setRecordWorkflowPageSize(int recordWorkflowPageSize)
+   {
+      this.recordWorkflowPageSize = Math.max(1, recordWorkflowPageSize);
+   }
+
+
+
+   /***************************************************************************
+    * get the max number of threads that record workflows are ran on in parallel
+    * (in total, across all processes & triggers).  See
+    * WorkflowsQBitConfig.withRecordWorkflowMaxThreads.
+    ***************************************************************************/
+   public int getRecordWorkflowMaxThreads()
+   {
+      return (recordWorkflowMaxThreads);
+   }
+
+
+
+   /***************************************************************************
+    * set the max number of threads that record workflows are ran on - which
+    * replaces the thread pool (letting the tasks already in it finish).
+    ***************************************************************************/
+   public synchronized void setRecordWorkflowMaxThreads(int recordWorkflowMaxThreads)
+   {
+      this.recordWorkflowMaxThreads = Math.max(1, recordWorkflowMaxThreads);
+      if(recordWorkflowExecutorService != null)
+      {
+         recordWorkflowExecutorService.shutdown();
+         recordWorkflowExecutorService = null;
+      }
+   }
+
+
+
+   /***************************************************************************
+    * get the pool of (daemon) threads that record workflows are ran on in
+    * parallel - created on first use, with up to recordWorkflowMaxThreads
+    * threads, which time out when idle.  Tasks beyond that many wait in the
+    * pool's queue.
+    ***************************************************************************/
+   public synchronized ExecutorService getRecordWorkflowExecutorService()
+   {
+      if(recordWorkflowExecutorService == null)
+      {
+         AtomicInteger      threadNo           = new AtomicInteger();
+         ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(recordWorkflowMaxThreads, recordWorkflowMaxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable ->
+         {
+            Thread thread = new Thread(() ->
+            {
+               IS_RECORD_WORKFLOW_THREAD.set(true);
+               runnable.run();
+            }, "record-workflow-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return (thread);
+         });
+         threadPoolExecutor.allowCoreThreadTimeOut(true);
+         recordWorkflowExecutorService = threadPoolExecutor;
+      }
+
+      return (recordWorkflowExecutorService);
+   }
+
+
+
+   /***************************************************************************
+    * check if the current thread is one of the record workflow threads - in
+    * which case, it shouldn't submit (and then wait on) more tasks to the pool.
+    ***************************************************************************/
+   public static boolean isRecordWorkflowThread()
+   {
+      return (IS_RECORD_WORKFLOW_THREAD.get());
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -145,6 +391,13 @@ public class WorkflowsRegistry implements QSupplementalInstanceMetaData, QHelpCo
       }
 
       workflowTypes.put(workflowType.getName(), workflowType);
+
+      workflowTypeExecutors.remove(workflowType.getName());
+      if(workflowType.getIsStateless())
+      {
+         resolveSharedInstance(workflowType, workflowType.getExecutor(), WorkflowTypeExecutorInterface.class)
+            .ifPresent(executor -> workflowTypeExecutors.put(workflowType.getName(), executor));
+      }
    }
 
 
@@ -160,6 +413,106 @@ public class WorkflowsRegistry implements QSupplementalInstanceMetaData, QHelpCo
       }
 
       workflowStepTypes.put(workflowStepType.getName(), workflowStepType);
+
+      workflowStepExecutors.remove(workflowStepType.getName());
+      workflowStepValidators.remove(workflowStepType.getName());
+      if(workflowStepType.getIsStateless())
+      {
+         resolveSharedInstance(workflowStepType, workflowStepType.getExecutor(), WorkflowStepExecutorInterface.class)
+            .ifPresent(executor -> workflowStepExecutors.put(workflowStepType.getName(), executor));
+         resolveSharedInstance(workflowStepType, workflowStepType.getValidator(), WorkflowStepValidatorInterface.class)
+            .ifPresent(validator -> workflowStepValidators.put(workflowStepType.getName(), validator));
+      }
+
+      //////////////////////////////////////////////////////////////////////
+      // cached plans hold resolved step types - so they may be stale now //
+      //////////////////////////////////////////////////////////////////////
+      workflowPlanCache.invalidateAll();
+   }
+
+
+
+   /***************************************************************************
+    * get the object to use for executing a workflow type - the shared instance,
+    * if the type is stateless, else a new instance.
+    ***************************************************************************/
+   public WorkflowTypeExecutorInterface getWorkflowTypeExecutor(WorkflowType workflowType)
+   {
+      WorkflowTypeExecutorInterface workflowTypeExecutor = workflowTypeExecutors.get(workflowType.getName());
+      if(workflowTypeExecutor != null)
+      {
+         return (workflowTypeExecutor);
+      }
+
+      return (QCodeLoader.getAdHoc(WorkflowTypeExecutorInterface.class, workflowType.getExecutor()));
+   }
+
+
+
+   /***************************************************************************
+    * get the object to use for executing steps of a step type - the shared
+    * instance, if the type is stateless, else a new instance.  null if the
+    * step type doesn't have an executor.
+    ***************************************************************************/
+   public WorkflowStepExecutorInterface getWorkflowStepExecutor(WorkflowStepType workflowStepType)
+   {
+      WorkflowStepExecutorInterface workflowStepExecutor = workflowStepExecutors.get(workflowStepType.getName());
+      if(workflowStepExecutor != null || workflowStepType.getExecutor() == null)
+      {
+         return (workflowStepExecutor);
+      }
+
+      return (QCodeLoader.getAdHoc(WorkflowStepExecutorInterface.class, workflowStepType.getExecutor()));
+   }
+
+
+
+   /***************************************************************************
+    * get the object to use for validating steps of a step type - the shared
+    * instance, if the type is stateless, else a new instance.  null if the
+    * step type doesn't have a validator.
+    ***************************************************************************/
+   public WorkflowStepValidatorInterface getWorkflowStepValidator(WorkflowStepType workflowStepType)
+   {
+      WorkflowStepValidatorInterface workflowStepValidator = workflowStepValidators.get(workflowStepType.getName());
+      if(workflowStepValidator != null || workflowStepType.getValidator() == null)
+      {
+         return (workflowStepValidator);
+      }
+
+      return (QCodeLoader.getAdHoc(WorkflowStepValidatorInterface.class, workflowStepType.getValidator()));
+   }
+
+
+
+   /***************************************************************************
+    * for a stateless type, get the single instance of one of its code references
+    * to share - which is the type object itself, if it is of the referenced class
+    * (e.g., step types that are their own executor), else a new instance.  If the
+    * code can't be loaded, then empty is returned (so instances are created on
+    * demand, and the instance validator reports the problem).
+    ***************************************************************************/
+   private <T> Optional<T> resolveSharedInstance(Object type, QCodeReference codeReference, Class<T> expectedClass)
+   {
+      if(codeReference == null)
+      {
+         return (Optional.empty());
+      }
+
+      if(expectedClass.isInstance(type) && type.getClass().getName().equals(codeReference.getName()))
+      {
+         return (Optional.of(expectedClass.cast(type)));
+      }
+
+      try
+      {
+         return (Optional.ofNullable(QCodeLoader.getAdHoc(expectedClass, codeReference)));
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error loading shared instance of workflow code", e, logPair("codeReference", codeReference.getName()));
+         return (Optional.empty());
+      }
    }
 
 
@@ -251,4 +604,111 @@ public class WorkflowsRegistry implements QSupplementalInstanceMetaData, QHelpCo
       }
    }
 
+
+
+   /***************************************************************************
+    * get whether table triggers should run their records through a workflow as
+    * batches (vs. a process run per record).  See
+    * WorkflowsQBitConfig.withRunTableTriggerWorkflowsInBatch.
+    ***************************************************************************/
+   public boolean getRunTableTriggerWorkflowsInBatch()
+   {
+      return (runTableTriggerWorkflowsInBatch);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public void setRunTableTriggerWorkflowsInBatch(boolean runTableTriggerWorkflowsInBatch)
+   {
+      this.runTableTriggerWorkflowsInBatch = runTableTriggerWorkflowsInBatch;
+   }
+
+
+
+   /***************************************************************************
+    * get the tracer to use for workflows that are ran outside of a process
+    * (e.g., by table triggers) - null for none.
+    ***************************************************************************/
+   public QCodeReference getWorkflowTracerCodeReference()
+   {
+      return (workflowTracerCodeReference);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public void setWorkflowTracerCodeReference(QCodeReference workflowTracerCodeReference)
+   {
+      this.workflowTracerCodeReference = workflowTracerCodeReference;
+   }
+
+
+
+   /***************************************************************************
+    * get the tracer to use for a code reference (e.g., workflowTracerCodeReference,
+    * or one given to the runRecordWorkflow process) - null if the reference is.
+    *
+    * A WriteBehindWorkflowRunLogTracer (or subclass) is shared - one instance per
+    * code reference, configured with the writeBehindWorkflowRunLogSettings - so
+    * that all runs feed the same queue & background thread.  Other tracers are
+    * created new for each call.
+    ***************************************************************************/
+   public WorkflowTracerInterface getWorkflowTracer(QCodeReference codeReference)
+   {
+      if(codeReference == null)
+      {
+         return (null);
+      }
+
+      WorkflowTracerInterface sharedWorkflowTracer = sharedWorkflowTracers.get(codeReference.getName());
+      if(sharedWorkflowTracer != null)
+      {
+         return (sharedWorkflowTracer);
+      }
+
+      WorkflowTracerInterface workflowTracer = QCodeLoader.getAdHoc(WorkflowTracerInterface.class, codeReference);
+      if(workflowTracer instanceof WriteBehindWorkflowRunLogTracer writeBehindTracer)
+      {
+         writeBehindTracer.setBatchSize(writeBehindWorkflowRunLogSettings.batchSize());
+         writeBehindTracer.setMaxDelayMillis(writeBehindWorkflowRunLogSettings.maxDelayMillis());
+         writeBehindTracer.setOverflowPolicy(writeBehindWorkflowRunLogSettings.overflowPolicy());
+
+         //////////////////////////////////////////////////////////////////
+         // if another thread got here first, use (only) its instance -  //
+         // ours was never used, so it has no queued run logs or thread. //
+         //////////////////////////////////////////////////////////////////
+         sharedWorkflowTracer = sharedWorkflowTracers.putIfAbsent(codeReference.getName(), workflowTracer);
+         return (sharedWorkflowTracer == null ? workflowTracer : sharedWorkflowTracer);
+      }
+
+      return (workflowTracer);
+   }
+
+
+
+   /***************************************************************************
+    * get the settings applied to shared write-behind tracers.  See
+    * WorkflowsQBitConfig.withRunLogWriteBehindBatchSize (etc).
+    ***************************************************************************/
+   public WriteBehindWorkflowRunLogSettings getWriteBehindWorkflowRunLogSettings()
+   {
+      return (writeBehindWorkflowRunLogSettings);
+   }
+
+
+
+   /***************************************************************************
+    * set the settings for shared write-behind tracers - which only apply to
+    * tracers created after this call.
+    ***************************************************************************/
+   public void setWriteBehindWorkflowRunLogSettings(WriteBehindWorkflowRunLogSettings writeBehindWorkflowRunLogSettings)
+   {
+      this.writeBehindWorkflowRunLogSettings = writeBehindWorkflowRunLogSettings;
+   }
+
 }
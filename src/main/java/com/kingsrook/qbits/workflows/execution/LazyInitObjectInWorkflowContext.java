@@ -63,4 +63,16 @@ public class LazyInitObjectInWorkflowContext<T extends Serializable> extends Obj
       }
       return (t);
    }
+
+
+
+   /***************************************************************************
+    * get the object without initializing it - i.e., null if it hasn't been
+    * get()ed (or set) yet - for callers that only read it, so they don't
+    * allocate it.
+    ***************************************************************************/
+   public T getIfInitialized()
+   {
+      return (super.get());
+   }
 }
@@ -28,8 +28,10 @@ import java.io.Serializable;
 /*******************************************************************************
  * Helper object for working with named and typed objects into a workflow context.
  *
- * The object itself is stored in the `context`, under the name specified by
- * the `key`.  The type is driven by the type-parameter to the class.
+ * The object itself is stored in a slot of the `context` (allocated when this
+ * object is constructed - so get & set are just array accesses), which also
+ * appears in the context's values map under the name specified by the `key`.
+ * The type is driven by the type-parameter to the class.
  *
  * The envisioned usage pattern would have class designed for a particular
  * workflow-type that `extends WorkflowExecutionContext`.  In that class would
@@ -48,6 +50,7 @@ public class ObjectInWorkflowContext<T extends Serializable>
 {
    private final WorkflowExecutionContext context;
    private final String                   key;
+   private final int                      slotIndex;
 
 
 
@@ -59,6 +62,7 @@ public class ObjectInWorkflowContext<T extends Serializable>
    {
       this.context = context;
       this.key = key;
+      this.slotIndex = context.allocateSlot(key);
    }
 
 
@@ -71,6 +75,7 @@ public class ObjectInWorkflowContext<T extends Serializable>
    {
       this.context = context;
       this.key = key;
+      this.slotIndex = context.allocateSlot(key);
 
       set(initialValue);
    }
@@ -78,9 +83,9 @@ public class ObjectInWorkflowContext<T extends Serializable>
 
 
    /***************************************************************************
-    *
+    * the name that the object appears under in the context's values map.
     ***************************************************************************/
-   private String getKey()
+   public String getKey()
    {
       return key;
    }
@@ -92,7 +97,7 @@ public class ObjectInWorkflowContext<T extends Serializable>
     ***************************************************************************/
    public T get()
    {
-      return (T) context.getValues().get(getKey());
+      return (T) context.getSlotValue(slotIndex);
    }
 
 
@@ -102,6 +107,6 @@ public class ObjectInWorkflowContext<T extends Serializable>
     ***************************************************************************/
    public void set(T value)
    {
-      context.getValues().put(getKey(), value);
+      context.setSlotValue(slotIndex, value);
    }
 }
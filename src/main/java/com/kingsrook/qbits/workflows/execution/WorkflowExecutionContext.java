@@ -23,26 +23,54 @@ package com.kingsrook.qbits.workflows.execution;
 
 
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import com.kingsrook.qbits.workflows.model.Workflow;
 import com.kingsrook.qbits.workflows.model.WorkflowRevision;
 import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
 import com.kingsrook.qqq.backend.core.actions.QBackendTransaction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.exceptions.QRuntimeException;
+import com.kingsrook.qqq.backend.core.utils.lambdas.UnsafeSupplier;
 
 
 /*******************************************************************************
  ** data that moves along with a workflow as it is being executed
+ **
+ ** Well-known, typed values (see {@link ObjectInWorkflowContext}) are kept in
+ ** slots - i.e., at fixed indexes in an array, allocated as the context is
+ ** constructed - rather than by name in the values map.  The map from
+ ** getValues still shows them though (along with any dynamic values), so
+ ** they can be read or written by name too (e.g., by test assertions).
  *******************************************************************************/
 public class WorkflowExecutionContext
 {
+   private static final int NO_SLOT       = -1;
+   private static final int INITIAL_SLOTS = 8;
+
    private Workflow                  workflow;
    private WorkflowRevision          workflowRevision;
    private Map<String, Serializable> values = new LinkedHashMap<>();
    private QBackendTransaction       transaction;
    private WorkflowRunLog            workflowRunLog;
 
+   private UnsafeSupplier<QBackendTransaction, QException> transactionOpener;
+
    private boolean isTestRun = false;
+   private boolean isInBatch = false;
+
+   private String[]                  slotKeys;
+   private Serializable[]            slotValues;
+   private int                       noOfSlots = 0;
+   private Map<String, Serializable> valuesView;
 
 
 
@@ -109,21 +137,48 @@ public class WorkflowExecutionContext
 
 
    /*******************************************************************************
-    ** Getter for values
+    ** Getter for values - for a context with slots, this is a view over both the
+    ** slots and the map of dynamic values (where slots whose value is null don't
+    ** appear), which writes through to them.
     *******************************************************************************/
    public Map<String, Serializable> getValues()
    {
-      return (this.values);
+      if(noOfSlots == 0)
+      {
+         return (this.values);
+      }
+
+      if(valuesView == null)
+      {
+         valuesView = new ValuesView();
+      }
+      return (valuesView);
    }
 
 
 
    /*******************************************************************************
-    ** Setter for values
+    ** Setter for values - values in the map under slots' keys are moved into
+    ** the slots (from a copy of the map), and other slots are cleared.
     *******************************************************************************/
    public void setValues(Map<String, Serializable> values)
    {
       this.values = values;
+
+      boolean isCopy = false;
+      for(int i = 0; i < noOfSlots; i++)
+      {
+         slotValues[i] = null;
+         if(this.values != null && this.values.containsKey(slotKeys[i]))
+         {
+            if(!isCopy)
+            {
+               this.values = new LinkedHashMap<>(this.values);
+               isCopy = true;
+            }
+            slotValues[i] = this.values.remove(slotKeys[i]);
+         }
+      }
    }
 
 
@@ -133,16 +188,360 @@ public class WorkflowExecutionContext
     *******************************************************************************/
    public WorkflowExecutionContext withValues(Map<String, Serializable> values)
    {
-      this.values = values;
+      setValues(values);
       return (this);
    }
 
 
 
+   /***************************************************************************
+    * allocate a slot for a well-known value, under a key - returning its index
+    * (or, if there's already a slot for the key, that one's).  Called by
+    * ObjectInWorkflowContext as a context is constructed, so each context of a
+    * class has the same slots, at the same indexes.  A value already in the
+    * values map under the key is moved into the slot.
+    ***************************************************************************/
+   int allocateSlot(String key)
+   {
+      int index = getSlotIndex(key);
+      if(index != NO_SLOT)
+      {
+         return (index);
+      }
+
+      if(slotKeys == null)
+      {
+         slotKeys = new String[INITIAL_SLOTS];
+         slotValues = new Serializable[INITIAL_SLOTS];
+      }
+      else if(noOfSlots == slotKeys.length)
+      {
+         slotKeys = Arrays.copyOf(slotKeys, noOfSlots * 2);
+         slotValues = Arrays.copyOf(slotValues, noOfSlots * 2);
+      }
+
+      slotKeys[noOfSlots] = key;
+      slotValues[noOfSlots] = values == null ? null : values.remove(key);
+      return (noOfSlots++);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   Serializable getSlotValue(int index)
+   {
+      return (slotValues[index]);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   void setSlotValue(int index, Serializable value)
+   {
+      slotValues[index] = value;
+   }
+
+
+
+   /***************************************************************************
+    * find the slot for a key - or NO_SLOT.  contexts only have a few slots
+    * (with literal, so usually identical, keys) - so a scan is all it takes.
+    ***************************************************************************/
+   private int getSlotIndex(Object key)
+   {
+      for(int i = 0; i < noOfSlots; i++)
+      {
+         if(slotKeys[i].equals(key))
+         {
+            return (i);
+         }
+      }
+
+      return (NO_SLOT);
+   }
+
+
+
+   /***************************************************************************
+    * map view of a context's values - the (non-null) slots, then the dynamic
+    * values.
+    ***************************************************************************/
+   private class ValuesView extends AbstractMap<String, Serializable>
+   {
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public Serializable get(Object key)
+      {
+         int index = getSlotIndex(key);
+         if(index != NO_SLOT)
+         {
+            return (slotValues[index]);
+         }
+
+         return (values == null ? null : values.get(key));
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public boolean containsKey(Object key)
+      {
+         int index = getSlotIndex(key);
+         if(index != NO_SLOT)
+         {
+            return (slotValues[index] != null);
+         }
+
+         return (values != null && values.containsKey(key));
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public Serializable put(String key, Serializable value)
+      {
+         int index = getSlotIndex(key);
+         if(index != NO_SLOT)
+         {
+            Serializable oldValue = slotValues[index];
+            slotValues[index] = value;
+            return (oldValue);
+         }
+
+         if(values == null)
+         {
+            values = new LinkedHashMap<>();
+         }
+         return (values.put(key, value));
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public Serializable remove(Object key)
+      {
+         int index = getSlotIndex(key);
+         if(index != NO_SLOT)
+         {
+            Serializable oldValue = slotValues[index];
+            slotValues[index] = null;
+            return (oldValue);
+         }
+
+         return (values == null ? null : values.remove(key));
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void clear()
+      {
+         Arrays.fill(slotValues, 0, noOfSlots, null);
+         if(values != null)
+         {
+            values.clear();
+         }
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public Set<Entry<String, Serializable>> entrySet()
+      {
+         return (new AbstractSet<>()
+         {
+            @Override
+            public Iterator<Entry<String, Serializable>> iterator()
+            {
+               return (new ValuesViewIterator());
+            }
+
+
+
+            @Override
+            public int size()
+            {
+               int size = values == null ? 0 : values.size();
+               for(int i = 0; i < noOfSlots; i++)
+               {
+                  if(slotValues[i] != null)
+                  {
+                     size++;
+                  }
+               }
+               return (size);
+            }
+         });
+      }
+   }
+
+
+
+   /***************************************************************************
+    * iterator over the entries of a ValuesView - whose entries & remove write
+    * through to the slots & values map.
+    ***************************************************************************/
+   private class ValuesViewIterator implements Iterator<Map.Entry<String, Serializable>>
+   {
+      private final Iterator<Map.Entry<String, Serializable>> slotIterator;
+      private final Iterator<Map.Entry<String, Serializable>> valuesIterator;
+
+      private Map.Entry<String, Serializable> lastEntry;
+      private boolean                         isLastEntryASlot;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private ValuesViewIterator()
+      {
+         List<Map.Entry<String, Serializable>> slotEntries = new ArrayList<>();
+         for(int i = 0; i < noOfSlots; i++)
+         {
+            if(slotValues[i] != null)
+            {
+               slotEntries.add(new SlotEntry(i));
+            }
+         }
+
+         this.slotIterator = slotEntries.iterator();
+         this.valuesIterator = values == null ? Collections.emptyIterator() : values.entrySet().iterator();
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public boolean hasNext()
+      {
+         return (slotIterator.hasNext() || valuesIterator.hasNext());
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public Map.Entry<String, Serializable> next()
+      {
+         isLastEntryASlot = slotIterator.hasNext();
+         lastEntry = isLastEntryASlot ? slotIterator.next() : valuesIterator.next();
+         return (lastEntry);
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void remove()
+      {
+         if(isLastEntryASlot)
+         {
+            lastEntry.setValue(null);
+         }
+         else
+         {
+            valuesIterator.remove();
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    * entry for a slot - whose setValue writes through to the slot.
+    ***************************************************************************/
+   private class SlotEntry extends AbstractMap.SimpleEntry<String, Serializable>
+   {
+      private final int index;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private SlotEntry(int index)
+      {
+         super(slotKeys[index], slotValues[index]);
+         this.index = index;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public Serializable setValue(Serializable value)
+      {
+         slotValues[index] = value;
+         return (super.setValue(value));
+      }
+   }
+
+
+
    /*******************************************************************************
-    ** Getter for transaction
+    ** Getter for transaction - if a transactionOpener is set (and the transaction
+    ** hasn't been opened yet), it is used to open the transaction now.
     *******************************************************************************/
    public QBackendTransaction getTransaction()
+   {
+      if(this.transaction == null && this.transactionOpener != null)
+      {
+         UnsafeSupplier<QBackendTransaction, QException> opener = this.transactionOpener;
+         this.transactionOpener = null;
+
+         try
+         {
+            this.transaction = opener.get();
+         }
+         catch(QException e)
+         {
+            throw (new QRuntimeException("Error opening transaction for workflow", e));
+         }
+      }
+
+      return (this.transaction);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for transaction, without opening it - e.g., to commit or close it,
+    ** only if it was opened.
+    *******************************************************************************/
+   public QBackendTransaction getTransactionIfOpened()
    {
       return (this.transaction);
    }
@@ -155,6 +554,7 @@ public class WorkflowExecutionContext
    public void setTransaction(QBackendTransaction transaction)
    {
       this.transaction = transaction;
+      this.transactionOpener = null;
    }
 
 
@@ -164,12 +564,26 @@ public class WorkflowExecutionContext
     *******************************************************************************/
    public WorkflowExecutionContext withTransaction(QBackendTransaction transaction)
    {
-      this.transaction = transaction;
+      setTransaction(transaction);
       return (this);
    }
 
 
 
+   /*******************************************************************************
+    ** Setter for transactionOpener - used to open the run's transaction lazily,
+    ** the first time getTransaction is called - so runs that never use it (e.g.,
+    ** record workflows whose record doesn't make it past their filter) never
+    ** open (or commit) one.
+    *******************************************************************************/
+   public void setTransactionOpener(UnsafeSupplier<QBackendTransaction, QException> transactionOpener)
+   {
+      this.transaction = null;
+      this.transactionOpener = transactionOpener;
+   }
+
+
+
    /*******************************************************************************
     ** Getter for workflowRunLog
     *******************************************************************************/
@@ -235,4 +649,43 @@ public class WorkflowExecutionContext
       return (this);
    }
 
+
+
+   /*******************************************************************************
+    * Getter for isInBatch
+    * @see #withIsInBatch(boolean)
+    *******************************************************************************/
+   public boolean getIsInBatch()
+   {
+      return (this.isInBatch);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for isInBatch
+    * @see #withIsInBatch(boolean)
+    *******************************************************************************/
+   public void setIsInBatch(boolean isInBatch)
+   {
+      this.isInBatch = isInBatch;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for isInBatch
+    *
+    * @param isInBatch indicates if the run is part of a batch (see
+    * WorkflowExecutor.executeBatch) in which the workflow type executor may defer
+    * work from its postRun to its postBatch.  Only set for runs whose transaction
+    * is owned by the executor (as deferred work happens outside of it).
+    * @return this
+    *******************************************************************************/
+   public WorkflowExecutionContext withIsInBatch(boolean isInBatch)
+   {
+      this.isInBatch = isInBatch;
+      return (this);
+   }
+
 }
@@ -23,28 +23,31 @@ package com.kingsrook.qbits.workflows.execution;
 
 
 import java.io.Serializable;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Stack;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import com.google.gson.reflect.TypeToken;
 import com.kingsrook.qbits.workflows.definition.OutboundLinkMode;
 import com.kingsrook.qbits.workflows.definition.WorkflowStepType;
 import com.kingsrook.qbits.workflows.definition.WorkflowType;
 import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
 import com.kingsrook.qbits.workflows.model.Workflow;
-import com.kingsrook.qbits.workflows.model.WorkflowLink;
 import com.kingsrook.qbits.workflows.model.WorkflowRevision;
 import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLogLevel;
 import com.kingsrook.qbits.workflows.model.WorkflowRunLogStep;
 import com.kingsrook.qbits.workflows.model.WorkflowStep;
 import com.kingsrook.qbits.workflows.tracing.WorkflowTracerInterface;
 import com.kingsrook.qqq.backend.core.actions.AbstractQActionBiConsumer;
-import com.kingsrook.qqq.backend.core.actions.customizers.QCodeLoader;
+import com.kingsrook.qqq.backend.core.actions.QBackendTransaction;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
@@ -52,25 +55,133 @@ import com.kingsrook.qqq.backend.core.logging.QLogger;
 import com.kingsrook.qqq.backend.core.model.actions.tables.get.GetInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
-import com.kingsrook.qqq.backend.core.utils.JsonUtils;
-import com.kingsrook.qqq.backend.core.utils.ListingHash;
 import com.kingsrook.qqq.backend.core.utils.StringUtils;
 import com.kingsrook.qqq.backend.core.utils.ValueUtils;
-import org.json.JSONObject;
+import org.apache.commons.lang3.BooleanUtils;
 import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
 
 
 /*******************************************************************************
  ** class that executes a workflow.  evaluating its steps and navigating links.
+ **
+ ** An executor holds no per-run state (that lives in the WorkflowInput/Output,
+ ** the WorkflowExecutionContext, and a per-run WorkflowRun & WorkflowRunFrame)
+ ** - so, once its tracer is set, a single instance may be re-used for any
+ ** number of runs, and shared across threads.
  *******************************************************************************/
 public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, WorkflowOutput>
 {
    private static final QLogger LOG = QLogger.getLogger(WorkflowExecutor.class);
 
    private WorkflowTracerInterface workflowTracer;
-   private WorkflowRunLog          inputWorkflowRunLog;
+   private boolean                 useBatchExecution = true;
 
-   private Stack<Integer> containerStack = new Stack<>();
+   @Deprecated
+   private WorkflowRunLog inputWorkflowRunLog;
+
+
+
+   /***************************************************************************
+    * the parts of a run that only depend on the workflow (not on the input) -
+    * which can be shared by all runs of the same workflow in a batch.
+    ***************************************************************************/
+   private record WorkflowRunSetup(Workflow workflow, WorkflowType workflowType, WorkflowPlan workflowPlan)
+   {
+   }
+
+
+
+   /***************************************************************************
+    * a run log whose storing is deferred until the end of its batch - along
+    * with what's needed to decide (then) if it should be stored.
+    ***************************************************************************/
+   private record DeferredRunLog(WorkflowOutput workflowOutput, WorkflowRunLogLevel runLogLevel, boolean logSteps, long elapsedMillis, List<LazyStepMessage> lazyStepMessages)
+   {
+   }
+
+
+
+   /***************************************************************************
+    * a run log step whose message is lazy (see WorkflowStepOutput.ofLazyMessage)
+    * - only built if the run log is stored.
+    ***************************************************************************/
+   private record LazyStepMessage(WorkflowRunLogStep workflowRunLogStep, WorkflowStepOutput workflowStepOutput)
+   {
+   }
+
+
+
+   /***************************************************************************
+    * state shared by the runs in one call to executeBatch.
+    ***************************************************************************/
+   private static class WorkflowBatch
+   {
+      private final Map<Integer, WorkflowRunSetup>                             setupsByWorkflowId    = new HashMap<>();
+      private final Map<WorkflowTypeExecutorInterface, List<WorkflowOutput>> outputsByTypeExecutor = new IdentityHashMap<>();
+      private final List<DeferredRunLog>                                       deferredRunLogs       = new ArrayList<>();
+   }
+
+
+
+   /***************************************************************************
+    * the state of one run, as it moves through the phases of its execution
+    * (setUpRun, then beginStep & endStep for each step, then completeRun or
+    * failRun, and finally finishRun) - which lets executeBatch interleave the
+    * steps of many runs.
+    ***************************************************************************/
+   private static class WorkflowRun
+   {
+      private final WorkflowInput            workflowInput;
+      private final WorkflowOutput           workflowOutput;
+      private final WorkflowBatch            workflowBatch;
+      private final WorkflowExecutionContext context;
+      private final WorkflowRunLog           workflowRunLog;
+      private final List<WorkflowRunLogStep> logStepList      = new ArrayList<>();
+      private final List<LazyStepMessage>    lazyStepMessages = new ArrayList<>();
+      private final WorkflowRunLogSettings   runLogSettings;
+
+      private WorkflowTypeExecutorInterface workflowTypeExecutor = null;
+      private boolean                       weOwnTheTransaction  = false;
+
+      /////////////////////////////////////////////////////////////////////////
+      // until we know the workflow's run log level, assume everything is    //
+      // logged (e.g., so errors loading the workflow are logged as before). //
+      /////////////////////////////////////////////////////////////////////////
+      private WorkflowRunLogLevel runLogLevel = null;
+      private boolean             logSteps    = true;
+
+      private WorkflowPlan       workflowPlan;
+      private WorkflowRunFrame   runFrame;
+      private WorkflowPlanStep   planStep;
+      private WorkflowRunLogStep workflowRunLogStep;
+      private int                seqNo     = 1;
+      private boolean            hasFailed = false;
+
+      ///////////////////////////////////////////////////////////////////////
+      // a page run's steps are interleaved with those of its page's other //
+      // runs - so its elapsed time is only what was spent on it (its own  //
+      // phases, plus its share of steps executed for the whole page).     //
+      ///////////////////////////////////////////////////////////////////////
+      private final long startNanos = System.nanoTime();
+      private boolean    isPageRun  = false;
+      private long       ownNanos   = 0;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private WorkflowRun(WorkflowInput workflowInput, WorkflowOutput workflowOutput, WorkflowBatch workflowBatch, WorkflowExecutionContext context, WorkflowRunLog workflowRunLog, WorkflowRunLogSettings runLogSettings)
+      {
+         this.workflowInput = workflowInput;
+         this.workflowOutput = workflowOutput;
+         this.workflowBatch = workflowBatch;
+         this.context = context;
+         this.workflowRunLog = workflowRunLog;
+         this.runLogSettings = runLogSettings;
+      }
+   }
 
 
 
@@ -79,6 +190,299 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
     ***************************************************************************/
    @Override
    public void execute(WorkflowInput workflowInput, WorkflowOutput workflowOutput) throws QException
+   {
+      execute(workflowInput, workflowOutput, null);
+   }
+
+
+
+   /***************************************************************************
+    * run a list of workflow inputs back to back, returning one output per input
+    * (in the same order).  The workflow, its type, and its compiled plan are
+    * only loaded once per distinct workflowId in the list, rather than once per
+    * input (as happens when calling execute for each input).  Inputs with an
+    * override revision don't share that setup.
+    *
+    * As with execute, an error in any one run is captured in its output (and
+    * run log) - so it doesn't stop the rest of the batch.
+    *
+    * Workflow type executors may defer work from their postRun for runs in the
+    * batch (e.g., writing records), to do it for the whole batch at once in
+    * their postBatch - so run logs are only stored after that, once it is
+    * known if that work succeeded for each run.
+    *
+    * Runs whose writes are deferred like that, and whose plan allows it (see
+    * {@link WorkflowPlan#getIsBatchExecutable()}), are run page-at-a-time
+    * (unless useBatchExecution is turned off): each step is executed once for
+    * all of the runs that reach it - as one call, if its executor implements
+    * {@link WorkflowStepBatchExecutorInterface}, else once per run.
+    ***************************************************************************/
+   public List<WorkflowOutput> executeBatch(List<WorkflowInput> workflowInputs) throws QException
+   {
+      WorkflowBatch        workflowBatch   = new WorkflowBatch();
+      List<WorkflowOutput> workflowOutputs = new ArrayList<>();
+
+      Map<WorkflowPlan, List<WorkflowRun>> pageRunsByPlan = new LinkedHashMap<>();
+      for(WorkflowInput workflowInput : CollectionUtils.nonNullList(workflowInputs))
+      {
+         WorkflowOutput workflowOutput = new WorkflowOutput();
+         workflowOutputs.add(workflowOutput);
+
+         WorkflowRun workflowRun = newRun(workflowInput, workflowOutput, workflowBatch);
+         try
+         {
+            setUpRun(workflowRun);
+            if(useBatchExecution && workflowRun.context.getIsInBatch() && workflowRun.planStep != null && workflowRun.workflowPlan.getIsBatchExecutable())
+            {
+               pageRunsByPlan.computeIfAbsent(workflowRun.workflowPlan, k -> new ArrayList<>()).add(workflowRun);
+               workflowRun.isPageRun = true;
+               workflowRun.ownNanos = System.nanoTime() - workflowRun.startNanos;
+            }
+            else
+            {
+               executeRemainingSteps(workflowRun);
+               completeRun(workflowRun);
+            }
+         }
+         catch(Exception e)
+         {
+            failRun(workflowRun, e);
+         }
+         finally
+         {
+            if(!workflowRun.isPageRun)
+            {
+               finishRun(workflowRun);
+            }
+         }
+      }
+
+      for(Map.Entry<WorkflowPlan, List<WorkflowRun>> entry : pageRunsByPlan.entrySet())
+      {
+         executeRunsPageAtATime(entry.getKey(), entry.getValue());
+      }
+
+      for(Map.Entry<WorkflowTypeExecutorInterface, List<WorkflowOutput>> entry : workflowBatch.outputsByTypeExecutor.entrySet())
+      {
+         try
+         {
+            entry.getKey().postBatch(entry.getValue());
+         }
+         catch(Exception e)
+         {
+            LOG.info("Exception in workflow type executor post-batch", e);
+            for(WorkflowOutput workflowOutput : entry.getValue())
+            {
+               if(workflowOutput.getException() == null)
+               {
+                  workflowOutput.markFailed(e);
+               }
+            }
+         }
+      }
+
+      WorkflowRunLogSettings runLogSettings = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowRunLogSettings();
+      for(DeferredRunLog deferredRunLog : workflowBatch.deferredRunLogs)
+      {
+         WorkflowOutput workflowOutput = deferredRunLog.workflowOutput();
+         if(shouldStoreRunLog(workflowOutput.getWorkflowRunLog(), deferredRunLog.runLogLevel(), deferredRunLog.logSteps(), workflowOutput.getIsNoOpRun(), deferredRunLog.elapsedMillis(), runLogSettings))
+         {
+            storeWorkflowRunLog(workflowOutput.getWorkflowRunLog(), deferredRunLog.lazyStepMessages());
+         }
+      }
+
+      return (workflowOutputs);
+   }
+
+
+
+   /***************************************************************************
+    * run one input - as part of a batch (sharing workflow setup with its other
+    * runs, and deferring storing the run log), if one is given.
+    ***************************************************************************/
+   private void execute(WorkflowInput workflowInput, WorkflowOutput workflowOutput, WorkflowBatch workflowBatch) throws QException
+   {
+      WorkflowRun workflowRun = newRun(workflowInput, workflowOutput, workflowBatch);
+      try
+      {
+         setUpRun(workflowRun);
+         executeRemainingSteps(workflowRun);
+         completeRun(workflowRun);
+      }
+      catch(Exception e)
+      {
+         failRun(workflowRun, e);
+      }
+      finally
+      {
+         finishRun(workflowRun);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * run a plan's runs (all set up, and all at their start step) page-at-a-time.
+    * Each time through, the lowest-ranked step that any of the runs is at gets
+    * executed for every run at it - as no other run can reach that step after
+    * that (links only go to higher-ranked steps).  So, each step runs at most
+    * once for the page, and branch steps partition the runs as they go.
+    ***************************************************************************/
+   private void executeRunsPageAtATime(WorkflowPlan workflowPlan, List<WorkflowRun> workflowRuns) throws QException
+   {
+      List<WorkflowRun> activeRuns = new ArrayList<>(workflowRuns);
+      while(!activeRuns.isEmpty())
+      {
+         int lowestRank = Integer.MAX_VALUE;
+         for(WorkflowRun workflowRun : activeRuns)
+         {
+            lowestRank = Math.min(lowestRank, workflowPlan.getStepRank(workflowRun.planStep.getIndex()));
+         }
+
+         Map<Integer, List<WorkflowRun>> runsByStepIndex = new LinkedHashMap<>();
+         for(WorkflowRun workflowRun : activeRuns)
+         {
+            if(workflowPlan.getStepRank(workflowRun.planStep.getIndex()) == lowestRank)
+            {
+               runsByStepIndex.computeIfAbsent(workflowRun.planStep.getIndex(), k -> new ArrayList<>()).add(workflowRun);
+            }
+         }
+
+         for(Map.Entry<Integer, List<WorkflowRun>> entry : runsByStepIndex.entrySet())
+         {
+            executeStepForRuns(workflowPlan.getStep(entry.getKey()), entry.getValue());
+         }
+
+         activeRuns.removeIf(workflowRun -> workflowRun.hasFailed || workflowRun.planStep == null);
+      }
+
+      ////////////////////////////////////////////////////////////////////
+      // complete & finish the runs in their input order - so the batch //
+      // (e.g., the type executor's postBatch) sees them in that order. //
+      ////////////////////////////////////////////////////////////////////
+      for(WorkflowRun workflowRun : workflowRuns)
+      {
+         long startNanos = System.nanoTime();
+         try
+         {
+            if(!workflowRun.hasFailed)
+            {
+               completeRun(workflowRun);
+            }
+         }
+         catch(Exception e)
+         {
+            failRun(workflowRun, e);
+         }
+         finally
+         {
+            workflowRun.ownNanos += System.nanoTime() - startNanos;
+            finishRun(workflowRun);
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    * execute one step for all of the (page) runs that are at it - with one
+    * call to the step's executor if it supports that, else with a call for
+    * each run.  Errors only fail the runs that they come from.
+    ***************************************************************************/
+   private void executeStepForRuns(WorkflowPlanStep planStep, List<WorkflowRun> workflowRuns) throws QException
+   {
+      WorkflowStepExecutorInterface workflowStepExecutor = planStep.getWorkflowStepExecutor();
+      if(workflowRuns.size() == 1 || !(workflowStepExecutor instanceof WorkflowStepBatchExecutorInterface workflowStepBatchExecutor) || workflowStepExecutor.mutatesInputValues())
+      {
+         for(WorkflowRun workflowRun : workflowRuns)
+         {
+            long startNanos = System.nanoTime();
+            try
+            {
+               beginStep(workflowRun);
+               endStep(workflowRun, executeStep(planStep, workflowRun.workflowTypeExecutor, workflowRun.context));
+            }
+            catch(Exception e)
+            {
+               failRun(workflowRun, e);
+            }
+            workflowRun.ownNanos += System.nanoTime() - startNanos;
+         }
+         return;
+      }
+
+      WorkflowStep                   step         = planStep.getWorkflowStep();
+      List<WorkflowRun>              preparedRuns = new ArrayList<>();
+      List<WorkflowExecutionContext> contexts     = new ArrayList<>();
+      for(WorkflowRun workflowRun : workflowRuns)
+      {
+         long startNanos = System.nanoTime();
+         try
+         {
+            beginStep(workflowRun);
+            workflowRun.workflowTypeExecutor.preStep(step, workflowRun.context);
+            preparedRuns.add(workflowRun);
+            contexts.add(workflowRun.context);
+         }
+         catch(Exception e)
+         {
+            failRun(workflowRun, e);
+         }
+         workflowRun.ownNanos += System.nanoTime() - startNanos;
+      }
+
+      if(preparedRuns.isEmpty())
+      {
+         return;
+      }
+
+      Map<String, Serializable> inputValues         = planStep.getInputValues();
+      List<WorkflowStepOutput>  workflowStepOutputs = null;
+      long                      batchStartNanos     = System.nanoTime();
+      try
+      {
+         Object compiledInputValues = getCompiledInputValues(planStep, workflowStepExecutor, contexts.get(0));
+         workflowStepOutputs = workflowStepBatchExecutor.executeBatch(step, inputValues, compiledInputValues, contexts);
+         if(workflowStepOutputs == null || workflowStepOutputs.size() != contexts.size())
+         {
+            throw (new QException("Workflow step batch executor did not return one output per run: " + step.getWorkflowStepTypeName()));
+         }
+      }
+      catch(Exception e)
+      {
+         LOG.info("Exception executing workflow step for a batch of runs - executing it for each run on its own", e, logPair("workflowStepId", step.getId()));
+         workflowStepOutputs = null;
+      }
+
+      /////////////////////////////////////////////////////////
+      // each run gets an equal share of the one call's time //
+      /////////////////////////////////////////////////////////
+      long batchNanosPerRun = (System.nanoTime() - batchStartNanos) / preparedRuns.size();
+      for(int i = 0; i < preparedRuns.size(); i++)
+      {
+         WorkflowRun workflowRun = preparedRuns.get(i);
+         long        startNanos  = System.nanoTime();
+         try
+         {
+            WorkflowStepOutput workflowStepOutput = workflowStepOutputs != null ? workflowStepOutputs.get(i)
+               : workflowStepExecutor.execute(step, inputValues, getCompiledInputValues(planStep, workflowStepExecutor, workflowRun.context), workflowRun.context);
+            endStep(workflowRun, workflowRun.workflowTypeExecutor.postStep(step, workflowRun.context, workflowStepOutput));
+         }
+         catch(Exception e)
+         {
+            failRun(workflowRun, e);
+         }
+         workflowRun.ownNanos += batchNanosPerRun + System.nanoTime() - startNanos;
+      }
+   }
+
+
+
+   /***************************************************************************
+    * start a run: set up its execution context (with the input's values) and
+    * its run log.
+    ***************************************************************************/
+   private WorkflowRun newRun(WorkflowInput workflowInput, WorkflowOutput workflowOutput, WorkflowBatch workflowBatch)
    {
       /////////////////////////////////////////////////////////////////////////////////////////
       // get values map - initializing it if needed, and wrapping in modifiable ds if needed //
@@ -118,137 +522,262 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
       ///////////////////////////
       // initialize trace list //
       ///////////////////////////
-      WorkflowRunLog workflowRunLog = Objects.requireNonNullElseGet(inputWorkflowRunLog, () -> new WorkflowRunLog());
+      WorkflowRunLog workflowRunLog = Objects.requireNonNullElseGet(workflowInput.getWorkflowRunLog(), () -> Objects.requireNonNullElseGet(inputWorkflowRunLog, () -> new WorkflowRunLog()));
       workflowRunLog.setStartTimestamp(Instant.now());
       workflowRunLog.setWorkflowId(workflowInput.getWorkflowId());
       workflowOutput.setWorkflowRunLog(workflowRunLog);
 
-      List<WorkflowRunLogStep> logStepList = new ArrayList<>();
-      workflowRunLog.setSteps(logStepList);
+      WorkflowRun workflowRun = new WorkflowRun(workflowInput, workflowOutput, workflowBatch, context, workflowRunLog, WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowRunLogSettings());
+      workflowRunLog.setSteps(workflowRun.logStepList);
+      return (workflowRun);
+   }
 
-      WorkflowTypeExecutorInterface workflowTypeExecutor = null;
-      boolean                       weOwnTheTransaction  = false;
 
-      try
+
+   /***************************************************************************
+    * load what the run needs (its workflow, plan, and type executor), do the
+    * type executor's pre-run, set up the run's transaction, and put the run
+    * at its plan's start step.
+    ***************************************************************************/
+   private void setUpRun(WorkflowRun workflowRun) throws QException
+   {
+      WorkflowInput            workflowInput  = workflowRun.workflowInput;
+      WorkflowBatch            workflowBatch  = workflowRun.workflowBatch;
+      WorkflowExecutionContext context        = workflowRun.context;
+      WorkflowRunLogSettings   runLogSettings = workflowRun.runLogSettings;
+
+      ///////////////////////////////////////////////////////////////////
+      // get the workflow, its type, and its compiled plan - or re-use //
+      // them from an earlier run of the same workflow in this batch.  //
+      ///////////////////////////////////////////////////////////////////
+      WorkflowRunSetup workflowRunSetup = getWorkflowRunSetup(workflowInput, workflowBatch == null ? null : workflowBatch.setupsByWorkflowId);
+      Workflow         workflow         = workflowRunSetup.workflow();
+      WorkflowPlan     workflowPlan     = workflowRunSetup.workflowPlan();
+      WorkflowRevision workflowRevision = workflowPlan.getWorkflowRevision();
+      workflowRun.workflowPlan = workflowPlan;
+      workflowRun.runFrame = new WorkflowRunFrame(workflowPlan);
+
+      context.setWorkflow(workflow);
+      context.setWorkflowRevision(workflowRevision);
+      workflowRun.workflowRunLog.setWorkflowRevisionId(workflowRevision.getId());
+
+      workflowRun.runLogLevel = getRunLogLevel(workflow, context, runLogSettings);
+      workflowRun.logSteps = switch(workflowRun.runLogLevel)
       {
-         ////////////////////////////////////////////////////////////
-         // load the workflow (current revision), steps, and links //
-         ////////////////////////////////////////////////////////////
-         Workflow                           workflow         = getWorkflow(workflowInput.getWorkflowId());
-         WorkflowRevision                   workflowRevision = getWorkflowRevision(workflowInput, workflow.getCurrentWorkflowRevisionId());
-         Map<Integer, WorkflowStep>         stepMap          = loadSteps(workflowRevision);
-         ListingHash<Integer, WorkflowLink> linkMap          = loadLinks(workflowRevision);
-
-         context.setWorkflow(workflow);
-         context.setWorkflowRevision(workflowRevision);
-         workflowRunLog.setWorkflowRevisionId(workflowRevision.getId());
-
-         ////////////////////////////////////////////
-         // load type-executor, and do its pre-run //
-         ////////////////////////////////////////////
-         WorkflowType workflowType = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowType(workflow.getWorkflowTypeName());
-         if(workflowType == null)
-         {
-            throw new QException("Workflow type not found by name: " + workflow.getWorkflowTypeName());
-         }
-         workflowTypeExecutor = QCodeLoader.getAdHoc(WorkflowTypeExecutorInterface.class, workflowType.getExecutor());
-         workflowTypeExecutor.preRun(context, workflow, workflowRevision);
+         case FULL, ERRORS_ONLY -> true;
+         case SUMMARY -> false;
+         case SAMPLED -> ThreadLocalRandom.current().nextDouble() < runLogSettings.sampleRate();
+      };
+
+      ////////////////////////////////////////////
+      // load type-executor, and do its pre-run //
+      ////////////////////////////////////////////
+      WorkflowTypeExecutorInterface workflowTypeExecutor = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowTypeExecutor(workflowRunSetup.workflowType());
+      workflowRun.workflowTypeExecutor = workflowTypeExecutor;
+      workflowTypeExecutor.preRun(context, workflow, workflowRevision);
+
+      if(workflowInput.getTransaction() != null)
+      {
+         context.setTransaction(workflowInput.getTransaction());
+      }
+      else
+      {
+         /////////////////////////////////////////////////////////////////////
+         // open our transaction lazily - only once something in the run    //
+         // asks for it - so runs that don't use it never open or commit it //
+         /////////////////////////////////////////////////////////////////////
+         context.setTransactionOpener(() -> workflowTypeExecutor.openTransaction(workflow, workflowRevision));
+         workflowRun.weOwnTheTransaction = true;
+      }
+      context.setIsInBatch(workflowBatch != null && workflowRun.weOwnTheTransaction);
+
+      workflowRun.planStep = workflowPlan.getStartStep();
+   }
+
 
-         if(workflowInput.getTransaction() != null)
+
+   /***************************************************************************
+    * the step loop - execute steps & follow links until the run is done.
+    ***************************************************************************/
+   private void executeRemainingSteps(WorkflowRun workflowRun) throws QException
+   {
+      while(workflowRun.planStep != null)
+      {
+         beginStep(workflowRun);
+         WorkflowStepOutput workflowStepOutput = executeStep(workflowRun.planStep, workflowRun.workflowTypeExecutor, workflowRun.context);
+         endStep(workflowRun, workflowStepOutput);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * before executing the run's current step - start its log step (but only
+    * build step logs if they may be stored, per the run log level).
+    ***************************************************************************/
+   private void beginStep(WorkflowRun workflowRun)
+   {
+      workflowRun.workflowRunLogStep = null;
+      if(workflowRun.logSteps)
+      {
+         WorkflowRunLogStep workflowRunLogStep = new WorkflowRunLogStep();
+         workflowRunLogStep.setWorkflowStepId(workflowRun.planStep.getWorkflowStep().getId());
+         workflowRunLogStep.setSeqNo(workflowRun.seqNo);
+         workflowRunLogStep.setStartTimestamp(Instant.now());
+         workflowRun.logStepList.add(workflowRunLogStep);
+         workflowRun.workflowRunLogStep = workflowRunLogStep;
+      }
+   }
+
+
+
+   /***************************************************************************
+    * after executing the run's current step - log its output, and move the
+    * run along to its next step (null if the run is done).
+    ***************************************************************************/
+   private void endStep(WorkflowRun workflowRun, WorkflowStepOutput workflowStepOutput) throws QException
+   {
+      WorkflowRunLogStep workflowRunLogStep = workflowRun.workflowRunLogStep;
+      if(workflowRunLogStep != null)
+      {
+         workflowRunLogStep.setOutputData(ValueUtils.getValueAsString(workflowStepOutput.outputData()));
+         if(workflowStepOutput.hasLazyMessage())
          {
-            context.setTransaction(workflowInput.getTransaction());
+            workflowRun.lazyStepMessages.add(new LazyStepMessage(workflowRunLogStep, workflowStepOutput));
          }
          else
          {
-            context.setTransaction(workflowTypeExecutor.openTransaction(workflow, workflowRevision));
-            weOwnTheTransaction = true;
+            workflowRunLogStep.setMessage(workflowStepOutput.message());
          }
+      }
 
-         ///////////////
-         // step loop //
-         ///////////////
-         Integer stepNo = workflowRevision.getStartStepNo();
-         int     seqNo  = 1;
-         while(stepNo != null)
-         {
-            WorkflowStep step = stepMap.get(stepNo);
-            if(step == null)
-            {
-               throw new QException("Step not found by stepNo: " + stepNo);
-            }
+      workflowRun.planStep = getNextStep(workflowStepOutput.outputData(), workflowRun.planStep, workflowRun.runFrame, false);
 
-            WorkflowRunLogStep workflowRunLogStep = new WorkflowRunLogStep();
-            workflowRunLogStep.setWorkflowStepId(step.getId());
-            workflowRunLogStep.setSeqNo(seqNo);
-            workflowRunLogStep.setStartTimestamp(Instant.now());
-            logStepList.add(workflowRunLogStep);
+      if(workflowRunLogStep != null)
+      {
+         workflowRunLogStep.setEndTimestamp(Instant.now());
+      }
+      workflowRun.seqNo++;
+   }
 
-            WorkflowStepOutput workflowStepOutput = executeStep(step, workflowTypeExecutor, context);
-            workflowRunLogStep.setOutputData(ValueUtils.getValueAsString(workflowStepOutput.outputData()));
-            workflowRunLogStep.setMessage(workflowStepOutput.message());
 
-            stepNo = getNextStepNo(workflowStepOutput.outputData(), step, linkMap, stepMap, false);
 
-            workflowRunLogStep.setEndTimestamp(Instant.now());
-            seqNo++;
-         }
+   /***************************************************************************
+    * after a run's last step - do the type executor's post-run, and commit
+    * the run's transaction (if we own it).
+    ***************************************************************************/
+   private void completeRun(WorkflowRun workflowRun) throws QException
+   {
+      WorkflowExecutionContext      context              = workflowRun.context;
+      WorkflowTypeExecutorInterface workflowTypeExecutor = workflowRun.workflowTypeExecutor;
+      WorkflowOutput                workflowOutput       = workflowRun.workflowOutput;
 
-         workflowTypeExecutor.postRun(context);
+      workflowTypeExecutor.postRun(context);
 
-         if(weOwnTheTransaction && context.getTransaction() != null)
-         {
-            context.getTransaction().commit();
-         }
+      QBackendTransaction transaction = context.getTransactionIfOpened();
+      if(workflowRun.weOwnTheTransaction && transaction != null)
+      {
+         transaction.commit();
+      }
+
+      workflowRun.workflowRunLog.setHadError(false);
+
+      ////////////////////////////////////////////////////////////////////////
+      // a run that changed nothing (per its type executor, and didn't open //
+      // a transaction of ours) has nothing to defer to the batch's end.    //
+      ////////////////////////////////////////////////////////////////////////
+      workflowOutput.setIsNoOpRun(workflowTypeExecutor.isNoOpRun(context) && (!workflowRun.weOwnTheTransaction || transaction == null));
 
-         workflowRunLog.setHadError(false);
+      if(context.getIsInBatch() && !workflowOutput.getIsNoOpRun())
+      {
+         workflowRun.workflowBatch.outputsByTypeExecutor.computeIfAbsent(workflowTypeExecutor, k -> new ArrayList<>()).add(workflowOutput);
       }
-      catch(Exception e)
+   }
+
+
+
+   /***************************************************************************
+    * record an exception from any phase of a run in its output & run log (and
+    * roll back its transaction, if we own it).
+    ***************************************************************************/
+   private void failRun(WorkflowRun workflowRun, Exception e) throws QException
+   {
+      WorkflowExecutionContext context        = workflowRun.context;
+      WorkflowRunLog           workflowRunLog = workflowRun.workflowRunLog;
+      workflowRun.hasFailed = true;
+
+      LOG.info("Exception running workflow", e, logPair("workflowId", workflowRun.workflowInput.getWorkflowId()));
+
+      if(workflowRun.workflowTypeExecutor != null)
       {
-         LOG.info("Exception running workflow", e, logPair("workflowId", workflowInput.getWorkflowId()));
+         workflowRun.workflowTypeExecutor.handleException(e, context);
+      }
 
-         if(workflowTypeExecutor != null)
-         {
-            workflowTypeExecutor.handleException(e, context);
-         }
+      if(workflowRun.weOwnTheTransaction && context.getTransactionIfOpened() != null)
+      {
+         context.getTransactionIfOpened().rollback();
+      }
 
-         if(weOwnTheTransaction && context.getTransaction() != null)
-         {
-            context.getTransaction().rollback();
-         }
+      workflowRun.workflowOutput.setException(e);
+      workflowRunLog.setHadError(true);
 
-         workflowOutput.setException(e);
-         workflowRunLog.setHadError(true);
+      ////////////////////////////////////////////////////////////////////////////////////////////////////////
+      // the executor may have set an error message in the run log - but if not, set one from the exception //
+      ////////////////////////////////////////////////////////////////////////////////////////////////////////
+      if(!StringUtils.hasContent(workflowRunLog.getErrorMessage()))
+      {
+         workflowRunLog.setErrorMessage(e.getMessage());
+      }
+   }
 
-         ////////////////////////////////////////////////////////////////////////////////////////////////////////
-         // the executor may have set an error message in the run log - but if not, set one from the exception //
-         ////////////////////////////////////////////////////////////////////////////////////////////////////////
-         if(!StringUtils.hasContent(workflowRunLog.getErrorMessage()))
-         {
-            workflowRunLog.setErrorMessage(e.getMessage());
-         }
+
+
+   /***************************************************************************
+    * at the end of a run (successful or not) - store its run log (or defer
+    * that, in a batch), and close its transaction (if we own it).
+    ***************************************************************************/
+   private void finishRun(WorkflowRun workflowRun)
+   {
+      WorkflowRunLog workflowRunLog = workflowRun.workflowRunLog;
+      workflowRunLog.setEndTimestamp(Instant.now());
+      long elapsedMillis = getElapsedMillis(workflowRun);
+      if(workflowRun.workflowBatch != null)
+      {
+         workflowRun.workflowBatch.deferredRunLogs.add(new DeferredRunLog(workflowRun.workflowOutput, workflowRun.runLogLevel, workflowRun.logSteps, elapsedMillis, workflowRun.lazyStepMessages));
       }
-      finally
+      else if(shouldStoreRunLog(workflowRunLog, workflowRun.runLogLevel, workflowRun.logSteps, workflowRun.workflowOutput.getIsNoOpRun(), elapsedMillis, workflowRun.runLogSettings))
       {
-         storeWorkflowRunLog(workflowRunLog);
-         if(weOwnTheTransaction)
-         {
-            closeTransaction(context);
-         }
+         storeWorkflowRunLog(workflowRunLog, workflowRun.lazyStepMessages);
+      }
+      if(workflowRun.weOwnTheTransaction)
+      {
+         closeTransaction(workflowRun.context);
       }
    }
 
 
 
    /***************************************************************************
-    **
+    * store a run log - after building any lazy messages for its steps.
     ***************************************************************************/
-   private void storeWorkflowRunLog(WorkflowRunLog workflowRunLog)
+   private void storeWorkflowRunLog(WorkflowRunLog workflowRunLog, List<LazyStepMessage> lazyStepMessages)
    {
+      for(LazyStepMessage lazyStepMessage : lazyStepMessages)
+      {
+         try
+         {
+            lazyStepMessage.workflowRunLogStep().setMessage(lazyStepMessage.workflowStepOutput().message());
+         }
+         catch(Exception e)
+         {
+            LOG.warn("Exception building workflow run log step message", e, logPair("workflowStepId", lazyStepMessage.workflowRunLogStep().getWorkflowStepId()));
+         }
+      }
+
       try
       {
          if(workflowTracer != null)
          {
-            workflowRunLog.setEndTimestamp(Instant.now());
             workflowTracer.handleWorkflowFinish(workflowRunLog);
          }
       }
@@ -260,6 +789,71 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
 
 
 
+   /***************************************************************************
+    * get the run log level for a run - test runs are always fully logged - else
+    * it's the workflow's level, if it has one, else the instance's default.
+    ***************************************************************************/
+   private static WorkflowRunLogLevel getRunLogLevel(Workflow workflow, WorkflowExecutionContext context, WorkflowRunLogSettings runLogSettings)
+   {
+      if(context.getIsTestRun())
+      {
+         return (WorkflowRunLogLevel.FULL);
+      }
+
+      WorkflowRunLogLevel workflowRunLogLevel = WorkflowRunLogLevel.getById(workflow.getRunLogLevelId());
+      return (Objects.requireNonNullElse(workflowRunLogLevel, Objects.requireNonNullElse(runLogSettings.defaultRunLogLevel(), WorkflowRunLogLevel.FULL)));
+   }
+
+
+
+   /***************************************************************************
+    * decide if a finished run's log should be stored, per its run log level.
+    * runs with errors are stored at every level (as are runs that failed
+    * before their level was known, i.e., a null runLogLevel).  no-op runs are
+    * only stored at the settings' noOpRunSampleRate (on top of their level).
+    * SAMPLED runs that weren't sampled are stored if they were slow (per
+    * elapsedMillis - see getElapsedMillis).
+    ***************************************************************************/
+   private static boolean shouldStoreRunLog(WorkflowRunLog workflowRunLog, WorkflowRunLogLevel runLogLevel, boolean wasSampled, boolean isNoOpRun, long elapsedMillis, WorkflowRunLogSettings runLogSettings)
+   {
+      if(runLogLevel == null || BooleanUtils.isTrue(workflowRunLog.getHadError()))
+      {
+         return (true);
+      }
+
+      if(isNoOpRun && ThreadLocalRandom.current().nextDouble() >= runLogSettings.noOpRunSampleRate())
+      {
+         return (false);
+      }
+
+      return switch(runLogLevel)
+      {
+         case FULL, SUMMARY -> true;
+         case ERRORS_ONLY -> false;
+         case SAMPLED -> wasSampled || elapsedMillis >= runLogSettings.slowRunThresholdMillis();
+      };
+   }
+
+
+
+   /***************************************************************************
+    * get how long a finished run took - from its start to its end, for a run
+    * executed on its own - but for a page run (whose steps are interleaved
+    * with those of its page's other runs, so whose start and end span the
+    * whole page), only the time that was spent on it.
+    ***************************************************************************/
+   private static long getElapsedMillis(WorkflowRun workflowRun)
+   {
+      if(workflowRun.isPageRun)
+      {
+         return (TimeUnit.NANOSECONDS.toMillis(workflowRun.ownNanos));
+      }
+
+      return (Duration.between(workflowRun.workflowRunLog.getStartTimestamp(), workflowRun.workflowRunLog.getEndTimestamp()).toMillis());
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -267,9 +861,17 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
    {
       try
       {
-         if(context.getTransaction() != null)
+         QBackendTransaction transaction = context.getTransactionIfOpened();
+         if(transaction != null)
+         {
+            transaction.close();
+         }
+         else
          {
-            context.getTransaction().close();
+            ///////////////////////////////////////////////////////////
+            // never opened - so make sure nothing opens it from now //
+            ///////////////////////////////////////////////////////////
+            context.setTransactionOpener(null);
          }
       }
       catch(Exception e)
@@ -289,6 +891,8 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
     * - each with a conditionValue that represents the value that the stepOutput
     * of the fromStep itself will be tested for.  e.g., true & false for a boolean
     * conditional.  could be numbers or strings (in future) for a switch.
+    * - condition values are pre-converted per output type in the step's
+    * WorkflowLinkDispatchTable, so finding the link is a single hash lookup.
     *
     * Container steps (OutboundLinkMode.CONTAINER):
     * - will have up to 2 outbound links:
@@ -296,15 +900,15 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
     * inside the container (unless it's empty, then this link doesn't exist).
     * - one with a condition value of "pop" going to the next step
     * after the container (unless the container is at the end of the program.
-    * - the containerStack is used with a recursive call in here for popping.
+    * - the run frame's container stack is used with a recursive call in here for popping.
     *
     * Interrupting / terminating steps (OutboundLinkMode.ZERO):
     * - will probably still have an outbound link (to help draw the graph) - but
     * this method ignores that link and returns null based on the link mode!
     ***************************************************************************/
-   private Integer getNextStepNo(Serializable stepOutput, WorkflowStep fromStep, ListingHash<Integer, WorkflowLink> linkMap, Map<Integer, WorkflowStep> stepMap, boolean isPop) throws QException
+   private WorkflowPlanStep getNextStep(Serializable stepOutput, WorkflowPlanStep fromStep, WorkflowRunFrame runFrame, boolean isPop) throws QException
    {
-      WorkflowStepType fromWorkflowStepType = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowStepType(fromStep.getWorkflowStepTypeName());
+      WorkflowStepType fromWorkflowStepType = fromStep.getWorkflowStepType();
       if(OutboundLinkMode.ZERO.equals(fromWorkflowStepType.getOutboundLinkMode()))
       {
          //////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -315,66 +919,41 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
          return (null);
       }
 
+      WorkflowLinkDispatchTable linkDispatchTable = fromStep.getLinkDispatchTable();
+      WorkflowPlanLink          link;
       if(OutboundLinkMode.CONTAINER.equals(fromWorkflowStepType.getOutboundLinkMode()))
       {
          ///////////////////////////////////////////////////////////////////////////////////////////////////////
          // container steps have a "push${stepNo}" outbound link for pushing their contents onto a stack      //
          // (unless they're empty - then they'd just have a "pop" (unless they're at the end of the program)) //
          ///////////////////////////////////////////////////////////////////////////////////////////////////////
-         if(isPop)
+         if(!isPop)
          {
-            stepOutput = "pop";
-         }
-         else
-         {
-            stepOutput = "push";
-            containerStack.push(fromStep.getStepNo());
+            runFrame.pushContainer(fromStep.getIndex());
          }
+         link = linkDispatchTable.resolveContainer(isPop);
+      }
+      else
+      {
+         //////////////////////////////////////////////////////////////////////////////////////
+         // look for a link between the fromStepNo matching the stepOutput / condition value //
+         //////////////////////////////////////////////////////////////////////////////////////
+         link = linkDispatchTable.resolve(stepOutput);
       }
 
-      Integer                       fromStepNo      = fromStep.getStepNo();
-      List<WorkflowLink>            links           = linkMap.get(fromStepNo);
-      Class<? extends Serializable> stepOutputClass = stepOutput == null ? null : stepOutput.getClass();
-
-      //////////////////////////////////////////////////////////////////////////////////////
-      // look for a link between the fromStepNo matching the stepOutput / condition value //
-      //////////////////////////////////////////////////////////////////////////////////////
-      for(WorkflowLink link : CollectionUtils.nonNullList(links))
+      if(link != null)
       {
-         if(link.getConditionValue() == null)
-         {
-            ///////////////////////////////////////////////////////
-            // a link w/o any condition means to always be taken //
-            ///////////////////////////////////////////////////////
-            return (link.getToStepNo());
-         }
-         else
-         {
-            try
-            {
-               Serializable valueAsType = stepOutputClass == null ? link.getConditionValue() : ValueUtils.getValueAsType(stepOutputClass, link.getConditionValue());
-               if(Objects.equals(valueAsType, stepOutput))
-               {
-                  return link.getToStepNo();
-               }
-            }
-            catch(Exception e)
-            {
-               LOG.debug("Unable to evaluate condition value: " + link.getConditionValue() + " for step: " + fromStepNo, e);
-            }
-         }
+         return (runFrame.getWorkflowPlan().getLinkTarget(link));
       }
 
       /////////////////////////////////////////////////////////////////////////
       // if we didn't find a next-step, but there is something on the stack, //
       // then look for a pop out of that frame                               //
       /////////////////////////////////////////////////////////////////////////
-      if(!containerStack.isEmpty())
+      if(!runFrame.isContainerStackEmpty())
       {
-         Integer      popStepNo = containerStack.pop();
-         WorkflowStep popStep   = stepMap.get(popStepNo);
-
-         return getNextStepNo(popStepNo, popStep, linkMap, stepMap, true);
+         WorkflowPlanStep popStep = runFrame.getWorkflowPlan().getStep(runFrame.popContainer());
+         return getNextStep(null, popStep, runFrame, true);
       }
 
       return (null);
@@ -385,9 +964,10 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
    /***************************************************************************
     **
     ***************************************************************************/
-   private WorkflowStepOutput executeStep(WorkflowStep step, WorkflowTypeExecutorInterface workflowTypeExecutor, WorkflowExecutionContext context) throws QException
+   private WorkflowStepOutput executeStep(WorkflowPlanStep planStep, WorkflowTypeExecutorInterface workflowTypeExecutor, WorkflowExecutionContext context) throws QException
    {
-      WorkflowStepType workflowStepType = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowStepType(step.getWorkflowStepTypeName());
+      WorkflowStep     step             = planStep.getWorkflowStep();
+      WorkflowStepType workflowStepType = planStep.getWorkflowStepType();
       if(workflowStepType == null)
       {
          throw new QException("Workflow step type not found by name: " + step.getWorkflowStepTypeName());
@@ -398,23 +978,36 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
          return (new WorkflowStepOutput());
       }
 
-      WorkflowStepExecutorInterface workflowStepExecutor = QCodeLoader.getAdHoc(WorkflowStepExecutorInterface.class, workflowStepType.getExecutor());
+      ///////////////////////////////////////////////////////////////////////
+      // plans only hold executors for stateless step types - others get a //
+      // new instance for each use of the step (as they may hold state).   //
+      ///////////////////////////////////////////////////////////////////////
+      WorkflowStepExecutorInterface workflowStepExecutor = planStep.getWorkflowStepExecutor();
+      if(workflowStepExecutor == null)
+      {
+         workflowStepExecutor = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowStepExecutor(workflowStepType);
+      }
 
-      workflowTypeExecutor.preStep(step, context);
+      if(workflowStepExecutor == null)
+      {
+         throw new QException("Workflow step type does not have an executor: " + step.getWorkflowStepTypeName());
+      }
 
-      JSONObject                jsonObject  = JsonUtils.toJSONObject(step.getInputValuesJson());
-      Map<String, Object>       mapValues   = jsonObject.toMap();
-      Map<String, Serializable> inputValues = new LinkedHashMap<>();
+      workflowTypeExecutor.preStep(step, context);
 
-      for(Map.Entry<String, Object> entry : mapValues.entrySet())
+      Map<String, Serializable> inputValues;
+      Object                    compiledInputValues = null;
+      if(workflowStepExecutor.mutatesInputValues())
       {
-         if(entry.getValue() instanceof Serializable s)
-         {
-            inputValues.put(entry.getKey(), s);
-         }
+         inputValues = planStep.copyInputValues();
+      }
+      else
+      {
+         inputValues = planStep.getInputValues();
+         compiledInputValues = getCompiledInputValues(planStep, workflowStepExecutor, context);
       }
 
-      WorkflowStepOutput workflowStepOutput = workflowStepExecutor.execute(step, inputValues, context);
+      WorkflowStepOutput workflowStepOutput = workflowStepExecutor.execute(step, inputValues, compiledInputValues, context);
       workflowStepOutput = workflowTypeExecutor.postStep(step, context, workflowStepOutput);
 
       return workflowStepOutput;
@@ -423,45 +1016,105 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
 
 
    /***************************************************************************
-    **
+    * get a step's compiled input values - compiling them the first time the
+    * step is used (racing threads may each compile - but the results are
+    * equal).  Only for executors that don't mutate their input values.
     ***************************************************************************/
-   private Map<Integer, WorkflowStep> loadSteps(WorkflowRevision workflowRevision)
+   private static Object getCompiledInputValues(WorkflowPlanStep planStep, WorkflowStepExecutorInterface workflowStepExecutor, WorkflowExecutionContext context) throws QException
    {
-      Map<Integer, WorkflowStep> steps = new HashMap<>();
-      for(WorkflowStep workflowStep : CollectionUtils.nonNullList(workflowRevision.getSteps()))
+      Object compiledInputValues = planStep.getCompiledInputValues();
+      if(compiledInputValues == null)
       {
-         steps.put(workflowStep.getStepNo(), workflowStep);
+         compiledInputValues = workflowStepExecutor.compileInputValues(planStep.getWorkflowStep(), planStep.getInputValues(), context);
+         planStep.setCompiledInputValues(compiledInputValues);
       }
-      return steps;
+
+      return (compiledInputValues);
    }
 
 
 
    /***************************************************************************
-    **
+    * load the workflow, its type, and the compiled plan for its current revision
+    * (which comes from the plan cache, unless it hasn't been compiled yet) - or,
+    * if a setups map is given, get them from there, if this workflow was already
+    * set up in the batch.
     ***************************************************************************/
-   private ListingHash<Integer, WorkflowLink> loadLinks(WorkflowRevision workflowRevision)
+   private WorkflowRunSetup getWorkflowRunSetup(WorkflowInput workflowInput, Map<Integer, WorkflowRunSetup> setupsByWorkflowId) throws QException
    {
-      ListingHash<Integer, WorkflowLink> links = new ListingHash<>();
-      for(WorkflowLink workflowLink : CollectionUtils.nonNullList(workflowRevision.getLinks()))
+      boolean canShare = setupsByWorkflowId != null && workflowInput.getOverrideWorkflowRevision() == null;
+      if(canShare)
+      {
+         WorkflowRunSetup workflowRunSetup = setupsByWorkflowId.get(workflowInput.getWorkflowId());
+         if(workflowRunSetup != null)
+         {
+            return (workflowRunSetup);
+         }
+      }
+
+      Workflow     workflow     = getWorkflow(workflowInput.getWorkflowId());
+      WorkflowPlan workflowPlan = getWorkflowPlan(workflowInput, workflow.getCurrentWorkflowRevisionId());
+
+      WorkflowType workflowType = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowType(workflow.getWorkflowTypeName());
+      if(workflowType == null)
       {
-         links.add(workflowLink.getFromStepNo(), workflowLink);
+         throw new QException("Workflow type not found by name: " + workflow.getWorkflowTypeName());
       }
-      return links;
+
+      WorkflowRunSetup workflowRunSetup = new WorkflowRunSetup(workflow, workflowType, workflowPlan);
+      if(canShare)
+      {
+         setupsByWorkflowId.put(workflowInput.getWorkflowId(), workflowRunSetup);
+      }
+
+      return (workflowRunSetup);
    }
 
 
 
    /***************************************************************************
-    **
+    * get the compiled plan for the workflow's revision - from the registry's
+    * plan cache if possible, else by loading & compiling the revision (and
+    * then caching it).  Override revisions (e.g., from the editor, which may
+    * not be saved) always get compiled fresh, and are never cached.
     ***************************************************************************/
-   private WorkflowRevision getWorkflowRevision(WorkflowInput workflowInput, Integer workflowRevisionId) throws QException
+   private WorkflowPlan getWorkflowPlan(WorkflowInput workflowInput, Integer workflowRevisionId) throws QException
    {
       if(workflowInput.getOverrideWorkflowRevision() != null)
       {
-         return new WorkflowRevision(workflowInput.getOverrideWorkflowRevision());
+         return (WorkflowPlan.compile(new WorkflowRevision(workflowInput.getOverrideWorkflowRevision())));
+      }
+
+      return (getWorkflowPlan(workflowRevisionId));
+   }
+
+
+
+   /***************************************************************************
+    * get the compiled plan for a (stored) workflow revision - from the
+    * registry's plan cache if possible, else by loading & compiling the
+    * revision (and then caching it).
+    ***************************************************************************/
+   public WorkflowPlan getWorkflowPlan(Integer workflowRevisionId) throws QException
+   {
+      WorkflowPlanCache workflowPlanCache = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowPlanCache();
+      WorkflowPlan      workflowPlan      = workflowPlanCache.get(workflowRevisionId);
+      if(workflowPlan == null)
+      {
+         workflowPlan = WorkflowPlan.compile(getWorkflowRevision(workflowRevisionId));
+         workflowPlanCache.put(workflowRevisionId, workflowPlan);
       }
 
+      return (workflowPlan);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private WorkflowRevision getWorkflowRevision(Integer workflowRevisionId) throws QException
+   {
       QRecord workflowRevision = new GetAction().executeForRecord(new GetInput(WorkflowRevision.TABLE_NAME)
          .withIncludeAssociations(true)
          .withPrimaryKey(workflowRevisionId));
@@ -521,9 +1174,45 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
 
 
 
+   /*******************************************************************************
+    ** Getter for useBatchExecution
+    *******************************************************************************/
+   public boolean getUseBatchExecution()
+   {
+      return (this.useBatchExecution);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for useBatchExecution
+    *******************************************************************************/
+   public void setUseBatchExecution(boolean useBatchExecution)
+   {
+      this.useBatchExecution = useBatchExecution;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for useBatchExecution - on by default; if turned off,
+    ** executeBatch runs each of its runs from start to end, one after another,
+    ** rather than page-at-a-time.
+    *******************************************************************************/
+   public WorkflowExecutor withUseBatchExecution(boolean useBatchExecution)
+   {
+      this.useBatchExecution = useBatchExecution;
+      return (this);
+   }
+
+
+
    /*******************************************************************************
     ** Getter for inputWorkflowRunLog
+    **
+    ** @deprecated use {@link WorkflowInput#getWorkflowRunLog()}
     *******************************************************************************/
+   @Deprecated
    public WorkflowRunLog getInputWorkflowRunLog()
    {
       return (this.inputWorkflowRunLog);
@@ -533,7 +1222,10 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
 
    /*******************************************************************************
     ** Setter for inputWorkflowRunLog
+    **
+    ** @deprecated use {@link WorkflowInput#setWorkflowRunLog(WorkflowRunLog)}
     *******************************************************************************/
+   @Deprecated
    public void setInputWorkflowRunLog(WorkflowRunLog inputWorkflowRunLog)
    {
       this.inputWorkflowRunLog = inputWorkflowRunLog;
@@ -542,8 +1234,14 @@ public class WorkflowExecutor extends AbstractQActionBiConsumer<WorkflowInput, W
 
 
    /*******************************************************************************
-    ** Fluent setter for inputWorkflowRunLog
+    ** Fluent setter for inputWorkflowRunLog - a run log to be used by runs whose
+    ** WorkflowInput doesn't have one of its own.  Since every such run would
+    ** then write to the same run log object, an executor with this set should
+    ** not be shared between runs (which is why this moved to the input).
+    **
+    ** @deprecated use {@link WorkflowInput#withWorkflowRunLog(WorkflowRunLog)}
     *******************************************************************************/
+   @Deprecated
    public WorkflowExecutor withInputWorkflowRunLog(WorkflowRunLog inputWorkflowRunLog)
    {
       this.inputWorkflowRunLog = inputWorkflowRunLog;
@@ -24,6 +24,7 @@ package com.kingsrook.qbits.workflows.execution;
 
 import java.io.Serializable;
 import java.util.Map;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
 import com.kingsrook.qqq.backend.core.actions.QBackendTransaction;
 import com.kingsrook.qqq.backend.core.model.actions.AbstractActionInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
@@ -42,6 +43,7 @@ public class WorkflowInput extends AbstractActionInput implements Serializable
    private WorkflowExecutionContext workflowExecutionContext;
 
    private QBackendTransaction transaction;
+   private WorkflowRunLog      workflowRunLog;
 
 
 
@@ -225,4 +227,42 @@ public class WorkflowInput extends AbstractActionInput implements Serializable
    }
 
 
+
+   /*******************************************************************************
+    * Getter for workflowRunLog
+    * @see #withWorkflowRunLog(WorkflowRunLog)
+    *******************************************************************************/
+   public WorkflowRunLog getWorkflowRunLog()
+   {
+      return (this.workflowRunLog);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for workflowRunLog
+    * @see #withWorkflowRunLog(WorkflowRunLog)
+    *******************************************************************************/
+   public void setWorkflowRunLog(WorkflowRunLog workflowRunLog)
+   {
+      this.workflowRunLog = workflowRunLog;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for workflowRunLog
+    *
+    * @param workflowRunLog
+    * Optional run log object for the executor to populate (e.g., one where the
+    * caller has already set input-record fields).  If null, the executor creates
+    * a new one.  Either way, the run log is available in the WorkflowOutput.
+    * @return this
+    *******************************************************************************/
+   public WorkflowInput withWorkflowRunLog(WorkflowRunLog workflowRunLog)
+   {
+      this.workflowRunLog = workflowRunLog;
+      return (this);
+   }
+
 }
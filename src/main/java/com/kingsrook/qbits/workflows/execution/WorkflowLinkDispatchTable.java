@@ -0,0 +1,184 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.execution;
+
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.utils.ValueUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ * the outbound links of one step in a {@link WorkflowPlan}, organized for
+ * constant-time lookup of the next step given a step's output:
+ *
+ * - conditional links are held in hash tables keyed by their condition value,
+ * as converted to the type of the step output (e.g., "true" to Boolean.TRUE).
+ * Tables for common output types are built when the plan is compiled; tables
+ * for other types are built (once) the first time a step outputs that type.
+ * Condition values that don't convert to a type are simply left out of that
+ * type's table - so evaluating a step's output never throws.
+ * - a link without a condition value is always taken (unless a conditional link
+ * that matches comes before it, as per the order of the links).
+ * - the positions of the "push" and "pop" links of container steps are held in
+ * dedicated slots (and they too lose to an unconditional link that comes first).
+ *******************************************************************************/
+public class WorkflowLinkDispatchTable
+{
+   private static final QLogger LOG = QLogger.getLogger(WorkflowLinkDispatchTable.class);
+
+   private static final List<Class<? extends Serializable>> PRE_BUILT_TYPES = List.of(String.class, Boolean.class, Integer.class);
+
+   private final Integer                fromStepNo;
+   private final List<WorkflowPlanLink> links;
+
+   private final int unconditionalPosition;
+   private final int pushPosition;
+   private final int popPosition;
+
+   private final Map<Class<?>, Map<Serializable, Integer>> positionsByOutputType = new ConcurrentHashMap<>();
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public WorkflowLinkDispatchTable(Integer fromStepNo, List<WorkflowPlanLink> links)
+   {
+      this.fromStepNo = fromStepNo;
+      this.links = List.copyOf(links);
+
+      int unconditionalPosition = Integer.MAX_VALUE;
+      int pushPosition          = Integer.MAX_VALUE;
+      int popPosition           = Integer.MAX_VALUE;
+      for(int i = 0; i < this.links.size(); i++)
+      {
+         WorkflowPlanLink link = this.links.get(i);
+         if(link.conditionValue() == null)
+         {
+            unconditionalPosition = Math.min(unconditionalPosition, i);
+         }
+         else if("push".equals(link.conditionValue()))
+         {
+            pushPosition = Math.min(pushPosition, i);
+         }
+         else if("pop".equals(link.conditionValue()))
+         {
+            popPosition = Math.min(popPosition, i);
+         }
+      }
+
+      this.unconditionalPosition = unconditionalPosition;
+      this.pushPosition = pushPosition;
+      this.popPosition = popPosition;
+
+      for(Class<? extends Serializable> type : PRE_BUILT_TYPES)
+      {
+         positionsByOutputType.put(type, buildPositionsForType(type));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * find the link to follow for a step's output - or null if there isn't one.
+    ***************************************************************************/
+   public WorkflowPlanLink resolve(Serializable stepOutput)
+   {
+      int position = unconditionalPosition;
+      if(stepOutput != null)
+      {
+         Integer matchPosition = positionsByOutputType.computeIfAbsent(stepOutput.getClass(), this::buildPositionsForType).get(stepOutput);
+         if(matchPosition != null && matchPosition < position)
+         {
+            position = matchPosition;
+         }
+      }
+
+      return (position == Integer.MAX_VALUE ? null : links.get(position));
+   }
+
+
+
+   /***************************************************************************
+    * find the link for a container step to follow - its "push" link, when it's
+    * first reached, or its "pop" link, when the steps inside it are done.
+    * as in resolve, the first link (by position) that applies is the one taken.
+    ***************************************************************************/
+   public WorkflowPlanLink resolveContainer(boolean isPop)
+   {
+      int position = Math.min(unconditionalPosition, isPop ? popPosition : pushPosition);
+      return (position == Integer.MAX_VALUE ? null : links.get(position));
+   }
+
+
+
+   /***************************************************************************
+    * build the map of {condition value converted to type} to {link position}.
+    * the first link (by position) wins, if multiple convert to the same value.
+    ***************************************************************************/
+   private Map<Serializable, Integer> buildPositionsForType(Class<?> type)
+   {
+      Map<Serializable, Integer> positions = new HashMap<>();
+      for(int i = 0; i < links.size(); i++)
+      {
+         String conditionValue = links.get(i).conditionValue();
+         if(conditionValue == null)
+         {
+            continue;
+         }
+
+         try
+         {
+            @SuppressWarnings("unchecked")
+            Serializable valueAsType = ValueUtils.getValueAsType((Class<? extends Serializable>) type, conditionValue);
+            if(valueAsType != null)
+            {
+               positions.putIfAbsent(valueAsType, i);
+            }
+         }
+         catch(Exception e)
+         {
+            LOG.debug("Condition value does not convert to type", logPair("fromStepNo", fromStepNo), logPair("conditionValue", conditionValue), logPair("type", type.getSimpleName()));
+         }
+      }
+
+      return (positions);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for links
+    *******************************************************************************/
+   public List<WorkflowPlanLink> getLinks()
+   {
+      return (this.links);
+   }
+
+}
@@ -36,6 +36,8 @@ public class WorkflowOutput extends AbstractActionOutput implements Serializable
    private WorkflowExecutionContext context;
    private WorkflowRunLog           workflowRunLog;
 
+   private boolean isNoOpRun = false;
+
 
 
    /*******************************************************************************
@@ -58,6 +60,24 @@ public class WorkflowOutput extends AbstractActionOutput implements Serializable
 
 
 
+   /***************************************************************************
+    * mark a run that had otherwise finished as failed - e.g., if work that was
+    * deferred to the end of its batch failed - setting the exception, and the
+    * error flag & message in the run log.
+    ***************************************************************************/
+   public void markFailed(Exception exception)
+   {
+      this.exception = exception;
+      this.isNoOpRun = false;
+      if(workflowRunLog != null)
+      {
+         workflowRunLog.setHadError(true);
+         workflowRunLog.setErrorMessage(exception.getMessage());
+      }
+   }
+
+
+
    /*******************************************************************************
     ** Fluent setter for exception
     *******************************************************************************/
@@ -134,4 +154,41 @@ public class WorkflowOutput extends AbstractActionOutput implements Serializable
       return (this);
    }
 
+
+
+   /*******************************************************************************
+    * Getter for isNoOpRun
+    * @see #withIsNoOpRun(boolean)
+    *******************************************************************************/
+   public boolean getIsNoOpRun()
+   {
+      return (this.isNoOpRun);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for isNoOpRun
+    * @see #withIsNoOpRun(boolean)
+    *******************************************************************************/
+   public void setIsNoOpRun(boolean isNoOpRun)
+   {
+      this.isNoOpRun = isNoOpRun;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for isNoOpRun
+    *
+    * @param isNoOpRun indicates that the run finished without error, and without
+    * changing anything (see WorkflowTypeExecutorInterface.isNoOpRun).
+    * @return this
+    *******************************************************************************/
+   public WorkflowOutput withIsNoOpRun(boolean isNoOpRun)
+   {
+      this.isNoOpRun = isNoOpRun;
+      return (this);
+   }
+
 }
@@ -0,0 +1,357 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.execution;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.definition.OutboundLinkMode;
+import com.kingsrook.qbits.workflows.definition.WorkflowStepType;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.model.WorkflowLink;
+import com.kingsrook.qbits.workflows.model.WorkflowRevision;
+import com.kingsrook.qbits.workflows.model.WorkflowStep;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import com.kingsrook.qqq.backend.core.utils.JsonUtils;
+import com.kingsrook.qqq.backend.core.utils.ListingHash;
+import com.kingsrook.qqq.backend.core.utils.StringUtils;
+
+
+/*******************************************************************************
+ * "compiled" form of a workflow revision, as used by the WorkflowExecutor.
+ *
+ * Built once per revision (see {@link WorkflowPlanCache}), a plan holds the
+ * revision's steps in an array, each with its step type (and, for stateless
+ * step types, its shared executor) resolved from the {@link WorkflowsRegistry},
+ * its input values parsed from JSON (into an immutable map, shared by all
+ * runs), and its outbound links resolved to indexes in that array and
+ * organized into a {@link WorkflowLinkDispatchTable} - so none of that work
+ * needs to be repeated for every run of the workflow.
+ *
+ * Plans whose links never loop back (and that have no container steps) are
+ * also given a rank for each step, such that every link goes to a step of a
+ * higher rank - which lets executeBatch run such plans page-at-a-time.
+ *******************************************************************************/
+public class WorkflowPlan
+{
+   public static final int NO_STEP = -1;
+
+   private final WorkflowRevision      workflowRevision;
+   private final WorkflowPlanStep[]    steps;
+   private final Map<Integer, Integer> stepIndexByStepNo;
+
+   /////////////////////////////////////////////////////////////////
+   // rank of each step, by index - null if the plan can't be run //
+   // page-at-a-time (i.e., it loops, or has container steps).    //
+   /////////////////////////////////////////////////////////////////
+   private final int[] stepRanks;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   private WorkflowPlan(WorkflowRevision workflowRevision, WorkflowPlanStep[] steps, Map<Integer, Integer> stepIndexByStepNo)
+   {
+      this.workflowRevision = workflowRevision;
+      this.steps = steps;
+      this.stepIndexByStepNo = stepIndexByStepNo;
+      this.stepRanks = computeStepRanks(steps);
+   }
+
+
+
+   /***************************************************************************
+    * rank the steps in topological order of their links (where a step's rank
+    * is the length of the longest path of links leading to it) - or return
+    * null if the links have a cycle, or if there are any container steps
+    * (whose push & pop links don't follow the order that steps run in).
+    ***************************************************************************/
+   private static int[] computeStepRanks(WorkflowPlanStep[] steps)
+   {
+      int[] inboundCounts = new int[steps.length];
+      for(WorkflowPlanStep step : steps)
+      {
+         if(step.getWorkflowStepType() != null && OutboundLinkMode.CONTAINER.equals(step.getWorkflowStepType().getOutboundLinkMode()))
+         {
+            return (null);
+         }
+
+         for(WorkflowPlanLink link : step.getLinkDispatchTable().getLinks())
+         {
+            if(link.toStepIndex() != NO_STEP)
+            {
+               inboundCounts[link.toStepIndex()]++;
+            }
+         }
+      }
+
+      Deque<Integer> ready = new ArrayDeque<>();
+      for(int i = 0; i < steps.length; i++)
+      {
+         if(inboundCounts[i] == 0)
+         {
+            ready.add(i);
+         }
+      }
+
+      int[] ranks           = new int[steps.length];
+      int   noOfRankedSteps = 0;
+      while(!ready.isEmpty())
+      {
+         int index = ready.poll();
+         noOfRankedSteps++;
+         for(WorkflowPlanLink link : steps[index].getLinkDispatchTable().getLinks())
+         {
+            int toIndex = link.toStepIndex();
+            if(toIndex != NO_STEP)
+            {
+               ranks[toIndex] = Math.max(ranks[toIndex], ranks[index] + 1);
+               if(--inboundCounts[toIndex] == 0)
+               {
+                  ready.add(toIndex);
+               }
+            }
+         }
+      }
+
+      ///////////////////////////////////////////////////////
+      // any steps left unranked are in (or after) a cycle //
+      ///////////////////////////////////////////////////////
+      return (noOfRankedSteps == steps.length ? ranks : null);
+   }
+
+
+
+   /***************************************************************************
+    * build a plan for a workflow revision - which must have its steps & links
+    * associations populated.
+    ***************************************************************************/
+   public static WorkflowPlan compile(WorkflowRevision workflowRevision) throws QException
+   {
+      WorkflowsRegistry  workflowsRegistry = WorkflowsRegistry.of(QContext.getQInstance());
+      List<WorkflowStep> workflowSteps     = CollectionUtils.nonNullList(workflowRevision.getSteps());
+
+      ///////////////////////////////////////////////////////////////////////
+      // assign each step an index - which is what links get resolved into //
+      ///////////////////////////////////////////////////////////////////////
+      Map<Integer, Integer> stepIndexByStepNo = new HashMap<>();
+      for(int i = 0; i < workflowSteps.size(); i++)
+      {
+         stepIndexByStepNo.put(workflowSteps.get(i).getStepNo(), i);
+      }
+
+      ListingHash<Integer, WorkflowLink> linkMap = new ListingHash<>();
+      for(WorkflowLink workflowLink : CollectionUtils.nonNullList(workflowRevision.getLinks()))
+      {
+         linkMap.add(workflowLink.getFromStepNo(), workflowLink);
+      }
+
+      WorkflowPlanStep[] steps = new WorkflowPlanStep[workflowSteps.size()];
+      for(int i = 0; i < workflowSteps.size(); i++)
+      {
+         WorkflowStep     workflowStep     = workflowSteps.get(i);
+         WorkflowStepType workflowStepType = workflowsRegistry.getWorkflowStepType(workflowStep.getWorkflowStepTypeName());
+
+         WorkflowStepExecutorInterface workflowStepExecutor = null;
+         if(workflowStepType != null && workflowStepType.getIsStateless() && !OutboundLinkMode.CONTAINER.equals(workflowStepType.getOutboundLinkMode()))
+         {
+            workflowStepExecutor = workflowsRegistry.getWorkflowStepExecutor(workflowStepType);
+         }
+
+         List<WorkflowPlanLink> links = new ArrayList<>();
+         for(WorkflowLink workflowLink : CollectionUtils.nonNullList(linkMap.get(workflowStep.getStepNo())))
+         {
+            Integer toStepIndex = stepIndexByStepNo.get(workflowLink.getToStepNo());
+            links.add(new WorkflowPlanLink(workflowLink.getConditionValue(), workflowLink.getToStepNo(), toStepIndex == null ? NO_STEP : toStepIndex));
+         }
+
+         steps[i] = new WorkflowPlanStep(i, workflowStep, workflowStepType, workflowStepExecutor, parseInputValues(workflowStep), new WorkflowLinkDispatchTable(workflowStep.getStepNo(), links));
+      }
+
+      return (new WorkflowPlan(workflowRevision, steps, stepIndexByStepNo));
+   }
+
+
+
+   /***************************************************************************
+    * parse a step's input values JSON into a new, mutable map.  Keys whose
+    * values aren't Serializable are omitted.
+    ***************************************************************************/
+   static Map<String, Serializable> parseInputValuesJson(String inputValuesJson)
+   {
+      Map<String, Serializable> inputValues = new LinkedHashMap<>();
+      if(!StringUtils.hasContent(inputValuesJson))
+      {
+         return (inputValues);
+      }
+
+      Map<String, Object> mapValues = JsonUtils.toJSONObject(inputValuesJson).toMap();
+      for(Map.Entry<String, Object> entry : mapValues.entrySet())
+      {
+         if(entry.getValue() instanceof Serializable s)
+         {
+            inputValues.put(entry.getKey(), s);
+         }
+      }
+
+      return (inputValues);
+   }
+
+
+
+   /***************************************************************************
+    * parse a step's input values into the immutable map that is shared by every
+    * run of the plan.  nested objects & arrays (e.g., filters) are made
+    * unmodifiable too, so no run can leak changes into the next one.
+    ***************************************************************************/
+   private static Map<String, Serializable> parseInputValues(WorkflowStep workflowStep)
+   {
+      Map<String, Serializable> inputValues = parseInputValuesJson(workflowStep.getInputValuesJson());
+      inputValues.replaceAll((key, value) -> makeUnmodifiable(value));
+      return (Collections.unmodifiableMap(inputValues));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static Serializable makeUnmodifiable(Serializable value)
+   {
+      if(value instanceof Map<?, ?> map)
+      {
+         Map<Object, Object> copy = new LinkedHashMap<>();
+         map.forEach((k, v) -> copy.put(k, v instanceof Serializable s ? makeUnmodifiable(s) : v));
+         return ((Serializable) Collections.unmodifiableMap(copy));
+      }
+      else if(value instanceof List<?> list)
+      {
+         List<Object> copy = new ArrayList<>();
+         list.forEach(v -> copy.add(v instanceof Serializable s ? makeUnmodifiable(s) : v));
+         return ((Serializable) Collections.unmodifiableList(copy));
+      }
+
+      return (value);
+   }
+
+
+
+   /***************************************************************************
+    * get the step that a workflow starts at - null if the revision doesn't
+    * have a start step.
+    ***************************************************************************/
+   public WorkflowPlanStep getStartStep() throws QException
+   {
+      Integer startStepNo = workflowRevision.getStartStepNo();
+      if(startStepNo == null)
+      {
+         return (null);
+      }
+
+      Integer index = stepIndexByStepNo.get(startStepNo);
+      if(index == null)
+      {
+         throw new QException("Step not found by stepNo: " + startStepNo);
+      }
+
+      return (steps[index]);
+   }
+
+
+
+   /***************************************************************************
+    * get the step that a link points to.
+    ***************************************************************************/
+   public WorkflowPlanStep getLinkTarget(WorkflowPlanLink link) throws QException
+   {
+      if(link.toStepIndex() == NO_STEP)
+      {
+         throw new QException("Step not found by stepNo: " + link.toStepNo());
+      }
+
+      return (steps[link.toStepIndex()]);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public WorkflowPlanStep getStep(int index)
+   {
+      return (steps[index]);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public int getNoOfSteps()
+   {
+      return (steps.length);
+   }
+
+
+
+   /***************************************************************************
+    * check if the plan can be run page-at-a-time - i.e., with each of its steps
+    * executed (in order of {@link #getStepRank}) once for all of the runs that
+    * reach it.
+    ***************************************************************************/
+   public boolean getIsBatchExecutable()
+   {
+      return (stepRanks != null);
+   }
+
+
+
+   /***************************************************************************
+    * get the rank of a step - only valid if {@link #getIsBatchExecutable()}.
+    ***************************************************************************/
+   public int getStepRank(int index)
+   {
+      return (stepRanks[index]);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for workflowRevision
+    *******************************************************************************/
+   public WorkflowRevision getWorkflowRevision()
+   {
+      return (this.workflowRevision);
+   }
+
+}
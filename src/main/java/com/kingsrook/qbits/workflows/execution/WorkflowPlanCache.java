@@ -0,0 +1,159 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.execution;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/*******************************************************************************
+ * bounded, least-recently-used cache of {@link WorkflowPlan}s, keyed by
+ * workflow revision id.  Lives in the WorkflowsRegistry (so, one per QInstance).
+ *
+ * Revisions are generally immutable once stored - but to be safe, inserts,
+ * updates, and deletes against the revision, step, and link tables invalidate
+ * entries here (see WorkflowPlanCacheInvalidatingTableCustomizer).
+ *******************************************************************************/
+public class WorkflowPlanCache
+{
+   public static final int DEFAULT_MAX_SIZE = 250;
+
+   private int maxSize;
+
+   private final Map<Integer, WorkflowPlan> plans = new LinkedHashMap<>(16, 0.75f, true)
+   {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, WorkflowPlan> eldest)
+      {
+         return (size() > maxSize);
+      }
+   };
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public WorkflowPlanCache()
+   {
+      this(DEFAULT_MAX_SIZE);
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public WorkflowPlanCache(int maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+
+
+   /***************************************************************************
+    * get the plan for a revision id - or null if it isn't in the cache.
+    ***************************************************************************/
+   public synchronized WorkflowPlan get(Integer workflowRevisionId)
+   {
+      if(workflowRevisionId == null)
+      {
+         return (null);
+      }
+
+      return (plans.get(workflowRevisionId));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized void put(Integer workflowRevisionId, WorkflowPlan workflowPlan)
+   {
+      if(workflowRevisionId == null || maxSize <= 0)
+      {
+         return;
+      }
+
+      plans.put(workflowRevisionId, workflowPlan);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized void invalidate(Integer workflowRevisionId)
+   {
+      plans.remove(workflowRevisionId);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized void invalidateAll()
+   {
+      plans.clear();
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized int size()
+   {
+      return (plans.size());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for maxSize
+    *******************************************************************************/
+   public synchronized int getMaxSize()
+   {
+      return (this.maxSize);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for maxSize - if the cache is currently larger than the new size,
+    ** it is cleared.
+    *******************************************************************************/
+   public synchronized void setMaxSize(int maxSize)
+   {
+      this.maxSize = maxSize;
+      if(plans.size() > maxSize)
+      {
+         plans.clear();
+      }
+   }
+
+}
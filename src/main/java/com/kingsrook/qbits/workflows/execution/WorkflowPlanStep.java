@@ -0,0 +1,163 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.execution;
+
+
+import java.io.Serializable;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.definition.WorkflowStepType;
+import com.kingsrook.qbits.workflows.model.WorkflowStep;
+
+
+/*******************************************************************************
+ * a single step within a {@link WorkflowPlan} - the WorkflowStep record, along
+ * with everything that we want to resolve only once per revision: its step type,
+ * its executor, its parsed input values, and a dispatch table of its outbound
+ * links.  Also, whatever its executor compiles from its input values (see
+ * {@link WorkflowStepExecutorInterface#compileInputValues}), once that is first
+ * done.
+ *
+ * Note that workflowStepType may be null (if the step's type isn't registered) -
+ * in which case, the executor raises an error if/when the step is reached.
+ *******************************************************************************/
+public class WorkflowPlanStep
+{
+   private final int                           index;
+   private final WorkflowStep                  workflowStep;
+   private final WorkflowStepType              workflowStepType;
+   private final WorkflowStepExecutorInterface workflowStepExecutor;
+   private final Map<String, Serializable>     inputValues;
+   private final WorkflowLinkDispatchTable     linkDispatchTable;
+
+   private volatile Object compiledInputValues;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public WorkflowPlanStep(int index, WorkflowStep workflowStep, WorkflowStepType workflowStepType, WorkflowStepExecutorInterface workflowStepExecutor, Map<String, Serializable> inputValues, WorkflowLinkDispatchTable linkDispatchTable)
+   {
+      this.index = index;
+      this.workflowStep = workflowStep;
+      this.workflowStepType = workflowStepType;
+      this.workflowStepExecutor = workflowStepExecutor;
+      this.inputValues = inputValues;
+      this.linkDispatchTable = linkDispatchTable;
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for index
+    *******************************************************************************/
+   public int getIndex()
+   {
+      return (this.index);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for workflowStep
+    *******************************************************************************/
+   public WorkflowStep getWorkflowStep()
+   {
+      return (this.workflowStep);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for workflowStepType
+    *******************************************************************************/
+   public WorkflowStepType getWorkflowStepType()
+   {
+      return (this.workflowStepType);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for workflowStepExecutor
+    *******************************************************************************/
+   public WorkflowStepExecutorInterface getWorkflowStepExecutor()
+   {
+      return (this.workflowStepExecutor);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for inputValues - note, this map (and any maps or lists within it)
+    ** is unmodifiable, as it is shared by all runs of the plan.
+    *******************************************************************************/
+   public Map<String, Serializable> getInputValues()
+   {
+      return (this.inputValues);
+   }
+
+
+
+   /***************************************************************************
+    * get a new, fully mutable copy of this step's input values - for executors
+    * that modify their input values (see
+    * {@link WorkflowStepExecutorInterface#mutatesInputValues()}).
+    ***************************************************************************/
+   public Map<String, Serializable> copyInputValues()
+   {
+      return (WorkflowPlan.parseInputValuesJson(workflowStep.getInputValuesJson()));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for linkDispatchTable
+    *******************************************************************************/
+   public WorkflowLinkDispatchTable getLinkDispatchTable()
+   {
+      return (this.linkDispatchTable);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for compiledInputValues - null until the step's executor has
+    ** compiled them (or if it doesn't compile them).
+    *******************************************************************************/
+   public Object getCompiledInputValues()
+   {
+      return (this.compiledInputValues);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for compiledInputValues
+    *******************************************************************************/
+   public void setCompiledInputValues(Object compiledInputValues)
+   {
+      this.compiledInputValues = compiledInputValues;
+   }
+
+}
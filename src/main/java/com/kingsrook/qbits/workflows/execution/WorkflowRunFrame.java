@@ -0,0 +1,99 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.execution;
+
+
+import java.util.Arrays;
+
+
+/*******************************************************************************
+ * per-run state of the WorkflowExecutor - kept out of the executor itself, so
+ * that one executor instance can be re-used for many runs, including
+ * concurrently, on multiple threads.
+ *
+ * The container stack holds the plan indexes of container steps that have been
+ * entered (pushed) but not yet exited (popped) - as a growable int array, rather
+ * than a Stack of boxed Integers.
+ *******************************************************************************/
+class WorkflowRunFrame
+{
+   private final WorkflowPlan workflowPlan;
+
+   private int[] containerStack = new int[8];
+   private int   containerDepth = 0;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   WorkflowRunFrame(WorkflowPlan workflowPlan)
+   {
+      this.workflowPlan = workflowPlan;
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   void pushContainer(int stepIndex)
+   {
+      if(containerDepth == containerStack.length)
+      {
+         containerStack = Arrays.copyOf(containerStack, containerStack.length * 2);
+      }
+      containerStack[containerDepth++] = stepIndex;
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   int popContainer()
+   {
+      return (containerStack[--containerDepth]);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   boolean isContainerStackEmpty()
+   {
+      return (containerDepth == 0);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for workflowPlan
+    *******************************************************************************/
+   WorkflowPlan getWorkflowPlan()
+   {
+      return (this.workflowPlan);
+   }
+
+}
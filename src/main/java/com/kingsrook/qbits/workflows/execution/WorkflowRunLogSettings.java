@@ -0,0 +1,43 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.execution;
+
+
+import com.kingsrook.qbits.workflows.model.WorkflowRunLogLevel;
+
+
+/*******************************************************************************
+ * instance-wide settings for how workflow runs are logged (from the
+ * WorkflowsQBitConfig) - see {@link WorkflowRunLogLevel}.
+ *
+ * @param defaultRunLogLevel level for workflows that don't set their own.
+ * @param sampleRate fraction (0 to 1) of runs that are fully logged under the
+ * SAMPLED level.
+ * @param slowRunThresholdMillis runs that take at least this long are always
+ * logged under the SAMPLED level.
+ * @param noOpRunSampleRate fraction (0 to 1) of no-op runs (successful runs
+ * that didn't change anything) that are logged, at levels that would log them.
+ *******************************************************************************/
+public record WorkflowRunLogSettings(WorkflowRunLogLevel defaultRunLogLevel, double sampleRate, long slowRunThresholdMillis, double noOpRunSampleRate)
+{
+   public static final WorkflowRunLogSettings DEFAULT = new WorkflowRunLogSettings(WorkflowRunLogLevel.FULL, 0.05, 10_000, 1);
+}
@@ -0,0 +1,54 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.execution;
+
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.model.WorkflowStep;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+
+
+/*******************************************************************************
+ * optional interface for {@link WorkflowStepExecutorInterface}s that can
+ * execute a step for many runs at once - e.g., for a page of records in a
+ * record workflow.  When executeBatch runs a plan page-at-a-time (see
+ * {@link WorkflowPlan#getIsBatchExecutable()}), each step whose executor
+ * implements this interface is executed once for all of the runs that reach
+ * it; executors without it are executed once per run, as usual.
+ *******************************************************************************/
+public interface WorkflowStepBatchExecutorInterface
+{
+
+   /***************************************************************************
+    * execute the step for each of the given contexts - returning one output per
+    * context (in the same order).  compiledInputValues is as given to
+    * {@link WorkflowStepExecutorInterface#execute(WorkflowStep, Map, Object, WorkflowExecutionContext)}.
+    *
+    * If this method throws, the step is then executed for each context on its
+    * own (so an error is only attributed to the runs it comes from) - so any
+    * changes made here to the contexts must be safe to make again.
+    ***************************************************************************/
+   List<WorkflowStepOutput> executeBatch(WorkflowStep step, Map<String, Serializable> inputValues, Object compiledInputValues, List<WorkflowExecutionContext> contexts) throws QException;
+
+}
@@ -39,4 +39,45 @@ public interface WorkflowStepExecutorInterface
     ***************************************************************************/
    WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext context) throws QException;
 
+
+
+   /***************************************************************************
+    * Executors that derive something expensive from their input values (e.g.,
+    * a parsed & prepared filter) can override this method to do that work
+    * once per workflow revision, rather than once per execution.  The object
+    * returned here is kept with the step in the WorkflowPlan (so it must be
+    * safe to share between concurrent runs), and is given to every subsequent
+    * call of {@link #execute(WorkflowStep, Map, Object, WorkflowExecutionContext)}
+    * for the step.  Not called for executors that mutate their input values.
+    ***************************************************************************/
+   default Object compileInputValues(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext context) throws QException
+   {
+      return (null);
+   }
+
+
+
+   /***************************************************************************
+    * execute the step, given the object that {@link #compileInputValues}
+    * returned for it (which may be null).  By default, that object is ignored.
+    ***************************************************************************/
+   default WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, Object compiledInputValues, WorkflowExecutionContext context) throws QException
+   {
+      return (execute(step, inputValues, context));
+   }
+
+
+
+   /***************************************************************************
+    * By default, the inputValues given to {@link #execute} are an unmodifiable
+    * map, parsed once per workflow revision and shared by every run.  Executors
+    * that need to modify that map (or the maps/lists inside it) should override
+    * this method to return true, in which case they are given a new, mutable
+    * copy of the step's input values for every execution.
+    ***************************************************************************/
+   default boolean mutatesInputValues()
+   {
+      return (false);
+   }
+
 }
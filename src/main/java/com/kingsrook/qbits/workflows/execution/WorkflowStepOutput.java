@@ -23,21 +23,38 @@ package com.kingsrook.qbits.workflows.execution;
 
 
 import java.io.Serializable;
+import java.util.function.Supplier;
 
 
 /***************************************************************************
- **
+ * output from executing a workflow step - its output data (which links are
+ * followed by), and an optional human-readable message (for the run log).
+ *
+ * Steps whose messages are costly to build can give a messageSupplier instead
+ * (see {@link #ofLazyMessage}) - which the WorkflowExecutor only calls if the
+ * run's log is actually stored.
  ***************************************************************************/
-public record WorkflowStepOutput(Serializable outputData, String message)
+public record WorkflowStepOutput(Serializable outputData, String message, Supplier<String> messageSupplier)
 {
 
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public WorkflowStepOutput(Serializable outputData, String message)
+   {
+      this(outputData, message, null);
+   }
+
+
+
    /*******************************************************************************
     ** Constructor
     **
     *******************************************************************************/
    public WorkflowStepOutput(Serializable outputData)
    {
-      this(outputData, null);
+      this(outputData, null, null);
    }
 
 
@@ -48,7 +65,45 @@ public record WorkflowStepOutput(Serializable outputData, String message)
     *******************************************************************************/
    public WorkflowStepOutput()
    {
-      this(null, null);
+      this(null, null, null);
+   }
+
+
+
+   /***************************************************************************
+    * build an output whose message is only built (by the supplier) if/when it
+    * is needed.
+    ***************************************************************************/
+   public static WorkflowStepOutput ofLazyMessage(Serializable outputData, Supplier<String> messageSupplier)
+   {
+      return (new WorkflowStepOutput(outputData, null, messageSupplier));
+   }
+
+
+
+   /***************************************************************************
+    * get the message - building it with the messageSupplier, if there is one
+    * (and the message wasn't given directly).
+    ***************************************************************************/
+   @Override
+   public String message()
+   {
+      if(message == null && messageSupplier != null)
+      {
+         return (messageSupplier.get());
+      }
+
+      return (message);
+   }
+
+
+
+   /***************************************************************************
+    * check if this output's message is lazy - i.e., not yet built.
+    ***************************************************************************/
+   public boolean hasLazyMessage()
+   {
+      return (message == null && messageSupplier != null);
    }
 
 }
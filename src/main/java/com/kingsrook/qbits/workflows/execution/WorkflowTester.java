@@ -178,11 +178,17 @@ public class WorkflowTester extends AbstractQActionBiConsumer<WorkflowTesterInpu
 
          transaction = workflowInput.getTransaction();
 
+         workflowInput.setWorkflowRunLog(workflowRunLog);
+         WorkflowTracerInterface workflowTracer = getWorkflowTracer();
          new WorkflowExecutor()
-            .withInputWorkflowRunLog(workflowRunLog)
-            .withWorkflowTracer(getWorkflowTracer())
+            .withWorkflowTracer(workflowTracer)
             .execute(workflowInput, workflowOutput);
 
+         if(workflowTracer != null)
+         {
+            workflowTracer.flush();
+         }
+
          //////////////////////////////////
          // populate run-scenario object //
          //////////////////////////////////
@@ -303,7 +309,7 @@ public class WorkflowTester extends AbstractQActionBiConsumer<WorkflowTesterInpu
       QBitConfig              sourceQBitConfig = QContext.getQInstance().getTable(WorkflowTestRun.TABLE_NAME).getSourceQBitConfig();
       if(sourceQBitConfig instanceof WorkflowsQBitConfig workflowsQBitConfig)
       {
-         workflowTracer = QCodeLoader.getAdHoc(WorkflowTracerInterface.class, workflowsQBitConfig.getWorkflowTracerCodeReference());
+         workflowTracer = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowTracer(workflowsQBitConfig.getWorkflowTracerCodeReference());
       }
       return workflowTracer;
    }
@@ -22,6 +22,7 @@
 package com.kingsrook.qbits.workflows.execution;
 
 
+import java.util.List;
 import com.kingsrook.qbits.workflows.model.Workflow;
 import com.kingsrook.qbits.workflows.model.WorkflowRevision;
 import com.kingsrook.qbits.workflows.model.WorkflowStep;
@@ -55,6 +56,34 @@ public interface WorkflowTypeExecutorInterface
    }
 
 
+   /***************************************************************************
+    * called by WorkflowExecutor.executeBatch, after all of the batch's runs,
+    * with the outputs of the runs that used this executor, ran in the batch
+    * (see {@link WorkflowExecutionContext#getIsInBatch()}), finished without
+    * error, and weren't no-op runs (see {@link #isNoOpRun}) - so that work
+    * deferred from postRun can be done for the whole batch at once.  Runs
+    * whose deferred work fails should be marked as such here (see
+    * {@link WorkflowOutput#markFailed(Exception)}) - their run logs aren't
+    * stored until after this method returns.
+    ***************************************************************************/
+   default void postBatch(List<WorkflowOutput> workflowOutputs) throws QException
+   {
+
+   }
+
+
+   /***************************************************************************
+    * after a successful run's postRun, decide if the run was a "no-op" - that
+    * is, it didn't change anything (and so, e.g., its run log may be counted
+    * rather than stored - see WorkflowRunLogSettings.noOpRunSampleRate).
+    * Runs that opened a transaction of their own are never considered no-ops.
+    ***************************************************************************/
+   default boolean isNoOpRun(WorkflowExecutionContext context)
+   {
+      return (false);
+   }
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -0,0 +1,349 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.data.QRecordWithJoinedRecords;
+import com.kingsrook.qqq.backend.core.modules.backend.implementations.utils.BackendQueryFilterUtils;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+
+
+/*******************************************************************************
+ * a record-workflow filter, prepared once for repeated evaluation against
+ * records: the joins that it references are identified, and, for AND filters,
+ * the parts of it that reference only a single table are split out per table.
+ *
+ * {@link #doesRecordMatch} then checks if a record matches the filter - where,
+ * if the filter includes fields from tables joined to the record's table, the
+ * record matches if any combination of it with its join records (the cross
+ * product) matches.  Combinations are built lazily (depth-first, one join at a
+ * time), stopping at the first match - and the single-table parts of the
+ * filter are checked up front (against the record itself, or against each join
+ * record individually), so join records that can't be part of a match never
+ * get crossed at all.
+ *
+ * Instances are not modified after {@link #compile} - so one can be shared by
+ * all runs of a workflow revision (see InputRecordFilterStep).
+ *******************************************************************************/
+public class CompiledInputRecordFilter
+{
+   private final String                    mainTableName;
+   private final QQueryFilter              filter;
+   private final List<QueryJoin>           joinsInFilter;
+   private final Map<String, QQueryFilter> singleTableSubFilters;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   private CompiledInputRecordFilter(String mainTableName, QQueryFilter filter, List<QueryJoin> joinsInFilter, Map<String, QQueryFilter> singleTableSubFilters)
+   {
+      this.mainTableName = mainTableName;
+      this.filter = filter;
+      this.joinsInFilter = joinsInFilter;
+      this.singleTableSubFilters = singleTableSubFilters;
+   }
+
+
+
+   /***************************************************************************
+    * prepare a filter over the given table - which must not be modified after
+    * this call.
+    ***************************************************************************/
+   public static CompiledInputRecordFilter compile(String mainTableName, QQueryFilter filter)
+   {
+      List<QueryJoin> joinsInFilter = BackendQueryFilterUtils.identifyJoinsInFilter(mainTableName, filter);
+      return (new CompiledInputRecordFilter(mainTableName, filter, Collections.unmodifiableList(new ArrayList<>(joinsInFilter)), Collections.unmodifiableMap(getSingleTableSubFilters(filter, mainTableName, joinsInFilter))));
+   }
+
+
+
+   /***************************************************************************
+    * check if a record (the one being processed by a record workflow, in the
+    * given context) matches the filter.
+    ***************************************************************************/
+   public boolean doesRecordMatch(QRecord record, RecordWorkflowContext context) throws QException
+   {
+      QRecordWithJoinedRecords recordWithoutJoins = new QRecordWithJoinedRecords(record);
+
+      QQueryFilter mainTableFilter = singleTableSubFilters.get(mainTableName);
+      if(mainTableFilter != null && !BackendQueryFilterUtils.doesRecordMatch(mainTableFilter, recordWithoutJoins))
+      {
+         return (false);
+      }
+
+      List<String>        joinTableNames   = new ArrayList<>();
+      List<List<QRecord>> joinRecordsLists = new ArrayList<>();
+      for(QueryJoin join : joinsInFilter)
+      {
+         String        joinTableName  = join.getJoinTable();
+         List<QRecord> recordsToCross = getJoinRecordsToCross(join, context);
+
+         ////////////////////////////////////////////////////////////////////////////////
+         // a join without any records doesn't expand the cross product (its fields    //
+         // are just null in every combination) - so leave it out, and don't prune it. //
+         ////////////////////////////////////////////////////////////////////////////////
+         if(recordsToCross.isEmpty())
+         {
+            continue;
+         }
+
+         QQueryFilter joinTableFilter = singleTableSubFilters.get(joinTableName);
+         if(joinTableFilter != null)
+         {
+            recordsToCross = recordsToCross.stream()
+               .filter(joinRecord -> BackendQueryFilterUtils.doesRecordMatch(joinTableFilter, withJoinedRecord(recordWithoutJoins, joinTableName, joinRecord)))
+               .toList();
+
+            //////////////////////////////////////////////////////////////////////////
+            // every combination would include one of these join records - and none //
+            // of them can satisfy the filter - so, no combination can match.       //
+            //////////////////////////////////////////////////////////////////////////
+            if(recordsToCross.isEmpty())
+            {
+               return (false);
+            }
+         }
+
+         joinTableNames.add(joinTableName);
+         joinRecordsLists.add(recordsToCross);
+      }
+
+      return (doesAnyCombinationMatch(recordWithoutJoins, filter, joinTableNames, joinRecordsLists, 0));
+   }
+
+
+
+   /***************************************************************************
+    * get the records from a join table that the input record is to be crossed
+    * with - that is, ones already in the backend (except ones that are to be
+    * deleted), plus ones that are to be inserted.
+    ***************************************************************************/
+   private static List<QRecord> getJoinRecordsToCross(QueryJoin queryJoin, RecordWorkflowContext context) throws QException
+   {
+      String        joinTableName           = queryJoin.getJoinTable();
+      List<QRecord> recordsAlreadyInBackend = context.getJoinRecords(queryJoin);
+      String        primaryKeyField         = QContext.getQInstance().getTable(joinTableName).getPrimaryKeyField();
+
+      /////////////////////////////////////////////////////////////////////
+      // only read the context's inserts & deletes - so that they aren't //
+      // allocated just to find that they're empty.                      //
+      /////////////////////////////////////////////////////////////////////
+      ArrayList<QRecord>    recordsToBeInserted = context.recordsToInsert.getIfInitialized() == null ? null : context.recordsToInsert.getIfInitialized().get(joinTableName);
+      HashSet<Serializable> idsToDelete         = context.primaryKeysToDelete.getIfInitialized() == null ? null : context.primaryKeysToDelete.getIfInitialized().get(joinTableName);
+
+      //////////////////////////////////////////////////////////////////////////////////////////////////////
+      // add records that already existed to the cross product, filtering out ones that are to be deleted //
+      //////////////////////////////////////////////////////////////////////////////////////////////////////
+      List<QRecord> recordsToCross = new ArrayList<>();
+      for(QRecord record : CollectionUtils.nonNullList(recordsAlreadyInBackend))
+      {
+         if(idsToDelete == null || !idsToDelete.contains(record.getValue(primaryKeyField)))
+         {
+            recordsToCross.add(record);
+         }
+      }
+
+      ////////////////////////////////////
+      // add any records to be inserted //
+      ////////////////////////////////////
+      CollectionUtils.addAllIfNotNull(recordsToCross, recordsToBeInserted);
+
+      return (recordsToCross);
+   }
+
+
+
+   /***************************************************************************
+    * depth-first walk of the cross product - extending a partial combination
+    * with each record from the next join, until all joins are included, at
+    * which point the (full) filter is evaluated.  returns at the first match.
+    ***************************************************************************/
+   private static boolean doesAnyCombinationMatch(QRecordWithJoinedRecords partialCombination, QQueryFilter filter, List<String> joinTableNames, List<List<QRecord>> joinRecordsLists, int joinIndex)
+   {
+      if(joinIndex == joinTableNames.size())
+      {
+         return (BackendQueryFilterUtils.doesRecordMatch(filter, partialCombination));
+      }
+
+      String joinTableName = joinTableNames.get(joinIndex);
+      for(QRecord joinRecord : joinRecordsLists.get(joinIndex))
+      {
+         if(doesAnyCombinationMatch(withJoinedRecord(partialCombination, joinTableName, joinRecord), filter, joinTableNames, joinRecordsLists, joinIndex + 1))
+         {
+            return (true);
+         }
+      }
+
+      return (false);
+   }
+
+
+
+   /***************************************************************************
+    * make a new combination - the input one, plus one record from a join table.
+    ***************************************************************************/
+   private static QRecordWithJoinedRecords withJoinedRecord(QRecordWithJoinedRecords combination, String joinTableName, QRecord joinRecord)
+   {
+      return (combination.buildCrossProduct(joinTableName, List.of(joinRecord)).get(0));
+   }
+
+
+
+   /***************************************************************************
+    * for an AND filter, collect the criteria and sub-filters that reference only
+    * a single table (the main table, or one of the joins) into a filter per
+    * table.  A combination can only match the full filter if each of its
+    * records matches its table's filter from here.  For OR filters (where no
+    * such part is required), an empty map is returned.
+    ***************************************************************************/
+   static Map<String, QQueryFilter> getSingleTableSubFilters(QQueryFilter filter, String mainTableName, List<QueryJoin> joinsInFilter)
+   {
+      Map<String, QQueryFilter> rs = new HashMap<>();
+      if(!QQueryFilter.BooleanOperator.AND.equals(filter.getBooleanOperator()))
+      {
+         return (rs);
+      }
+
+      Set<String> joinTableNames = new HashSet<>();
+      joinsInFilter.forEach(join -> joinTableNames.add(join.getJoinTable()));
+
+      for(QFilterCriteria criteria : CollectionUtils.nonNullList(filter.getCriteria()))
+      {
+         Set<String> referencedTableNames = new HashSet<>();
+         addReferencedTableNames(criteria, mainTableName, joinTableNames, referencedTableNames);
+         if(referencedTableNames.size() == 1 && !referencedTableNames.contains(null))
+         {
+            rs.computeIfAbsent(referencedTableNames.iterator().next(), k -> new QQueryFilter()).withCriteria(criteria);
+         }
+      }
+
+      for(QQueryFilter subFilter : CollectionUtils.nonNullList(filter.getSubFilters()))
+      {
+         Set<String> referencedTableNames = new HashSet<>();
+         addReferencedTableNames(subFilter, mainTableName, joinTableNames, referencedTableNames);
+         if(referencedTableNames.size() == 1 && !referencedTableNames.contains(null))
+         {
+            rs.computeIfAbsent(referencedTableNames.iterator().next(), k -> new QQueryFilter()).withSubFilter(subFilter);
+         }
+      }
+
+      return (rs);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static void addReferencedTableNames(QQueryFilter filter, String mainTableName, Set<String> joinTableNames, Set<String> referencedTableNames)
+   {
+      for(QFilterCriteria criteria : CollectionUtils.nonNullList(filter.getCriteria()))
+      {
+         addReferencedTableNames(criteria, mainTableName, joinTableNames, referencedTableNames);
+      }
+
+      for(QQueryFilter subFilter : CollectionUtils.nonNullList(filter.getSubFilters()))
+      {
+         addReferencedTableNames(subFilter, mainTableName, joinTableNames, referencedTableNames);
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static void addReferencedTableNames(QFilterCriteria criteria, String mainTableName, Set<String> joinTableNames, Set<String> referencedTableNames)
+   {
+      referencedTableNames.add(getFieldTableName(criteria.getFieldName(), mainTableName, joinTableNames));
+      if(criteria.getOtherFieldName() != null)
+      {
+         referencedTableNames.add(getFieldTableName(criteria.getOtherFieldName(), mainTableName, joinTableNames));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * get the name of the table that a (possibly join-table-prefixed) field name
+    * belongs to - or null if it can't be identified (in which case, criteria
+    * on the field are only ever evaluated against full combinations).
+    ***************************************************************************/
+   private static String getFieldTableName(String fieldName, String mainTableName, Set<String> joinTableNames)
+   {
+      if(fieldName == null)
+      {
+         return (null);
+      }
+
+      if(!fieldName.contains("."))
+      {
+         return (mainTableName);
+      }
+
+      String tableName = fieldName.substring(0, fieldName.indexOf('.'));
+      if(tableName.equals(mainTableName) || joinTableNames.contains(tableName))
+      {
+         return (tableName);
+      }
+
+      return (null);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for filter
+    *******************************************************************************/
+   public QQueryFilter getFilter()
+   {
+      return (this.filter);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for joinsInFilter - note, this list is unmodifiable.
+    *******************************************************************************/
+   public List<QueryJoin> getJoinsInFilter()
+   {
+      return (this.joinsInFilter);
+   }
+
+}
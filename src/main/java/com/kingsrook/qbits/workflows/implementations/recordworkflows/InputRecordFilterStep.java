@@ -24,13 +24,15 @@ package com.kingsrook.qbits.workflows.implementations.recordworkflows;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import com.kingsrook.qbits.workflows.definition.OutboundLinkMode;
 import com.kingsrook.qbits.workflows.definition.OutboundLinkOption;
 import com.kingsrook.qbits.workflows.definition.WorkflowStepType;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
 import com.kingsrook.qbits.workflows.execution.WorkflowExecutionContext;
+import com.kingsrook.qbits.workflows.execution.WorkflowStepBatchExecutorInterface;
 import com.kingsrook.qbits.workflows.execution.WorkflowStepExecutorInterface;
 import com.kingsrook.qbits.workflows.execution.WorkflowStepOutput;
 import com.kingsrook.qbits.workflows.execution.WorkflowStepValidatorInterface;
@@ -38,28 +40,20 @@ import com.kingsrook.qbits.workflows.implementations.WorkflowStepUtils;
 import com.kingsrook.qbits.workflows.model.Workflow;
 import com.kingsrook.qbits.workflows.model.WorkflowRevision;
 import com.kingsrook.qbits.workflows.model.WorkflowStep;
-import com.kingsrook.qqq.api.actions.GetTableApiFieldsAction;
-import com.kingsrook.qqq.api.utils.ApiQueryFilterUtils;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.CriteriaOption;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
-import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
-import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
-import com.kingsrook.qqq.backend.core.model.data.QRecordWithJoinedRecords;
 import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
-import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
-import com.kingsrook.qqq.backend.core.modules.backend.implementations.utils.BackendQueryFilterUtils;
-import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
 
 
 /*******************************************************************************
  ** workflow step that compares the input record to a filter
  *******************************************************************************/
-public class InputRecordFilterStep extends WorkflowStepType implements WorkflowStepExecutorInterface, WorkflowStepValidatorInterface
+public class InputRecordFilterStep extends WorkflowStepType implements WorkflowStepExecutorInterface, WorkflowStepBatchExecutorInterface, WorkflowStepValidatorInterface
 {
    private static final QLogger LOG = QLogger.getLogger(InputRecordFilterStep.class);
 
@@ -83,6 +77,7 @@ public class InputRecordFilterStep extends WorkflowStepType implements WorkflowS
          .withIconUrl("data:image/svg+xml;base64,PHN2ZyB4bWxucz0iaHR0cDovL3d3dy53My5vcmcvMjAwMC9zdmciIHdpZHRoPSIyNCIgaGVpZ2h0PSIyNCIgdmlld0JveD0iMCAwIDI0IDI0Ij4KICAgPHBhdGggZD0iTTQuMjUgNS42MUM2LjI3IDguMiAxMCAxMyAxMCAxM3Y2YzAgLjU1LjQ1IDEgMSAxaDJjLjU1IDAgMS0uNDUgMS0xdi02czMuNzItNC44IDUuNzQtNy4zOWMuNTEtLjY2LjA0LTEuNjEtLjc5LTEuNjFINS4wNGMtLjgzIDAtMS4zLjk1LS43OSAxLjYxeiIvPgo8L3N2Zz4K")
          .withExecutor(new QCodeReference(getClass()))
          .withValidator(new QCodeReference(getClass()))
+         .withIsStateless(true)
          .withDescription("Choose a different set of actions based on if the record being processed matches a filter")
          .withInputWidgetNames(List.of(RecordWorkflowInputRecordFilterWidget.NAME));
    }
@@ -103,127 +98,140 @@ public class InputRecordFilterStep extends WorkflowStepType implements WorkflowS
 
 
    /***************************************************************************
-    **
+    * the fields in this step's filter (translated from the revision's API
+    * version, if it uses one) - see RecordWorkflowUtils.getFieldNamesInFilter.
     ***************************************************************************/
    @Override
-   public WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext context) throws QException
+   public Set<String> getFieldDependencies(Map<String, Serializable> inputValues, QRecord workflowRevision, QRecord workflow) throws QException
    {
-      QRecord record = (QRecord) context.getValues().get("record");
-      if(record == null)
-      {
-         throw (new QException("Missing record input in InputRecordFilterStep"));
-      }
+      String       tableName = workflow.getValueString("tableName");
+      QQueryFilter filter    = RecordWorkflowUtils.getFilterFromInput(inputValues);
 
-      QQueryFilter filter = RecordWorkflowUtils.getFilterFromInput(inputValues);
-      if(filter == null)
-      {
-         throw (new QException("Missing filter input in InputRecordFilterStep"));
-      }
-
-      if(WorkflowStepUtils.useApi(context.getWorkflowRevision()))
+      if(WorkflowStepUtils.useApi(new WorkflowRevision(workflowRevision)))
       {
-         RecordWorkflowUtils.updateFilterForApi(context, filter);
+         String            apiName            = workflowRevision.getValueString("apiName");
+         String            apiVersion         = workflowRevision.getValueString("apiVersion");
+         ArrayList<String> badRequestMessages = new ArrayList<>();
+         filter = WorkflowsRegistry.of(QContext.getQInstance()).getRecordWorkflowApiTranslationCache().translateFilter(apiName, apiVersion, tableName, filter, badRequestMessages);
+         if(!badRequestMessages.isEmpty())
+         {
+            return (null);
+         }
       }
 
-      ///////////////////////////////////////////////////////////////////////////////
-      // todo unclear if this should always happen or if it should be configurable //
-      ///////////////////////////////////////////////////////////////////////////////
-      filter.applyCriteriaOptionToAllCriteria(CriteriaOption.CASE_INSENSITIVE);
-
-      List<QRecordWithJoinedRecords> recordWithJoins = buildCrossProduct(record, filter, context);
-      return evaluateCrossProduct(recordWithJoins, filter);
+      return (RecordWorkflowUtils.getFieldNamesInFilter(tableName, filter));
    }
 
 
 
    /***************************************************************************
-    *
+    * prepare this step's filter once per revision - see {@link #compileFilter}.
     ***************************************************************************/
-   public List<QRecordWithJoinedRecords> buildCrossProduct(QRecord record, QQueryFilter filter, WorkflowExecutionContext workflowExecutionContext) throws QException
+   @Override
+   public Object compileInputValues(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext context) throws QException
    {
-      RecordWorkflowContext context = (RecordWorkflowContext) workflowExecutionContext;
+      return (compileFilter(inputValues, context));
+   }
 
-      List<QRecordWithJoinedRecords> crossProduct = new ArrayList<>();
-      crossProduct.add(new QRecordWithJoinedRecords(record));
 
-      List<QueryJoin> joinsInFilter = BackendQueryFilterUtils.identifyJoinsInFilter(context.getWorkflow().getTableName(), filter);
-      for(QueryJoin join : joinsInFilter)
-      {
-         crossProduct = expandCrossProductViaJoin(crossProduct, join, context);
-      }
 
-      return crossProduct;
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext context) throws QException
+   {
+      return (execute(step, inputValues, null, context));
    }
 
 
 
    /***************************************************************************
-    *
+    **
     ***************************************************************************/
-   private static List<QRecordWithJoinedRecords> expandCrossProductViaJoin(List<QRecordWithJoinedRecords> orderWithJoinedRecords, QueryJoin queryJoin, RecordWorkflowContext context) throws QException
+   @Override
+   public WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, Object compiledInputValues, WorkflowExecutionContext context) throws QException
    {
-      String                joinTableName           = queryJoin.getJoinTable();
-      ArrayList<QRecord>    recordsToBeInserted     = context.recordsToInsert.get().computeIfAbsent(joinTableName, k -> new ArrayList<>());
-      List<QRecord>         recordsAlreadyInBackend = context.getJoinRecords(queryJoin);
-      HashSet<Serializable> idsToDelete             = context.primaryKeysToDelete.get().computeIfAbsent(joinTableName, k -> new HashSet<>());
-      String                primaryKeyField         = QContext.getQInstance().getTable(joinTableName).getPrimaryKeyField();
-
-      //////////////////////////////////////////////////////////////////////////////////////////////////////
-      // add records that already existed to the cross product, filtering out ones that are to be deleted //
-      //////////////////////////////////////////////////////////////////////////////////////////////////////
-      List<QRecord> recordsToCross = new ArrayList<>();
-      for(QRecord record : CollectionUtils.nonNullList(recordsAlreadyInBackend))
+      QRecord record = ((RecordWorkflowContext) context).record.get();
+      if(record == null)
       {
-         if(!idsToDelete.contains(record.getValue(primaryKeyField)))
-         {
-            recordsToCross.add(record);
-         }
+         throw (new QException("Missing record input in InputRecordFilterStep"));
       }
 
-      ////////////////////////////////////
-      // add any records to be inserted //
-      ////////////////////////////////////
-      CollectionUtils.addAllIfNotNull(recordsToCross, recordsToBeInserted);
+      //////////////////////////////////////////////////////////////////////////
+      // use the result from the backend, if the filter was evaluated for the //
+      // record's whole page at once (see RecordWorkflowFilterPushDown)       //
+      //////////////////////////////////////////////////////////////////////////
+      Boolean preEvaluatedResult = ((RecordWorkflowContext) context).takePreEvaluatedFilterResult(step.getStepNo());
+      if(preEvaluatedResult != null)
+      {
+         return new WorkflowStepOutput(preEvaluatedResult);
+      }
 
-      orderWithJoinedRecords = makeCrossProduct(orderWithJoinedRecords, joinTableName, recordsToCross);
-      return orderWithJoinedRecords;
+      CompiledInputRecordFilter compiledFilter = compiledInputValues instanceof CompiledInputRecordFilter c ? c : compileFilter(inputValues, context);
+      return new WorkflowStepOutput(compiledFilter.doesRecordMatch(record, (RecordWorkflowContext) context));
    }
 
 
 
    /***************************************************************************
-    *
+    * evaluate the (compiled) filter against each context's record - so the
+    * runs for a page of records are partitioned by it in one call.
     ***************************************************************************/
-   private static List<QRecordWithJoinedRecords> makeCrossProduct(List<QRecordWithJoinedRecords> orderWithJoinedRecords, String joinTableName, List<QRecord> joinRecodsToCross)
+   @Override
+   public List<WorkflowStepOutput> executeBatch(WorkflowStep step, Map<String, Serializable> inputValues, Object compiledInputValues, List<WorkflowExecutionContext> contexts) throws QException
    {
-      if(!joinRecodsToCross.isEmpty())
+      List<WorkflowStepOutput> outputs = new ArrayList<>(contexts.size());
+      for(WorkflowExecutionContext context : contexts)
       {
-         List<QRecordWithJoinedRecords> newCrossProduct = new ArrayList<>();
-         for(QRecordWithJoinedRecords orderWithJoinedRecord : orderWithJoinedRecords)
-         {
-            newCrossProduct.addAll(orderWithJoinedRecord.buildCrossProduct(joinTableName, joinRecodsToCross));
-         }
-         orderWithJoinedRecords = newCrossProduct;
+         outputs.add(execute(step, inputValues, compiledInputValues, context));
       }
-      return orderWithJoinedRecords;
+      return (outputs);
    }
 
 
 
    /***************************************************************************
-    *
+    * get the filter from the step's input values, translate it from the
+    * workflow's API version (if it uses one), make it case-insensitive, and
+    * prepare it for evaluation.  None of that depends on the record being
+    * processed - so it's done once per revision, not per record.
     ***************************************************************************/
-   public WorkflowStepOutput evaluateCrossProduct(List<QRecordWithJoinedRecords> crossProduct, QQueryFilter filter)
+   private CompiledInputRecordFilter compileFilter(Map<String, Serializable> inputValues, WorkflowExecutionContext context) throws QException
    {
-      for(QRecordWithJoinedRecords record : crossProduct)
+      ///////////////////////////////////////////////////////////////////////////
+      // note - the filter in the input values may be shared with other runs - //
+      // so work on a copy of it, as it gets modified below.                   //
+      ///////////////////////////////////////////////////////////////////////////
+      QQueryFilter filter = RecordWorkflowUtils.getFilterFromInput(inputValues);
+      if(filter == null)
       {
-         if(BackendQueryFilterUtils.doesRecordMatch(filter, record))
-         {
-            return new WorkflowStepOutput(true);
-         }
+         throw (new QException("Missing filter input in InputRecordFilterStep"));
       }
+      filter = filter.clone();
 
-      return new WorkflowStepOutput(false);
+      if(WorkflowStepUtils.useApi(context.getWorkflowRevision()))
+      {
+         filter = RecordWorkflowUtils.updateFilterForApi(context, filter);
+      }
+
+      ///////////////////////////////////////////////////////////////////////////////
+      // todo unclear if this should always happen or if it should be configurable //
+      ///////////////////////////////////////////////////////////////////////////////
+      filter.applyCriteriaOptionToAllCriteria(CriteriaOption.CASE_INSENSITIVE);
+
+      return (CompiledInputRecordFilter.compile(context.getWorkflow().getTableName(), filter));
+   }
+
+
+
+   /***************************************************************************
+    * check if a record matches a filter (which may include fields from tables
+    * joined to the record's table) - see {@link CompiledInputRecordFilter}.
+    ***************************************************************************/
+   public boolean doesRecordMatchFilter(QRecord record, QQueryFilter filter, WorkflowExecutionContext context) throws QException
+   {
+      return (CompiledInputRecordFilter.compile(context.getWorkflow().getTableName(), filter).doesRecordMatch(record, (RecordWorkflowContext) context));
    }
 
 
@@ -251,12 +259,11 @@ public class InputRecordFilterStep extends WorkflowStepType implements WorkflowS
 
          if(filter != null)
          {
-            String                      apiName            = workflowRevision.getValueString("apiName");
-            String                      apiVersion         = workflowRevision.getValueString("apiVersion");
-            String                      tableName          = workflow.getValueString("tableName");
-            Map<String, QFieldMetaData> tableApiFields     = GetTableApiFieldsAction.getTableApiFieldMap(new GetTableApiFieldsAction.ApiNameVersionAndTableName(apiName, apiVersion, tableName));
-            ArrayList<String>           badRequestMessages = new ArrayList<>();
-            ApiQueryFilterUtils.manageCriteriaFields(filter, tableApiFields, badRequestMessages, apiName, apiVersion, new QueryInput(tableName).withFilter(filter));
+            String            apiName            = workflowRevision.getValueString("apiName");
+            String            apiVersion         = workflowRevision.getValueString("apiVersion");
+            String            tableName          = workflow.getValueString("tableName");
+            ArrayList<String> badRequestMessages = new ArrayList<>();
+            WorkflowsRegistry.of(QContext.getQInstance()).getRecordWorkflowApiTranslationCache().translateFilter(apiName, apiVersion, tableName, filter, badRequestMessages);
             errors.addAll(badRequestMessages);
          }
       }
@@ -0,0 +1,227 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qqq.api.actions.GetTableApiFieldsAction;
+import com.kingsrook.qqq.api.actions.QRecordApiAdapter;
+import com.kingsrook.qqq.api.utils.ApiQueryFilterUtils;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.utils.JsonUtils;
+import org.json.JSONObject;
+
+
+/*******************************************************************************
+ * bounded, least-recently-used cache of translations from the field names &
+ * filters of an API version (as used by workflow revisions that are pinned to
+ * an API name & version) to the table's actual field names & filters - keyed
+ * by (apiName, apiVersion, tableName) along with the field name or filter.
+ * Lives in the WorkflowsRegistry (so, one per QInstance).
+ *
+ * API field definitions are part of the instance's meta-data - so entries are
+ * never invalidated (just evicted, if the cache gets full).
+ *******************************************************************************/
+public class RecordWorkflowApiTranslationCache
+{
+   public static final int DEFAULT_MAX_SIZE = 1000;
+
+   private final int maxSize;
+
+   private final Map<FieldNameKey, String> fieldNames = new LinkedHashMap<>(16, 0.75f, true)
+   {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<FieldNameKey, String> eldest)
+      {
+         return (size() > maxSize);
+      }
+   };
+
+   private final Map<FilterKey, TranslatedFilter> filters = new LinkedHashMap<>(16, 0.75f, true)
+   {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<FilterKey, TranslatedFilter> eldest)
+      {
+         return (size() > maxSize);
+      }
+   };
+
+
+
+   private record FieldNameKey(String apiName, String apiVersion, String tableName, String apiFieldName)
+   {
+   }
+
+
+
+   private record FilterKey(String apiName, String apiVersion, String tableName, String filterJson)
+   {
+   }
+
+
+
+   /***************************************************************************
+    * a translated filter - which is never given out itself (only clones of it),
+    * so it can be shared - along with any messages from translating it.
+    ***************************************************************************/
+   private record TranslatedFilter(QQueryFilter filter, List<String> badRequestMessages)
+   {
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public RecordWorkflowApiTranslationCache()
+   {
+      this(DEFAULT_MAX_SIZE);
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public RecordWorkflowApiTranslationCache(int maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+
+
+   /***************************************************************************
+    * map a field name from an API version to the table's actual field name.
+    * The field name may be qualified by table name (as field names from the
+    * PVS always are).  The value is only used the first time a field is
+    * translated (as the translation goes through a record with the field set).
+    ***************************************************************************/
+   public String getActualFieldName(String apiName, String apiVersion, String tableName, String apiFieldName, String value) throws QException
+   {
+      if(apiFieldName.contains("."))
+      {
+         apiFieldName = apiFieldName.substring(apiFieldName.indexOf(".") + 1);
+      }
+
+      FieldNameKey key = new FieldNameKey(apiName, apiVersion, tableName, apiFieldName);
+      synchronized(this)
+      {
+         String actualFieldName = fieldNames.get(key);
+         if(actualFieldName != null)
+         {
+            return (actualFieldName);
+         }
+      }
+
+      JSONObject apiRecordToUpdate = new JSONObject();
+      apiRecordToUpdate.put(apiFieldName, value);
+      QRecord recordToUpdate = QRecordApiAdapter.apiJsonObjectToQRecord(apiRecordToUpdate, tableName, apiName, apiVersion, false);
+
+      Iterator<String> iterator = recordToUpdate.getValues().keySet().iterator();
+      if(!iterator.hasNext())
+      {
+         throw (new QException("Couldn't find field %s in API: %s Version: %s".formatted(apiFieldName, apiName, apiVersion)));
+      }
+
+      String actualFieldName = iterator.next();
+      synchronized(this)
+      {
+         if(maxSize > 0)
+         {
+            fieldNames.put(key, actualFieldName);
+         }
+      }
+
+      return (actualFieldName);
+   }
+
+
+
+   /***************************************************************************
+    * get a copy of a filter, translated from an API version's field names to
+    * the table's.  Any messages about fields that couldn't be translated are
+    * added to the badRequestMessages list (and the returned filter is as far
+    * as the translation got).  The input filter is not modified.
+    ***************************************************************************/
+   public QQueryFilter translateFilter(String apiName, String apiVersion, String tableName, QQueryFilter filter, List<String> badRequestMessages) throws QException
+   {
+      FilterKey        key              = new FilterKey(apiName, apiVersion, tableName, JsonUtils.toJson(filter));
+      TranslatedFilter translatedFilter = null;
+      synchronized(this)
+      {
+         translatedFilter = filters.get(key);
+      }
+
+      if(translatedFilter == null)
+      {
+         QQueryFilter                filterToTranslate = filter.clone();
+         Map<String, QFieldMetaData> tableApiFields    = GetTableApiFieldsAction.getTableApiFieldMap(new GetTableApiFieldsAction.ApiNameVersionAndTableName(apiName, apiVersion, tableName));
+         List<String>                messages          = new ArrayList<>();
+         ApiQueryFilterUtils.manageCriteriaFields(filterToTranslate, tableApiFields, messages, apiName, apiVersion, new QueryInput(tableName).withFilter(filterToTranslate));
+
+         translatedFilter = new TranslatedFilter(filterToTranslate, List.copyOf(messages));
+         synchronized(this)
+         {
+            if(maxSize > 0)
+            {
+               filters.put(key, translatedFilter);
+            }
+         }
+      }
+
+      badRequestMessages.addAll(translatedFilter.badRequestMessages());
+      return (translatedFilter.filter().clone());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized void invalidateAll()
+   {
+      fieldNames.clear();
+      filters.clear();
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized int size()
+   {
+      return (fieldNames.size() + filters.size());
+   }
+
+}
@@ -28,12 +28,16 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import com.google.gson.reflect.TypeToken;
+import com.kingsrook.qbits.workflows.execution.LazyInitObjectInWorkflowContext;
 import com.kingsrook.qbits.workflows.execution.ObjectInWorkflowContext;
 import com.kingsrook.qbits.workflows.execution.WorkflowExecutionContext;
 import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
@@ -42,32 +46,176 @@ import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.model.data.QRecordEntity;
 import com.kingsrook.qqq.backend.core.model.metadata.joins.JoinOn;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.Association;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
 import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import org.apache.commons.lang3.BooleanUtils;
 
 
 /*******************************************************************************
- *
+ * execution context for record workflows.  its typed values are kept in the
+ * context's slots - and its containers (records to insert, keys to delete,
+ * etc.) are only allocated once something is put in them (so, not at all for
+ * most runs) - so code that only reads them should use getIfInitialized.
  *******************************************************************************/
 public class RecordWorkflowContext extends WorkflowExecutionContext
 {
    public final ObjectInWorkflowContext<QRecord> record = new ObjectInWorkflowContext<>(this, "record");
 
-   public final ObjectInWorkflowContext<Boolean> doesRecordNeedUpdated = new ObjectInWorkflowContext<>(this, "doesRecordNeedUpdated", false);
+   /////////////////////////////////////////////////////////////////////////////////
+   // setting this (other than via markRecordFieldUpdated) asks for the full main //
+   // record to be updated - see isFullRecordUpdateRequested                      //
+   /////////////////////////////////////////////////////////////////////////////////
+   public final ObjectInWorkflowContext<Boolean> doesRecordNeedUpdated = new ObjectInWorkflowContext<>(this, "doesRecordNeedUpdated", false)
+   {
+      @Override
+      public void set(Boolean value)
+      {
+         super.set(value);
+         isFullRecordUpdateRequested = BooleanUtils.isTrue(value);
+      }
+   };
+
+   ////////////////////////////////////////////////////////////////////////////////////
+   // fields of the main record that steps have changed - see markRecordFieldUpdated //
+   ////////////////////////////////////////////////////////////////////////////////////
+   public final LazyInitObjectInWorkflowContext<LinkedHashSet<String>> updatedFieldNames = new LazyInitObjectInWorkflowContext<>(this, "updatedFieldNames", LinkedHashSet::new);
+
+   public final LazyInitObjectInWorkflowContext<HashMap<String, ArrayList<QRecord>>>    recordsToInsert     = new LazyInitObjectInWorkflowContext<>(this, "recordsToInsert", HashMap::new);
+   public final LazyInitObjectInWorkflowContext<HashMap<String, HashSet<Serializable>>> primaryKeysToDelete = new LazyInitObjectInWorkflowContext<>(this, "primaryKeysToDelete", HashMap::new);
+
+   ///////////////////////////////////////////////////////////////////////////////////////
+   // records already stored in the backend that are joined with the main record.       //
+   // should only be accessed via the getJoinRecords method, which lazy inits (from the //
+   // main record's associations, if they were loaded with it - else, by query)         //
+   ///////////////////////////////////////////////////////////////////////////////////////
+   private final LazyInitObjectInWorkflowContext<HashMap<JoinKey, ArrayList<QRecord>>> joinRecords = new LazyInitObjectInWorkflowContext<>(this, "joinRecords", HashMap::new);
+
+   //////////////////////////////////////////////////////////////////////////////////
+   // results of filter steps (by stepNo) that were evaluated for a whole page of  //
+   // records by the backend - see RecordWorkflowFilterPushDown.  each may only be //
+   // used once - via takePreEvaluatedFilterResult.                                //
+   //////////////////////////////////////////////////////////////////////////////////
+   private final LazyInitObjectInWorkflowContext<HashMap<Integer, Boolean>> preEvaluatedFilterResults = new LazyInitObjectInWorkflowContext<>(this, "preEvaluatedFilterResults", HashMap::new);
+
+   ///////////////////////////////////////////////////////////////////////////////
+   // set when the main record was loaded with all of its associations (by the  //
+   // RunRecordWorkflow process's extract step) - only then are they trusted to //
+   // be the complete set of join records, in place of querying for them.       //
+   ///////////////////////////////////////////////////////////////////////////////
+   private boolean areRecordAssociationsComplete = false;
+
+   /////////////////////////////////////////////////////////////////////////////
+   // set when the main record is just as it is stored (as when queried by    //
+   // the RunRecordWorkflow process's extract step) - only then may its start //
+   // filter be evaluated by the backend (see RecordWorkflowFilterPushDown).  //
+   /////////////////////////////////////////////////////////////////////////////
+   private boolean areRecordsAsStored = false;
+
+   //////////////////////////////////////////////////////////////////////////////
+   // set when a step set doesRecordNeedUpdated directly (e.g., a custom step  //
+   // that changed the record without marking fields) - in which case the full //
+   // main record is updated, even if other steps did mark their fields.       //
+   //////////////////////////////////////////////////////////////////////////////
+   private boolean isFullRecordUpdateRequested;
 
-   public final ObjectInWorkflowContext<HashMap<String, ArrayList<QRecord>>>    recordsToInsert     = new ObjectInWorkflowContext<>(this, "recordsToInsert", new HashMap<>());
-   public final ObjectInWorkflowContext<HashMap<String, HashSet<Serializable>>> primaryKeysToDelete = new ObjectInWorkflowContext<>(this, "primaryKeysToDelete", new HashMap<>());
 
-   ///////////////////////////////////////////////////////////////////////////////////////////
-   // records already stored in the backend that are joined with the main record.           //
-   // should only be accessed via the getRelatedRecords method, which lazy inits (by query) //
-   ///////////////////////////////////////////////////////////////////////////////////////////
-   private final ObjectInWorkflowContext<HashMap<JoinKey, ArrayList<QRecord>>> joinRecords = new ObjectInWorkflowContext<>(this, "joinRecords", new HashMap<>());
+
+   private record JoinKey(String joinName, ArrayList<Serializable> joinValues)
+   {
+
+   }
 
 
 
-   private record JoinKey(String joinName, ArrayList<Serializable> joinValues)
+   /***************************************************************************
+    * note that a step changed a field in the main record - so the record needs
+    * updated - but only that field (along with any others marked this way).
+    *
+    * Steps that just set doesRecordNeedUpdated (without marking fields) still
+    * cause the full record to be updated - even if other steps in the run did
+    * mark their fields.
+    ***************************************************************************/
+   public void markRecordFieldUpdated(String fieldName)
+   {
+      ////////////////////////////////////////////////////////////////////////////
+      // if the flag is already set with no fields marked, something set it     //
+      // directly (e.g., through the context's values map) - so the full record //
+      // is still wanted.                                                       //
+      ////////////////////////////////////////////////////////////////////////////
+      boolean wasFullRecordUpdateRequested = isFullRecordUpdateRequested || (doesRecordNeedUpdated.get() && CollectionUtils.nullSafeIsEmpty(updatedFieldNames.getIfInitialized()));
+
+      updatedFieldNames.get().add(fieldName);
+      doesRecordNeedUpdated.set(true);
+      isFullRecordUpdateRequested = wasFullRecordUpdateRequested;
+   }
+
+
+
+   /***************************************************************************
+    * get the record to send to an update of the main record: if only marked
+    * fields were changed, a new record with just its primary key and those
+    * fields - else (including if any step set doesRecordNeedUpdated itself),
+    * the full main record.
+    ***************************************************************************/
+   public QRecord getRecordForUpdate()
+   {
+      QRecord               mainRecord    = record.get();
+      LinkedHashSet<String> updatedFields = updatedFieldNames.getIfInitialized();
+      if(isFullRecordUpdateRequested || CollectionUtils.nullSafeIsEmpty(updatedFields))
+      {
+         return (mainRecord);
+      }
+
+      String  primaryKeyField = QContext.getQInstance().getTable(getWorkflow().getTableName()).getPrimaryKeyField();
+      QRecord recordForUpdate = new QRecord()
+         .withTableName(mainRecord.getTableName())
+         .withValue(primaryKeyField, mainRecord.getValue(primaryKeyField));
+
+      for(String fieldName : updatedFields)
+      {
+         recordForUpdate.setValue(fieldName, mainRecord.getValue(fieldName));
+      }
+
+      return (recordForUpdate);
+   }
+
+
+
+   /***************************************************************************
+    * check if the run has anything for the type executor to write - i.e., an
+    * update to the main record, or any records to insert or delete.
+    ***************************************************************************/
+   public boolean hasRecordsToWrite()
    {
+      if(Boolean.TRUE.equals(doesRecordNeedUpdated.get()))
+      {
+         return (true);
+      }
+
+      if(recordsToInsert.getIfInitialized() != null)
+      {
+         for(ArrayList<QRecord> records : recordsToInsert.getIfInitialized().values())
+         {
+            if(CollectionUtils.nullSafeHasContents(records))
+            {
+               return (true);
+            }
+         }
+      }
+
+      if(primaryKeysToDelete.getIfInitialized() != null)
+      {
+         for(HashSet<Serializable> primaryKeys : primaryKeysToDelete.getIfInitialized().values())
+         {
+            if(CollectionUtils.nullSafeHasContents(primaryKeys))
+            {
+               return (true);
+            }
+         }
+      }
 
+      return (false);
    }
 
 
@@ -154,14 +302,59 @@ public class RecordWorkflowContext extends WorkflowExecutionContext
       JoinRecordsKeyConstruction result = getJoinRecordsKeyConstruction(queryJoin, record.get());
       if(joinRecords.get().get(result.key()) == null)
       {
-         ArrayList<QRecord> records = CollectionUtils.useOrWrap(result.makeEmpty() ? Collections.emptyList() : QueryAction.execute(queryJoin.getJoinTable(), result.filter()), new TypeToken<>() {});
-         joinRecords.get().put(result.key(), records);
+         List<QRecord> records = Collections.emptyList();
+         if(!result.makeEmpty())
+         {
+            records = areRecordAssociationsComplete ? getLoadedAssociatedRecords(getWorkflow().getTableName(), queryJoin, record.get()) : null;
+            if(records == null)
+            {
+               records = QueryAction.execute(queryJoin.getJoinTable(), result.filter());
+            }
+         }
+
+         ArrayList<QRecord> recordArrayList = CollectionUtils.useOrWrap(records, new TypeToken<>() {});
+         joinRecords.get().put(result.key(), recordArrayList);
       }
       return joinRecords.get().get(result.key());
    }
 
 
 
+   /***************************************************************************
+    * if the main record was loaded with its associations, and one of those
+    * associations is the same relationship as the join, then get the join
+    * records from there, rather than querying for them.  returns null if that
+    * isn't the case.  Callers must only use this when the associations are
+    * known to be complete (see getAreRecordAssociationsComplete) - e.g., not
+    * for records given to a table trigger, which may carry just some of them.
+    ***************************************************************************/
+   static List<QRecord> getLoadedAssociatedRecords(String tableName, QueryJoin queryJoin, QRecord mainRecord)
+   {
+      Map<String, List<QRecord>> associatedRecords = mainRecord.getAssociatedRecords();
+      if(CollectionUtils.nullSafeIsEmpty(associatedRecords))
+      {
+         return (null);
+      }
+
+      QTableMetaData table    = QContext.getQInstance().getTable(tableName);
+      String         joinName = queryJoin.getJoinMetaData().getName();
+      for(Association association : CollectionUtils.nonNullList(table.getAssociations()))
+      {
+         if(joinName.equals(association.getJoinName()) && queryJoin.getJoinTable().equals(association.getAssociatedTableName()) && associatedRecords.containsKey(association.getName()))
+         {
+            ///////////////////////////////////////////////////////////////////////////
+            // copy the list, as the record's associations may get modified later in //
+            // the run (e.g., for test runs, see RecordWorkflowTypeExecutor).        //
+            ///////////////////////////////////////////////////////////////////////////
+            return (new ArrayList<>(CollectionUtils.nonNullList(associatedRecords.get(association.getName()))));
+         }
+      }
+
+      return (null);
+   }
+
+
+
    /***************************************************************************
     *
     ***************************************************************************/
@@ -224,4 +417,107 @@ public class RecordWorkflowContext extends WorkflowExecutionContext
       JoinRecordsKeyConstruction result          = getJoinRecordsKeyConstruction(queryJoin, mainRecord);
       joinRecords.get().put(result.key(), recordArrayList);
    }
+
+
+
+   /***************************************************************************
+    * set the result of a filter step for this context's record, as evaluated
+    * before the run (for a whole page of records at once).
+    ***************************************************************************/
+   public void setPreEvaluatedFilterResult(Integer stepNo, boolean result)
+   {
+      preEvaluatedFilterResults.get().put(stepNo, result);
+   }
+
+
+
+   /***************************************************************************
+    * get (and remove) the pre-evaluated result of a filter step for this
+    * context's record - or null if it wasn't pre-evaluated (or was already
+    * taken - e.g., if a workflow comes back around to the same step, after the
+    * record may have changed).
+    ***************************************************************************/
+   public Boolean takePreEvaluatedFilterResult(Integer stepNo)
+   {
+      HashMap<Integer, Boolean> results = preEvaluatedFilterResults.getIfInitialized();
+      return (results == null ? null : results.remove(stepNo));
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for areRecordAssociationsComplete
+    * @see #withAreRecordAssociationsComplete(boolean)
+    *******************************************************************************/
+   public boolean getAreRecordAssociationsComplete()
+   {
+      return (this.areRecordAssociationsComplete);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for areRecordAssociationsComplete
+    * @see #withAreRecordAssociationsComplete(boolean)
+    *******************************************************************************/
+   public void setAreRecordAssociationsComplete(boolean areRecordAssociationsComplete)
+   {
+      this.areRecordAssociationsComplete = areRecordAssociationsComplete;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for areRecordAssociationsComplete
+    *
+    * @param areRecordAssociationsComplete indicates that the main record was
+    * loaded with all of its associations - so they can be used as its join
+    * records for those relationships.
+    * @return this
+    *******************************************************************************/
+   public RecordWorkflowContext withAreRecordAssociationsComplete(boolean areRecordAssociationsComplete)
+   {
+      this.areRecordAssociationsComplete = areRecordAssociationsComplete;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for areRecordsAsStored
+    * @see #withAreRecordsAsStored(boolean)
+    *******************************************************************************/
+   public boolean getAreRecordsAsStored()
+   {
+      return (this.areRecordsAsStored);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for areRecordsAsStored
+    * @see #withAreRecordsAsStored(boolean)
+    *******************************************************************************/
+   public void setAreRecordsAsStored(boolean areRecordsAsStored)
+   {
+      this.areRecordsAsStored = areRecordsAsStored;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for areRecordsAsStored
+    *
+    * @param areRecordsAsStored indicates that the main record is just as it is
+    * stored in the backend (e.g., not a record given to a table trigger, which
+    * may only have some fields, or values that differ from the stored ones) -
+    * so the backend may evaluate filters on it.
+    * @return this
+    *******************************************************************************/
+   public RecordWorkflowContext withAreRecordsAsStored(boolean areRecordsAsStored)
+   {
+      this.areRecordsAsStored = areRecordsAsStored;
+      return (this);
+   }
+
 }
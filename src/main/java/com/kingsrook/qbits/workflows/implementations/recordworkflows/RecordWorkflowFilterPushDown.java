@@ -0,0 +1,225 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlan;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlanStep;
+import com.kingsrook.qbits.workflows.execution.WorkflowStepExecutorInterface;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.JoinType;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.QJoinMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ * evaluates a record workflow's start step - if it is an input-record-filter
+ * step - for a whole page of records at once, by the backend: one query, of the
+ * step's filter AND'ed with the page's primary keys, whose results are the
+ * records that match.  Each record's RecordWorkflowContext is then seeded with
+ * its result, which the step uses in place of evaluating the filter in memory.
+ *
+ * Only the start step is done this way, as it is the only one that is known
+ * to see the records just as they are in the backend (later steps may see them
+ * after changes made by earlier steps in the run) - and only for records that
+ * are known to be as stored (see RecordWorkflowContext.getAreRecordsAsStored),
+ * e.g., not for records given to a table trigger, which the filter must be
+ * evaluated against as given.
+ *
+ * In-memory evaluation is cheap for filters over just the main table (or over
+ * tables it joins to-one) - so this is only done when the filter joins to a
+ * table that the main table has many records in (whose records would otherwise
+ * be fetched and crossed with each record) - and not when those records were
+ * loaded as associations of the records already.
+ *
+ * As with the RecordWorkflowJoinPrefetcher, this is only an optimization: if
+ * there's an error, nothing is seeded, and the filter is evaluated in memory.
+ *******************************************************************************/
+public class RecordWorkflowFilterPushDown
+{
+   private static final QLogger LOG = QLogger.getLogger(RecordWorkflowFilterPushDown.class);
+
+
+
+   /***************************************************************************
+    * evaluate the plan's start step for the records (if they are as stored,
+    * and the heuristic says to) - where contexts.get(i) is the context that
+    * records.get(i) will be run in (which must already have its workflow
+    * set).  Returns the index of the step that was evaluated, else
+    * WorkflowPlan.NO_STEP.
+    ***************************************************************************/
+   public static int evaluateStartFilter(WorkflowPlan workflowPlan, String tableName, List<QRecord> records, List<RecordWorkflowContext> contexts)
+   {
+      if(records.size() < 2 || !contexts.get(0).getAreRecordsAsStored())
+      {
+         return (WorkflowPlan.NO_STEP);
+      }
+
+      try
+      {
+         WorkflowPlanStep planStep = workflowPlan.getStartStep();
+         if(planStep == null || !InputRecordFilterStep.NAME.equals(planStep.getWorkflowStep().getWorkflowStepTypeName()))
+         {
+            return (WorkflowPlan.NO_STEP);
+         }
+
+         CompiledInputRecordFilter compiledFilter = getCompiledFilter(workflowPlan, planStep, contexts.get(0));
+         if(compiledFilter == null || !shouldPushDown(compiledFilter, tableName, records.get(0), contexts.get(0)))
+         {
+            return (WorkflowPlan.NO_STEP);
+         }
+
+         QTableMetaData     table           = QContext.getQInstance().getTable(tableName);
+         String             primaryKeyField = table.getPrimaryKeyField();
+         List<Serializable> primaryKeys     = new ArrayList<>();
+         for(QRecord record : records)
+         {
+            Serializable primaryKey = record.getValue(primaryKeyField);
+            if(primaryKey == null)
+            {
+               return (WorkflowPlan.NO_STEP);
+            }
+            primaryKeys.add(primaryKey);
+         }
+
+         Set<Serializable> matchingPrimaryKeys = queryForMatchingPrimaryKeys(compiledFilter, tableName, primaryKeyField, primaryKeys);
+
+         Integer stepNo = planStep.getWorkflowStep().getStepNo();
+         for(int i = 0; i < records.size(); i++)
+         {
+            contexts.get(i).setPreEvaluatedFilterResult(stepNo, matchingPrimaryKeys.contains(primaryKeys.get(i)));
+         }
+
+         return (planStep.getIndex());
+      }
+      catch(Exception e)
+      {
+         LOG.info("Error evaluating record workflow filter in backend - it will be evaluated per-record instead", e, logPair("tableName", tableName));
+         return (WorkflowPlan.NO_STEP);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * get the step's compiled filter - compiling it now (as the executor would,
+    * on the step's first use), if that hasn't happened yet.
+    ***************************************************************************/
+   private static CompiledInputRecordFilter getCompiledFilter(WorkflowPlan workflowPlan, WorkflowPlanStep planStep, RecordWorkflowContext context) throws QException
+   {
+      if(planStep.getCompiledInputValues() == null)
+      {
+         WorkflowStepExecutorInterface workflowStepExecutor = planStep.getWorkflowStepExecutor();
+         if(workflowStepExecutor == null || workflowStepExecutor.mutatesInputValues())
+         {
+            return (null);
+         }
+
+         RecordWorkflowContext compileContext = new RecordWorkflowContext();
+         compileContext.setWorkflow(context.getWorkflow());
+         compileContext.setWorkflowRevision(workflowPlan.getWorkflowRevision());
+         planStep.setCompiledInputValues(workflowStepExecutor.compileInputValues(planStep.getWorkflowStep(), planStep.getInputValues(), compileContext));
+      }
+
+      return (planStep.getCompiledInputValues() instanceof CompiledInputRecordFilter compiledFilter ? compiledFilter : null);
+   }
+
+
+
+   /***************************************************************************
+    * the cost heuristic: push the filter down if it joins (from the main
+    * table) to-many, and those join records aren't already loaded (as complete
+    * associations of the records).
+    ***************************************************************************/
+   private static boolean shouldPushDown(CompiledInputRecordFilter compiledFilter, String tableName, QRecord sampleRecord, RecordWorkflowContext sampleContext)
+   {
+      for(QueryJoin queryJoin : compiledFilter.getJoinsInFilter())
+      {
+         QJoinMetaData joinMetaData = queryJoin.getJoinMetaData();
+         if(joinMetaData == null)
+         {
+            continue;
+         }
+
+         boolean isMainLeft = joinMetaData.getLeftTable().equals(tableName);
+         boolean isToMany   = isMainLeft ? JoinType.ONE_TO_MANY.equals(joinMetaData.getType()) : JoinType.MANY_TO_ONE.equals(joinMetaData.getType());
+         if(isToMany && (!sampleContext.getAreRecordAssociationsComplete() || RecordWorkflowContext.getLoadedAssociatedRecords(tableName, queryJoin, sampleRecord) == null))
+         {
+            return (true);
+         }
+      }
+
+      return (false);
+   }
+
+
+
+   /***************************************************************************
+    * run the filter, limited to the given primary keys.  Joins are LEFT joins
+    * (and the query is distinct), matching in-memory evaluation - where a
+    * record with no join records is checked with null values for their fields,
+    * and matches if any combination with its join records does.
+    ***************************************************************************/
+   private static Set<Serializable> queryForMatchingPrimaryKeys(CompiledInputRecordFilter compiledFilter, String tableName, String primaryKeyField, List<Serializable> primaryKeys) throws QException
+   {
+      QQueryFilter filter = new QQueryFilter(new QFilterCriteria(primaryKeyField, QCriteriaOperator.IN, primaryKeys))
+         .withSubFilter(compiledFilter.getFilter().clone());
+
+      QueryInput queryInput = new QueryInput(tableName)
+         .withFilter(filter)
+         .withSelectDistinct(true);
+
+      for(QueryJoin queryJoin : compiledFilter.getJoinsInFilter())
+      {
+         queryInput.withQueryJoin(new QueryJoin(queryJoin.getJoinTable())
+            .withJoinMetaData(queryJoin.getJoinMetaData())
+            .withBaseTableOrAlias(queryJoin.getBaseTableOrAlias())
+            .withType(QueryJoin.Type.LEFT)
+            .withSelect(false));
+      }
+
+      Set<Serializable> matchingPrimaryKeys = new HashSet<>();
+      for(QRecord record : new QueryAction().execute(queryInput).getRecords())
+      {
+         matchingPrimaryKeys.add(record.getValue(primaryKeyField));
+      }
+
+      return (matchingPrimaryKeys);
+   }
+
+}
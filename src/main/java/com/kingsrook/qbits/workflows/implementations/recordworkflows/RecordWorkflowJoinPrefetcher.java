@@ -0,0 +1,199 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlan;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlanStep;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.JoinOn;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.QJoinMetaData;
+import com.kingsrook.qqq.backend.core.modules.backend.implementations.utils.BackendQueryFilterUtils;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import com.kingsrook.qqq.backend.core.utils.ListingHash;
+import com.kingsrook.qqq.backend.core.utils.ValueUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ * loads the join records needed by a record workflow's filter steps for a whole
+ * page of records at once - one IN query per join - and seeds each record's
+ * RecordWorkflowContext with its share of them, so that getJoinRecords doesn't
+ * need to run a query for every record.
+ *
+ * This is only an optimization: joins that can't be prefetched (e.g., ones on
+ * more than one field, or ones already loaded as associations of the records)
+ * are skipped, as is everything if there's an error - in which case, join
+ * records are just queried per-record, as needed.
+ *******************************************************************************/
+public class RecordWorkflowJoinPrefetcher
+{
+   private static final QLogger LOG = QLogger.getLogger(RecordWorkflowJoinPrefetcher.class);
+
+
+
+   /***************************************************************************
+    * prefetch join records for the records - where contexts.get(i) is the
+    * context that records.get(i) will be run in (which must already have its
+    * workflow set).
+    ***************************************************************************/
+   public static void prefetchJoinRecords(WorkflowPlan workflowPlan, String tableName, List<QRecord> records, List<RecordWorkflowContext> contexts)
+   {
+      prefetchJoinRecords(workflowPlan, tableName, records, contexts, WorkflowPlan.NO_STEP);
+   }
+
+
+
+   /***************************************************************************
+    * prefetch join records for the records - skipping the filter of one step
+    * (e.g., one that was already evaluated for the records by the backend -
+    * see RecordWorkflowFilterPushDown).
+    ***************************************************************************/
+   public static void prefetchJoinRecords(WorkflowPlan workflowPlan, String tableName, List<QRecord> records, List<RecordWorkflowContext> contexts, int skipStepIndex)
+   {
+      if(records.size() < 2)
+      {
+         return;
+      }
+
+      try
+      {
+         for(QueryJoin queryJoin : getJoinsInFilters(workflowPlan, tableName, skipStepIndex))
+         {
+            prefetchJoinRecords(queryJoin, tableName, records, contexts);
+         }
+      }
+      catch(Exception e)
+      {
+         LOG.info("Error prefetching join records for record workflow - they will be queried per-record instead", e, logPair("tableName", tableName));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * get the distinct joins used by the filters of all input-record-filter
+    * steps in the plan.
+    ***************************************************************************/
+   private static Collection<QueryJoin> getJoinsInFilters(WorkflowPlan workflowPlan, String tableName, int skipStepIndex) throws QException
+   {
+      Map<String, QueryJoin> joinsByName = new LinkedHashMap<>();
+      for(int i = 0; i < workflowPlan.getNoOfSteps(); i++)
+      {
+         WorkflowPlanStep planStep = workflowPlan.getStep(i);
+         if(i == skipStepIndex || !InputRecordFilterStep.NAME.equals(planStep.getWorkflowStep().getWorkflowStepTypeName()))
+         {
+            continue;
+         }
+
+         List<QueryJoin> joinsInFilter = planStep.getCompiledInputValues() instanceof CompiledInputRecordFilter compiledFilter
+            ? compiledFilter.getJoinsInFilter()
+            : BackendQueryFilterUtils.identifyJoinsInFilter(tableName, RecordWorkflowUtils.getFilterFromInput(planStep.getInputValues()));
+
+         for(QueryJoin queryJoin : joinsInFilter)
+         {
+            joinsByName.putIfAbsent(queryJoin.getJoinMetaData().getName(), queryJoin);
+         }
+      }
+
+      return (joinsByName.values());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static void prefetchJoinRecords(QueryJoin queryJoin, String tableName, List<QRecord> records, List<RecordWorkflowContext> contexts) throws QException
+   {
+      QJoinMetaData joinMetaData = queryJoin.getJoinMetaData();
+      if(joinMetaData.getJoinOns().size() != 1 || (contexts.get(0).getAreRecordAssociationsComplete() && RecordWorkflowContext.getLoadedAssociatedRecords(tableName, queryJoin, records.get(0)) != null))
+      {
+         return;
+      }
+
+      JoinOn  joinOn         = joinMetaData.getJoinOns().get(0);
+      boolean isMainLeft     = joinMetaData.getLeftTable().equals(tableName);
+      String  mainTableField = isMainLeft ? joinOn.getLeftField() : joinOn.getRightField();
+      String  joinTableField = isMainLeft ? joinOn.getRightField() : joinOn.getLeftField();
+
+      //////////////////////////////////////////////////////////////////////////
+      // key join values by the join field's type, on both sides - so e.g., a //
+      // Long or String value in a record still finds its Integer-keyed join  //
+      // records (rather than being seeded with none, giving a wrong result). //
+      //////////////////////////////////////////////////////////////////////////
+      QFieldType joinFieldType = QContext.getQInstance().getTable(queryJoin.getJoinTable()).getField(joinTableField).getType();
+
+      Set<Serializable> joinValues = new LinkedHashSet<>();
+      for(QRecord record : records)
+      {
+         Serializable joinValue = ValueUtils.getValueAsFieldType(joinFieldType, record.getValue(mainTableField));
+         if(joinValue != null)
+         {
+            joinValues.add(joinValue);
+         }
+      }
+
+      if(joinValues.isEmpty())
+      {
+         return;
+      }
+
+      ListingHash<Serializable, QRecord> joinRecordsByJoinValue = new ListingHash<>();
+      for(QRecord joinRecord : QueryAction.execute(queryJoin.getJoinTable(), new QQueryFilter(new QFilterCriteria(joinTableField, QCriteriaOperator.IN, new ArrayList<>(joinValues)))))
+      {
+         joinRecordsByJoinValue.add(ValueUtils.getValueAsFieldType(joinFieldType, joinRecord.getValue(joinTableField)), joinRecord);
+      }
+
+      ///////////////////////////////////////////////////////////////////////////
+      // seed every record that has a join value - including ones with no join //
+      // records, so they don't go on to query for them again.                 //
+      ///////////////////////////////////////////////////////////////////////////
+      for(int i = 0; i < records.size(); i++)
+      {
+         QRecord      record    = records.get(i);
+         Serializable joinValue = ValueUtils.getValueAsFieldType(joinFieldType, record.getValue(mainTableField));
+         if(joinValue != null)
+         {
+            contexts.get(i).setJoinRecords(queryJoin, record, new ArrayList<>(CollectionUtils.nonNullList(joinRecordsByJoinValue.get(joinValue))));
+         }
+      }
+   }
+
+}
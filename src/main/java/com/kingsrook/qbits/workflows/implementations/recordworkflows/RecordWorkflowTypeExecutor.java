@@ -32,6 +32,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import com.kingsrook.qbits.workflows.execution.WorkflowExecutionContext;
+import com.kingsrook.qbits.workflows.execution.WorkflowOutput;
 import com.kingsrook.qbits.workflows.execution.WorkflowTypeExecutorInterface;
 import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
 import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
@@ -47,6 +48,7 @@ import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.model.metadata.tables.Association;
 import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
 import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import com.kingsrook.qqq.backend.core.utils.ListingHash;
 
 
 /*******************************************************************************
@@ -68,16 +70,68 @@ public class RecordWorkflowTypeExecutor implements WorkflowTypeExecutorInterface
       {
          updateRecordAssociations(context);
       }
+      else if(context.getIsInBatch())
+      {
+         ////////////////////////////////////////////////////////////////////////
+         // records for runs in a batch are written all together, in postBatch //
+         ////////////////////////////////////////////////////////////////////////
+      }
       else
       {
-         updateRecord(context);
-         deleteRecords(context);
-         insertRecords(context);
+         writeRecords(context);
       }
    }
 
 
 
+   /***************************************************************************
+    * a record workflow run is a no-op if it has nothing to write - e.g., its
+    * record didn't pass its filter.  test runs are never no-ops (they're always
+    * fully logged).
+    ***************************************************************************/
+   @Override
+   public boolean isNoOpRun(WorkflowExecutionContext workflowExecutionContext)
+   {
+      RecordWorkflowContext context = (RecordWorkflowContext) workflowExecutionContext;
+      return (!context.getIsTestRun() && !context.hasRecordsToWrite());
+   }
+
+
+
+   /***************************************************************************
+    * write the records from a batch's runs - as one set of bulk actions per
+    * table that the runs' workflows are over (see RecordWorkflowWriteBuffer).
+    ***************************************************************************/
+   @Override
+   public void postBatch(List<WorkflowOutput> workflowOutputs) throws QException
+   {
+      ListingHash<String, WorkflowOutput> outputsByTableName = new ListingHash<>();
+      for(WorkflowOutput workflowOutput : workflowOutputs)
+      {
+         outputsByTableName.add(workflowOutput.getContext().getWorkflow().getTableName(), workflowOutput);
+      }
+
+      for(Map.Entry<String, List<WorkflowOutput>> entry : outputsByTableName.entrySet())
+      {
+         new RecordWorkflowWriteBuffer(this, entry.getKey(), entry.getValue()).flush();
+      }
+   }
+
+
+
+   /***************************************************************************
+    * write a run's records - updating the main record (if needed), then doing
+    * its deletes & inserts - in the context's transaction.
+    ***************************************************************************/
+   void writeRecords(RecordWorkflowContext context) throws QException
+   {
+      updateRecord(context);
+      deleteRecords(context);
+      insertRecords(context);
+   }
+
+
+
    /***************************************************************************
     *
     ***************************************************************************/
@@ -129,7 +183,12 @@ public class RecordWorkflowTypeExecutor implements WorkflowTypeExecutorInterface
     ***************************************************************************/
    private void deleteRecords(RecordWorkflowContext context) throws QException
    {
-      for(Map.Entry<String, HashSet<Serializable>> entry : context.primaryKeysToDelete.get().entrySet())
+      if(context.primaryKeysToDelete.getIfInitialized() == null)
+      {
+         return;
+      }
+
+      for(Map.Entry<String, HashSet<Serializable>> entry : context.primaryKeysToDelete.getIfInitialized().entrySet())
       {
          String                tableName   = entry.getKey();
          HashSet<Serializable> primaryKeys = entry.getValue();
@@ -153,7 +212,12 @@ public class RecordWorkflowTypeExecutor implements WorkflowTypeExecutorInterface
     ***************************************************************************/
    private void insertRecords(RecordWorkflowContext context) throws QException
    {
-      for(Map.Entry<String, ArrayList<QRecord>> entry : context.recordsToInsert.get().entrySet())
+      if(context.recordsToInsert.getIfInitialized() == null)
+      {
+         return;
+      }
+
+      for(Map.Entry<String, ArrayList<QRecord>> entry : context.recordsToInsert.getIfInitialized().entrySet())
       {
          String             tableName = entry.getKey();
          ArrayList<QRecord> records   = entry.getValue();
@@ -194,9 +258,12 @@ public class RecordWorkflowTypeExecutor implements WorkflowTypeExecutorInterface
    {
       if(context.doesRecordNeedUpdated.get())
       {
-         QRecord record = context.record.get();
+         //////////////////////////////////////////////////////////////////////
+         // only send the fields that the workflow changed (where it tracked //
+         // them) - so other fields (and associations) are left as they are. //
+         //////////////////////////////////////////////////////////////////////
          UpdateOutput updateOutput = new UpdateAction().execute(new UpdateInput(context.getWorkflow().getTableName())
-            .withRecord(record)
+            .withRecord(context.getRecordForUpdate())
             .withTransaction(context.getTransaction()));
 
          QRecord updatedRecord = updateOutput.getRecords().get(0);
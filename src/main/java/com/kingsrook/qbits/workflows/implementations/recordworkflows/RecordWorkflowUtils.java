@@ -25,15 +25,17 @@ package com.kingsrook.qbits.workflows.implementations.recordworkflows;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
 import com.kingsrook.qbits.workflows.execution.WorkflowExecutionContext;
 import com.kingsrook.qbits.workflows.model.Workflow;
 import com.kingsrook.qbits.workflows.model.WorkflowRevision;
-import com.kingsrook.qqq.api.actions.GetTableApiFieldsAction;
-import com.kingsrook.qqq.api.utils.ApiQueryFilterUtils;
 import com.kingsrook.qqq.backend.core.actions.tables.CountAction;
 import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.model.actions.tables.count.CountInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
@@ -41,10 +43,12 @@ import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteOutput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.expressions.AbstractFilterExpression;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
-import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
 import com.kingsrook.qqq.backend.core.utils.JsonUtils;
 import com.kingsrook.qqq.backend.core.utils.QQueryFilterFormatter;
+import com.kingsrook.qqq.backend.core.utils.StringUtils;
 
 
 /*******************************************************************************
@@ -120,6 +124,86 @@ public class RecordWorkflowUtils
 
 
 
+   /***************************************************************************
+    * get the names of the fields of the main table that a filter's criteria
+    * (including any sub-filters) reference - or null if the filter's result
+    * may depend on more than those fields' values: i.e., if it references a
+    * joined table's fields, or uses an expression (e.g., relative to now) as a
+    * criteria value.
+    ***************************************************************************/
+   public static Set<String> getFieldNamesInFilter(String tableName, QQueryFilter filter)
+   {
+      Set<String> fieldNames = new LinkedHashSet<>();
+      return (addFieldNamesInFilter(tableName, filter, fieldNames) ? fieldNames : null);
+   }
+
+
+
+   /***************************************************************************
+    ** returns false if the filter references something other than main-table
+    ** fields with plain values.
+    ***************************************************************************/
+   private static boolean addFieldNamesInFilter(String tableName, QQueryFilter filter, Set<String> fieldNames)
+   {
+      if(filter == null)
+      {
+         return (true);
+      }
+
+      for(QFilterCriteria criteria : CollectionUtils.nonNullList(filter.getCriteria()))
+      {
+         if(!addMainTableFieldName(tableName, criteria.getFieldName(), fieldNames) || !addMainTableFieldName(tableName, criteria.getOtherFieldName(), fieldNames))
+         {
+            return (false);
+         }
+
+         for(Serializable value : CollectionUtils.nonNullList(criteria.getValues()))
+         {
+            if(value instanceof AbstractFilterExpression<?> || value instanceof Map<?, ?>)
+            {
+               return (false);
+            }
+         }
+      }
+
+      for(QQueryFilter subFilter : CollectionUtils.nonNullList(filter.getSubFilters()))
+      {
+         if(!addFieldNamesInFilter(tableName, subFilter, fieldNames))
+         {
+            return (false);
+         }
+      }
+
+      return (true);
+   }
+
+
+
+   /***************************************************************************
+    ** returns false if the field name is from a table other than the main one.
+    ***************************************************************************/
+   private static boolean addMainTableFieldName(String tableName, String fieldName, Set<String> fieldNames)
+   {
+      if(!StringUtils.hasContent(fieldName))
+      {
+         return (true);
+      }
+
+      if(fieldName.contains("."))
+      {
+         if(!fieldName.startsWith(tableName + "."))
+         {
+            return (false);
+         }
+         fieldName = fieldName.substring(tableName.length() + 1);
+      }
+
+      fieldNames.add(fieldName);
+      return (true);
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -173,19 +257,18 @@ public class RecordWorkflowUtils
 
 
    /***************************************************************************
-    *
+    * get a copy of a filter, translated from the field names of the API version
+    * that the context's workflow revision uses to the table's field names (via
+    * the instance's RecordWorkflowApiTranslationCache).
     ***************************************************************************/
-   public static void updateFilterForApi(WorkflowExecutionContext context, QQueryFilter inputFilter) throws QException
+   public static QQueryFilter updateFilterForApi(WorkflowExecutionContext context, QQueryFilter inputFilter) throws QException
    {
-      WorkflowRevision            workflowRevision   = context.getWorkflowRevision();
-      Workflow                    workflow           = context.getWorkflow();
-      Map<String, QFieldMetaData> tableApiFields     = GetTableApiFieldsAction.getTableApiFieldMap(new GetTableApiFieldsAction.ApiNameVersionAndTableName(workflowRevision.getApiName(), workflowRevision.getApiVersion(), workflow.getTableName()));
-      List<String>                badRequestMessages = new ArrayList<>();
-
-      CountInput countInput = new CountInput(context.getWorkflow().getTableName())
-         .withTransaction(context.getTransaction());
+      WorkflowRevision workflowRevision   = context.getWorkflowRevision();
+      Workflow         workflow           = context.getWorkflow();
+      List<String>     badRequestMessages = new ArrayList<>();
 
-      ApiQueryFilterUtils.manageCriteriaFields(inputFilter, tableApiFields, badRequestMessages, workflowRevision.getApiName(), workflowRevision.getApiVersion(), countInput);
+      return (WorkflowsRegistry.of(QContext.getQInstance()).getRecordWorkflowApiTranslationCache()
+         .translateFilter(workflowRevision.getApiName(), workflowRevision.getApiVersion(), workflow.getTableName(), inputFilter, badRequestMessages));
    }
 
 }
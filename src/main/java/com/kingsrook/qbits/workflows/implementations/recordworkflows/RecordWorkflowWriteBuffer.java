@@ -0,0 +1,380 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.execution.WorkflowOutput;
+import com.kingsrook.qqq.backend.core.actions.QBackendTransaction;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteOutput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ * writes the records from a batch of record workflow runs (all over the same
+ * table) - the main records that need updated, and the records to delete &
+ * insert from each run's context - as bulk actions per table & operation
+ * (with updates grouped by the values they set), all in one transaction,
+ * rather than a few actions per run.
+ *
+ * Errors are attributed back to the run that each record came from.  If there
+ * are any, the transaction is rolled back, and each run's records are then
+ * written on their own (in their own transaction, as happens outside of a
+ * batch) - so each run's writes stay all-or-nothing, and only the runs whose
+ * writes actually fail are marked as failed.  As that relies on rolling back,
+ * if the table's backend doesn't give a transaction, runs are always written
+ * one at a time.
+ *******************************************************************************/
+public class RecordWorkflowWriteBuffer
+{
+   private static final QLogger LOG = QLogger.getLogger(RecordWorkflowWriteBuffer.class);
+
+   private final RecordWorkflowTypeExecutor recordWorkflowTypeExecutor;
+   private final String                     tableName;
+   private final List<WorkflowOutput>       workflowOutputs;
+
+   /////////////////////////////////////////////////////////////////
+   // errors from the bulk actions, by index into workflowOutputs //
+   /////////////////////////////////////////////////////////////////
+   private final Map<Integer, String> errorsByOutputIndex = new LinkedHashMap<>();
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public RecordWorkflowWriteBuffer(RecordWorkflowTypeExecutor recordWorkflowTypeExecutor, String tableName, List<WorkflowOutput> workflowOutputs)
+   {
+      this.recordWorkflowTypeExecutor = recordWorkflowTypeExecutor;
+      this.tableName = tableName;
+      this.workflowOutputs = workflowOutputs;
+   }
+
+
+
+   /***************************************************************************
+    * write all of the runs' records - marking any runs whose writes fail as
+    * failed.
+    ***************************************************************************/
+   public void flush() throws QException
+   {
+      if(workflowOutputs.isEmpty())
+      {
+         return;
+      }
+
+      RecordWorkflowContext firstContext = getContext(0);
+      QBackendTransaction   transaction  = workflowOutputs.size() == 1 ? null : recordWorkflowTypeExecutor.openTransaction(firstContext.getWorkflow(), firstContext.getWorkflowRevision());
+      if(transaction == null)
+      {
+         writeEachRunOnItsOwn();
+         return;
+      }
+
+      try
+      {
+         Exception exception = null;
+         try
+         {
+            updateRecords(transaction);
+            deleteRecords(transaction);
+            insertRecords(transaction);
+         }
+         catch(Exception e)
+         {
+            exception = e;
+         }
+
+         if(exception == null && errorsByOutputIndex.isEmpty())
+         {
+            transaction.commit();
+            return;
+         }
+
+         LOG.info("Error in bulk write of record workflow records - rolling back, and writing each run's records on their own", exception, logPair("tableName", tableName), logPair("noOfRunsWithErrors", errorsByOutputIndex.size()));
+         transaction.rollback();
+      }
+      finally
+      {
+         transaction.close();
+      }
+
+      writeEachRunOnItsOwn();
+   }
+
+
+
+   /***************************************************************************
+    * write each run's records (as RecordWorkflowTypeExecutor does for a run
+    * outside of a batch), each in its own transaction.
+    ***************************************************************************/
+   private void writeEachRunOnItsOwn() throws QException
+   {
+      for(int i = 0; i < workflowOutputs.size(); i++)
+      {
+         RecordWorkflowContext context     = getContext(i);
+         QBackendTransaction   transaction = null;
+         try
+         {
+            transaction = recordWorkflowTypeExecutor.openTransaction(context.getWorkflow(), context.getWorkflowRevision());
+            context.setTransaction(transaction);
+
+            recordWorkflowTypeExecutor.writeRecords(context);
+
+            if(transaction != null)
+            {
+               transaction.commit();
+            }
+         }
+         catch(Exception e)
+         {
+            LOG.info("Error writing records for record workflow run", e, logPair("tableName", tableName));
+            if(transaction != null)
+            {
+               transaction.rollback();
+            }
+            workflowOutputs.get(i).markFailed(e);
+         }
+         finally
+         {
+            if(transaction != null)
+            {
+               transaction.close();
+            }
+            context.setTransaction(null);
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    * update the main records of the runs that need it - grouped by the values
+    * being set in them, so that all of the records getting the same values
+    * (e.g., from the same workflow's update-field steps) are updated by one
+    * action (which the backend may do as a single statement).  Records whose
+    * values are unique to them are then updated together in one more action.
+    ***************************************************************************/
+   private void updateRecords(QBackendTransaction transaction) throws QException
+   {
+      String primaryKeyField = QContext.getQInstance().getTable(tableName).getPrimaryKeyField();
+
+      Map<Map<String, Serializable>, List<Integer>> outputIndexesByValues = new LinkedHashMap<>();
+      Map<Integer, QRecord>                         recordsByOutputIndex  = new HashMap<>();
+      for(int i = 0; i < workflowOutputs.size(); i++)
+      {
+         RecordWorkflowContext context = getContext(i);
+         if(context.doesRecordNeedUpdated.get())
+         {
+            QRecord                   record = context.getRecordForUpdate();
+            Map<String, Serializable> values = new HashMap<>(record.getValues());
+            values.remove(primaryKeyField);
+
+            outputIndexesByValues.computeIfAbsent(values, k -> new ArrayList<>()).add(i);
+            recordsByOutputIndex.put(i, record);
+         }
+      }
+
+      List<Integer> singleOutputIndexes = new ArrayList<>();
+      for(List<Integer> outputIndexes : outputIndexesByValues.values())
+      {
+         if(outputIndexes.size() == 1)
+         {
+            singleOutputIndexes.addAll(outputIndexes);
+         }
+         else
+         {
+            updateRecords(transaction, outputIndexes, recordsByOutputIndex, true);
+         }
+      }
+
+      updateRecords(transaction, singleOutputIndexes, recordsByOutputIndex, false);
+   }
+
+
+
+   /***************************************************************************
+    * update the records for some runs, in one action - noting any errors
+    * against the runs they came from.
+    ***************************************************************************/
+   private void updateRecords(QBackendTransaction transaction, List<Integer> outputIndexes, Map<Integer, QRecord> recordsByOutputIndex, boolean areAllValuesTheSame) throws QException
+   {
+      if(outputIndexes.isEmpty())
+      {
+         return;
+      }
+
+      List<QRecord> records = new ArrayList<>();
+      for(Integer outputIndex : outputIndexes)
+      {
+         records.add(recordsByOutputIndex.get(outputIndex));
+      }
+
+      List<QRecord> updatedRecords = new UpdateAction().execute(new UpdateInput(tableName)
+         .withRecords(records)
+         .withAreAllValuesBeingUpdatedTheSame(areAllValuesTheSame)
+         .withTransaction(transaction)).getRecords();
+
+      for(int j = 0; j < updatedRecords.size(); j++)
+      {
+         QRecord updatedRecord = updatedRecords.get(j);
+         if(CollectionUtils.nullSafeHasContents(updatedRecord.getErrors()))
+         {
+            errorsByOutputIndex.put(outputIndexes.get(j), "Error updating record: " + updatedRecord.getErrorsAsString());
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void deleteRecords(QBackendTransaction transaction) throws QException
+   {
+      /////////////////////////////////////////////////////////////////////////
+      // for each table, for each primary key, the runs that want it deleted //
+      /////////////////////////////////////////////////////////////////////////
+      Map<String, Map<Serializable, List<Integer>>> outputIndexesByPrimaryKeyByTable = new LinkedHashMap<>();
+      for(int i = 0; i < workflowOutputs.size(); i++)
+      {
+         HashMap<String, HashSet<Serializable>> primaryKeysToDelete = getContext(i).primaryKeysToDelete.getIfInitialized();
+         if(primaryKeysToDelete == null)
+         {
+            continue;
+         }
+
+         for(Map.Entry<String, HashSet<Serializable>> entry : primaryKeysToDelete.entrySet())
+         {
+            for(Serializable primaryKey : entry.getValue())
+            {
+               outputIndexesByPrimaryKeyByTable.computeIfAbsent(entry.getKey(), k -> new LinkedHashMap<>()).computeIfAbsent(primaryKey, k -> new ArrayList<>()).add(i);
+            }
+         }
+      }
+
+      for(Map.Entry<String, Map<Serializable, List<Integer>>> entry : outputIndexesByPrimaryKeyByTable.entrySet())
+      {
+         String                            deleteTableName          = entry.getKey();
+         Map<Serializable, List<Integer>> outputIndexesByPrimaryKey = entry.getValue();
+         String                            primaryKeyField          = QContext.getQInstance().getTable(deleteTableName).getPrimaryKeyField();
+
+         DeleteOutput deleteOutput = new DeleteAction().execute(new DeleteInput(deleteTableName)
+            .withPrimaryKeys(new ArrayList<>(outputIndexesByPrimaryKey.keySet()))
+            .withTransaction(transaction));
+
+         for(QRecord recordWithError : CollectionUtils.nonNullList(deleteOutput.getRecordsWithErrors()))
+         {
+            List<Integer> outputIndexes = outputIndexesByPrimaryKey.get(recordWithError.getValue(primaryKeyField));
+            if(outputIndexes == null)
+            {
+               ///////////////////////////////////////////////////////////////////
+               // if the error can't be tied to a key, blame every run that     //
+               // deleted from the table (they'll all be re-tried on their own) //
+               ///////////////////////////////////////////////////////////////////
+               outputIndexes = outputIndexesByPrimaryKey.values().stream().flatMap(List::stream).distinct().toList();
+            }
+
+            for(Integer outputIndex : outputIndexes)
+            {
+               errorsByOutputIndex.put(outputIndex, "Error deleting from " + deleteTableName + " table: " + recordWithError.getErrorsAsString());
+            }
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void insertRecords(QBackendTransaction transaction) throws QException
+   {
+      Map<String, List<QRecord>> recordsByTable       = new LinkedHashMap<>();
+      Map<String, List<Integer>> outputIndexesByTable = new LinkedHashMap<>();
+      for(int i = 0; i < workflowOutputs.size(); i++)
+      {
+         HashMap<String, ArrayList<QRecord>> recordsToInsert = getContext(i).recordsToInsert.getIfInitialized();
+         if(recordsToInsert == null)
+         {
+            continue;
+         }
+
+         for(Map.Entry<String, ArrayList<QRecord>> entry : recordsToInsert.entrySet())
+         {
+            for(QRecord record : entry.getValue())
+            {
+               recordsByTable.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(record);
+               outputIndexesByTable.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(i);
+            }
+         }
+      }
+
+      for(Map.Entry<String, List<QRecord>> entry : recordsByTable.entrySet())
+      {
+         String        insertTableName = entry.getKey();
+         List<Integer> outputIndexes   = outputIndexesByTable.get(insertTableName);
+
+         List<QRecord> insertedRecords = new InsertAction().execute(new InsertInput(insertTableName)
+            .withRecords(entry.getValue())
+            .withTransaction(transaction)).getRecords();
+
+         for(int j = 0; j < insertedRecords.size(); j++)
+         {
+            QRecord insertedRecord = insertedRecords.get(j);
+            if(CollectionUtils.nullSafeHasContents(insertedRecord.getErrors()))
+            {
+               errorsByOutputIndex.put(outputIndexes.get(j), "Error inserting into " + insertTableName + " table: " + insertedRecord.getErrorsAsString());
+            }
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private RecordWorkflowContext getContext(int outputIndex)
+   {
+      return ((RecordWorkflowContext) workflowOutputs.get(outputIndex).getContext());
+   }
+
+}
@@ -41,6 +41,23 @@ import com.kingsrook.qqq.backend.core.utils.StringUtils;
  *******************************************************************************/
 public class RunRecordWorkflowExtractStep extends ExtractViaQueryStep
 {
+   /////////////////////////////////////////////////////////////////////////////
+   // process value set by this step, telling the load step that the records  //
+   // were queried with all of their associations (see RecordWorkflowContext) //
+   /////////////////////////////////////////////////////////////////////////////
+   public static final String FIELD_ARE_RECORD_ASSOCIATIONS_COMPLETE = "areRecordAssociationsComplete";
+
+   /////////////////////////////////////////////////////////////////////
+   // process value set by this step, telling the load step that the  //
+   // records are just as they are stored (see RecordWorkflowContext) //
+   /////////////////////////////////////////////////////////////////////
+   public static final String FIELD_ARE_RECORDS_AS_STORED = "areRecordsAsStored";
+
+   /////////////////////////////////////////////////////////////////////
+   // process value set by this step, giving the load step the table //
+   // of the workflow (so it needn't look up the workflow for that)   //
+   /////////////////////////////////////////////////////////////////////
+   public static final String FIELD_WORKFLOW_TABLE_NAME = "workflowTableName";
 
    /*******************************************************************************
     **
@@ -59,6 +76,16 @@ public class RunRecordWorkflowExtractStep extends ExtractViaQueryStep
 
       runBackendStepInput.addValue(FIELD_SOURCE_TABLE, tableName);
 
+      ////////////////////////////////////////////////////////////////////
+      // the query includes associations (see customizeInputPreQuery) - //
+      // so the records will have all of them - and, as they come from  //
+      // the query, they are just as they are stored.                   //
+      ////////////////////////////////////////////////////////////////////
+      runBackendStepInput.addValue(FIELD_ARE_RECORD_ASSOCIATIONS_COMPLETE, true);
+      runBackendStepOutput.addValue(FIELD_ARE_RECORD_ASSOCIATIONS_COMPLETE, true);
+      runBackendStepInput.addValue(FIELD_ARE_RECORDS_AS_STORED, true);
+      runBackendStepOutput.addValue(FIELD_ARE_RECORDS_AS_STORED, true);
+
       Integer  workflowId = runBackendStepInput.getValueInteger("workflowId");
       GetInput getInput   = new GetInput();
       getInput.setTableName(Workflow.TABLE_NAME);
@@ -67,6 +94,8 @@ public class RunRecordWorkflowExtractStep extends ExtractViaQueryStep
       if(getOutput.getRecord() != null)
       {
          runBackendStepOutput.addValue("workflowName", getOutput.getRecord().getValueString("name"));
+         runBackendStepInput.addValue(FIELD_WORKFLOW_TABLE_NAME, getOutput.getRecord().getValueString("tableName"));
+         runBackendStepOutput.addValue(FIELD_WORKFLOW_TABLE_NAME, getOutput.getRecord().getValueString("tableName"));
       }
 
       super.preRun(runBackendStepInput, runBackendStepOutput);
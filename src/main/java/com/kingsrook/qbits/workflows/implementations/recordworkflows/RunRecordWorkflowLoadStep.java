@@ -24,16 +24,22 @@ package com.kingsrook.qbits.workflows.implementations.recordworkflows;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
 import com.kingsrook.qbits.workflows.execution.WorkflowExecutor;
 import com.kingsrook.qbits.workflows.execution.WorkflowInput;
 import com.kingsrook.qbits.workflows.execution.WorkflowOutput;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlan;
 import com.kingsrook.qbits.workflows.model.Workflow;
 import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
 import com.kingsrook.qbits.workflows.tracing.WorkflowTracerInterface;
 import com.kingsrook.qqq.backend.core.actions.audits.AuditAction;
-import com.kingsrook.qqq.backend.core.actions.customizers.QCodeLoader;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
@@ -50,8 +56,10 @@ import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
 import com.kingsrook.qqq.backend.core.model.audits.AuditsMetaDataProvider;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
 import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
 import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.model.session.QSession;
 import com.kingsrook.qqq.backend.core.model.tables.QQQTableTableManager;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.AbstractLoadStep;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.ProcessSummaryProviderInterface;
@@ -68,12 +76,24 @@ public class RunRecordWorkflowLoadStep extends AbstractLoadStep implements Proce
 {
    private static final QLogger LOG = QLogger.getLogger(RunRecordWorkflowLoadStep.class);
 
+   private static final int PARALLEL_RECORDS_PER_WORKER_PER_PAGE = 10;
+
    private ProcessSummaryLine okLine = new ProcessSummaryLine(Status.OK)
       .withSingularPastMessage("had the workflow ran against it.")
       .withPluralPastMessage("had the workflow ran against them.");
 
    private ProcessSummaryLine unloggedExceptionLine = new ProcessSummaryLine(Status.ERROR, null, "had an error that was not logged.");
 
+   /////////////////////////////////////////////////////////////////////////////
+   // runs that changed nothing, whose run logs weren't stored (per the       //
+   // no-op run sample rate) - counted here instead of being linked to above. //
+   /////////////////////////////////////////////////////////////////////////////
+   private ProcessSummaryLine unloggedNoOpLine = new ProcessSummaryLine(Status.INFO)
+      .withSingularPastMessage("did not need any changes from the workflow (its run log was not stored).")
+      .withPluralPastMessage("did not need any changes from the workflow (their run logs were not stored).");
+
+   private QRecord workflow;
+
    private List<Serializable> okWorkflowLogIds    = new ArrayList<>();
    private List<Serializable> errorWorkflowLogIds = new ArrayList<>();
 
@@ -85,10 +105,15 @@ public class RunRecordWorkflowLoadStep extends AbstractLoadStep implements Proce
    @Override
    public Integer getOverrideRecordPipeCapacity(RunBackendStepInput runBackendStepInput)
    {
-      //////////////////////////////
-      // todo think about this... //
-      //////////////////////////////
-      return (1);
+      ////////////////////////////////////////////////////////////////////////
+      // run records a page at a time (so the page-level work - pushed-down //
+      // filters, prefetched joins, buffered writes - is shared by all of   //
+      // them).  If records can run in parallel, then make pages large      //
+      // enough to give each worker thread a few records per page.          //
+      ////////////////////////////////////////////////////////////////////////
+      WorkflowsRegistry registry    = WorkflowsRegistry.of(QContext.getQInstance());
+      int               parallelism = registry.getRecordWorkflowParallelism(runBackendStepInput.getValueString(RunRecordWorkflowExtractStep.FIELD_WORKFLOW_TABLE_NAME));
+      return (Math.max(registry.getRecordWorkflowPageSize(), parallelism * PARALLEL_RECORDS_PER_WORKER_PER_PAGE));
    }
 
 
@@ -101,74 +126,269 @@ public class RunRecordWorkflowLoadStep extends AbstractLoadStep implements Proce
    {
       runBackendStepInput.getAsyncJobCallback().updateStatus("Running workflow");
 
-      Integer workflowId = runBackendStepInput.getValueInteger("workflowId");
-      QRecord workflow   = GetAction.execute(Workflow.TABLE_NAME, workflowId);
+      ////////////////////////////////////////////////////////////////////
+      // look up the workflow for the first page only - this step object //
+      // is used for every page of the process                          //
+      ////////////////////////////////////////////////////////////////////
       if(workflow == null)
       {
-         throw (new QException("Could not find workflow by id: " + workflowId));
+         Integer workflowId = runBackendStepInput.getValueInteger("workflowId");
+         workflow = GetAction.execute(Workflow.TABLE_NAME, workflowId);
+         if(workflow == null)
+         {
+            throw (new QException("Could not find workflow by id: " + workflowId));
+         }
       }
 
-      String         tableName = workflow.getValueString("tableName");
-      QTableMetaData table     = QContext.getQInstance().getTable(tableName);
+      String               tableName                     = Objects.requireNonNullElseGet(runBackendStepInput.getValueString(RunRecordWorkflowExtractStep.FIELD_WORKFLOW_TABLE_NAME), () -> workflow.getValueString("tableName"));
+      QTableMetaData       table                         = QContext.getQInstance().getTable(tableName);
+      List<QRecord>        records                       = runBackendStepInput.getRecords();
+      boolean              areRecordAssociationsComplete = BooleanUtils.isTrue(runBackendStepInput.getValueBoolean(RunRecordWorkflowExtractStep.FIELD_ARE_RECORD_ASSOCIATIONS_COMPLETE));
+      boolean              areRecordsAsStored            = BooleanUtils.isTrue(runBackendStepInput.getValueBoolean(RunRecordWorkflowExtractStep.FIELD_ARE_RECORDS_AS_STORED));
+      List<WorkflowOutput> workflowOutputs               = executeWorkflowOnRecords(workflow, records, getWorkflowTracer(runBackendStepInput), areRecordAssociationsComplete, areRecordsAsStored);
 
-      for(QRecord record : runBackendStepInput.getRecords())
+      for(int i = 0; i < workflowOutputs.size(); i++)
       {
+         QRecord        record         = records.get(i);
+         WorkflowOutput workflowOutput = workflowOutputs.get(i);
+         WorkflowRunLog workflowRunLog = workflowOutput.getWorkflowRunLog();
+
          okLine.incrementCountAndAddPrimaryKey(record.getValueInteger(table.getPrimaryKeyField()));
          runBackendStepInput.getAsyncJobCallback().incrementCurrent();
 
+         //////////////////////////////////////////////////////////
+         // add the record to the appropriate processSummaryLine //
+         //////////////////////////////////////////////////////////
+         if(workflowRunLog.getId() != null)
+         {
+            boolean hadError = BooleanUtils.isTrue(workflowRunLog.getHadError());
+            (hadError ? errorWorkflowLogIds : okWorkflowLogIds).add(workflowRunLog.getId());
+         }
+         else if(workflowOutput.getException() != null)
+         {
+            unloggedExceptionLine.incrementCount();
+         }
+         else if(workflowOutput.getIsNoOpRun())
+         {
+            unloggedNoOpLine.incrementCount();
+         }
+      }
+
+      //////////////////////////////////////////////////////////////
+      // audit that the workflow was executed against the records //
+      //////////////////////////////////////////////////////////////
+      audit(workflow, records, workflowOutputs);
+   }
+
+
+
+   /***************************************************************************
+    * run a workflow against a list of records, returning an output for each
+    * record (in the same order as the records).
+    *
+    * The records are ran as one batch (or, per the table's record workflow
+    * parallelism, as a few batches, in parallel), so the workflow & its plan
+    * are only loaded once, and the join records that the workflow's filters
+    * need are loaded for the whole list up front.  Used by this step for each
+    * page of records, and by table triggers for the records they are given.
+    ***************************************************************************/
+   public static List<WorkflowOutput> executeWorkflowOnRecords(QRecord workflow, List<QRecord> records, WorkflowTracerInterface workflowTracer) throws QException
+   {
+      return (executeWorkflowOnRecords(workflow, records, workflowTracer, false, false));
+   }
+
+
+
+   /***************************************************************************
+    * run a workflow against a list of records - where, if
+    * areRecordAssociationsComplete, the records were loaded with all of their
+    * associations, so those can be used in place of querying for join records
+    * - and, if areRecordsAsStored, the records are just as they are stored, so
+    * the workflow's start filter may be evaluated by the backend.
+    ***************************************************************************/
+   public static List<WorkflowOutput> executeWorkflowOnRecords(QRecord workflow, List<QRecord> records, WorkflowTracerInterface workflowTracer, boolean areRecordAssociationsComplete, boolean areRecordsAsStored) throws QException
+   {
+      Integer        workflowId = workflow.getValueInteger("id");
+      String         tableName  = workflow.getValueString("tableName");
+      QTableMetaData table      = QContext.getQInstance().getTable(tableName);
+
+      Integer                     qqqTableId     = QQQTableTableManager.getQQQTableId(QContext.getQInstance(), tableName);
+      List<WorkflowInput>         workflowInputs = new ArrayList<>();
+      List<RecordWorkflowContext> contexts       = new ArrayList<>();
+      for(QRecord record : records)
+      {
+         RecordWorkflowContext context = new RecordWorkflowContext();
+         context.setWorkflow(new Workflow(workflow));
+         context.setAreRecordAssociationsComplete(areRecordAssociationsComplete);
+         context.setAreRecordsAsStored(areRecordsAsStored);
+         contexts.add(context);
+
          WorkflowInput workflowInput = new WorkflowInput();
          workflowInput.setWorkflowId(workflowId);
          workflowInput.setValues(Map.of("record", record));
-         workflowInput.setWorkflowExecutionContext(new RecordWorkflowContext());
-
-         WorkflowOutput workflowOutput = new WorkflowOutput();
+         workflowInput.setWorkflowExecutionContext(context);
 
-         WorkflowRunLog workflowRunLog = new WorkflowRunLog()
-            .withInputRecordQqqTableId(QQQTableTableManager.getQQQTableId(QContext.getQInstance(), tableName))
+         workflowInput.setWorkflowRunLog(new WorkflowRunLog()
+            .withInputRecordQqqTableId(qqqTableId)
             .withInputRecordId(record.getValueInteger(table.getPrimaryKeyField()))
             .withInputDataJson("""
-               {"tableName":"%s","id", %s}""".formatted(record.getTableName(), record.getValue("id")));
+               {"tableName":"%s","id", %s}""".formatted(record.getTableName(), record.getValue("id"))));
 
-         WorkflowTracerInterface workflowTracer = getWorkflowTracer(runBackendStepInput);
+         workflowInputs.add(workflowInput);
+      }
 
-         new WorkflowExecutor()
-            .withInputWorkflowRunLog(workflowRunLog)
-            .withWorkflowTracer(workflowTracer)
-            .execute(workflowInput, workflowOutput);
+      ////////////////////////////////////////////////////////////////////////
+      // executors don't hold per-run state, so use one for all the records //
+      ////////////////////////////////////////////////////////////////////////
+      WorkflowExecutor workflowExecutor = new WorkflowExecutor().withWorkflowTracer(workflowTracer);
+
+      ////////////////////////////////////////////////////////////////////////
+      // if the workflow starts with a filter that's costly to evaluate per //
+      // record, evaluate it for all the records in one backend query - and //
+      // load the join records that the workflow's other filters need for   //
+      // all the records up front, rather than by a query per record & join //
+      ////////////////////////////////////////////////////////////////////////
+      Integer workflowRevisionId = workflow.getValueInteger("currentWorkflowRevisionId");
+      if(workflowRevisionId != null && workflowInputs.size() > 1)
+      {
+         try
+         {
+            WorkflowPlan workflowPlan       = workflowExecutor.getWorkflowPlan(workflowRevisionId);
+            int          evaluatedStepIndex = RecordWorkflowFilterPushDown.evaluateStartFilter(workflowPlan, tableName, records, contexts);
+            RecordWorkflowJoinPrefetcher.prefetchJoinRecords(workflowPlan, tableName, records, contexts, evaluatedStepIndex);
+         }
+         catch(Exception e)
+         {
+            //////////////////////////////////////////////////////////////////
+            // e.g., a missing revision - which each run will report itself //
+            //////////////////////////////////////////////////////////////////
+            LOG.info("Error getting workflow plan to prefetch join records", e, logPair("workflowRevisionId", workflowRevisionId));
+         }
+      }
 
-         workflowRunLog = workflowOutput.getWorkflowRunLog();
+      int                  parallelism     = WorkflowsRegistry.of(QContext.getQInstance()).getRecordWorkflowParallelism(tableName);
+      List<WorkflowOutput> workflowOutputs = (parallelism > 1 && workflowInputs.size() > 1)
+         ? executeInParallel(workflowExecutor, workflowInputs, parallelism)
+         : workflowExecutor.executeBatch(workflowInputs);
 
-         String auditMessage = "Workflow \"" + workflow.getValueString("name") + "\" (id: " + workflowId + ") was executed against this record";
+      //////////////////////////////////////////////////////////////////////////
+      // make sure the tracer has stored all run logs (e.g., if it's a write- //
+      // behind tracer), so that their ids are set in the outputs' run logs.  //
+      //////////////////////////////////////////////////////////////////////////
+      if(workflowTracer != null)
+      {
+         workflowTracer.flush();
+      }
 
-         //////////////////////////////////////////////////////////
-         // add the record to the appropriate processSummaryLine //
-         //////////////////////////////////////////////////////////
-         if(workflowRunLog.getId() != null)
+      return (workflowOutputs);
+   }
+
+
+
+   /***************************************************************************
+    * run the inputs in slices, in parallel - each slice ran as a batch (with
+    * its own context and, via the workflow type executor, its own transaction
+    * for each record).  The calling thread runs the first slice itself, and
+    * the others are ran on the registry's shared pool of record workflow
+    * threads - which bounds the total number of threads across all processes
+    * & triggers.  Outputs are returned in the same order as the inputs - and
+    * all process summary & run-log-id bookkeeping is done by the calling
+    * thread, after the whole page finishes, so none of that state is ever
+    * touched by the worker threads.
+    ***************************************************************************/
+   private static List<WorkflowOutput> executeInParallel(WorkflowExecutor workflowExecutor, List<WorkflowInput> workflowInputs, int parallelism) throws QException
+   {
+      ///////////////////////////////////////////////////////////////////////////
+      // a task already on a pool thread (e.g., a trigger fired by a workflow) //
+      // runs inline - rather than wait on tasks queued behind itself          //
+      ///////////////////////////////////////////////////////////////////////////
+      if(WorkflowsRegistry.isRecordWorkflowThread())
+      {
+         return (workflowExecutor.executeBatch(workflowInputs));
+      }
+
+      int             noOfSlices      = Math.min(parallelism, workflowInputs.size());
+      QInstance       qInstance       = QContext.getQInstance();
+      QSession        qSession        = QContext.getQSession();
+      ExecutorService executorService = WorkflowsRegistry.of(qInstance).getRecordWorkflowExecutorService();
+
+      //////////////////////////////////////////////////////////////////////
+      // interleave the records across slices - so that slow records that //
+      // are clumped together in the page don't all land on one worker.   //
+      //////////////////////////////////////////////////////////////////////
+      List<List<WorkflowInput>> slices = new ArrayList<>();
+      for(int slice = 0; slice < noOfSlices; slice++)
+      {
+         List<WorkflowInput> sliceInputs = new ArrayList<>();
+         for(int i = slice; i < workflowInputs.size(); i += noOfSlices)
+         {
+            sliceInputs.add(workflowInputs.get(i));
+         }
+         slices.add(sliceInputs);
+      }
+
+      List<Future<List<WorkflowOutput>>> futures = new ArrayList<>();
+      try
+      {
+         for(int slice = 1; slice < noOfSlices; slice++)
          {
-            Long id = workflowRunLog.getId();
-            if(id != null)
+            List<WorkflowInput> sliceInputs = slices.get(slice);
+            futures.add(executorService.submit(() ->
             {
-               auditMessage += ", creating Workflow Run Log: " + id;
-               boolean hadError = BooleanUtils.isTrue(workflowRunLog.getHadError());
-               (hadError ? errorWorkflowLogIds : okWorkflowLogIds).add(id);
-            }
+               QContext.init(qInstance, qSession);
+               try
+               {
+                  return (workflowExecutor.executeBatch(sliceInputs));
+               }
+               finally
+               {
+                  QContext.clear();
+               }
+            }));
          }
-         else if(workflowOutput.getException() != null)
+
+         List<List<WorkflowOutput>> sliceOutputsList = new ArrayList<>();
+         sliceOutputsList.add(workflowExecutor.executeBatch(slices.get(0)));
+         for(Future<List<WorkflowOutput>> future : futures)
+         {
+            sliceOutputsList.add(future.get());
+         }
+
+         WorkflowOutput[] workflowOutputs = new WorkflowOutput[workflowInputs.size()];
+         for(int slice = 0; slice < noOfSlices; slice++)
          {
-            unloggedExceptionLine.incrementCount(runBackendStepInput.getRecords().size());
+            List<WorkflowOutput> sliceOutputs = sliceOutputsList.get(slice);
+            for(int j = 0; j < sliceOutputs.size(); j++)
+            {
+               workflowOutputs[slice + (j * noOfSlices)] = sliceOutputs.get(j);
+            }
          }
 
-         //////////////////////////////////////////////////////////////
-         // audit that the workflow was executed against the records //
-         //////////////////////////////////////////////////////////////
-         audit(runBackendStepInput, tableName, auditMessage);
+         return (new ArrayList<>(Arrays.asList(workflowOutputs)));
+      }
+      catch(InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw (new QException("Interrupted while running workflow against records", e));
+      }
+      catch(ExecutionException e)
+      {
+         throw (new QException("Error running workflow against records", e.getCause()));
+      }
+      finally
+      {
+         /////////////////////////////////////////////////////////////////////
+         // if we're bailing out, don't leave our slices behind in the pool //
+         /////////////////////////////////////////////////////////////////////
+         futures.forEach(future -> future.cancel(true));
       }
    }
 
 
 
    /***************************************************************************
-    **
+    * get the tracer for the process's code reference - from the registry, so
+    * that a write-behind tracer is shared by every page (and process).
     ***************************************************************************/
    private static WorkflowTracerInterface getWorkflowTracer(RunBackendStepInput runBackendStepInput)
    {
@@ -176,7 +396,7 @@ public class RunRecordWorkflowLoadStep extends AbstractLoadStep implements Proce
       WorkflowTracerInterface workflowTracer              = null;
       if(workflowTracerCodeReference instanceof QCodeReference codeReference)
       {
-         workflowTracer = QCodeLoader.getAdHoc(WorkflowTracerInterface.class, codeReference);
+         workflowTracer = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowTracer(codeReference);
       }
       return workflowTracer;
    }
@@ -184,10 +404,13 @@ public class RunRecordWorkflowLoadStep extends AbstractLoadStep implements Proce
 
 
    /*******************************************************************************
-    ** for each input record, add an audit stating that the workflow was executed.
+    ** for each record, add an audit stating that the workflow was executed
+    ** (with the id of its run log, if it has one).  outputs must be in the same
+    ** order as the records (as returned by executeWorkflowOnRecords).
     *******************************************************************************/
-   private static void audit(RunBackendStepInput runBackendStepInput, String tableName, String auditMessage)
+   public static void audit(QRecord workflow, List<QRecord> records, List<WorkflowOutput> workflowOutputs)
    {
+      String tableName = workflow.getValueString("tableName");
       try
       {
          if(QContext.getQInstance().getTable(AuditsMetaDataProvider.TABLE_NAME_AUDIT) == null)
@@ -195,17 +418,20 @@ public class RunRecordWorkflowLoadStep extends AbstractLoadStep implements Proce
             return;
          }
 
-         QTableMetaData table      = QContext.getQInstance().getTable(tableName);
-         AuditInput     auditInput = new AuditInput();
-         for(QRecord record : runBackendStepInput.getRecords())
+         String         auditMessage = "Workflow \"" + workflow.getValueString("name") + "\" (id: " + workflow.getValue("id") + ") was executed against this record";
+         QTableMetaData table        = QContext.getQInstance().getTable(tableName);
+         AuditInput     auditInput   = new AuditInput();
+         for(int i = 0; i < records.size(); i++)
          {
-            AuditAction.appendToInput(auditInput, table, record, auditMessage);
+            WorkflowRunLog workflowRunLog = i < workflowOutputs.size() ? workflowOutputs.get(i).getWorkflowRunLog() : null;
+            Long           runLogId       = workflowRunLog == null ? null : workflowRunLog.getId();
+            AuditAction.appendToInput(auditInput, table, records.get(i), runLogId == null ? auditMessage : auditMessage + ", creating Workflow Run Log: " + runLogId);
          }
          new AuditAction().execute(auditInput);
       }
       catch(Exception e)
       {
-         LOG.warn("Error recording audits after running record workflow", e, logPair("tableName", tableName), logPair("auditMessage", auditMessage));
+         LOG.warn("Error recording audits after running record workflow", e, logPair("tableName", tableName), logPair("workflowId", workflow.getValue("id")));
       }
    }
 
@@ -233,6 +459,7 @@ public class RunRecordWorkflowLoadStep extends AbstractLoadStep implements Proce
       }
 
       unloggedExceptionLine.addSelfToListIfAnyCount(summary);
+      unloggedNoOpLine.addSelfToListIfAnyCount(summary);
 
       return (summary);
    }
@@ -23,14 +23,16 @@ package com.kingsrook.qbits.workflows.implementations.recordworkflows;
 
 
 import java.io.Serializable;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import com.kingsrook.qbits.workflows.definition.OutboundLinkMode;
 import com.kingsrook.qbits.workflows.definition.WorkflowStepType;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
 import com.kingsrook.qbits.workflows.execution.WorkflowExecutionContext;
+import com.kingsrook.qbits.workflows.execution.WorkflowStepBatchExecutorInterface;
 import com.kingsrook.qbits.workflows.execution.WorkflowStepExecutorInterface;
 import com.kingsrook.qbits.workflows.execution.WorkflowStepOutput;
 import com.kingsrook.qbits.workflows.execution.WorkflowStepValidatorInterface;
@@ -39,9 +41,6 @@ import com.kingsrook.qbits.workflows.model.Workflow;
 import com.kingsrook.qbits.workflows.model.WorkflowRevision;
 import com.kingsrook.qbits.workflows.model.WorkflowStep;
 import com.kingsrook.qqq.api.actions.GetTableApiFieldsAction;
-import com.kingsrook.qqq.api.actions.QRecordApiAdapter;
-import com.kingsrook.qqq.api.model.actions.GetTableApiFieldsInput;
-import com.kingsrook.qqq.api.model.actions.GetTableApiFieldsOutput;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
 import com.kingsrook.qqq.backend.core.actions.values.QValueFormatter;
 import com.kingsrook.qqq.backend.core.context.QContext;
@@ -56,13 +55,12 @@ import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
 import com.kingsrook.qqq.backend.core.utils.StringUtils;
 import com.kingsrook.qqq.backend.core.utils.ValueUtils;
 import com.kingsrook.qqq.frontend.materialdashboard.model.metadata.MaterialDashboardFieldMetaData;
-import org.json.JSONObject;
 
 
 /*******************************************************************************
  ** workflow step that updates a record with one value in one field
  *******************************************************************************/
-public class UpdateInputRecordFieldStep extends WorkflowStepType implements WorkflowStepExecutorInterface, WorkflowStepValidatorInterface
+public class UpdateInputRecordFieldStep extends WorkflowStepType implements WorkflowStepExecutorInterface, WorkflowStepBatchExecutorInterface, WorkflowStepValidatorInterface
 {
    public static final String NAME = "updateInputRecordField";
 
@@ -70,6 +68,57 @@ public class UpdateInputRecordFieldStep extends WorkflowStepType implements Work
 
 
 
+   /***************************************************************************
+    * what's resolved from a step's input values once per workflow revision:
+    * the actual field to update (which, for revisions that use an API, means
+    * translating through that API), and the step's summary - which is only
+    * built (once) if a run log that includes it is stored.
+    ***************************************************************************/
+   private static class CompiledFieldUpdate
+   {
+      private final String actualFieldName;
+      private final String value;
+      private final String tableName;
+      private final String fieldName;
+      private final String apiName;
+      private final String apiVersion;
+
+      private volatile String pastTenseSummary;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private CompiledFieldUpdate(String actualFieldName, String value, String tableName, String fieldName, String apiName, String apiVersion)
+      {
+         this.actualFieldName = actualFieldName;
+         this.value = value;
+         this.tableName = tableName;
+         this.fieldName = fieldName;
+         this.apiName = apiName;
+         this.apiVersion = apiVersion;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      private String getPastTenseSummary()
+      {
+         if(pastTenseSummary == null)
+         {
+            pastTenseSummary = getStepSummary(tableName, fieldName, apiName, apiVersion, value, true);
+         }
+
+         return (pastTenseSummary);
+      }
+   }
+
+
+
    /*******************************************************************************
     ** Constructor
     **
@@ -82,6 +131,7 @@ public class UpdateInputRecordFieldStep extends WorkflowStepType implements Work
          .withIconUrl("data:image/svg+xml;base64,PHN2ZyB4bWxucz0iaHR0cDovL3d3dy53My5vcmcvMjAwMC9zdmciIHdpZHRoPSIyNCIgaGVpZ2h0PSIyNCIgdmlld0JveD0iMCAwIDI0IDI0Ij4KICAgPHBhdGggZD0iTTIyIDI0SDJ2LTRoMjB2NHpNMTMuMDYgNS4xOWwzLjc1IDMuNzVMNy43NSAxOEg0di0zLjc1bDkuMDYtOS4wNnptNC44MiAyLjY4LTMuNzUtMy43NSAxLjgzLTEuODNjLjM5LS4zOSAxLjAyLS4zOSAxLjQxIDBsMi4zNCAyLjM0Yy4zOS4zOS4zOSAxLjAyIDAgMS40MWwtMS44MyAxLjgzeiIvPgo8L3N2Zz4K")
          .withExecutor(new QCodeReference(getClass()))
          .withValidator(new QCodeReference(getClass()))
+         .withIsStateless(true)
          .withDescription("Update a value in a field on the record being processed")
          .withInputFields(List.of(
             new QFieldMetaData("fieldName", QFieldType.STRING)
@@ -105,13 +155,9 @@ public class UpdateInputRecordFieldStep extends WorkflowStepType implements Work
     ***************************************************************************/
    public static Optional<QFieldMetaData> getApiField(String fieldNameMaybeWithTableNamePrefix, String tableName, WorkflowRevision workflowRevision) throws QException
    {
-      String fieldName = (fieldNameMaybeWithTableNamePrefix.contains(".") ? fieldNameMaybeWithTableNamePrefix.substring(fieldNameMaybeWithTableNamePrefix.indexOf(".") + 1) : fieldNameMaybeWithTableNamePrefix);
-      GetTableApiFieldsOutput tableApiFieldsOutput = new GetTableApiFieldsAction().execute(new GetTableApiFieldsInput()
-         .withTableName(tableName)
-         .withApiName(workflowRevision.getApiName())
-         .withVersion(workflowRevision.getApiVersion()));
-      Optional<QFieldMetaData> foundField = tableApiFieldsOutput.getFields().stream().filter(f -> fieldName.equals(f.getName())).findFirst();
-      return foundField;
+      String                      fieldName      = (fieldNameMaybeWithTableNamePrefix.contains(".") ? fieldNameMaybeWithTableNamePrefix.substring(fieldNameMaybeWithTableNamePrefix.indexOf(".") + 1) : fieldNameMaybeWithTableNamePrefix);
+      Map<String, QFieldMetaData> tableApiFields = GetTableApiFieldsAction.getTableApiFieldMap(new GetTableApiFieldsAction.ApiNameVersionAndTableName(workflowRevision.getApiName(), workflowRevision.getApiVersion(), tableName));
+      return (Optional.ofNullable(tableApiFields.get(fieldName)));
    }
 
 
@@ -137,7 +183,14 @@ public class UpdateInputRecordFieldStep extends WorkflowStepType implements Work
          }
       }
 
-      return getStepSummary(workflowId, fieldName, apiName, apiVersion, value, false);
+      String tableName = null;
+      if(workflowId != null && StringUtils.hasContent(fieldName))
+      {
+         QRecord workflowRecord = GetAction.execute(Workflow.TABLE_NAME, workflowId);
+         tableName = workflowRecord == null ? null : workflowRecord.getValueString("tableName");
+      }
+
+      return getStepSummary(tableName, fieldName, apiName, apiVersion, value, false);
    }
 
 
@@ -145,7 +198,7 @@ public class UpdateInputRecordFieldStep extends WorkflowStepType implements Work
    /***************************************************************************
     **
     ***************************************************************************/
-   private String getStepSummary(Integer workflowId, String fieldName, String apiName, String apiVersion, String value, boolean isPastTense)
+   private static String getStepSummary(String tableName, String fieldName, String apiName, String apiVersion, String value, boolean isPastTense)
    {
       String         fieldLabel = null;
       QTableMetaData table      = null;
@@ -154,10 +207,9 @@ public class UpdateInputRecordFieldStep extends WorkflowStepType implements Work
       {
          try
          {
-            if(workflowId != null)
+            if(tableName != null)
             {
-               QRecord workflowRecord = GetAction.execute(Workflow.TABLE_NAME, workflowId);
-               table = QContext.getQInstance().getTable(workflowRecord.getValueString("tableName"));
+               table = QContext.getQInstance().getTable(tableName);
 
                WorkflowRevision workflowRevision = new WorkflowRevision().withApiName(apiName).withApiVersion(apiVersion);
                if(WorkflowStepUtils.useApi(workflowRevision))
@@ -216,33 +268,68 @@ public class UpdateInputRecordFieldStep extends WorkflowStepType implements Work
 
 
 
+   /***************************************************************************
+    * resolve the field to update (and set up the step's summary) once per
+    * revision - see {@link CompiledFieldUpdate}.
+    ***************************************************************************/
+   @Override
+   public Object compileInputValues(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext context) throws QException
+   {
+      return (compileFieldUpdate(inputValues, context));
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
    @Override
-   public WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext workflowExecutionContext) throws QException
+   public WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext context) throws QException
+   {
+      return (execute(step, inputValues, null, context));
+   }
+
+
+
+   /***************************************************************************
+    * set the value in the record - with the step's summary left to be built
+    * only if the run log is stored (see WorkflowStepOutput.ofLazyMessage).
+    ***************************************************************************/
+   @Override
+   public WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, Object compiledInputValues, WorkflowExecutionContext workflowExecutionContext) throws QException
    {
       RecordWorkflowContext context = (RecordWorkflowContext) workflowExecutionContext;
 
+      CompiledFieldUpdate compiledFieldUpdate = compiledInputValues instanceof CompiledFieldUpdate c ? c : compileFieldUpdate(inputValues, context);
+
       QRecord record = context.record.get();
+      record.setValue(compiledFieldUpdate.actualFieldName, compiledFieldUpdate.value);
+      context.markRecordFieldUpdated(compiledFieldUpdate.actualFieldName);
 
-      String fieldName = ValueUtils.getValueAsString(inputValues.get("fieldName"));
-      String value     = ValueUtils.getValueAsString(inputValues.get("value"));
+      return WorkflowStepOutput.ofLazyMessage(compiledFieldUpdate.value, compiledFieldUpdate::getPastTenseSummary);
+   }
 
-      if(WorkflowStepUtils.useApi(context.getWorkflowRevision()))
-      {
-         String actualFieldName = getActualFieldNameThroughApi(fieldName, value, context);
-         record.setValue(actualFieldName, value);
-      }
-      else
-      {
-         record.setValue(fieldName, value);
-      }
 
-      context.doesRecordNeedUpdated.set(true);
 
-      String stepSummary = getStepSummary(context.getWorkflow().getId(), fieldName, context.getWorkflowRevision().getApiName(), context.getWorkflowRevision().getApiVersion(), value, true);
-      return new WorkflowStepOutput(value, stepSummary);
+   /***************************************************************************
+    * set the value in each context's record - all of which share one output
+    * (and so, one lazily-built summary).
+    ***************************************************************************/
+   @Override
+   public List<WorkflowStepOutput> executeBatch(WorkflowStep step, Map<String, Serializable> inputValues, Object compiledInputValues, List<WorkflowExecutionContext> contexts) throws QException
+   {
+      CompiledFieldUpdate compiledFieldUpdate = compiledInputValues instanceof CompiledFieldUpdate c ? c : compileFieldUpdate(inputValues, contexts.get(0));
+      WorkflowStepOutput  workflowStepOutput  = WorkflowStepOutput.ofLazyMessage(compiledFieldUpdate.value, compiledFieldUpdate::getPastTenseSummary);
+
+      List<WorkflowStepOutput> outputs = new ArrayList<>(contexts.size());
+      for(WorkflowExecutionContext workflowExecutionContext : contexts)
+      {
+         RecordWorkflowContext context = (RecordWorkflowContext) workflowExecutionContext;
+         context.record.get().setValue(compiledFieldUpdate.actualFieldName, compiledFieldUpdate.value);
+         context.markRecordFieldUpdated(compiledFieldUpdate.actualFieldName);
+         outputs.add(workflowStepOutput);
+      }
+      return (outputs);
    }
 
 
@@ -250,30 +337,52 @@ public class UpdateInputRecordFieldStep extends WorkflowStepType implements Work
    /***************************************************************************
     **
     ***************************************************************************/
-   private String getActualFieldNameThroughApi(String fieldName, String value, WorkflowExecutionContext context) throws QException
+   private CompiledFieldUpdate compileFieldUpdate(Map<String, Serializable> inputValues, WorkflowExecutionContext context) throws QException
    {
-      Workflow         workflow         = context.getWorkflow();
+      String           fieldName        = ValueUtils.getValueAsString(inputValues.get("fieldName"));
+      String           value            = ValueUtils.getValueAsString(inputValues.get("value"));
+      String           tableName        = context.getWorkflow().getTableName();
       WorkflowRevision workflowRevision = context.getWorkflowRevision();
 
-      if(fieldName.contains("."))
+      String actualFieldName = WorkflowStepUtils.useApi(workflowRevision) ? getActualFieldNameThroughApi(fieldName, value, tableName, workflowRevision) : fieldName;
+      return (new CompiledFieldUpdate(actualFieldName, value, tableName, fieldName, workflowRevision.getApiName(), workflowRevision.getApiVersion()));
+   }
+
+
+
+   /***************************************************************************
+    ** map a field name from a revision's API version to the table's actual
+    ** field name (via the instance's RecordWorkflowApiTranslationCache).
+    ***************************************************************************/
+   private static String getActualFieldNameThroughApi(String fieldName, String value, String tableName, WorkflowRevision workflowRevision) throws QException
+   {
+      return (WorkflowsRegistry.of(QContext.getQInstance()).getRecordWorkflowApiTranslationCache()
+         .getActualFieldName(workflowRevision.getApiName(), workflowRevision.getApiVersion(), tableName, fieldName, value));
+   }
+
+
+
+   /***************************************************************************
+    * the field this step updates - so that if something else changes it, the
+    * workflow runs again (e.g., to put it back).
+    ***************************************************************************/
+   @Override
+   public Set<String> getFieldDependencies(Map<String, Serializable> inputValues, QRecord workflowRevision, QRecord workflow) throws QException
+   {
+      String fieldName = ValueUtils.getValueAsString(inputValues.get("fieldName"));
+      if(!StringUtils.hasContent(fieldName))
       {
-         /////////////////////////////////////////////////////////////////
-         // field names from the PVS are always qualified by table name //
-         /////////////////////////////////////////////////////////////////
-         fieldName = fieldName.substring(fieldName.indexOf(".") + 1);
+         return (null);
       }
 
-      JSONObject apiRecordToUpdate = new JSONObject();
-      apiRecordToUpdate.put(fieldName, value);
-      QRecord recordToUpdate = QRecordApiAdapter.apiJsonObjectToQRecord(apiRecordToUpdate, workflow.getTableName(), workflowRevision.getApiName(), workflowRevision.getApiVersion(), false);
-
-      Iterator<String> iterator = recordToUpdate.getValues().keySet().iterator();
-      if(iterator.hasNext())
+      String           tableName           = workflow.getValueString("tableName");
+      WorkflowRevision revision            = new WorkflowRevision(workflowRevision);
+      if(WorkflowStepUtils.useApi(revision))
       {
-         return (iterator.next());
+         return (Set.of(getActualFieldNameThroughApi(fieldName, ValueUtils.getValueAsString(inputValues.get("value")), tableName, revision)));
       }
 
-      throw (new QException("Couldn't find field %s in API: %s Version: %s".formatted(fieldName, workflowRevision.getApiName(), workflowRevision.getApiVersion())));
+      return (Set.of(fieldName.startsWith(tableName + ".") ? fieldName.substring(tableName.length() + 1) : fieldName));
    }
 
 
@@ -112,7 +112,7 @@ public class Workflow extends QRecordEntity implements Serializable
             .withRecordLabelFields("name")
             .withSection(SectionFactory.defaultT1("id", "name"))
             .withSection(SectionFactory.customT2("workflowEditorWidget", new QIcon("account_tree")).withLabel("Workflow Steps").withWidgetName(WorkflowEditorWidget.NAME))
-            .withSection(SectionFactory.defaultT2("workflowTypeName", "tableName", "currentWorkflowRevisionId"))
+            .withSection(SectionFactory.defaultT2("workflowTypeName", "tableName", "currentWorkflowRevisionId", "runLogLevelId", "skipUnchangedRecordsForTableTriggers"))
             .withSection(SectionFactory.customT2("revisions", new QIcon("schema")).withWidgetName(revisionsChildJoinName))
             .withSection(SectionFactory.customT2("runLogs", new QIcon("receipt_long")).withWidgetName(runLogsChildJoinName))
             .withSection(SectionFactory.customT2("testScenarios", new QIcon("science")).withWidgetName(testScenariosChildJoinName))
@@ -161,6 +161,12 @@ public class Workflow extends QRecordEntity implements Serializable
    @QField(isEditable = false, possibleValueSourceName = WorkflowRevision.TABLE_NAME)
    private Integer currentWorkflowRevisionId;
 
+   @QField(possibleValueSourceName = WorkflowRunLogLevel.NAME, label = "Run Log Level")
+   private Integer runLogLevelId;
+
+   @QField(label = "Skip Unchanged Records for Table Triggers")
+   private Boolean skipUnchangedRecordsForTableTriggers;
+
    @QField(isEditable = false)
    private Instant createDate;
 
@@ -281,6 +287,90 @@ public class Workflow extends QRecordEntity implements Serializable
 
 
 
+   /*******************************************************************************
+    * Getter for runLogLevelId
+    * @see #withRunLogLevelId(Integer)
+    *******************************************************************************/
+   public Integer getRunLogLevelId()
+   {
+      return (this.runLogLevelId);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for runLogLevelId
+    * @see #withRunLogLevelId(Integer)
+    *******************************************************************************/
+   public void setRunLogLevelId(Integer runLogLevelId)
+   {
+      this.runLogLevelId = runLogLevelId;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for runLogLevelId
+    *
+    * @param runLogLevelId
+    * id of a {@link WorkflowRunLogLevel}, controlling how runs of this workflow
+    * are logged.  If null, the WorkflowsQBitConfig's defaultRunLogLevel is used.
+    *
+    * @return this
+    *******************************************************************************/
+   public Workflow withRunLogLevelId(Integer runLogLevelId)
+   {
+      this.runLogLevelId = runLogLevelId;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for skipUnchangedRecordsForTableTriggers
+    * @see #withSkipUnchangedRecordsForTableTriggers(Boolean)
+    *******************************************************************************/
+   public Boolean getSkipUnchangedRecordsForTableTriggers()
+   {
+      return (this.skipUnchangedRecordsForTableTriggers);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for skipUnchangedRecordsForTableTriggers
+    * @see #withSkipUnchangedRecordsForTableTriggers(Boolean)
+    *******************************************************************************/
+   public void setSkipUnchangedRecordsForTableTriggers(Boolean skipUnchangedRecordsForTableTriggers)
+   {
+      this.skipUnchangedRecordsForTableTriggers = skipUnchangedRecordsForTableTriggers;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for skipUnchangedRecordsForTableTriggers
+    *
+    * @param skipUnchangedRecordsForTableTriggers
+    * Opt in to table triggers skipping this workflow for a record if none of
+    * the fields that its current revision depends on (see
+    * WorkflowRevision.fieldDependencies) have changed since the workflow last
+    * ran against the record (in this server - see TableTriggerChangeDetector).
+    * Only set for workflows whose runs are idempotent given those fields (i.e.,
+    * that would make no difference running again against the same values, and
+    * have no side effects beyond the record itself).  Off by default - so
+    * every triggered record is ran.
+    *
+    * @return this
+    *******************************************************************************/
+   public Workflow withSkipUnchangedRecordsForTableTriggers(Boolean skipUnchangedRecordsForTableTriggers)
+   {
+      this.skipUnchangedRecordsForTableTriggers = skipUnchangedRecordsForTableTriggers;
+      return (this);
+   }
+
+
+
    /*******************************************************************************
     ** Getter for createDate
     *******************************************************************************/
@@ -27,6 +27,8 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import com.kingsrook.qbits.workflows.metadata.WorkflowRevisionViewerWidget;
+import com.kingsrook.qbits.workflows.tables.WorkflowPlanCacheInvalidatingTableCustomizer;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterOrderBy;
 import com.kingsrook.qqq.backend.core.model.data.QAssociation;
@@ -34,6 +36,7 @@ import com.kingsrook.qqq.backend.core.model.data.QField;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.model.data.QRecordEntity;
 import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
 import com.kingsrook.qqq.backend.core.model.metadata.dashboard.QWidgetMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.ValueTooLongBehavior;
 import com.kingsrook.qqq.backend.core.model.metadata.joins.QJoinMetaData;
@@ -81,6 +84,8 @@ public class WorkflowRevision extends QRecordEntity implements Serializable
    public static final String ASSOCIATION_NAME_WORKFLOW_STEP = "steps";
    public static final String ASSOCIATION_NAME_WORKFLOW_LINK = "links";
 
+   public static final int FIELD_DEPENDENCIES_MAX_LENGTH = 2000;
+
 
 
    /***************************************************************************
@@ -107,7 +112,7 @@ public class WorkflowRevision extends QRecordEntity implements Serializable
             .withSection(SectionFactory.defaultT1("id", "workflowId", "versionNo"))
             .withSection(SectionFactory.customT2("workflowViewerWidget", new QIcon("account_tree")).withLabel("Workflow Steps").withWidgetName(WorkflowRevisionViewerWidget.NAME))
             .withSection(SectionFactory.defaultT2("apiName", "apiVersion").withName("api").withGridColumns(6))
-            .withSection(SectionFactory.defaultT2("commitMessage", "author", "startStepNo").withGridColumns(6))
+            .withSection(SectionFactory.defaultT2("commitMessage", "author", "startStepNo", "fieldDependencies").withGridColumns(6))
             .withSection(SectionFactory.customT2("runLogs", new QIcon("receipt_long")).withWidgetName(runLogsChildJoinName))
             .withSection(SectionFactory.customT2("steps", new QIcon("polyline")).withWidgetName(stepChildJoinName))
             .withSection(SectionFactory.customT2("links", new QIcon("link")).withWidgetName(linkChildJoinName))
@@ -115,6 +120,10 @@ public class WorkflowRevision extends QRecordEntity implements Serializable
             .withAssociation(new Association().withName(ASSOCIATION_NAME_WORKFLOW_STEP).withAssociatedTableName(WorkflowStep.TABLE_NAME).withJoinName(stepChildJoinName))
             .withAssociation(new Association().withName(ASSOCIATION_NAME_WORKFLOW_LINK).withAssociatedTableName(WorkflowLink.TABLE_NAME).withJoinName(linkChildJoinName));
 
+         table.withCustomizer(TableCustomizers.POST_INSERT_RECORD, new QCodeReference(WorkflowPlanCacheInvalidatingTableCustomizer.class));
+         table.withCustomizer(TableCustomizers.POST_UPDATE_RECORD, new QCodeReference(WorkflowPlanCacheInvalidatingTableCustomizer.class));
+         table.withCustomizer(TableCustomizers.POST_DELETE_RECORD, new QCodeReference(WorkflowPlanCacheInvalidatingTableCustomizer.class));
+
          return (table);
       }
    }
@@ -165,6 +174,9 @@ public class WorkflowRevision extends QRecordEntity implements Serializable
    @QField(maxLength = 100, valueTooLongBehavior = ValueTooLongBehavior.TRUNCATE_ELLIPSIS)
    private String author;
 
+   @QField(maxLength = FIELD_DEPENDENCIES_MAX_LENGTH, valueTooLongBehavior = ValueTooLongBehavior.ERROR, isEditable = false)
+   private String fieldDependencies;
+
    @QField(isEditable = false)
    private Instant createDate;
 
@@ -508,6 +520,49 @@ public class WorkflowRevision extends QRecordEntity implements Serializable
 
 
 
+   /*******************************************************************************
+    * Getter for fieldDependencies
+    * @see #withFieldDependencies(String)
+    *******************************************************************************/
+   public String getFieldDependencies()
+   {
+      return (this.fieldDependencies);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for fieldDependencies
+    * @see #withFieldDependencies(String)
+    *******************************************************************************/
+   public void setFieldDependencies(String fieldDependencies)
+   {
+      this.fieldDependencies = fieldDependencies;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for fieldDependencies
+    *
+    * @param fieldDependencies
+    * comma-separated names of the fields of the workflow's table that the
+    * revision's steps read or write - derived from the steps when the revision
+    * is stored (see StoreNewWorkflowRevisionProcess).  null if they couldn't
+    * all be known (e.g., a filter on a joined table, or a step type that doesn't
+    * declare its dependencies), in which case table triggers always run the
+    * revision.
+    *
+    * @return this
+    *******************************************************************************/
+   public WorkflowRevision withFieldDependencies(String fieldDependencies)
+   {
+      this.fieldDependencies = fieldDependencies;
+      return (this);
+   }
+
+
+
    /*******************************************************************************
     ** Getter for apiName
     *******************************************************************************/
@@ -0,0 +1,131 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.model;
+
+
+import java.util.Objects;
+import com.kingsrook.qqq.backend.core.model.metadata.possiblevalues.PossibleValueEnum;
+import com.kingsrook.qqq.backend.core.model.metadata.producers.annotations.QMetaDataProducingPossibleValueEnum;
+
+
+/*******************************************************************************
+ ** WorkflowRunLogLevel - possible value enum - how much of a workflow's runs
+ ** get stored as WorkflowRunLog (and WorkflowRunLogStep) records:
+ **
+ ** - FULL:  every run, with all of its steps.
+ ** - ERRORS_ONLY:  only runs that had an error (with all of their steps).
+ ** - SUMMARY:  every run, but without steps.
+ ** - SAMPLED:  a random sample of runs (with all of their steps), plus, without
+ ** steps, any other run that had an error or was slow.
+ *******************************************************************************/
+@QMetaDataProducingPossibleValueEnum()
+public enum WorkflowRunLogLevel implements PossibleValueEnum<Integer>
+{
+   FULL(1, "Full"),
+   ERRORS_ONLY(2, "Errors Only"),
+   SUMMARY(3, "Summary (No Steps)"),
+   SAMPLED(4, "Sampled");
+
+   private final Integer id;
+   private final String  label;
+
+   public static final String NAME = "WorkflowRunLogLevel";
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   WorkflowRunLogLevel(Integer id, String label)
+   {
+      this.id = id;
+      this.label = label;
+   }
+
+
+
+   /*******************************************************************************
+    ** Get instance by id
+    **
+    *******************************************************************************/
+   public static WorkflowRunLogLevel getById(Integer id)
+   {
+      if(id == null)
+      {
+         return (null);
+      }
+
+      for(WorkflowRunLogLevel value : WorkflowRunLogLevel.values())
+      {
+         if(Objects.equals(value.id, id))
+         {
+            return (value);
+         }
+      }
+
+      return (null);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for id
+    **
+    *******************************************************************************/
+   public Integer getId()
+   {
+      return id;
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for label
+    **
+    *******************************************************************************/
+   public String getLabel()
+   {
+      return label;
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Override
+   public Integer getPossibleValueId()
+   {
+      return (getId());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Override
+   public String getPossibleValueLabel()
+   {
+      return (getLabel());
+   }
+}
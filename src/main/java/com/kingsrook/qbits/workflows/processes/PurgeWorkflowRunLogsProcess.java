@@ -0,0 +1,301 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.processes;
+
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import com.kingsrook.qbits.workflows.WorkflowsQBitConfig;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLogStep;
+import com.kingsrook.qqq.backend.core.actions.QBackendTransaction;
+import com.kingsrook.qqq.backend.core.actions.processes.BackendStep;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepInput;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepOutput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteOutput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterOrderBy;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
+import com.kingsrook.qqq.backend.core.model.metadata.processes.QBackendStepMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.processes.QFunctionInputMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.processes.QProcessMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.qbits.QBitComponentMetaDataProducer;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ ** process to purge old workflow run logs (and their steps), per the retention
+ ** settings in the WorkflowsQBitConfig (which are the defaults for this process's
+ ** input fields - so they can be overridden when running it manually):
+ **
+ ** - run logs without errors older than runLogRetentionDays.
+ ** - run logs with errors older than errorRunLogRetentionDays.
+ ** - run logs without errors beyond the newest maxRunLogsPerWorkflow for
+ ** each workflow.
+ **
+ ** Run logs are deleted in chunks (children first, then parents), each in its
+ ** own transaction - so an interrupted purge leaves only whole chunks deleted,
+ ** and running the process again just picks up where it left off.  An interrupt
+ ** stops the whole process (with an exception), not just the current phase -
+ ** as does a chunk that doesn't fully delete (e.g., a run log that a customizer
+ ** won't let be deleted), as re-querying would just find that chunk again.
+ *******************************************************************************/
+public class PurgeWorkflowRunLogsProcess extends QBitComponentMetaDataProducer<QProcessMetaData, WorkflowsQBitConfig> implements BackendStep
+{
+   public static final String NAME = "purgeWorkflowRunLogs";
+
+   public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+   private static final QLogger LOG = QLogger.getLogger(PurgeWorkflowRunLogsProcess.class);
+
+   private long noOfRunLogsDeleted     = 0;
+   private long noOfRunLogStepsDeleted = 0;
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public QProcessMetaData produce(QInstance qInstance) throws QException
+   {
+      WorkflowsQBitConfig config = getQBitConfig();
+
+      return new QProcessMetaData()
+         .withName(NAME)
+         .withLabel("Purge Workflow Run Logs")
+         .withSchedule(config.getRunLogPurgeSchedule())
+         .withStep(new QBackendStepMetaData()
+            .withName("execute")
+            .withCode(new QCodeReference(getClass()))
+            .withInputData(new QFunctionInputMetaData()
+               .withField(new QFieldMetaData("runLogRetentionDays", QFieldType.INTEGER).withDefaultValue(config.getRunLogRetentionDays()))
+               .withField(new QFieldMetaData("errorRunLogRetentionDays", QFieldType.INTEGER).withDefaultValue(config.getErrorRunLogRetentionDays()))
+               .withField(new QFieldMetaData("maxRunLogsPerWorkflow", QFieldType.INTEGER).withDefaultValue(config.getMaxRunLogsPerWorkflow()))
+               .withField(new QFieldMetaData("chunkSize", QFieldType.INTEGER).withDefaultValue(config.getRunLogPurgeChunkSize()))
+            ));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public void run(RunBackendStepInput runBackendStepInput, RunBackendStepOutput runBackendStepOutput) throws QException
+   {
+      Integer runLogRetentionDays      = runBackendStepInput.getValueInteger("runLogRetentionDays");
+      Integer errorRunLogRetentionDays = runBackendStepInput.getValueInteger("errorRunLogRetentionDays");
+      Integer maxRunLogsPerWorkflow    = runBackendStepInput.getValueInteger("maxRunLogsPerWorkflow");
+      int     chunkSize                = Objects.requireNonNullElse(runBackendStepInput.getValueInteger("chunkSize"), DEFAULT_CHUNK_SIZE);
+      long    startMillis              = System.currentTimeMillis();
+
+      try
+      {
+         if(runLogRetentionDays != null)
+         {
+            purge(new QQueryFilter()
+               .withCriteria(new QFilterCriteria("startTimestamp", QCriteriaOperator.LESS_THAN, daysAgo(runLogRetentionDays)))
+               .withCriteria(new QFilterCriteria("hadError", QCriteriaOperator.NOT_EQUALS_OR_IS_NULL, true)), chunkSize);
+         }
+
+         if(errorRunLogRetentionDays != null)
+         {
+            purge(new QQueryFilter()
+               .withCriteria(new QFilterCriteria("startTimestamp", QCriteriaOperator.LESS_THAN, daysAgo(errorRunLogRetentionDays)))
+               .withCriteria(new QFilterCriteria("hadError", QCriteriaOperator.EQUALS, true)), chunkSize);
+         }
+
+         if(maxRunLogsPerWorkflow != null)
+         {
+            purgeBeyondMaxPerWorkflow(maxRunLogsPerWorkflow, chunkSize);
+         }
+      }
+      finally
+      {
+         /////////////////////////////////////////////////////////////////////////
+         // report what was done - even if interrupted, as chunks that finished //
+         // before that are committed.                                          //
+         /////////////////////////////////////////////////////////////////////////
+         long   elapsedMillis      = Math.max(1, System.currentTimeMillis() - startMillis);
+         double runLogsPerSecond   = noOfRunLogsDeleted * 1000.0 / elapsedMillis;
+         LOG.info("Purged workflow run logs", logPair("runLogsDeleted", noOfRunLogsDeleted), logPair("runLogStepsDeleted", noOfRunLogStepsDeleted), logPair("elapsedMillis", elapsedMillis), logPair("runLogsPerSecond", String.format("%.1f", runLogsPerSecond)));
+
+         runBackendStepOutput.addValue("runLogsDeleted", noOfRunLogsDeleted);
+         runBackendStepOutput.addValue("runLogStepsDeleted", noOfRunLogStepsDeleted);
+         runBackendStepOutput.addValue("elapsedMillis", elapsedMillis);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * for each workflow, find the id of its newest run log (without errors) that
+    * is beyond the max to keep - and purge that one and all older ones.
+    ***************************************************************************/
+   private void purgeBeyondMaxPerWorkflow(int maxRunLogsPerWorkflow, int chunkSize) throws QException
+   {
+      List<QRecord> workflows = QueryAction.execute(Workflow.TABLE_NAME, new QQueryFilter());
+      for(QRecord workflow : workflows)
+      {
+         Integer workflowId = workflow.getValueInteger("id");
+         List<QRecord> firstRunLogToPurge = new QueryAction().execute(new QueryInput(WorkflowRunLog.TABLE_NAME).withFilter(new QQueryFilter()
+               .withCriteria(new QFilterCriteria("workflowId", QCriteriaOperator.EQUALS, workflowId))
+               .withCriteria(new QFilterCriteria("hadError", QCriteriaOperator.NOT_EQUALS_OR_IS_NULL, true))
+               .withOrderBy(new QFilterOrderBy("id", false))
+               .withSkip(maxRunLogsPerWorkflow)
+               .withLimit(1)))
+            .getRecords();
+
+         if(!firstRunLogToPurge.isEmpty())
+         {
+            purge(new QQueryFilter()
+               .withCriteria(new QFilterCriteria("workflowId", QCriteriaOperator.EQUALS, workflowId))
+               .withCriteria(new QFilterCriteria("hadError", QCriteriaOperator.NOT_EQUALS_OR_IS_NULL, true))
+               .withCriteria(new QFilterCriteria("id", QCriteriaOperator.LESS_THAN_OR_EQUALS, firstRunLogToPurge.get(0).getValue("id"))), chunkSize);
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    * delete all run logs matching a filter, one chunk at a time, oldest first.
+    ***************************************************************************/
+   private void purge(QQueryFilter filter, int chunkSize) throws QException
+   {
+      filter.withOrderBy(new QFilterOrderBy("id")).withLimit(chunkSize);
+      while(true)
+      {
+         if(Thread.currentThread().isInterrupted())
+         {
+            //////////////////////////////////////////////////////////////////////
+            // throw (rather than return), so run doesn't go on to its next     //
+            // phase - leave the interrupt flag set, for whoever is running us. //
+            //////////////////////////////////////////////////////////////////////
+            LOG.info("Interrupted while purging workflow run logs - stopping");
+            throw (new QException("Interrupted while purging workflow run logs"));
+         }
+
+         List<Serializable> runLogIds = new QueryAction().execute(new QueryInput(WorkflowRunLog.TABLE_NAME).withFilter(filter))
+            .getRecords().stream()
+            .map(r -> r.getValue("id"))
+            .toList();
+
+         if(runLogIds.isEmpty())
+         {
+            return;
+         }
+
+         deleteChunk(runLogIds);
+
+         if(runLogIds.size() < chunkSize)
+         {
+            return;
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    * in one transaction, delete a chunk of run logs - their steps first.  If
+    * any of the run logs aren't deleted, roll back and throw - as purge would
+    * otherwise keep re-querying (and failing to delete) the same chunk.
+    ***************************************************************************/
+   private void deleteChunk(List<Serializable> runLogIds) throws QException
+   {
+      DeleteInput stepsDeleteInput = new DeleteInput(WorkflowRunLogStep.TABLE_NAME)
+         .withQueryFilter(new QQueryFilter(new QFilterCriteria("workflowRunLogId", QCriteriaOperator.IN, runLogIds)));
+
+      QBackendTransaction transaction = QBackendTransaction.openFor(stepsDeleteInput);
+      try
+      {
+         DeleteOutput stepsDeleteOutput = new DeleteAction().execute(stepsDeleteInput.withTransaction(transaction));
+         DeleteOutput runLogsDeleteOutput = new DeleteAction().execute(new DeleteInput(WorkflowRunLog.TABLE_NAME)
+            .withPrimaryKeys(runLogIds)
+            .withTransaction(transaction));
+
+         int noOfRunLogsInChunkDeleted = Objects.requireNonNullElse(runLogsDeleteOutput.getDeletedRecordCount(), 0);
+         if(CollectionUtils.nullSafeHasContents(runLogsDeleteOutput.getRecordsWithErrors()) || noOfRunLogsInChunkDeleted < runLogIds.size())
+         {
+            String firstError = CollectionUtils.nonNullList(runLogsDeleteOutput.getRecordsWithErrors()).stream()
+               .flatMap(r -> CollectionUtils.nonNullList(r.getErrors()).stream())
+               .map(error -> error.getMessage())
+               .findFirst().orElse(null);
+            LOG.warn("Not all workflow run logs in chunk were deleted - stopping purge", logPair("chunkSize", runLogIds.size()), logPair("noDeleted", noOfRunLogsInChunkDeleted), logPair("firstError", firstError));
+            throw (new QException("Error purging workflow run logs: only " + noOfRunLogsInChunkDeleted + " of " + runLogIds.size() + " in a chunk were deleted" + (firstError == null ? "" : " (" + firstError + ")")));
+         }
+
+         if(transaction != null)
+         {
+            transaction.commit();
+         }
+
+         noOfRunLogStepsDeleted += Objects.requireNonNullElse(stepsDeleteOutput.getDeletedRecordCount(), 0);
+         noOfRunLogsDeleted += noOfRunLogsInChunkDeleted;
+      }
+      catch(Exception e)
+      {
+         if(transaction != null)
+         {
+            transaction.rollback();
+         }
+         throw (e instanceof QException qe ? qe : new QException("Error purging workflow run logs", e));
+      }
+      finally
+      {
+         if(transaction != null)
+         {
+            transaction.close();
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static Instant daysAgo(int days)
+   {
+      return (Instant.now().minus(days, ChronoUnit.DAYS));
+   }
+
+}
@@ -27,6 +27,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.kingsrook.qbits.workflows.definition.WorkflowStepType;
 import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
@@ -36,7 +38,6 @@ import com.kingsrook.qbits.workflows.model.WorkflowLink;
 import com.kingsrook.qbits.workflows.model.WorkflowRevision;
 import com.kingsrook.qbits.workflows.model.WorkflowStep;
 import com.kingsrook.qqq.backend.core.actions.QBackendTransaction;
-import com.kingsrook.qqq.backend.core.actions.customizers.QCodeLoader;
 import com.kingsrook.qqq.backend.core.actions.processes.BackendStep;
 import com.kingsrook.qqq.backend.core.actions.tables.AggregateAction;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
@@ -187,6 +188,7 @@ public class StoreNewWorkflowRevisionProcess implements BackendStep, MetaDataPro
 
          QRecord workflowRevisionRecord = workflowRevision.toQRecord();
          setAdditionalValuesInWorkflowRevisionRecord(transaction, runBackendStepInput, workflowRevisionRecord);
+         workflowRevisionRecord.setValue("fieldDependencies", getFieldDependencies(workflowSteps, workflowRevisionRecord, workflowRecord));
 
          workflowRevisionInsertInput
             .withTransaction(transaction)
@@ -233,10 +235,9 @@ public class StoreNewWorkflowRevisionProcess implements BackendStep, MetaDataPro
                ///////////////////////////////////
                // run validator if there is one //
                ///////////////////////////////////
-               QCodeReference validatorCodeReference = workflowStepType.getValidator();
-               if(validatorCodeReference != null)
+               WorkflowStepValidatorInterface validator = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowStepValidator(workflowStepType);
+               if(validator != null)
                {
-                  WorkflowStepValidatorInterface validator = QCodeLoader.getAdHoc(WorkflowStepValidatorInterface.class, validatorCodeReference);
                   validator.validate(step, inputValues, workflowRevisionRecord, workflowRecord, errors);
                }
             }
@@ -306,6 +307,39 @@ public class StoreNewWorkflowRevisionProcess implements BackendStep, MetaDataPro
 
 
 
+   /***************************************************************************
+    * union of the field dependencies of all of the revision's steps (see
+    * WorkflowStepType.getFieldDependencies), sorted & comma-separated - or null
+    * if any step's dependencies can't be known (or they don't fit in the field).
+    ***************************************************************************/
+   protected String getFieldDependencies(List<WorkflowStep> workflowSteps, QRecord workflowRevisionRecord, QRecord workflowRecord)
+   {
+      Set<String> fieldDependencies = new TreeSet<>();
+      for(WorkflowStep step : workflowSteps)
+      {
+         try
+         {
+            WorkflowStepType workflowStepType      = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowStepType(step.getWorkflowStepTypeName());
+            Set<String>      stepFieldDependencies = workflowStepType == null ? null : workflowStepType.getFieldDependencies(ValueUtils.getValueAsMap(step.getInputValuesJson()), workflowRevisionRecord, workflowRecord);
+            if(stepFieldDependencies == null)
+            {
+               return (null);
+            }
+            fieldDependencies.addAll(stepFieldDependencies);
+         }
+         catch(Exception e)
+         {
+            LOG.info("Error getting field dependencies for step", e, logPair("stepTypeName", step.getWorkflowStepTypeName()), logPair("workflowId", workflowRecord.getValue("id")));
+            return (null);
+         }
+      }
+
+      String joined = String.join(",", fieldDependencies);
+      return (fieldDependencies.isEmpty() || joined.length() > WorkflowRevision.FIELD_DEPENDENCIES_MAX_LENGTH ? null : joined);
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
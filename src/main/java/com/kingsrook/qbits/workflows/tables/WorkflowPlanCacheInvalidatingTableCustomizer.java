@@ -0,0 +1,115 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.tables;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.model.WorkflowRevision;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+
+
+/*******************************************************************************
+ * post-insert/update/delete customizer for the workflowRevision, workflowStep,
+ * and workflowLink tables - which evicts any compiled WorkflowPlans for the
+ * affected revisions from the WorkflowPlanCache.
+ *******************************************************************************/
+public class WorkflowPlanCacheInvalidatingTableCustomizer implements TableCustomizerInterface
+{
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public List<QRecord> postInsert(InsertInput insertInput, List<QRecord> records) throws QException
+   {
+      invalidate(insertInput.getTableName(), records);
+      return (records);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public List<QRecord> postUpdate(UpdateInput updateInput, List<QRecord> records, Optional<List<QRecord>> oldRecordList) throws QException
+   {
+      List<QRecord> allRecords = new ArrayList<>(CollectionUtils.nonNullList(records));
+      oldRecordList.ifPresent(allRecords::addAll);
+      invalidate(updateInput.getTableName(), allRecords);
+      return (records);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public List<QRecord> postDelete(DeleteInput deleteInput, List<QRecord> records) throws QException
+   {
+      invalidate(deleteInput.getTableName(), records);
+      return (records);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void invalidate(String tableName, List<QRecord> records)
+   {
+      WorkflowsRegistry workflowsRegistry = WorkflowsRegistry.of(QContext.getQInstance());
+      if(workflowsRegistry == null)
+      {
+         return;
+      }
+
+      String fieldName = WorkflowRevision.TABLE_NAME.equals(tableName) ? "id" : "workflowRevisionId";
+      for(QRecord record : CollectionUtils.nonNullList(records))
+      {
+         Integer workflowRevisionId = record.getValueInteger(fieldName);
+         if(workflowRevisionId == null)
+         {
+            ///////////////////////////////////////////////////////////////////////////
+            // if we can't tell what revision a record is for (e.g., a partial       //
+            // update, or a delete by filter), then just drop all plans, to be safe. //
+            ///////////////////////////////////////////////////////////////////////////
+            workflowsRegistry.getWorkflowPlanCache().invalidateAll();
+            return;
+         }
+
+         workflowsRegistry.getWorkflowPlanCache().invalidate(workflowRevisionId);
+      }
+   }
+
+}
@@ -32,4 +32,17 @@ import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
 public interface WorkflowTracerInterface
 {
    Serializable handleWorkflowFinish(WorkflowRunLog workflowRunLog);
+
+
+
+   /***************************************************************************
+    * for tracers that don't store run logs immediately (e.g., the
+    * WriteBehindWorkflowRunLogTracer) - store any that are pending, before
+    * returning.  Callers that need run log ids (e.g., to report them) should
+    * call this after their runs finish.  Default implementation is a no-op.
+    ***************************************************************************/
+   default void flush()
+   {
+   }
+
 }
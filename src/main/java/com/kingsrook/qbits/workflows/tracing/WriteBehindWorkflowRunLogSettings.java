@@ -0,0 +1,38 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.tracing;
+
+
+/*******************************************************************************
+ * instance-wide settings for the {@link WriteBehindWorkflowRunLogTracer} (from
+ * the WorkflowsQBitConfig) - applied to the one instance of that tracer that
+ * the WorkflowsRegistry shares across all runs.
+ *
+ * @param batchSize number of run logs to insert at once.
+ * @param maxDelayMillis longest time to wait for a full batch.
+ * @param overflowPolicy what to do when a workflow finishes while the queue is
+ * full.
+ *******************************************************************************/
+public record WriteBehindWorkflowRunLogSettings(int batchSize, long maxDelayMillis, WriteBehindWorkflowRunLogTracer.OverflowPolicy overflowPolicy)
+{
+   public static final WriteBehindWorkflowRunLogSettings DEFAULT = new WriteBehindWorkflowRunLogSettings(WriteBehindWorkflowRunLogTracer.DEFAULT_BATCH_SIZE, WriteBehindWorkflowRunLogTracer.DEFAULT_MAX_DELAY_MILLIS, WriteBehindWorkflowRunLogTracer.OverflowPolicy.BLOCK);
+}
@@ -0,0 +1,468 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.tracing;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.context.CapturedContext;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertOutput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.session.QSystemUserSession;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ ** write-behind implementation of a workflow run log tracer.  Like the
+ ** WorkflowRunLogTracer, it stores into the workflowRunLog and workflowRunLogStep
+ ** tables - but instead of inserting each run log as its workflow finishes (on
+ ** the thread running the workflow), run logs are put in a bounded queue, and
+ ** inserted in batches (multi-row inserts) by a background thread - whenever
+ ** batchSize run logs are waiting, or after maxDelayMillis.
+ **
+ ** Run logs don't have ids until they are stored - so handleWorkflowFinish
+ ** returns null, and callers that need ids must call flush() after their runs
+ ** (which stores everything that's queued, setting ids on the run log objects).
+ **
+ ** If the queue fills up, the overflowPolicy applies:  BLOCK (the default)
+ ** makes the caller store the queued run logs itself (i.e., backpressure), while
+ ** DROP discards the new run log (counted in getDroppedCount).  If a batch
+ ** fails to insert, its run logs are inserted one at a time - so one bad run
+ ** log only loses itself (which is also counted in getDroppedCount).
+ **
+ ** A batch holds run logs from any runs (i.e., any users' sessions) - so all
+ ** inserts (on the background thread, or on a caller's, when it flushes or
+ ** blocks) run under a system user session, never the session of whichever
+ ** run happened to start the background thread or fill the queue.
+ **
+ ** The background thread only runs while there are run logs waiting, so an
+ ** idle tracer doesn't hold a thread.
+ **
+ ** An instance is meant to be shared by all runs in a QInstance - so get it
+ ** from WorkflowsRegistry.getWorkflowTracer, which holds one instance (per code
+ ** reference), configured per the WorkflowsQBitConfig's runLogWriteBehind*
+ ** settings.
+ *******************************************************************************/
+public class WriteBehindWorkflowRunLogTracer implements WorkflowTracerInterface
+{
+   private static final QLogger LOG = QLogger.getLogger(WriteBehindWorkflowRunLogTracer.class);
+
+   public static final int  DEFAULT_MAX_QUEUE_SIZE   = 10_000;
+   public static final int  DEFAULT_BATCH_SIZE       = 100;
+   public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+
+
+   /***************************************************************************
+    * what to do with a run log that finishes while the queue is full.
+    ***************************************************************************/
+   public enum OverflowPolicy
+   {
+      BLOCK,
+      DROP
+   }
+
+
+
+   private int            batchSize      = DEFAULT_BATCH_SIZE;
+   private long           maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+   private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+   private final BlockingQueue<WorkflowRunLog> queue;
+   private final Object                        writeLock    = new Object();
+   private final AtomicLong                    droppedCount = new AtomicLong();
+
+   private boolean isFlusherRunning = false;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public WriteBehindWorkflowRunLogTracer()
+   {
+      this(DEFAULT_MAX_QUEUE_SIZE);
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public WriteBehindWorkflowRunLogTracer(int maxQueueSize)
+   {
+      this.queue = new ArrayBlockingQueue<>(maxQueueSize);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public Serializable handleWorkflowFinish(WorkflowRunLog workflowRunLog)
+   {
+      while(!queue.offer(workflowRunLog))
+      {
+         if(OverflowPolicy.DROP.equals(overflowPolicy))
+         {
+            long dropped = droppedCount.incrementAndGet();
+            LOG.warn("Workflow run log queue is full - dropping run log", logPair("workflowId", workflowRunLog.getWorkflowId()), logPair("droppedCount", dropped));
+            return (null);
+         }
+
+         ///////////////////////////////////////////////////////////////////////
+         // BLOCK policy - write out what's queued on this thread, then retry //
+         ///////////////////////////////////////////////////////////////////////
+         writeQueuedRunLogs();
+      }
+
+      startFlusherIfNeeded();
+      if(queue.size() >= batchSize)
+      {
+         synchronized(queue)
+         {
+            queue.notifyAll();
+         }
+      }
+
+      return (null);
+   }
+
+
+
+   /***************************************************************************
+    * store all queued run logs now, on this thread - including waiting for any
+    * batch that the background thread is in the middle of storing.
+    ***************************************************************************/
+   @Override
+   public void flush()
+   {
+      writeQueuedRunLogs();
+   }
+
+
+
+   /***************************************************************************
+    * start the background thread, unless it is already running.  It captures
+    * the calling thread's QInstance (but not its session - see the class doc).
+    ***************************************************************************/
+   private synchronized void startFlusherIfNeeded()
+   {
+      if(isFlusherRunning)
+      {
+         return;
+      }
+
+      isFlusherRunning = true;
+      QInstance qInstance = QContext.getQInstance();
+
+      Thread thread = new Thread(() -> runFlusher(qInstance), "workflow-run-log-writer");
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+
+
+   /***************************************************************************
+    * body of the background thread - wait for a batch to fill up (or the max
+    * delay to pass), write what's queued, and repeat, until the queue is empty.
+    ***************************************************************************/
+   private void runFlusher(QInstance qInstance)
+   {
+      QContext.init(qInstance, new QSystemUserSession());
+      try
+      {
+         while(true)
+         {
+            synchronized(queue)
+            {
+               if(queue.size() < batchSize)
+               {
+                  queue.wait(maxDelayMillis);
+               }
+            }
+
+            writeQueuedRunLogs();
+
+            //////////////////////////////////////////////////////////////////////
+            // stop if the queue is empty - checked under the same lock used to //
+            // start the thread, so a run log can't be left without a flusher.  //
+            //////////////////////////////////////////////////////////////////////
+            synchronized(this)
+            {
+               if(queue.isEmpty())
+               {
+                  isFlusherRunning = false;
+                  return;
+               }
+            }
+         }
+      }
+      catch(InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         synchronized(this)
+         {
+            isFlusherRunning = false;
+         }
+      }
+      finally
+      {
+         QContext.clear();
+      }
+   }
+
+
+
+   /***************************************************************************
+    * drain the queue, inserting its run logs in batches, under a system user
+    * session.  Runs under a lock, so that when a flush() returns, no other
+    * thread is still storing a batch that was queued before it.
+    ***************************************************************************/
+   private void writeQueuedRunLogs()
+   {
+      synchronized(writeLock)
+      {
+         QContext.withTemporaryContext(new CapturedContext(QContext.getQInstance(), new QSystemUserSession()), () ->
+         {
+            List<WorkflowRunLog> batch = new ArrayList<>();
+            while(queue.drainTo(batch, batchSize) > 0)
+            {
+               insertBatch(batch);
+               batch.clear();
+            }
+         });
+      }
+   }
+
+
+
+   /***************************************************************************
+    * insert a batch of run logs (and their steps, as an association), setting
+    * the inserted ids back on the run log objects.  If the insert fails, the
+    * batch's run logs are inserted one at a time, so only the bad ones are lost.
+    ***************************************************************************/
+   private void insertBatch(List<WorkflowRunLog> batch)
+   {
+      List<QRecord> insertedRecords;
+      try
+      {
+         insertedRecords = new InsertAction().execute(new InsertInput(WorkflowRunLog.TABLE_NAME).withRecordEntities(batch)).getRecords();
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error inserting batch of workflow run logs - inserting them one at a time", e, logPair("batchSize", batch.size()));
+         for(WorkflowRunLog workflowRunLog : batch)
+         {
+            insertOne(workflowRunLog);
+         }
+         return;
+      }
+
+      for(int i = 0; i < batch.size(); i++)
+      {
+         setIdOrCountDropped(batch.get(i), i < insertedRecords.size() ? insertedRecords.get(i) : null);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * insert a single run log - counting it as dropped if that fails.
+    ***************************************************************************/
+   private void insertOne(WorkflowRunLog workflowRunLog)
+   {
+      try
+      {
+         InsertOutput insertOutput = new InsertAction().execute(new InsertInput(WorkflowRunLog.TABLE_NAME).withRecordEntity(workflowRunLog));
+         setIdOrCountDropped(workflowRunLog, insertOutput.getRecords().isEmpty() ? null : insertOutput.getRecords().get(0));
+      }
+      catch(Exception e)
+      {
+         long dropped = droppedCount.incrementAndGet();
+         LOG.warn("Error inserting workflow run log - dropping it", e, logPair("workflowId", workflowRunLog.getWorkflowId()), logPair("droppedCount", dropped));
+      }
+   }
+
+
+
+   /***************************************************************************
+    * set the id of a run log from its inserted record - or, if it wasn't
+    * inserted (e.g., the insert gave it errors), count it as dropped.
+    ***************************************************************************/
+   private void setIdOrCountDropped(WorkflowRunLog workflowRunLog, QRecord insertedRecord)
+   {
+      if(insertedRecord == null || CollectionUtils.nullSafeHasContents(insertedRecord.getErrors()) || insertedRecord.getValue("id") == null)
+      {
+         long dropped = droppedCount.incrementAndGet();
+         LOG.warn("Workflow run log was not inserted - dropping it", logPair("workflowId", workflowRunLog.getWorkflowId()), logPair("droppedCount", dropped));
+         return;
+      }
+
+      workflowRunLog.setId(insertedRecord.getValueLong("id"));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for droppedCount - the number of run logs discarded under the DROP
+    ** overflowPolicy, plus those that failed to insert (even on their own).
+    *******************************************************************************/
+   public long getDroppedCount()
+   {
+      return (droppedCount.get());
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for batchSize
+    * @see #withBatchSize(int)
+    *******************************************************************************/
+   public int getBatchSize()
+   {
+      return (this.batchSize);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for batchSize
+    * @see #withBatchSize(int)
+    *******************************************************************************/
+   public void setBatchSize(int batchSize)
+   {
+      this.batchSize = batchSize;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for batchSize
+    *
+    * @param batchSize
+    * Number of run logs to insert at once - and the queue size at which the
+    * background thread writes without waiting for maxDelayMillis.  Default value
+    * is DEFAULT_BATCH_SIZE.
+    *
+    * @return this
+    *******************************************************************************/
+   public WriteBehindWorkflowRunLogTracer withBatchSize(int batchSize)
+   {
+      this.batchSize = batchSize;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for maxDelayMillis
+    * @see #withMaxDelayMillis(long)
+    *******************************************************************************/
+   public long getMaxDelayMillis()
+   {
+      return (this.maxDelayMillis);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for maxDelayMillis
+    * @see #withMaxDelayMillis(long)
+    *******************************************************************************/
+   public void setMaxDelayMillis(long maxDelayMillis)
+   {
+      this.maxDelayMillis = maxDelayMillis;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for maxDelayMillis
+    *
+    * @param maxDelayMillis
+    * Longest time the background thread waits for a full batch, before writing
+    * whatever run logs are queued.  Default value is DEFAULT_MAX_DELAY_MILLIS.
+    *
+    * @return this
+    *******************************************************************************/
+   public WriteBehindWorkflowRunLogTracer withMaxDelayMillis(long maxDelayMillis)
+   {
+      this.maxDelayMillis = maxDelayMillis;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    * Getter for overflowPolicy
+    * @see #withOverflowPolicy(OverflowPolicy)
+    *******************************************************************************/
+   public OverflowPolicy getOverflowPolicy()
+   {
+      return (this.overflowPolicy);
+   }
+
+
+
+   /*******************************************************************************
+    * Setter for overflowPolicy
+    * @see #withOverflowPolicy(OverflowPolicy)
+    *******************************************************************************/
+   public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+   {
+      this.overflowPolicy = overflowPolicy;
+   }
+
+
+
+   /*******************************************************************************
+    * Fluent setter for overflowPolicy
+    *
+    * @param overflowPolicy
+    * What to do when a workflow finishes while the queue is full: BLOCK (store
+    * queued run logs on the caller's thread, then enqueue - the default), or
+    * DROP (discard the new run log).
+    *
+    * @return this
+    *******************************************************************************/
+   public WriteBehindWorkflowRunLogTracer withOverflowPolicy(OverflowPolicy overflowPolicy)
+   {
+      this.overflowPolicy = overflowPolicy;
+      return (this);
+   }
+
+}
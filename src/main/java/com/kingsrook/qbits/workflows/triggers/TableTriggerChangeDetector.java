@@ -0,0 +1,205 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.triggers;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import com.kingsrook.qqq.backend.core.utils.ValueUtils;
+
+
+/*******************************************************************************
+ * remembers, for each workflow revision & record that table triggers have ran
+ * the revision against, the values of the fields the revision depends on (see
+ * WorkflowRevision.fieldDependencies), as they were after the run - so that
+ * when a trigger fires for the record again, the
+ * WorkflowCustomTableTriggerRecordAutomationHandler can skip the run if none of
+ * those fields have changed since.
+ *
+ * That is only correct for workflows whose runs are idempotent given those
+ * fields: the dependencies only cover the main record's fields, so a run could
+ * still differ (e.g., per the time, or a custom step reading other data), or
+ * need to happen again (e.g., to re-send a notification).  So it is only done
+ * for workflows that opt in (Workflow.skipUnchangedRecordsForTableTriggers).
+ *
+ * QQQ table automations don't carry a record's pre-update values - so this
+ * (bounded, least-recently-used, in-memory) cache stands in for them.  It is a
+ * per-JVM snapshot: it only knows about runs in this server (since it started)
+ * - so a record that isn't in it (e.g., after a restart, after eviction, or
+ * when last ran on another server) is always ran.  Lives in the
+ * WorkflowsRegistry (so, one per QInstance).
+ *******************************************************************************/
+public class TableTriggerChangeDetector
+{
+   public static final int DEFAULT_MAX_SIZE = 10_000;
+
+   private final int maxSize;
+
+   private final Map<SnapshotKey, List<String>> snapshots = new LinkedHashMap<>(16, 0.75f, true)
+   {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<SnapshotKey, List<String>> eldest)
+      {
+         return (size() > maxSize);
+      }
+   };
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private record SnapshotKey(Integer workflowRevisionId, String primaryKey)
+   {
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public TableTriggerChangeDetector()
+   {
+      this(DEFAULT_MAX_SIZE);
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public TableTriggerChangeDetector(int maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+
+
+   /***************************************************************************
+    * get the records whose dependency field values differ from what was last
+    * remembered for them (or that have nothing remembered) - i.e., the ones the
+    * workflow revision needs to run against.
+    ***************************************************************************/
+   public List<QRecord> getChangedRecords(Integer workflowRevisionId, List<String> fieldNames, String primaryKeyFieldName, List<QRecord> records)
+   {
+      List<QRecord> changedRecords = new ArrayList<>();
+      for(QRecord record : CollectionUtils.nonNullList(records))
+      {
+         List<String> values = getSnapshotValues(record, fieldNames);
+         List<String> lastValues;
+         synchronized(this)
+         {
+            lastValues = values == null ? null : snapshots.get(makeKey(workflowRevisionId, record, primaryKeyFieldName));
+         }
+
+         if(lastValues == null || !Objects.equals(values, lastValues))
+         {
+            changedRecords.add(record);
+         }
+      }
+
+      return (changedRecords);
+   }
+
+
+
+   /***************************************************************************
+    * remember the dependency field values of a record that the workflow
+    * revision has ran against.
+    ***************************************************************************/
+   public void remember(Integer workflowRevisionId, List<String> fieldNames, String primaryKeyFieldName, QRecord record)
+   {
+      SnapshotKey  key    = makeKey(workflowRevisionId, record, primaryKeyFieldName);
+      List<String> values = getSnapshotValues(record, fieldNames);
+      synchronized(this)
+      {
+         if(key.primaryKey() == null || values == null || maxSize <= 0)
+         {
+            snapshots.remove(key);
+            return;
+         }
+
+         snapshots.put(key, values);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** values of the fields, as strings (so a value that was set by a workflow
+    ** step, e.g., as a string, matches the same value as read from the backend)
+    ** - or null if the record doesn't have all of the fields.
+    ***************************************************************************/
+   private static List<String> getSnapshotValues(QRecord record, List<String> fieldNames)
+   {
+      List<String> values = new ArrayList<>();
+      for(String fieldName : fieldNames)
+      {
+         if(!record.getValues().containsKey(fieldName))
+         {
+            return (null);
+         }
+         values.add(ValueUtils.getValueAsString(record.getValue(fieldName)));
+      }
+      return (values);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static SnapshotKey makeKey(Integer workflowRevisionId, QRecord record, String primaryKeyFieldName)
+   {
+      Serializable primaryKey = record.getValue(primaryKeyFieldName);
+      return (new SnapshotKey(workflowRevisionId, primaryKey == null ? null : ValueUtils.getValueAsString(primaryKey)));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized void invalidateAll()
+   {
+      snapshots.clear();
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized int size()
+   {
+      return (snapshots.size());
+   }
+
+}
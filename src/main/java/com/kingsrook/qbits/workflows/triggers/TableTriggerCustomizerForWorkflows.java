@@ -28,12 +28,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
 import com.kingsrook.qbits.workflows.model.Workflow;
 import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.model.actions.AbstractActionInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
 import com.kingsrook.qqq.backend.core.model.savedviews.SavedView;
@@ -59,6 +62,8 @@ public class TableTriggerCustomizerForWorkflows implements TableCustomizerInterf
       QRecord                              emptyRecord  = new QRecord();
       Optional<Map<Serializable, QRecord>> oldRecordMap = oldRecordListToMap("id", oldRecordList);
 
+      invalidateWorkflowIdCache(records);
+
       for(QRecord record : CollectionUtils.nonNullList(records))
       {
          QRecord oldRecord = oldRecordMap.orElse(Collections.emptyMap()).getOrDefault(record.getValue("id"), emptyRecord);
@@ -90,6 +95,62 @@ public class TableTriggerCustomizerForWorkflows implements TableCustomizerInterf
 
 
 
+   /***************************************************************************
+    ** invalidate again after an update is stored - in case a lookup re-cached
+    ** the old workflowId after our pre-update call.  This narrows the window,
+    ** but doesn't close it (the update may not be committed yet) - a value
+    ** cached in it lasts until the cache's ttl expires it.
+    ***************************************************************************/
+   @Override
+   public List<QRecord> postUpdate(UpdateInput updateInput, List<QRecord> records, Optional<List<QRecord>> oldRecordList) throws QException
+   {
+      invalidateWorkflowIdCache(records);
+      return (records);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public List<QRecord> postDelete(DeleteInput deleteInput, List<QRecord> records) throws QException
+   {
+      invalidateWorkflowIdCache(records);
+      return (records);
+   }
+
+
+
+   /***************************************************************************
+    ** evict the given triggers from the WorkflowsRegistry's cache of trigger
+    ** workflowIds.
+    ***************************************************************************/
+   private void invalidateWorkflowIdCache(List<QRecord> records)
+   {
+      WorkflowsRegistry workflowsRegistry = WorkflowsRegistry.of(QContext.getQInstance());
+      if(workflowsRegistry == null)
+      {
+         return;
+      }
+
+      for(QRecord record : CollectionUtils.nonNullList(records))
+      {
+         Integer tableTriggerId = record.getValueInteger("id");
+         if(tableTriggerId == null)
+         {
+            //////////////////////////////////////////////////////////////////
+            // inserts don't have ids yet - but also can't be in the cache. //
+            //////////////////////////////////////////////////////////////////
+            continue;
+         }
+
+         workflowsRegistry.getTableTriggerWorkflowIdCache().invalidate(tableTriggerId);
+      }
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
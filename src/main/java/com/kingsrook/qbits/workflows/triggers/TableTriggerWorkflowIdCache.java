@@ -0,0 +1,217 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.triggers;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.automation.TableTrigger;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+
+
+/*******************************************************************************
+ * bounded, least-recently-used cache of the workflowId for each table trigger
+ * (keyed by tableTriggerId), as looked up by the
+ * WorkflowCustomTableTriggerRecordAutomationHandler for every automation it is
+ * asked about.  Triggers without a workflow (e.g., ones that run a script) are
+ * cached too (with a null workflowId), as the handler is asked about those as
+ * well.  Lives in the WorkflowsRegistry (so, one per QInstance).
+ *
+ * Inserts, updates, and deletes of table triggers invalidate entries here (see
+ * TableTriggerCustomizerForWorkflows) - but only in this JVM, and a lookup can
+ * still race with a change that hasn't been committed yet - so entries also
+ * expire ttlMillis after they were cached, bounding how long a stale workflowId
+ * (e.g., from a change made by another server) can be used.
+ *******************************************************************************/
+public class TableTriggerWorkflowIdCache
+{
+   public static final int  DEFAULT_MAX_SIZE   = 1000;
+   public static final long DEFAULT_TTL_MILLIS = 60_000;
+
+   private final int maxSize;
+   private long      ttlMillis;
+
+   //////////////////////////////////////////////////////////////////////////
+   // bumped by every invalidation - so a lookup that raced with a change  //
+   // to its trigger doesn't put the (possibly old) value it read back in. //
+   //////////////////////////////////////////////////////////////////////////
+   private long generation = 0;
+
+   private final Map<Integer, CachedWorkflowId> workflowIdsByTableTriggerId = new LinkedHashMap<>(16, 0.75f, true)
+   {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, CachedWorkflowId> eldest)
+      {
+         return (size() > maxSize);
+      }
+   };
+
+
+
+   /***************************************************************************
+    * a trigger's workflowId (which may be null), and when it was cached.
+    ***************************************************************************/
+   private record CachedWorkflowId(Integer workflowId, long cachedAtMillis)
+   {
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public TableTriggerWorkflowIdCache()
+   {
+      this(DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS);
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public TableTriggerWorkflowIdCache(int maxSize)
+   {
+      this(maxSize, DEFAULT_TTL_MILLIS);
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public TableTriggerWorkflowIdCache(int maxSize, long ttlMillis)
+   {
+      this.maxSize = maxSize;
+      this.ttlMillis = ttlMillis;
+   }
+
+
+
+   /***************************************************************************
+    * get the workflowId for a table trigger - from the cache if it's there (and
+    * hasn't expired), else by looking up the trigger (and caching what is
+    * found).  null if the trigger doesn't exist, or doesn't have a workflow.
+    ***************************************************************************/
+   public Integer getWorkflowId(Integer tableTriggerId) throws QException
+   {
+      if(tableTriggerId == null)
+      {
+         return (null);
+      }
+
+      long lookupGeneration;
+      synchronized(this)
+      {
+         CachedWorkflowId cachedWorkflowId = workflowIdsByTableTriggerId.get(tableTriggerId);
+         if(cachedWorkflowId != null)
+         {
+            if(System.currentTimeMillis() - cachedWorkflowId.cachedAtMillis() < ttlMillis)
+            {
+               return (cachedWorkflowId.workflowId());
+            }
+            workflowIdsByTableTriggerId.remove(tableTriggerId);
+         }
+         lookupGeneration = generation;
+      }
+
+      //////////////////////////////////////////////////////////////////////////
+      // look up outside of the lock - and don't cache a trigger that doesn't //
+      // exist (yet), e.g., if it's being inserted in a transaction.          //
+      //////////////////////////////////////////////////////////////////////////
+      QRecord tableTriggerRecord = GetAction.execute(TableTrigger.TABLE_NAME, tableTriggerId);
+      if(tableTriggerRecord == null)
+      {
+         return (null);
+      }
+
+      Integer workflowId = tableTriggerRecord.getValueInteger("workflowId");
+      synchronized(this)
+      {
+         if(maxSize > 0 && ttlMillis > 0 && lookupGeneration == generation)
+         {
+            workflowIdsByTableTriggerId.put(tableTriggerId, new CachedWorkflowId(workflowId, System.currentTimeMillis()));
+         }
+      }
+
+      return (workflowId);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized void invalidate(Integer tableTriggerId)
+   {
+      generation++;
+      workflowIdsByTableTriggerId.remove(tableTriggerId);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized void invalidateAll()
+   {
+      generation++;
+      workflowIdsByTableTriggerId.clear();
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized int size()
+   {
+      return (workflowIdsByTableTriggerId.size());
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for ttlMillis
+    *******************************************************************************/
+   public synchronized long getTtlMillis()
+   {
+      return (this.ttlMillis);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for ttlMillis - how long after being cached an entry is used, before
+    ** the trigger is looked up again.  0 disables caching.
+    *******************************************************************************/
+   public synchronized void setTtlMillis(long ttlMillis)
+   {
+      this.ttlMillis = ttlMillis;
+   }
+
+}
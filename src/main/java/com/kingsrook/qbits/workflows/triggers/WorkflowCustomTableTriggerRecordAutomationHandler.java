@@ -22,20 +22,32 @@
 package com.kingsrook.qbits.workflows.triggers;
 
 
+import java.util.List;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.execution.WorkflowExecutor;
+import com.kingsrook.qbits.workflows.execution.WorkflowOutput;
+import com.kingsrook.qbits.workflows.implementations.recordworkflows.RunRecordWorkflowLoadStep;
 import com.kingsrook.qbits.workflows.implementations.recordworkflows.RunRecordWorkflowProcessMetaDataProducer;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qbits.workflows.tracing.WorkflowTracerInterface;
 import com.kingsrook.qqq.backend.core.actions.automation.CustomTableTriggerRecordAutomationHandler;
 import com.kingsrook.qqq.backend.core.actions.automation.RunCustomTableTriggerRecordAutomationHandler;
 import com.kingsrook.qqq.backend.core.actions.processes.QProcessCallbackFactory;
 import com.kingsrook.qqq.backend.core.actions.processes.RunProcessAction;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessInput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessOutput;
 import com.kingsrook.qqq.backend.core.model.automation.RecordAutomationInput;
-import com.kingsrook.qqq.backend.core.model.automation.TableTrigger;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import com.kingsrook.qqq.backend.core.utils.StringUtils;
 import com.kingsrook.qqq.backend.core.utils.ValueUtils;
+import org.apache.commons.lang3.BooleanUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
 
 
 /*******************************************************************************
@@ -46,6 +58,10 @@ import com.kingsrook.qqq.backend.core.utils.ValueUtils;
  *******************************************************************************/
 public class WorkflowCustomTableTriggerRecordAutomationHandler implements CustomTableTriggerRecordAutomationHandler
 {
+   private static final QLogger LOG = QLogger.getLogger(WorkflowCustomTableTriggerRecordAutomationHandler.class);
+
+   private static final int BATCH_SIZE = 500;
+
 
    /***************************************************************************
     ** make the RunCustomTableTriggerRecordAutomationHandler aware of this
@@ -80,17 +96,8 @@ public class WorkflowCustomTableTriggerRecordAutomationHandler implements Custom
     ***************************************************************************/
    private static Integer getWorkflowId(RecordAutomationInput recordAutomationInput) throws QException
    {
-      Integer workflowId     = null;
       Integer tableTriggerId = ValueUtils.getValueAsInteger(recordAutomationInput.getAction().getValues().get("tableTriggerId"));
-      if(tableTriggerId != null)
-      {
-         QRecord tableTriggerRecord = GetAction.execute(TableTrigger.TABLE_NAME, tableTriggerId);
-         if(tableTriggerRecord != null)
-         {
-            workflowId = tableTriggerRecord.getValueInteger("workflowId");
-         }
-      }
-      return workflowId;
+      return (WorkflowsRegistry.of(QContext.getQInstance()).getTableTriggerWorkflowIdCache().getWorkflowId(tableTriggerId));
    }
 
 
@@ -104,6 +111,12 @@ public class WorkflowCustomTableTriggerRecordAutomationHandler implements Custom
       String  tableName  = recordAutomationInput.getTableName();
       Integer workflowId = getWorkflowId(recordAutomationInput);
 
+      if(WorkflowsRegistry.of(QContext.getQInstance()).getRunTableTriggerWorkflowsInBatch())
+      {
+         executeInBatches(recordAutomationInput, workflowId);
+         return;
+      }
+
       for(QRecord record : recordAutomationInput.getRecordList())
       {
          RunProcessInput input = new RunProcessInput();
@@ -115,4 +128,101 @@ public class WorkflowCustomTableTriggerRecordAutomationHandler implements Custom
          RunProcessOutput runProcessOutput = new RunProcessAction().execute(input);
       }
    }
+
+
+
+   /***************************************************************************
+    ** run the workflow directly against the records that the automation gave
+    ** us (rather than a runRecordWorkflow process per record, which re-queries
+    ** each record, and re-loads the workflow for each one) - in batches of
+    ** BATCH_SIZE records, so a large sweep doesn't hold every run's outputs
+    ** (or one huge write transaction) at once.
+    **
+    ** If the workflow opts in (skipUnchangedRecordsForTableTriggers), records
+    ** whose values for the fields it depends on haven't changed since it last
+    ** ran against them are skipped - see TableTriggerChangeDetector.
+    ***************************************************************************/
+   private void executeInBatches(RecordAutomationInput recordAutomationInput, Integer workflowId) throws QException
+   {
+      QRecord workflow = GetAction.execute(Workflow.TABLE_NAME, workflowId);
+      if(workflow == null)
+      {
+         throw (new QException("Could not find workflow by id: " + workflowId));
+      }
+
+      WorkflowsRegistry       workflowsRegistry = WorkflowsRegistry.of(QContext.getQInstance());
+      WorkflowTracerInterface workflowTracer    = workflowsRegistry.getWorkflowTracer(workflowsRegistry.getWorkflowTracerCodeReference());
+
+      TableTriggerChangeDetector changeDetector      = workflowsRegistry.getTableTriggerChangeDetector();
+      Integer                    workflowRevisionId  = workflow.getValueInteger("currentWorkflowRevisionId");
+      List<String>               fieldDependencies   = getFieldDependencies(workflow, workflowRevisionId);
+      String                     primaryKeyFieldName = QContext.getQInstance().getTable(workflow.getValueString("tableName")).getPrimaryKeyField();
+
+      List<QRecord> records = CollectionUtils.nonNullList(recordAutomationInput.getRecordList());
+      if(fieldDependencies != null)
+      {
+         int noOfRecords = records.size();
+         records = changeDetector.getChangedRecords(workflowRevisionId, fieldDependencies, primaryKeyFieldName, records);
+         if(records.size() < noOfRecords)
+         {
+            LOG.debug("Skipping workflow for records with no changes to its field dependencies", logPair("workflowId", workflowId), logPair("noSkipped", noOfRecords - records.size()));
+         }
+      }
+
+      //////////////////////////////////////////////////////////////////////
+      // the automation's records aren't known to be just as they are     //
+      // stored - so the workflow's filters are evaluated against them in //
+      // memory, never by the backend (see RecordWorkflowFilterPushDown). //
+      //////////////////////////////////////////////////////////////////////
+      for(List<QRecord> batch : CollectionUtils.getPages(records, BATCH_SIZE))
+      {
+         List<WorkflowOutput> workflowOutputs = RunRecordWorkflowLoadStep.executeWorkflowOnRecords(workflow, batch, workflowTracer);
+         RunRecordWorkflowLoadStep.audit(workflow, batch, workflowOutputs);
+
+         if(fieldDependencies != null)
+         {
+            for(int i = 0; i < workflowOutputs.size(); i++)
+            {
+               //////////////////////////////////////////////////////////////////
+               // remember the record as the run left it (e.g., with fields it //
+               // updated) - unless the run failed, so it'll be tried again.   //
+               //////////////////////////////////////////////////////////////////
+               WorkflowOutput workflowOutput = workflowOutputs.get(i);
+               if(workflowOutput.getException() == null)
+               {
+                  QRecord record = workflowOutput.getContext() != null && workflowOutput.getContext().getValues().get("record") instanceof QRecord r ? r : batch.get(i);
+                  changeDetector.remember(workflowRevisionId, fieldDependencies, primaryKeyFieldName, record);
+               }
+            }
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** get the fields that the workflow's current revision depends on - or null
+    ** if its runs can't be skipped (the workflow hasn't opted in to skipping
+    ** unchanged records, or the revision's dependencies aren't known).
+    ***************************************************************************/
+   private static List<String> getFieldDependencies(QRecord workflow, Integer workflowRevisionId)
+   {
+      if(workflowRevisionId == null || !BooleanUtils.isTrue(workflow.getValueBoolean("skipUnchangedRecordsForTableTriggers")))
+      {
+         return (null);
+      }
+
+      try
+      {
+         String fieldDependencies = new WorkflowExecutor().getWorkflowPlan(workflowRevisionId).getWorkflowRevision().getFieldDependencies();
+         return (StringUtils.hasContent(fieldDependencies) ? List.of(fieldDependencies.split(",")) : null);
+      }
+      catch(Exception e)
+      {
+         /////////////////////////////////////////////////////////////////
+         // e.g., a missing revision - which the runs report themselves //
+         /////////////////////////////////////////////////////////////////
+         return (null);
+      }
+   }
 }
@@ -34,13 +34,17 @@ import com.kingsrook.qbits.workflows.model.WorkflowRevision;
 import com.kingsrook.qbits.workflows.model.WorkflowStep;
 import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
 import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
 import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.automation.TableTrigger;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
 import com.kingsrook.qqq.backend.core.utils.JsonUtils;
 import com.kingsrook.qqq.backend.core.utils.ValueUtils;
 
@@ -287,4 +291,39 @@ public class WorkflowsTestDataSource
          .withToStepNo(toStepNo)
          .withConditionValue(ValueUtils.getValueAsString(conditionValue));
    }
+
+
+
+   /***************************************************************************
+    * add the (qqq) table trigger table to the current instance - as an app
+    * would - then add workflows to it, as the qbit does.
+    ***************************************************************************/
+   public static void defineTableTriggerTable() throws QException
+   {
+      QInstance qInstance = QContext.getQInstance();
+      qInstance.addTable(new QTableMetaData()
+         .withName(TableTrigger.TABLE_NAME)
+         .withBackendName(BaseTest.MEMORY_BACKEND_NAME)
+         .withPrimaryKeyField("id")
+         .withFieldsFromEntity(TableTrigger.class)
+         .withSections(new ArrayList<>()));
+
+      WorkflowsQBitProducer.addWorkflowsToTableTriggers(qInstance);
+   }
+
+
+
+   /***************************************************************************
+    * insert a table trigger that runs a workflow - returning its id.
+    ***************************************************************************/
+   public static Integer insertTableTrigger(String tableName, Integer workflowId) throws QException
+   {
+      return new InsertAction().execute(new InsertInput(TableTrigger.TABLE_NAME).withRecord(new QRecord()
+         .withValue("tableName", tableName)
+         .withValue("workflowId", workflowId)
+         .withValue("priority", 1)
+         .withValue("postInsert", true)
+         .withValue("postUpdate", true)
+      )).getRecords().get(0).getValueInteger("id");
+   }
 }
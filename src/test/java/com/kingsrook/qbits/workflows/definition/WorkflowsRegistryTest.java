@@ -0,0 +1,164 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.definition;
+
+
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.TestWorkflowDefinitions;
+import com.kingsrook.qbits.workflows.WorkflowsTestDataSource;
+import com.kingsrook.qbits.workflows.execution.WorkflowExecutor;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlan;
+import com.kingsrook.qbits.workflows.execution.WorkflowStepExecutorInterface;
+import com.kingsrook.qbits.workflows.execution.WorkflowTypeExecutorInterface;
+import com.kingsrook.qbits.workflows.implementations.recordworkflows.InputRecordFilterStep;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+/*******************************************************************************
+ ** Unit test for WorkflowsRegistry 
+ *******************************************************************************/
+class WorkflowsRegistryTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** stateless step types get a single, shared executor - others get a new
+    ** instance every time one is asked for.
+    *******************************************************************************/
+   @Test
+   void testStepExecutors() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      WorkflowsRegistry registry = WorkflowsRegistry.of(QContext.getQInstance());
+
+      /////////////////////////////////////////////////
+      // the test step types aren't marked stateless //
+      /////////////////////////////////////////////////
+      WorkflowStepType              addXType  = registry.getWorkflowStepType(TestWorkflowDefinitions.ADD_X_TO_SUM_ACTION);
+      WorkflowStepExecutorInterface executor1 = registry.getWorkflowStepExecutor(addXType);
+      WorkflowStepExecutorInterface executor2 = registry.getWorkflowStepExecutor(addXType);
+      assertThat(executor1).isInstanceOf(TestWorkflowDefinitions.AddXToSumStepExecutor.class);
+      assertNotSame(executor1, executor2);
+
+      /////////////////////////////////////////////////////////////////
+      // a stateless one gets the same instance - and re-registering //
+      // the type replaces that instance                             //
+      /////////////////////////////////////////////////////////////////
+      registry.registerWorkflowStepType(new WorkflowStepType()
+         .withName("statelessAddX")
+         .withLabel("Stateless Add X")
+         .withOutboundLinkMode(OutboundLinkMode.ONE)
+         .withExecutor(new QCodeReference(TestWorkflowDefinitions.AddXToSumStepExecutor.class))
+         .withIsStateless(true));
+      WorkflowStepType statelessType = registry.getWorkflowStepType("statelessAddX");
+      executor1 = registry.getWorkflowStepExecutor(statelessType);
+      assertThat(executor1).isInstanceOf(TestWorkflowDefinitions.AddXToSumStepExecutor.class);
+      assertSame(executor1, registry.getWorkflowStepExecutor(statelessType));
+
+      registry.registerWorkflowStepType(statelessType);
+      executor2 = registry.getWorkflowStepExecutor(statelessType);
+      assertNotSame(executor1, executor2);
+      assertSame(executor2, registry.getWorkflowStepExecutor(statelessType));
+
+      ////////////////////////////////////////////////////////////////////
+      // a stateless step type that is its own executor (and validator) //
+      // shares the type object itself                                  //
+      ////////////////////////////////////////////////////////////////////
+      WorkflowStepType filterType = registry.getWorkflowStepType(InputRecordFilterStep.NAME);
+      assertSame(filterType, registry.getWorkflowStepExecutor(filterType));
+      assertSame(filterType, registry.getWorkflowStepValidator(filterType));
+
+      //////////////////////////////////////////////
+      // step types without an executor give null //
+      //////////////////////////////////////////////
+      assertNull(registry.getWorkflowStepExecutor(registry.getWorkflowStepType(TestWorkflowDefinitions.CONTAINER)));
+   }
+
+
+
+   /*******************************************************************************
+    ** same as above, for workflow type executors.
+    *******************************************************************************/
+   @Test
+   void testWorkflowTypeExecutors() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      WorkflowsRegistry registry = WorkflowsRegistry.of(QContext.getQInstance());
+
+      WorkflowType                  testType  = registry.getWorkflowType(TestWorkflowDefinitions.TEST_WORKFLOW_TYPE);
+      WorkflowTypeExecutorInterface executor1 = registry.getWorkflowTypeExecutor(testType);
+      assertThat(executor1).isInstanceOf(TestWorkflowDefinitions.TestWorkflowTypeExecutor.class);
+      assertNotSame(executor1, registry.getWorkflowTypeExecutor(testType));
+
+      registry.registerWorkflowType(new WorkflowType()
+         .withName("statelessTestType")
+         .withLabel("Stateless Test Type")
+         .withExecutor(new QCodeReference(TestWorkflowDefinitions.TestWorkflowTypeExecutor.class))
+         .withIsStateless(true));
+      WorkflowType statelessType = registry.getWorkflowType("statelessTestType");
+      executor1 = registry.getWorkflowTypeExecutor(statelessType);
+      assertThat(executor1).isInstanceOf(TestWorkflowDefinitions.TestWorkflowTypeExecutor.class);
+      assertSame(executor1, registry.getWorkflowTypeExecutor(statelessType));
+   }
+
+
+
+   /*******************************************************************************
+    ** plans hold the registry's shared executors for stateless step types (and
+    ** none for others, which get a new instance per step execution).
+    *******************************************************************************/
+   @Test
+   void testPlanUsesSharedExecutors() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      WorkflowsRegistry registry = WorkflowsRegistry.of(QContext.getQInstance());
+      registry.registerWorkflowStepType(new WorkflowStepType()
+         .withName("statelessAddX")
+         .withLabel("Stateless Add X")
+         .withOutboundLinkMode(OutboundLinkMode.ONE)
+         .withExecutor(new QCodeReference(TestWorkflowDefinitions.AddXToSumStepExecutor.class))
+         .withIsStateless(true));
+
+      Workflow workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(TestWorkflowDefinitions.TEST_WORKFLOW_TYPE, null);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, "statelessAddX", Map.of("x", 1)),
+         WorkflowsTestDataSource.newStep(2, TestWorkflowDefinitions.ADD_X_TO_SUM_ACTION, Map.of("x", 2))
+      ));
+      WorkflowsTestDataSource.insertLinks(workflow, List.of(WorkflowsTestDataSource.newLink(1, 2)));
+
+      Integer      revisionId = GetAction.execute(Workflow.TABLE_NAME, workflow.getId()).getValueInteger("currentWorkflowRevisionId");
+      WorkflowPlan plan       = new WorkflowExecutor().getWorkflowPlan(revisionId);
+      assertSame(registry.getWorkflowStepExecutor(registry.getWorkflowStepType("statelessAddX")), plan.getStep(0).getWorkflowStepExecutor());
+      assertNull(plan.getStep(1).getWorkflowStepExecutor());
+   }
+
+}
@@ -0,0 +1,250 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.kingsrook.qbits.workflows.execution;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qqq.backend.core.actions.QBackendTransaction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.exceptions.QRuntimeException;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for WorkflowExecutionContext 
+ *******************************************************************************/
+class WorkflowExecutionContextTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** a transaction opener is only called by getTransaction - at most once.
+    *******************************************************************************/
+   @Test
+   void testTransactionOpener()
+   {
+      QBackendTransaction      transaction = new QBackendTransaction();
+      AtomicInteger            noOfOpens   = new AtomicInteger(0);
+      WorkflowExecutionContext context     = new WorkflowExecutionContext();
+      context.setTransactionOpener(() ->
+      {
+         noOfOpens.incrementAndGet();
+         return (transaction);
+      });
+
+      assertNull(context.getTransactionIfOpened());
+      assertEquals(0, noOfOpens.get());
+
+      assertSame(transaction, context.getTransaction());
+      assertSame(transaction, context.getTransaction());
+      assertSame(transaction, context.getTransactionIfOpened());
+      assertEquals(1, noOfOpens.get());
+
+      ////////////////////////////////////////////////////////////////
+      // setting a transaction replaces any opener (and vice versa) //
+      ////////////////////////////////////////////////////////////////
+      QBackendTransaction otherTransaction = new QBackendTransaction();
+      context.setTransactionOpener(() ->
+      {
+         noOfOpens.incrementAndGet();
+         return (transaction);
+      });
+      context.setTransaction(otherTransaction);
+      assertSame(otherTransaction, context.getTransaction());
+      assertEquals(1, noOfOpens.get());
+
+      context.setTransactionOpener(null);
+      assertNull(context.getTransaction());
+
+      ///////////////////////////////////////////////////////////////////
+      // an opener that fails is surfaced as a runtime exception - and //
+      // isn't retried.                                                //
+      ///////////////////////////////////////////////////////////////////
+      context.setTransactionOpener(() ->
+      {
+         throw (new QException("cannot open"));
+      });
+      assertThatThrownBy(() -> context.getTransaction()).isInstanceOf(QRuntimeException.class).hasRootCauseMessage("cannot open");
+      assertNull(context.getTransaction());
+   }
+
+
+   /*******************************************************************************
+    ** for a context with slots, getValues is a view over the (non-null) slots,
+    ** then the dynamic values - whose put, remove, and iteration all write
+    ** through to them.
+    *******************************************************************************/
+   @Test
+   void testValuesView()
+   {
+      SlotTestContext context = new SlotTestContext();
+      context.getValues().put("dynamic", 1);
+      assertThat(context.getValues()).containsOnlyKeys("dynamic");
+      assertFalse(context.getValues().containsKey("name"));
+
+      /////////////////////////////////////////
+      // put & get, through the view or slot //
+      /////////////////////////////////////////
+      assertNull(context.getValues().put("name", "Tim"));
+      assertEquals("Tim", context.name.get());
+      context.name.set("Tom");
+      assertEquals("Tom", context.getValues().get("name"));
+      assertThat(context.getValues()).containsExactly(entry("name", "Tom"), entry("dynamic", 1));
+
+      assertEquals("Tom", context.getValues().remove("name"));
+      assertNull(context.name.get());
+      assertThat(context.getValues()).containsOnlyKeys("dynamic");
+
+      ///////////////////////////////////////////////////////
+      // entries' setValue writes through - slot & dynamic //
+      ///////////////////////////////////////////////////////
+      context.name.set("Tim");
+      for(Map.Entry<String, Serializable> entry : context.getValues().entrySet())
+      {
+         entry.setValue("name".equals(entry.getKey()) ? "Timothy" : 2);
+      }
+      assertEquals("Timothy", context.name.get());
+      assertEquals(2, context.getValues().get("dynamic"));
+
+      //////////////////////////////////////////////
+      // as does the iterator's (and so removeIf) //
+      //////////////////////////////////////////////
+      context.getValues().entrySet().removeIf(entry -> "name".equals(entry.getKey()));
+      assertNull(context.name.get());
+      assertThat(context.getValues()).containsOnlyKeys("dynamic");
+
+      context.name.set("Tim");
+      Iterator<Map.Entry<String, Serializable>> iterator = context.getValues().entrySet().iterator();
+      while(iterator.hasNext())
+      {
+         iterator.next();
+         iterator.remove();
+      }
+      assertNull(context.name.get());
+      assertTrue(context.getValues().isEmpty());
+
+      ///////////////////////////////////////
+      // and clear empties slots & dynamic //
+      ///////////////////////////////////////
+      context.name.set("Tim");
+      context.getValues().put("dynamic", 1);
+      assertEquals(2, context.getValues().size());
+      context.getValues().clear();
+      assertNull(context.name.get());
+      assertTrue(context.getValues().isEmpty());
+   }
+
+
+
+   /*******************************************************************************
+    ** setValues moves values under slots' keys into the slots (from a copy of
+    ** the map it's given) and clears the other slots - as does allocating a
+    ** slot for a key that's already in the values.
+    *******************************************************************************/
+   @Test
+   void testSetValuesMovesSlotKeys()
+   {
+      SlotTestContext context = new SlotTestContext();
+      context.name.set("Old");
+      context.items.get().add("Old");
+
+      Map<String, Serializable> values = new LinkedHashMap<>(Map.of("name", "New", "dynamic", 1));
+      context.setValues(values);
+      assertEquals("New", context.name.get());
+      assertNull(context.items.getIfInitialized());
+      assertThat(context.getValues()).hasSize(2).containsEntry("name", "New").containsEntry("dynamic", 1);
+      assertThat(values).containsOnlyKeys("name", "dynamic");
+
+      //////////////////////////////////////////////////////////////
+      // an unmodifiable map is fine (it's copied, not changed) - //
+      // and one without the slot's key clears the slot           //
+      //////////////////////////////////////////////////////////////
+      context.setValues(Map.of("name", "Unmodifiable"));
+      assertEquals("Unmodifiable", context.name.get());
+      context.setValues(Map.of("other", 2));
+      assertNull(context.name.get());
+      assertThat(context.getValues()).containsOnlyKeys("other");
+
+      /////////////////////////////////////////////////////////////////
+      // a slot allocated for a key already in the values - moves it //
+      /////////////////////////////////////////////////////////////////
+      WorkflowExecutionContext plainContext = new WorkflowExecutionContext();
+      plainContext.getValues().put("late", "Value");
+      ObjectInWorkflowContext<String> late = new ObjectInWorkflowContext<>(plainContext, "late");
+      assertEquals("Value", late.get());
+      assertThat(plainContext.getValues()).hasSize(1).containsEntry("late", "Value");
+   }
+
+
+
+   /*******************************************************************************
+    ** getIfInitialized doesn't allocate a lazy object - only get does (once).
+    *******************************************************************************/
+   @Test
+   void testGetIfInitializedDoesNotAllocate()
+   {
+      AtomicInteger            noOfAllocations = new AtomicInteger(0);
+      WorkflowExecutionContext context         = new WorkflowExecutionContext();
+      LazyInitObjectInWorkflowContext<ArrayList<String>> items = new LazyInitObjectInWorkflowContext<>(context, "items", () ->
+      {
+         noOfAllocations.incrementAndGet();
+         return (new ArrayList<>());
+      });
+
+      assertNull(items.getIfInitialized());
+      assertNull(items.getIfInitialized());
+      assertFalse(context.getValues().containsKey("items"));
+      assertEquals(0, noOfAllocations.get());
+
+      ArrayList<String> list = items.get();
+      assertSame(list, items.get());
+      assertSame(list, items.getIfInitialized());
+      assertSame(list, context.getValues().get("items"));
+      assertEquals(1, noOfAllocations.get());
+   }
+
+
+
+   /***************************************************************************
+    * context subclass with slots - as a workflow type's context would have.
+    ***************************************************************************/
+   private static class SlotTestContext extends WorkflowExecutionContext
+   {
+      private final ObjectInWorkflowContext<String>                     name  = new ObjectInWorkflowContext<>(this, "name");
+      private final LazyInitObjectInWorkflowContext<ArrayList<String>> items = new LazyInitObjectInWorkflowContext<>(this, "items", () -> new ArrayList<>());
+   }
+
+}
\ No newline at end of file
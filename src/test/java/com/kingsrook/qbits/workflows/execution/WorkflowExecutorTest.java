@@ -23,18 +23,55 @@ package com.kingsrook.qbits.workflows.execution;
 
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import com.kingsrook.qbits.workflows.BaseTest;
 import com.kingsrook.qbits.workflows.TestWorkflowDefinitions;
 import com.kingsrook.qbits.workflows.WorkflowsTestDataSource;
+import com.kingsrook.qbits.workflows.definition.OutboundLinkMode;
+import com.kingsrook.qbits.workflows.definition.WorkflowStepType;
+import com.kingsrook.qbits.workflows.definition.WorkflowType;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
 import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qbits.workflows.model.WorkflowRevision;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLogLevel;
+import com.kingsrook.qbits.workflows.model.WorkflowStep;
+import com.kingsrook.qqq.backend.core.actions.QBackendTransaction;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.session.QSession;
+import com.kingsrook.qqq.backend.core.utils.JsonUtils;
+import com.kingsrook.qqq.backend.core.utils.SleepUtils;
+import com.kingsrook.qqq.backend.core.utils.ValueUtils;
 import com.kingsrook.qqq.backend.core.utils.collections.MapBuilder;
 import org.junit.jupiter.api.Test;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 /*******************************************************************************
@@ -42,6 +79,9 @@ import static org.junit.jupiter.api.Assertions.assertNull;
  *******************************************************************************/
 class WorkflowExecutorTest extends BaseTest
 {
+   private static final String BATCH_ADD_X_TO_SUM_ACTION = "batchAddXToSumAction";
+
+
 
    /*******************************************************************************
     **
@@ -301,6 +341,601 @@ class WorkflowExecutorTest extends BaseTest
 
 
 
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testWorkflowPlanCache() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      Integer workflowId = WorkflowsTestDataSource.insertTestWorkflow();
+      Integer revisionId = GetAction.execute(Workflow.TABLE_NAME, workflowId).getValueInteger("currentWorkflowRevisionId");
+
+      WorkflowPlanCache workflowPlanCache = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowPlanCache();
+      assertNull(workflowPlanCache.get(revisionId));
+
+      //////////////////////////////////////////////////////////
+      // first run compiles the plan and puts it in the cache //
+      //////////////////////////////////////////////////////////
+      WorkflowOutput output = executeWorkflow(workflowId, Map.of("condition", true, "seedValue", 0));
+      assertEquals(11, output.getContext().getValues().get("sum"));
+      WorkflowPlan workflowPlan = workflowPlanCache.get(revisionId);
+      assertNotNull(workflowPlan);
+
+      //////////////////////////////////////////////
+      // second run re-uses that same plan object //
+      //////////////////////////////////////////////
+      output = executeWorkflow(workflowId, Map.of("condition", true, "seedValue", 0));
+      assertEquals(11, output.getContext().getValues().get("sum"));
+      assertSame(workflowPlan, workflowPlanCache.get(revisionId));
+
+      //////////////////////////////////////////////////////////////////////
+      // changing a step in the revision evicts the plan, so the next run //
+      // sees the new input values                                        //
+      //////////////////////////////////////////////////////////////////////
+      QRecord step1 = new QueryAction().execute(new QueryInput(WorkflowStep.TABLE_NAME).withFilter(new QQueryFilter()
+         .withCriteria(new QFilterCriteria("workflowRevisionId", QCriteriaOperator.EQUALS, revisionId))
+         .withCriteria(new QFilterCriteria("stepNo", QCriteriaOperator.EQUALS, 1)))).getRecords().get(0);
+      new UpdateAction().execute(new UpdateInput(WorkflowStep.TABLE_NAME).withRecord(new QRecord()
+         .withValue("id", step1.getValue("id"))
+         .withValue("workflowRevisionId", revisionId)
+         .withValue("inputValuesJson", JsonUtils.toJson(Map.of("x", 101)))));
+      assertNull(workflowPlanCache.get(revisionId));
+
+      output = executeWorkflow(workflowId, Map.of("condition", true, "seedValue", 0));
+      assertEquals(111, output.getContext().getValues().get("sum"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testExecuteBatch() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      Integer workflowId = WorkflowsTestDataSource.insertTestWorkflow();
+
+      List<Map<String, Serializable>> valuesList = List.of(
+         Map.of("condition", true, "seedValue", 0),
+         MapBuilder.of("condition", true, "seedValue", null),
+         Map.of("condition", false, "seedValue", 0));
+
+      List<WorkflowInput> inputs = new ArrayList<>();
+      for(Map<String, Serializable> values : valuesList)
+      {
+         WorkflowInput input = new WorkflowInput();
+         input.setWorkflowId(workflowId);
+         input.setValues(values);
+         inputs.add(input);
+      }
+
+      //////////////////////////////////////////////////////////////////////
+      // one output per input, in order - and an error in one run doesn't //
+      // keep the runs after it from happening.                           //
+      //////////////////////////////////////////////////////////////////////
+      List<WorkflowOutput> outputs = new WorkflowExecutor().executeBatch(inputs);
+      assertEquals(3, outputs.size());
+
+      assertNull(outputs.get(0).getException());
+      assertEquals(11, outputs.get(0).getContext().getValues().get("sum"));
+
+      assertThat(outputs.get(1).getException()).isInstanceOf(NullPointerException.class);
+      assertTrue(outputs.get(1).getWorkflowRunLog().getHadError());
+
+      assertNull(outputs.get(2).getException());
+      assertEquals(12, outputs.get(2).getContext().getValues().get("sum"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testRunLogLevels() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      Integer workflowId = WorkflowsTestDataSource.insertTestWorkflow();
+
+      List<WorkflowRunLog> tracedRunLogs    = new ArrayList<>();
+      WorkflowExecutor     workflowExecutor = new WorkflowExecutor().withWorkflowTracer(runLog -> tracedRunLogs.add(runLog));
+
+      ////////////////////////////////////////////////////////
+      // by default (FULL), every run is traced, with steps //
+      ////////////////////////////////////////////////////////
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0)), new WorkflowOutput());
+      assertEquals(1, tracedRunLogs.size());
+      assertFalse(tracedRunLogs.get(0).getSteps().isEmpty());
+
+      //////////////////////////////////////////////////
+      // SUMMARY - every run is traced, but not steps //
+      //////////////////////////////////////////////////
+      setRunLogLevel(workflowId, WorkflowRunLogLevel.SUMMARY);
+      tracedRunLogs.clear();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0)), new WorkflowOutput());
+      assertEquals(1, tracedRunLogs.size());
+      assertTrue(tracedRunLogs.get(0).getSteps().isEmpty());
+
+      //////////////////////////////////////////////////////////
+      // ERRORS_ONLY - only the run with an error gets traced //
+      //////////////////////////////////////////////////////////
+      setRunLogLevel(workflowId, WorkflowRunLogLevel.ERRORS_ONLY);
+      tracedRunLogs.clear();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0)), new WorkflowOutput());
+      assertEquals(0, tracedRunLogs.size());
+
+      workflowExecutor.execute(makeInput(workflowId, MapBuilder.of("condition", true, "seedValue", null)), new WorkflowOutput());
+      assertEquals(1, tracedRunLogs.size());
+      assertTrue(tracedRunLogs.get(0).getHadError());
+      assertFalse(tracedRunLogs.get(0).getSteps().isEmpty());
+   }
+
+
+
+   /*******************************************************************************
+    ** one executor instance, re-used for many runs, on many threads at once.
+    *******************************************************************************/
+   @Test
+   void testExecutorReusedAcrossRunsAndThreads() throws Exception
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      Integer workflowId = WorkflowsTestDataSource.insertTestWorkflow();
+
+      WorkflowExecutor workflowExecutor = new WorkflowExecutor();
+      QInstance        qInstance        = QContext.getQInstance();
+      ExecutorService  executorService  = Executors.newFixedThreadPool(4);
+      try
+      {
+         List<Future<WorkflowOutput>> futures = new ArrayList<>();
+         for(int i = 0; i < 40; i++)
+         {
+            Map<String, Serializable> values = Map.of("condition", i % 2 == 0, "seedValue", i);
+            futures.add(executorService.submit(() ->
+            {
+               QContext.init(qInstance, new QSession());
+               try
+               {
+                  WorkflowOutput output = new WorkflowOutput();
+                  workflowExecutor.execute(makeInput(workflowId, values), output);
+                  return (output);
+               }
+               finally
+               {
+                  QContext.clear();
+               }
+            }));
+         }
+
+         //////////////////////////////////////////////////////////////////
+         // every run gets its own result and its own run log - no state //
+         // leaks between runs that share the executor                   //
+         //////////////////////////////////////////////////////////////////
+         Set<WorkflowRunLog> runLogs = Collections.newSetFromMap(new IdentityHashMap<>());
+         for(int i = 0; i < futures.size(); i++)
+         {
+            WorkflowOutput output = futures.get(i).get();
+            assertNull(output.getException());
+            assertEquals(i + (i % 2 == 0 ? 11 : 12), output.getContext().getValues().get("sum"));
+            assertEquals(5, output.getWorkflowRunLog().getSteps().size());
+            runLogs.add(output.getWorkflowRunLog());
+         }
+         assertEquals(futures.size(), runLogs.size());
+      }
+      finally
+      {
+         executorService.shutdown();
+      }
+   }
+
+
+
+   /*******************************************************************************
+    ** the deprecated inputWorkflowRunLog property is used for runs whose input
+    ** doesn't have a run log of its own.
+    *******************************************************************************/
+   @Test
+   @SuppressWarnings("deprecation")
+   void testDeprecatedInputWorkflowRunLog() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      Integer workflowId = WorkflowsTestDataSource.insertTestWorkflow();
+
+      WorkflowRunLog   executorRunLog   = new WorkflowRunLog();
+      WorkflowExecutor workflowExecutor = new WorkflowExecutor().withInputWorkflowRunLog(executorRunLog);
+      assertSame(executorRunLog, workflowExecutor.getInputWorkflowRunLog());
+
+      WorkflowOutput output = new WorkflowOutput();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0)), output);
+      assertSame(executorRunLog, output.getWorkflowRunLog());
+      assertEquals(workflowId, executorRunLog.getWorkflowId());
+
+      WorkflowRunLog inputRunLog = new WorkflowRunLog();
+      output = new WorkflowOutput();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0)).withWorkflowRunLog(inputRunLog), output);
+      assertSame(inputRunLog, output.getWorkflowRunLog());
+   }
+
+
+
+   /*******************************************************************************
+    ** runs that change nothing (per their type executor - and that didn't open
+    ** a transaction) are no-ops: left out of the batch's post-batch, and their
+    ** run logs only stored at the noOpRunSampleRate (errors always are).
+    *******************************************************************************/
+   @Test
+   void testNoOpRuns() throws QException
+   {
+      registerCountingTestWorkflowType();
+      Integer workflowId = WorkflowsTestDataSource.insertTestWorkflow();
+
+      List<WorkflowRunLog> tracedRunLogs    = new ArrayList<>();
+      WorkflowExecutor     workflowExecutor = new WorkflowExecutor().withWorkflowTracer(runLog -> tracedRunLogs.add(runLog));
+
+      List<WorkflowInput> inputs = List.of(
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "isNoOp", true)),
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0)),
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "isNoOp", true, "useTransaction", true)),
+         makeInput(workflowId, MapBuilder.of("condition", true, "seedValue", null, "isNoOp", true)));
+
+      ////////////////////////////////////////////////////////////////////
+      // by default, no-op runs are still stored - but never post-batch //
+      ////////////////////////////////////////////////////////////////////
+      List<WorkflowOutput> outputs = workflowExecutor.executeBatch(inputs);
+      assertTrue(outputs.get(0).getIsNoOpRun());
+      assertFalse(outputs.get(1).getIsNoOpRun());
+      assertFalse(outputs.get(2).getIsNoOpRun());
+      assertFalse(outputs.get(3).getIsNoOpRun());
+      assertNotNull(outputs.get(3).getException());
+      assertThat(CountingTestWorkflowTypeExecutor.postBatchOutputs).containsExactly(outputs.get(1), outputs.get(2));
+      assertThat(tracedRunLogs).hasSize(4);
+
+      /////////////////////////////////////////////////////////////
+      // with a no-op sample rate of 0, no-op runs aren't stored //
+      /////////////////////////////////////////////////////////////
+      WorkflowsRegistry.of(QContext.getQInstance()).setWorkflowRunLogSettings(new WorkflowRunLogSettings(WorkflowRunLogLevel.FULL, 0.05, 10_000, 0));
+      tracedRunLogs.clear();
+      outputs = workflowExecutor.executeBatch(inputs);
+      assertThat(tracedRunLogs).containsExactly(outputs.get(1).getWorkflowRunLog(), outputs.get(2).getWorkflowRunLog(), outputs.get(3).getWorkflowRunLog());
+
+      ///////////////////////////////
+      // the same, outside a batch //
+      ///////////////////////////////
+      tracedRunLogs.clear();
+      WorkflowOutput noOpOutput = new WorkflowOutput();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "isNoOp", true)), noOpOutput);
+      assertTrue(noOpOutput.getIsNoOpRun());
+      assertThat(tracedRunLogs).isEmpty();
+
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0)), new WorkflowOutput());
+      assertThat(tracedRunLogs).hasSize(1);
+   }
+
+
+
+   /*******************************************************************************
+    ** the run's transaction is only opened if something in the run asks for it
+    ** - and only then committed (or rolled back) and closed.  A transaction
+    ** given in the input is used as-is, and left for the caller to finish.
+    *******************************************************************************/
+   @Test
+   void testLazyTransaction() throws QException
+   {
+      registerCountingTestWorkflowType();
+      Integer          workflowId       = WorkflowsTestDataSource.insertTestWorkflow();
+      WorkflowExecutor workflowExecutor = new WorkflowExecutor();
+
+      /////////////////////////////////////////////////////
+      // nothing asks for the transaction - never opened //
+      /////////////////////////////////////////////////////
+      WorkflowOutput output = new WorkflowOutput();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0)), output);
+      assertNull(output.getException());
+      assertThat(CountingTestWorkflowTypeExecutor.openedTransactions).isEmpty();
+      assertNull(output.getContext().getTransactionIfOpened());
+
+      //////////////////////////////////////////////////////////////////////
+      // asked for by every step - opened once, then committed and closed //
+      //////////////////////////////////////////////////////////////////////
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "useTransaction", true)), new WorkflowOutput());
+      assertEquals(1, CountingTestWorkflowTypeExecutor.openedTransactions.size());
+      CountingTransaction transaction = CountingTestWorkflowTypeExecutor.openedTransactions.get(0);
+      assertEquals(1, transaction.noOfCommits);
+      assertEquals(0, transaction.noOfRollbacks);
+      assertEquals(1, transaction.noOfCloses);
+
+      ////////////////////////////////////////////////////////
+      // an error after it was opened - rolled back instead //
+      ////////////////////////////////////////////////////////
+      CountingTestWorkflowTypeExecutor.openedTransactions.clear();
+      workflowExecutor.execute(makeInput(workflowId, MapBuilder.of("condition", true, "seedValue", null, "useTransaction", true)), new WorkflowOutput());
+      assertEquals(1, CountingTestWorkflowTypeExecutor.openedTransactions.size());
+      transaction = CountingTestWorkflowTypeExecutor.openedTransactions.get(0);
+      assertEquals(0, transaction.noOfCommits);
+      assertEquals(1, transaction.noOfRollbacks);
+      assertEquals(1, transaction.noOfCloses);
+
+      ///////////////////////////////////////////////////////////////////
+      // in a batch, runs that don't ask for it don't open one, either //
+      ///////////////////////////////////////////////////////////////////
+      CountingTestWorkflowTypeExecutor.openedTransactions.clear();
+      workflowExecutor.executeBatch(List.of(
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0)),
+         makeInput(workflowId, Map.of("condition", false, "seedValue", 0, "isNoOp", true))));
+      assertThat(CountingTestWorkflowTypeExecutor.openedTransactions).isEmpty();
+
+      ///////////////////////////////////////////////////////////////////////
+      // an input's transaction is used - not opened, committed, or closed //
+      ///////////////////////////////////////////////////////////////////////
+      CountingTransaction inputTransaction = new CountingTransaction();
+      output = new WorkflowOutput();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "useTransaction", true)).withTransaction(inputTransaction), output);
+      assertThat(CountingTestWorkflowTypeExecutor.openedTransactions).isEmpty();
+      assertSame(inputTransaction, output.getContext().getTransactionIfOpened());
+      assertEquals(0, inputTransaction.noOfCommits);
+      assertEquals(0, inputTransaction.noOfCloses);
+   }
+
+
+
+   /*******************************************************************************
+    ** lazy step messages are only built for run logs that get stored (and a
+    ** message that fails to build doesn't keep the run log from being stored).
+    *******************************************************************************/
+   @Test
+   void testLazyStepMessages() throws QException
+   {
+      registerCountingTestWorkflowType();
+      Integer workflowId = WorkflowsTestDataSource.insertTestWorkflow();
+
+      List<WorkflowRunLog> tracedRunLogs    = new ArrayList<>();
+      WorkflowExecutor     workflowExecutor = new WorkflowExecutor().withWorkflowTracer(runLog -> tracedRunLogs.add(runLog));
+
+      //////////////////////////////////////////////////////
+      // FULL - stored, so each step's message gets built //
+      //////////////////////////////////////////////////////
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "lazyMessage", "Built")), new WorkflowOutput());
+      assertEquals(5, CountingTestWorkflowTypeExecutor.noOfMessagesBuilt);
+      assertThat(tracedRunLogs.get(0).getSteps()).hasSize(5).allMatch(step -> "Built".equals(step.getMessage()));
+
+      //////////////////////////////////////////////////////////
+      // ERRORS_ONLY - a successful run isn't stored, so none //
+      // are built - but an error's run log gets them.        //
+      //////////////////////////////////////////////////////////
+      setRunLogLevel(workflowId, WorkflowRunLogLevel.ERRORS_ONLY);
+      CountingTestWorkflowTypeExecutor.noOfMessagesBuilt = 0;
+      tracedRunLogs.clear();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "lazyMessage", "Built")), new WorkflowOutput());
+      assertEquals(0, CountingTestWorkflowTypeExecutor.noOfMessagesBuilt);
+      assertThat(tracedRunLogs).isEmpty();
+
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "lazyMessage", "Built", "overrideSumInPostRun", "not a number")), new WorkflowOutput());
+      assertEquals(5, CountingTestWorkflowTypeExecutor.noOfMessagesBuilt);
+      assertTrue(tracedRunLogs.get(0).getHadError());
+
+      ///////////////////////////////////////////////////////////////////
+      // in a batch - built only for the (deferred) run logs it stores //
+      ///////////////////////////////////////////////////////////////////
+      setRunLogLevel(workflowId, WorkflowRunLogLevel.FULL);
+      WorkflowsRegistry.of(QContext.getQInstance()).setWorkflowRunLogSettings(new WorkflowRunLogSettings(WorkflowRunLogLevel.FULL, 0.05, 10_000, 0));
+      CountingTestWorkflowTypeExecutor.noOfMessagesBuilt = 0;
+      tracedRunLogs.clear();
+      workflowExecutor.executeBatch(List.of(
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "lazyMessage", "Built", "isNoOp", true)),
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "lazyMessage", "Built"))));
+      assertEquals(5, CountingTestWorkflowTypeExecutor.noOfMessagesBuilt);
+      assertThat(tracedRunLogs).hasSize(1);
+
+      ///////////////////////////////////////////////////////////////////
+      // a message that fails to build is left null - the log's stored //
+      ///////////////////////////////////////////////////////////////////
+      tracedRunLogs.clear();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "lazyMessage", CountingTestWorkflowTypeExecutor.FAIL)), new WorkflowOutput());
+      assertThat(tracedRunLogs).hasSize(1);
+      assertThat(tracedRunLogs.get(0).getSteps()).hasSize(5).allMatch(step -> step.getMessage() == null);
+   }
+
+
+   /*******************************************************************************
+    ** page-at-a-time, each step is executed once for all of the runs that reach
+    ** it - so a branch step partitions the runs between its branches.
+    *******************************************************************************/
+   @Test
+   void testPageAtATimeBranches() throws QException
+   {
+      registerBatchAddXToSumStepType();
+      Integer workflowId = insertBranchingBatchWorkflow();
+
+      List<WorkflowInput> inputs = new ArrayList<>();
+      for(boolean condition : List.of(true, false, true, true, false))
+      {
+         inputs.add(makeInput(workflowId, Map.of("condition", condition, "seedValue", 0)));
+      }
+
+      List<WorkflowOutput> outputs = new WorkflowExecutor().executeBatch(inputs);
+      assertThat(outputs).extracting(output -> output.getContext().getValues().get("sum")).containsExactly(9, 10, 9, 9, 10);
+      assertThat(BatchAddXToSumStepExecutor.batchCalls).containsExactly("1:5", "3:3", "4:2", "5:5");
+      assertEquals(0, BatchAddXToSumStepExecutor.noOfSingleCalls);
+
+      ////////////////////////////////////////////////////////////
+      // without batch execution - the same results, run by run //
+      ////////////////////////////////////////////////////////////
+      BatchAddXToSumStepExecutor.batchCalls.clear();
+      outputs = new WorkflowExecutor().withUseBatchExecution(false).executeBatch(inputs);
+      assertThat(outputs).extracting(output -> output.getContext().getValues().get("sum")).containsExactly(9, 10, 9, 9, 10);
+      assertThat(BatchAddXToSumStepExecutor.batchCalls).isEmpty();
+      assertEquals(15, BatchAddXToSumStepExecutor.noOfSingleCalls);
+   }
+
+
+
+   /*******************************************************************************
+    ** if a step's batch call throws, the step is executed for each run on its
+    ** own - and an error (there, or in a run's pre-step) only fails its run,
+    ** which leaves the page, while the page's other runs carry on.
+    *******************************************************************************/
+   @Test
+   void testPageAtATimeFallbackAndFailures() throws QException
+   {
+      registerBatchAddXToSumStepType();
+      Integer          workflowId       = insertBranchingBatchWorkflow();
+      WorkflowExecutor workflowExecutor = new WorkflowExecutor();
+
+      /////////////////////////////////////////////////////////////
+      // every batch call fails - so each run executes each step //
+      /////////////////////////////////////////////////////////////
+      List<WorkflowOutput> outputs = workflowExecutor.executeBatch(List.of(
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0)),
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "failBatch", true)),
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0))));
+      assertThat(outputs).allMatch(output -> output.getException() == null);
+      assertThat(outputs).extracting(output -> output.getContext().getValues().get("sum")).containsExactly(9, 9, 9);
+      assertThat(BatchAddXToSumStepExecutor.batchCalls).containsExactly("1:3", "3:3", "5:3");
+      assertEquals(9, BatchAddXToSumStepExecutor.noOfSingleCalls);
+
+      /////////////////////////////////////////////////////////////////////
+      // one run's step fails (in the batch call, then on its own) - the //
+      // other runs continue, as a page, without it                      //
+      /////////////////////////////////////////////////////////////////////
+      BatchAddXToSumStepExecutor.batchCalls.clear();
+      BatchAddXToSumStepExecutor.noOfSingleCalls = 0;
+      outputs = workflowExecutor.executeBatch(List.of(
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0)),
+         makeInput(workflowId, MapBuilder.of("condition", true, "seedValue", null)),
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0))));
+      assertNull(outputs.get(0).getException());
+      assertThat(outputs.get(1).getException()).isInstanceOf(NullPointerException.class);
+      assertTrue(outputs.get(1).getWorkflowRunLog().getHadError());
+      assertNull(outputs.get(2).getException());
+      assertEquals(9, outputs.get(0).getContext().getValues().get("sum"));
+      assertEquals(9, outputs.get(2).getContext().getValues().get("sum"));
+      assertThat(BatchAddXToSumStepExecutor.batchCalls).containsExactly("1:3", "3:2", "5:2");
+      assertEquals(3, BatchAddXToSumStepExecutor.noOfSingleCalls);
+
+      //////////////////////////////////////////////////////////////////
+      // one run's pre-step fails - it isn't given to the batch calls //
+      //////////////////////////////////////////////////////////////////
+      BatchAddXToSumStepExecutor.batchCalls.clear();
+      BatchAddXToSumStepExecutor.noOfSingleCalls = 0;
+      outputs = workflowExecutor.executeBatch(List.of(
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0)),
+         makeInput(workflowId, MapBuilder.of("condition", true, "seedValue", null, "doubleSumInEveryPreStep", true)),
+         makeInput(workflowId, Map.of("condition", false, "seedValue", 0))));
+      assertNull(outputs.get(0).getException());
+      assertThat(outputs.get(1).getException()).isInstanceOf(NullPointerException.class);
+      assertNull(outputs.get(2).getException());
+      assertEquals(9, outputs.get(0).getContext().getValues().get("sum"));
+      assertEquals(10, outputs.get(2).getContext().getValues().get("sum"));
+      assertThat(BatchAddXToSumStepExecutor.batchCalls).containsExactly("1:2", "5:2");
+      assertEquals(2, BatchAddXToSumStepExecutor.noOfSingleCalls);
+   }
+
+
+
+   /*******************************************************************************
+    ** plans that can't be run page-at-a-time (e.g., with containers) are run
+    ** run-by-run within a batch - never through a step's batch call.
+    *******************************************************************************/
+   @Test
+   void testNonBatchExecutablePlanInBatch() throws QException
+   {
+      registerBatchAddXToSumStepType();
+
+      Workflow workflow = insertTestTypeWorkflow();
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, BATCH_ADD_X_TO_SUM_ACTION, Map.of("x", 1)),
+         WorkflowsTestDataSource.newStep(2, TestWorkflowDefinitions.CONTAINER, Map.of()),
+         WorkflowsTestDataSource.newStep(3, BATCH_ADD_X_TO_SUM_ACTION, Map.of("x", 2)),
+         WorkflowsTestDataSource.newStep(4, BATCH_ADD_X_TO_SUM_ACTION, Map.of("x", 3)),
+         WorkflowsTestDataSource.newStep(5, BATCH_ADD_X_TO_SUM_ACTION, Map.of("x", 4))
+      ));
+      WorkflowsTestDataSource.insertLinks(workflow, List.of(
+         WorkflowsTestDataSource.newLink(1, 2),
+         WorkflowsTestDataSource.newLink(2, 3, "push"),
+         WorkflowsTestDataSource.newLink(3, 4),
+         WorkflowsTestDataSource.newLink(2, 5, "pop")
+      ));
+
+      WorkflowExecutor workflowExecutor = new WorkflowExecutor();
+      assertFalse(workflowExecutor.getWorkflowPlan(workflow.getCurrentWorkflowRevisionId()).getIsBatchExecutable());
+
+      List<WorkflowOutput> outputs = workflowExecutor.executeBatch(List.of(
+         makeInput(workflow.getId(), Map.of("seedValue", 0)),
+         makeInput(workflow.getId(), Map.of("seedValue", 10)),
+         makeInput(workflow.getId(), Map.of("seedValue", 20))));
+      assertThat(outputs).extracting(output -> output.getContext().getValues().get("sum")).containsExactly(10, 20, 30);
+      assertThat(BatchAddXToSumStepExecutor.batchCalls).isEmpty();
+      assertEquals(12, BatchAddXToSumStepExecutor.noOfSingleCalls);
+   }
+
+
+
+   /*******************************************************************************
+    ** a SAMPLED run that wasn't sampled is only stored if it was slow - which,
+    ** for a run executed page-at-a-time, means the time spent on it, not the
+    ** time its whole page took.
+    *******************************************************************************/
+   @Test
+   void testSlowRunsPageAtATime() throws QException
+   {
+      registerCountingTestWorkflowType();
+      Integer workflowId = WorkflowsTestDataSource.insertTestWorkflow();
+      setRunLogLevel(workflowId, WorkflowRunLogLevel.SAMPLED);
+      WorkflowsRegistry.of(QContext.getQInstance()).setWorkflowRunLogSettings(new WorkflowRunLogSettings(WorkflowRunLogLevel.FULL, 0, 200, 1));
+
+      List<WorkflowRunLog> tracedRunLogs    = new ArrayList<>();
+      WorkflowExecutor     workflowExecutor = new WorkflowExecutor().withWorkflowTracer(runLog -> tracedRunLogs.add(runLog));
+
+      /////////////////////////////////////////////////////////////////////
+      // one run sleeps in each of its 5 steps - so it (and only it) is  //
+      // slow, even though every run in the page starts & ends around it //
+      /////////////////////////////////////////////////////////////////////
+      List<WorkflowOutput> outputs = workflowExecutor.executeBatch(List.of(
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0)),
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "sleepMillis", 60)),
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0)),
+         makeInput(workflowId, Map.of("condition", true, "seedValue", 0))));
+      assertThat(outputs).allMatch(output -> output.getException() == null);
+      assertThat(tracedRunLogs).containsExactly(outputs.get(1).getWorkflowRunLog());
+
+      //////////////////////////////////////////////
+      // the same, for runs executed on their own //
+      //////////////////////////////////////////////
+      tracedRunLogs.clear();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0)), new WorkflowOutput());
+      assertThat(tracedRunLogs).isEmpty();
+      workflowExecutor.execute(makeInput(workflowId, Map.of("condition", true, "seedValue", 0, "sleepMillis", 60)), new WorkflowOutput());
+      assertThat(tracedRunLogs).hasSize(1);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static void setRunLogLevel(Integer workflowId, WorkflowRunLogLevel workflowRunLogLevel) throws QException
+   {
+      new UpdateAction().execute(new UpdateInput(Workflow.TABLE_NAME).withRecord(new QRecord()
+         .withValue("id", workflowId)
+         .withValue("runLogLevelId", workflowRunLogLevel.getId())));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static WorkflowInput makeInput(Integer workflowId, Map<String, Serializable> values)
+   {
+      WorkflowInput input = new WorkflowInput();
+      input.setWorkflowId(workflowId);
+      input.setValues(values);
+      return (input);
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -316,4 +951,283 @@ class WorkflowExecutorTest extends BaseTest
       return (output);
    }
 
+
+
+   /***************************************************************************
+    * insert a workflow (and initial revision) of the test workflow type.
+    ***************************************************************************/
+   private static Workflow insertTestTypeWorkflow() throws QException
+   {
+      Workflow workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(TestWorkflowDefinitions.TEST_WORKFLOW_TYPE, null);
+      new UpdateAction().execute(new UpdateInput(Workflow.TABLE_NAME).withRecord(new QRecord()
+         .withValue("id", workflow.getId())
+         .withValue("workflowTypeName", TestWorkflowDefinitions.TEST_WORKFLOW_TYPE)));
+      return (workflow);
+   }
+
+
+
+   /***************************************************************************
+    * insert a test-type workflow of batch add-x-to-sum steps, which branches
+    * on condition (so a seedValue of 0 sums to 9 if true, else 10):
+    * 1 (x=1) - 2 (condition) - true: 3 (x=3), false: 4 (x=4) - 5 (x=5).
+    ***************************************************************************/
+   private static Integer insertBranchingBatchWorkflow() throws QException
+   {
+      Workflow workflow = insertTestTypeWorkflow();
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, BATCH_ADD_X_TO_SUM_ACTION, Map.of("x", 1)),
+         WorkflowsTestDataSource.newStep(2, TestWorkflowDefinitions.BOOLEAN_CONDITIONAL, Map.of()),
+         WorkflowsTestDataSource.newStep(3, BATCH_ADD_X_TO_SUM_ACTION, Map.of("x", 3)),
+         WorkflowsTestDataSource.newStep(4, BATCH_ADD_X_TO_SUM_ACTION, Map.of("x", 4)),
+         WorkflowsTestDataSource.newStep(5, BATCH_ADD_X_TO_SUM_ACTION, Map.of("x", 5))
+      ));
+      WorkflowsTestDataSource.insertLinks(workflow, List.of(
+         WorkflowsTestDataSource.newLink(1, 2),
+         WorkflowsTestDataSource.newLink(2, 3, "true"),
+         WorkflowsTestDataSource.newLink(2, 4, "false"),
+         WorkflowsTestDataSource.newLink(3, 5),
+         WorkflowsTestDataSource.newLink(4, 5)
+      ));
+      return (workflow.getId());
+   }
+
+
+
+   /***************************************************************************
+    * register the test workflow types, plus the batch add-x-to-sum step type.
+    ***************************************************************************/
+   private static void registerBatchAddXToSumStepType() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      WorkflowsRegistry.of(QContext.getQInstance()).registerWorkflowStepType(new WorkflowStepType()
+         .withName(BATCH_ADD_X_TO_SUM_ACTION)
+         .withLabel("Batch Add X to Sum")
+         .withOutboundLinkMode(OutboundLinkMode.ONE)
+         .withExecutor(new QCodeReference(BatchAddXToSumStepExecutor.class)));
+
+      BatchAddXToSumStepExecutor.batchCalls.clear();
+      BatchAddXToSumStepExecutor.noOfSingleCalls = 0;
+   }
+
+
+
+   /***************************************************************************
+    * register the test workflow type, with the counting type executor.
+    ***************************************************************************/
+   private static void registerCountingTestWorkflowType() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      WorkflowsRegistry.of(QContext.getQInstance()).registerWorkflowType(new WorkflowType()
+         .withName(TestWorkflowDefinitions.TEST_WORKFLOW_TYPE)
+         .withLabel("Test Workflow Type")
+         .withExecutor(new QCodeReference(CountingTestWorkflowTypeExecutor.class)));
+
+      CountingTestWorkflowTypeExecutor.openedTransactions.clear();
+      CountingTestWorkflowTypeExecutor.postBatchOutputs.clear();
+      CountingTestWorkflowTypeExecutor.noOfMessagesBuilt = 0;
+   }
+
+
+
+   /***************************************************************************
+    * test type executor whose runs are no-ops if they have an isNoOp value,
+    * that ask for the transaction in each step if they have a useTransaction
+    * value (and sleep in each step for a sleepMillis value), and whose steps
+    * get a lazy message if they have a lazyMessage
+    * value - recording the transactions it opens, the outputs given to its
+    * post-batch, and how many lazy messages get built.
+    ***************************************************************************/
+   public static class CountingTestWorkflowTypeExecutor extends TestWorkflowDefinitions.TestWorkflowTypeExecutor
+   {
+      static final String FAIL = "fail";
+
+      static List<CountingTransaction> openedTransactions = new ArrayList<>();
+      static List<WorkflowOutput>      postBatchOutputs   = new ArrayList<>();
+      static int                       noOfMessagesBuilt  = 0;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void preStep(WorkflowStep step, WorkflowExecutionContext context)
+      {
+         super.preStep(step, context);
+         if(context.getValues().containsKey("useTransaction"))
+         {
+            context.getTransaction();
+         }
+
+         Integer sleepMillis = ValueUtils.getValueAsInteger(context.getValues().get("sleepMillis"));
+         if(sleepMillis != null)
+         {
+            SleepUtils.sleep(sleepMillis, TimeUnit.MILLISECONDS);
+         }
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public WorkflowStepOutput postStep(WorkflowStep step, WorkflowExecutionContext context, WorkflowStepOutput stepOutput)
+      {
+         String lazyMessage = ValueUtils.getValueAsString(context.getValues().get("lazyMessage"));
+         if(lazyMessage == null)
+         {
+            return (super.postStep(step, context, stepOutput));
+         }
+
+         return (WorkflowStepOutput.ofLazyMessage(stepOutput.outputData(), () ->
+         {
+            if(FAIL.equals(lazyMessage))
+            {
+               throw (new IllegalStateException("Failed building message"));
+            }
+
+            noOfMessagesBuilt++;
+            return (lazyMessage);
+         }));
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public boolean isNoOpRun(WorkflowExecutionContext context)
+      {
+         return (context.getValues().containsKey("isNoOp"));
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void postBatch(List<WorkflowOutput> workflowOutputs)
+      {
+         postBatchOutputs.addAll(workflowOutputs);
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public QBackendTransaction openTransaction(Workflow workflow, WorkflowRevision workflowRevision)
+      {
+         CountingTransaction transaction = new CountingTransaction();
+         openedTransactions.add(transaction);
+         return (transaction);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * add-x-to-sum step executor that can also execute for a batch of runs -
+    * recording each batch call (as "x:noOfRuns"), and how many times it is
+    * executed for a single run.  A batch call throws (before changing any of
+    * its runs) if any of them has a failBatch value, or a null sum.
+    ***************************************************************************/
+   public static class BatchAddXToSumStepExecutor extends TestWorkflowDefinitions.AddXToSumStepExecutor implements WorkflowStepBatchExecutorInterface
+   {
+      static List<String> batchCalls      = new ArrayList<>();
+      static int          noOfSingleCalls = 0;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext context)
+      {
+         noOfSingleCalls++;
+         return (super.execute(step, inputValues, context));
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public List<WorkflowStepOutput> executeBatch(WorkflowStep step, Map<String, Serializable> inputValues, Object compiledInputValues, List<WorkflowExecutionContext> contexts) throws QException
+      {
+         Integer x = ValueUtils.getValueAsInteger(inputValues.getOrDefault("x", 0));
+         batchCalls.add(x + ":" + contexts.size());
+
+         List<Integer> newSums = new ArrayList<>();
+         for(WorkflowExecutionContext context : contexts)
+         {
+            Integer sum = ValueUtils.getValueAsInteger(context.getValues().get("sum"));
+            if(sum == null || context.getValues().containsKey("failBatch"))
+            {
+               throw (new QException("Failed executing batch"));
+            }
+            newSums.add(sum + x);
+         }
+
+         List<WorkflowStepOutput> workflowStepOutputs = new ArrayList<>();
+         for(int i = 0; i < contexts.size(); i++)
+         {
+            contexts.get(i).getValues().put("sum", newSums.get(i));
+            workflowStepOutputs.add(new WorkflowStepOutput(newSums.get(i)));
+         }
+         return (workflowStepOutputs);
+      }
+   }
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static class CountingTransaction extends QBackendTransaction
+   {
+      private int noOfCommits   = 0;
+      private int noOfRollbacks = 0;
+      private int noOfCloses    = 0;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void commit()
+      {
+         noOfCommits++;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void rollback()
+      {
+         noOfRollbacks++;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void close()
+      {
+         noOfCloses++;
+      }
+   }
+
 }
\ No newline at end of file
@@ -0,0 +1,231 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.execution;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.TestWorkflowDefinitions;
+import com.kingsrook.qbits.workflows.WorkflowsTestDataSource;
+import com.kingsrook.qbits.workflows.definition.OutboundLinkMode;
+import com.kingsrook.qbits.workflows.definition.WorkflowStepType;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/*******************************************************************************
+ ** Unit test for WorkflowLinkDispatchTable 
+ *******************************************************************************/
+class WorkflowLinkDispatchTableTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** a step with OutboundLinkMode.ONE - a single link, without a condition.
+    *******************************************************************************/
+   @Test
+   void testOneUnconditionalLink()
+   {
+      WorkflowLinkDispatchTable table = newTable(link(null, 2));
+      assertEquals(2, table.resolve(null).toStepNo());
+      assertEquals(2, table.resolve(1701).toStepNo());
+      assertEquals(2, table.resolve("anything").toStepNo());
+
+      assertNull(newTable().resolve(true));
+   }
+
+
+
+   /*******************************************************************************
+    ** a step with OutboundLinkMode.TWO - true & false links.
+    *******************************************************************************/
+   @Test
+   void testTwoConditionalLinks()
+   {
+      WorkflowLinkDispatchTable table = newTable(link("true", 2), link("false", 3));
+      assertEquals(2, table.resolve(true).toStepNo());
+      assertEquals(3, table.resolve(false).toStepNo());
+      assertEquals(2, table.resolve("true").toStepNo());
+
+      ////////////////////////////////////////////////////////////
+      // no matching link (and no unconditional one) gives null //
+      ////////////////////////////////////////////////////////////
+      assertNull(table.resolve(null));
+      assertNull(table.resolve("maybe"));
+   }
+
+
+
+   /*******************************************************************************
+    ** condition values are converted to the type of the step output - including
+    ** types that aren't pre-built - and ones that don't convert are skipped.
+    *******************************************************************************/
+   @Test
+   void testTypeConversion()
+   {
+      WorkflowLinkDispatchTable table = newTable(link("abc", 2), link("1", 3), link("2", 4));
+      assertEquals(3, table.resolve(1).toStepNo());
+      assertEquals(4, table.resolve(2).toStepNo());
+      assertEquals(3, table.resolve(1L).toStepNo());
+      assertEquals(3, table.resolve("1").toStepNo());
+      assertEquals(2, table.resolve("abc").toStepNo());
+      assertNull(table.resolve(3));
+
+      ////////////////////////////////////////////////////
+      // a second lookup of a lazily-built type is same //
+      ////////////////////////////////////////////////////
+      assertEquals(4, table.resolve(2L).toStepNo());
+   }
+
+
+
+   /*******************************************************************************
+    ** when more than one link applies, the first one (by position) is taken.
+    *******************************************************************************/
+   @Test
+   void testFirstLinkWins()
+   {
+      /////////////////////////////////////////////////////////////
+      // two condition values that convert to the same value (1) //
+      /////////////////////////////////////////////////////////////
+      WorkflowLinkDispatchTable table = newTable(link("01", 2), link("1", 3));
+      assertEquals(2, table.resolve(1).toStepNo());
+      assertEquals(3, table.resolve("1").toStepNo());
+
+      ///////////////////////////////////////////////////////////////////////
+      // a matching conditional link before an unconditional one is taken, //
+      // but an unconditional link before a matching one wins.             //
+      ///////////////////////////////////////////////////////////////////////
+      table = newTable(link("true", 2), link(null, 3));
+      assertEquals(2, table.resolve(true).toStepNo());
+      assertEquals(3, table.resolve(false).toStepNo());
+
+      table = newTable(link(null, 3), link("true", 2));
+      assertEquals(3, table.resolve(true).toStepNo());
+   }
+
+
+
+   /*******************************************************************************
+    ** a step with OutboundLinkMode.CONTAINER - push & pop links.
+    *******************************************************************************/
+   @Test
+   void testContainer()
+   {
+      WorkflowLinkDispatchTable table = newTable(link("push", 2), link("pop", 3));
+      assertEquals(2, table.resolveContainer(false).toStepNo());
+      assertEquals(3, table.resolveContainer(true).toStepNo());
+
+      ////////////////////////////////////////////////////////////
+      // empty container (no push), and one at the end (no pop) //
+      ////////////////////////////////////////////////////////////
+      assertNull(newTable(link("pop", 3)).resolveContainer(false));
+      assertNull(newTable(link("push", 2)).resolveContainer(true));
+
+      ////////////////////////////////////////////////////////////////////
+      // an unconditional link is taken for push & pop if there isn't a //
+      // dedicated one - or if it comes before the dedicated one.       //
+      ////////////////////////////////////////////////////////////////////
+      table = newTable(link("push", 2), link(null, 4));
+      assertEquals(2, table.resolveContainer(false).toStepNo());
+      assertEquals(4, table.resolveContainer(true).toStepNo());
+
+      table = newTable(link(null, 4), link("push", 2), link("pop", 3));
+      assertEquals(4, table.resolveContainer(false).toStepNo());
+      assertEquals(4, table.resolveContainer(true).toStepNo());
+
+      table = newTable(link("push", 2), link(null, 4), link("pop", 3));
+      assertEquals(2, table.resolveContainer(false).toStepNo());
+      assertEquals(4, table.resolveContainer(true).toStepNo());
+
+      //////////////////////////////////////////
+      // the first of duplicate links is used //
+      //////////////////////////////////////////
+      table = newTable(link("push", 2), link("push", 5));
+      assertEquals(2, table.resolveContainer(false).toStepNo());
+   }
+
+
+
+   /*******************************************************************************
+    ** a step with OutboundLinkMode.ZERO - its link (which is stored just to help
+    ** draw the graph) is never followed by the executor.
+    *******************************************************************************/
+   @Test
+   void testZero() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      WorkflowsRegistry.of(QContext.getQInstance()).registerWorkflowStepType(new WorkflowStepType()
+         .withName("addXAndStop")
+         .withLabel("Add X and Stop")
+         .withOutboundLinkMode(OutboundLinkMode.ZERO)
+         .withExecutor(new QCodeReference(TestWorkflowDefinitions.AddXToSumStepExecutor.class)));
+
+      Workflow workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(TestWorkflowDefinitions.TEST_WORKFLOW_TYPE, null);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, TestWorkflowDefinitions.ADD_X_TO_SUM_ACTION, Map.of("x", 1)),
+         WorkflowsTestDataSource.newStep(2, "addXAndStop", Map.of("x", 2)),
+         WorkflowsTestDataSource.newStep(3, TestWorkflowDefinitions.ADD_X_TO_SUM_ACTION, Map.of("x", 4))
+      ));
+      WorkflowsTestDataSource.insertLinks(workflow, List.of(
+         WorkflowsTestDataSource.newLink(1, 2),
+         WorkflowsTestDataSource.newLink(2, 3)
+      ));
+
+      WorkflowInput input = new WorkflowInput();
+      input.setWorkflowId(workflow.getId());
+      input.setValues(Map.of("seedValue", 0));
+      WorkflowOutput output = new WorkflowOutput();
+      new WorkflowExecutor().execute(input, output);
+
+      assertNull(output.getException());
+      assertEquals(3, output.getContext().getValues().get("sum"));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static WorkflowPlanLink link(String conditionValue, Integer toStepNo)
+   {
+      return (new WorkflowPlanLink(conditionValue, toStepNo, toStepNo - 1));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static WorkflowLinkDispatchTable newTable(WorkflowPlanLink... links)
+   {
+      return (new WorkflowLinkDispatchTable(1, new ArrayList<>(List.of(links))));
+   }
+
+}
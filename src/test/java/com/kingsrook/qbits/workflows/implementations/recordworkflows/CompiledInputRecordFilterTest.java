@@ -0,0 +1,314 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.WorkflowsTestDataSource;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlan;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlanStep;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for CompiledInputRecordFilter 
+ *******************************************************************************/
+class CompiledInputRecordFilterTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** the cross product is walked lazily - so join records after the first
+    ** matching combination are never looked at.
+    *******************************************************************************/
+   @Test
+   void testLazyWalkStopsAtFirstMatch() throws QException
+   {
+      ///////////////////////////////////////////////////////////
+      // an OR filter - so nothing gets pruned before the walk //
+      ///////////////////////////////////////////////////////////
+      QQueryFilter filter = new QQueryFilter()
+         .withBooleanOperator(QQueryFilter.BooleanOperator.OR)
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Fido"))
+         .withCriteria(new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Nobody"));
+
+      List<CountingRecord> pets = List.of(newPet("Rex"), newPet("Fido"), newPet("Spot"), newPet("Max"));
+
+      CompiledInputRecordFilter compiledFilter = CompiledInputRecordFilter.compile(TABLE_NAME_PERSON, filter);
+      QRecord                   person         = newPerson("Tim");
+      assertTrue(compiledFilter.doesRecordMatch(person, newContext(compiledFilter, person, pets)));
+
+      assertThat(pets.get(1).noOfGetValueCalls).isPositive();
+      assertEquals(0, pets.get(2).noOfGetValueCalls);
+      assertEquals(0, pets.get(3).noOfGetValueCalls);
+   }
+
+
+
+   /*******************************************************************************
+    ** with an AND filter, if no join record satisfies the join table's part of
+    ** the filter, the record doesn't match (without any crossing).
+    *******************************************************************************/
+   @Test
+   void testAllJoinRecordsPruned() throws QException
+   {
+      QQueryFilter filter = new QQueryFilter()
+         .withCriteria(new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Tim"))
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Zed"));
+
+      CompiledInputRecordFilter compiledFilter = CompiledInputRecordFilter.compile(TABLE_NAME_PERSON, filter);
+      QRecord                   person         = newPerson("Tim");
+      assertFalse(compiledFilter.doesRecordMatch(person, newContext(compiledFilter, person, List.of(newPet("Rex"), newPet("Fido")))));
+      assertTrue(compiledFilter.doesRecordMatch(person, newContext(compiledFilter, person, List.of(newPet("Rex"), newPet("Zed")))));
+
+      //////////////////////////////////////////////////////////////////////////
+      // main table's part not satisfied - join records aren't even looked at //
+      //////////////////////////////////////////////////////////////////////////
+      QRecord        otherPerson = newPerson("Darin");
+      CountingRecord zed         = newPet("Zed");
+      assertFalse(compiledFilter.doesRecordMatch(otherPerson, newContext(compiledFilter, otherPerson, List.of(zed))));
+      assertEquals(0, zed.noOfGetValueCalls);
+   }
+
+
+
+   /*******************************************************************************
+    ** a join with no records isn't pruned - its fields are just null.
+    *******************************************************************************/
+   @Test
+   void testEmptyJoinNotPruned() throws QException
+   {
+      QRecord person = newPerson("Tim");
+
+      CompiledInputRecordFilter isBlankFilter = CompiledInputRecordFilter.compile(TABLE_NAME_PERSON, new QQueryFilter()
+         .withCriteria(new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Tim"))
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.IS_BLANK)));
+      assertTrue(isBlankFilter.doesRecordMatch(person, newContext(isBlankFilter, person, List.of())));
+
+      CompiledInputRecordFilter equalsFilter = CompiledInputRecordFilter.compile(TABLE_NAME_PERSON, new QQueryFilter()
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Rex")));
+      assertFalse(equalsFilter.doesRecordMatch(person, newContext(equalsFilter, person, List.of())));
+   }
+
+
+
+   /*******************************************************************************
+    ** parts of an OR filter aren't required - so they aren't used to prune.
+    *******************************************************************************/
+   @Test
+   void testOrFilterNotPruned() throws QException
+   {
+      QQueryFilter filter = new QQueryFilter()
+         .withBooleanOperator(QQueryFilter.BooleanOperator.OR)
+         .withCriteria(new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Tim"))
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Rex"));
+
+      CompiledInputRecordFilter compiledFilter = CompiledInputRecordFilter.compile(TABLE_NAME_PERSON, filter);
+      assertThat(CompiledInputRecordFilter.getSingleTableSubFilters(filter, TABLE_NAME_PERSON, compiledFilter.getJoinsInFilter())).isEmpty();
+
+      QRecord tim = newPerson("Tim");
+      assertTrue(compiledFilter.doesRecordMatch(tim, newContext(compiledFilter, tim, List.of(newPet("Fido")))));
+
+      QRecord ann = newPerson("Ann");
+      assertTrue(compiledFilter.doesRecordMatch(ann, newContext(compiledFilter, ann, List.of(newPet("Fido"), newPet("Rex")))));
+      assertFalse(compiledFilter.doesRecordMatch(ann, newContext(compiledFilter, ann, List.of(newPet("Fido")))));
+   }
+
+
+
+   /*******************************************************************************
+    ** criteria comparing fields from two tables (via otherFieldName), or on fields
+    ** from tables that aren't joined, are left for the full filter only.
+    *******************************************************************************/
+   @Test
+   void testSingleTableSubFilters()
+   {
+      QFilterCriteria firstNameCriteria    = new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Tim");
+      QFilterCriteria petNameCriteria      = new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.STARTS_WITH, "T");
+      QFilterCriteria crossTableCriteria   = new QFilterCriteria().withFieldName("firstName").withOperator(QCriteriaOperator.EQUALS).withOtherFieldName(TABLE_NAME_PET + ".name");
+      QFilterCriteria sameTableCriteria    = new QFilterCriteria().withFieldName("firstName").withOperator(QCriteriaOperator.NOT_EQUALS).withOtherFieldName("lastName");
+      QFilterCriteria unknownTableCriteria = new QFilterCriteria("unknownTable.name", QCriteriaOperator.EQUALS, "X");
+      QQueryFilter    petSubFilter         = new QQueryFilter()
+         .withBooleanOperator(QQueryFilter.BooleanOperator.OR)
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".species", QCriteriaOperator.EQUALS, "dog"))
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".species", QCriteriaOperator.EQUALS, "cat"));
+      QQueryFilter    mixedSubFilter       = new QQueryFilter()
+         .withBooleanOperator(QQueryFilter.BooleanOperator.OR)
+         .withCriteria(new QFilterCriteria("lastName", QCriteriaOperator.EQUALS, "Smith"))
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".species", QCriteriaOperator.EQUALS, "cat"));
+
+      QQueryFilter filter = new QQueryFilter()
+         .withCriteria(firstNameCriteria)
+         .withCriteria(petNameCriteria)
+         .withCriteria(crossTableCriteria)
+         .withCriteria(sameTableCriteria)
+         .withCriteria(unknownTableCriteria)
+         .withSubFilter(petSubFilter)
+         .withSubFilter(mixedSubFilter);
+
+      Map<String, QQueryFilter> subFilters = CompiledInputRecordFilter.getSingleTableSubFilters(filter, TABLE_NAME_PERSON, List.of(new QueryJoin(TABLE_NAME_PET)));
+      assertEquals(2, subFilters.size());
+
+      assertThat(subFilters.get(TABLE_NAME_PERSON).getCriteria()).containsExactly(firstNameCriteria, sameTableCriteria);
+      assertThat(subFilters.get(TABLE_NAME_PERSON).getSubFilters()).isNullOrEmpty();
+
+      assertThat(subFilters.get(TABLE_NAME_PET).getCriteria()).containsExactly(petNameCriteria);
+      assertThat(subFilters.get(TABLE_NAME_PET).getSubFilters()).containsExactly(petSubFilter);
+   }
+
+
+
+   /*******************************************************************************
+    ** the filter step's filter is compiled once per revision - and the same
+    ** compiled filter is used by every run.
+    *******************************************************************************/
+   @Test
+   void testCompiledFilterReusedAcrossRuns() throws QException
+   {
+      Workflow workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(RecordWorkflowsDefinition.WORKFLOW_TYPE, TABLE_NAME_PERSON);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, InputRecordFilterStep.NAME, Map.of("queryFilterJson", new QQueryFilter(new QFilterCriteria("firstName", QCriteriaOperator.STARTS_WITH, "A"))))
+      ));
+
+      QRecord       workflowRecord = GetAction.execute(Workflow.TABLE_NAME, workflow.getId());
+      List<QRecord> persons        = new InsertAction().execute(new InsertInput(TABLE_NAME_PERSON).withRecords(List.of(
+         new QRecord().withValue("firstName", "Alice"),
+         new QRecord().withValue("firstName", "Bob")))).getRecords();
+
+      RunRecordWorkflowLoadStep.executeWorkflowOnRecords(workflowRecord, List.of(persons.get(0)), null);
+      WorkflowPlanStep planStep       = getFilterPlanStep(workflowRecord);
+      Object           compiledFilter = planStep.getCompiledInputValues();
+      assertThat(compiledFilter).isInstanceOf(CompiledInputRecordFilter.class);
+
+      RunRecordWorkflowLoadStep.executeWorkflowOnRecords(workflowRecord, persons, null);
+      assertSame(planStep, getFilterPlanStep(workflowRecord));
+      assertSame(compiledFilter, planStep.getCompiledInputValues());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static WorkflowPlanStep getFilterPlanStep(QRecord workflowRecord)
+   {
+      WorkflowPlan plan = WorkflowsRegistry.of(QContext.getQInstance()).getWorkflowPlanCache().get(workflowRecord.getValueInteger("currentWorkflowRevisionId"));
+      for(int i = 0; i < plan.getNoOfSteps(); i++)
+      {
+         if(InputRecordFilterStep.NAME.equals(plan.getStep(i).getWorkflowStep().getWorkflowStepTypeName()))
+         {
+            return (plan.getStep(i));
+         }
+      }
+      throw (new AssertionError("No filter step in plan"));
+   }
+
+
+
+   /***************************************************************************
+    * make a context for a person, with the given pets already loaded as its
+    * join records (so nothing gets queried).
+    ***************************************************************************/
+   private static RecordWorkflowContext newContext(CompiledInputRecordFilter compiledFilter, QRecord person, List<? extends QRecord> pets)
+   {
+      RecordWorkflowContext context = new RecordWorkflowContext();
+      context.setWorkflow(new Workflow().withTableName(TABLE_NAME_PERSON));
+      context.record.set(person);
+
+      for(QueryJoin queryJoin : compiledFilter.getJoinsInFilter())
+      {
+         if(TABLE_NAME_PET.equals(queryJoin.getJoinTable()))
+         {
+            context.setJoinRecords(queryJoin, person, new ArrayList<>(pets));
+         }
+      }
+
+      return (context);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static QRecord newPerson(String firstName)
+   {
+      return (new QRecord().withTableName(TABLE_NAME_PERSON).withValue("id", 1).withValue("firstName", firstName).withValue("lastName", "Person"));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static CountingRecord newPet(String name)
+   {
+      CountingRecord pet = new CountingRecord();
+      pet.setTableName(TABLE_NAME_PET);
+      pet.setValue("name", name);
+      pet.setValue("ownerPersonId", 1);
+      return (pet);
+   }
+
+
+
+   /***************************************************************************
+    * a record that counts how many times its values are read.
+    ***************************************************************************/
+   private static class CountingRecord extends QRecord
+   {
+      private int noOfGetValueCalls = 0;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public Serializable getValue(String fieldName)
+      {
+         noOfGetValueCalls++;
+         return (super.getValue(fieldName));
+      }
+   }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.session.QSession;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+
+/*******************************************************************************
+ ** Unit test for RecordWorkflowApiTranslationCache 
+ **
+ ** Cache hits are told apart from misses by running them against an empty
+ ** instance - a hit doesn't go back to the API meta-data, but a miss does.
+ *******************************************************************************/
+class RecordWorkflowApiTranslationCacheTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** field names are translated per API version (with or without a table-name
+    ** qualifier) - and then served from the cache.
+    *******************************************************************************/
+   @Test
+   void testFieldNameHits() throws QException
+   {
+      RecordWorkflowApiTranslationCache cache = new RecordWorkflowApiTranslationCache();
+      assertEquals("birthDate", cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "birthDay", "2024-01-01"));
+      assertEquals("noOfShoes", cache.getActualFieldName(API_NAME, V1, TABLE_NAME_PERSON, "shoeCount", "2"));
+      assertEquals("birthDate", cache.getActualFieldName(ALTERNATIVE_API_NAME, V2, TABLE_NAME_PERSON, "birthDate", "2024-01-01"));
+      assertEquals(3, cache.size());
+
+      withEmptyInstance(() ->
+      {
+         assertEquals("birthDate", cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "birthDay", null));
+         assertEquals("birthDate", cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, TABLE_NAME_PERSON + ".birthDay", null));
+         assertEquals("noOfShoes", cache.getActualFieldName(API_NAME, V1, TABLE_NAME_PERSON, "shoeCount", null));
+         assertThatThrownBy(() -> cache.getActualFieldName(API_NAME, V1, TABLE_NAME_PERSON, "firstName", "Tim")).isInstanceOf(Exception.class);
+      });
+      assertEquals(3, cache.size());
+   }
+
+
+
+   /*******************************************************************************
+    ** filters are translated (without changing the input filter) - and then
+    ** served from the cache, along with their messages.
+    *******************************************************************************/
+   @Test
+   void testFilterHits() throws QException
+   {
+      RecordWorkflowApiTranslationCache cache = new RecordWorkflowApiTranslationCache();
+
+      QQueryFilter filter     = newFilter();
+      List<String> messages   = new ArrayList<>();
+      QQueryFilter translated = cache.translateFilter(API_NAME, V2, TABLE_NAME_PERSON, filter, messages);
+      assertThat(translated.getCriteria()).extracting(QFilterCriteria::getFieldName).containsExactly("birthDate", "firstName");
+      assertThat(filter.getCriteria()).extracting(QFilterCriteria::getFieldName).containsExactly("birthDay", "firstName");
+      assertThat(messages).isEmpty();
+
+      List<String> badMessages = new ArrayList<>();
+      cache.translateFilter(API_NAME, V2, TABLE_NAME_PERSON, new QQueryFilter(new QFilterCriteria("notAField", QCriteriaOperator.EQUALS, 1)), badMessages);
+      assertThat(badMessages).isNotEmpty();
+
+      withEmptyInstance(() ->
+      {
+         QQueryFilter hit = cache.translateFilter(API_NAME, V2, TABLE_NAME_PERSON, newFilter(), messages);
+         assertThat(hit.getCriteria()).extracting(QFilterCriteria::getFieldName).containsExactly("birthDate", "firstName");
+         assertThat(messages).isEmpty();
+
+         List<String> hitBadMessages = new ArrayList<>();
+         cache.translateFilter(API_NAME, V2, TABLE_NAME_PERSON, new QQueryFilter(new QFilterCriteria("notAField", QCriteriaOperator.EQUALS, 1)), hitBadMessages);
+         assertEquals(badMessages, hitBadMessages);
+      });
+   }
+
+
+
+   /*******************************************************************************
+    ** each translateFilter call gets its own copy of the cached filter - so
+    ** changes to one don't leak into the cache (or other callers' copies).
+    *******************************************************************************/
+   @Test
+   void testFilterCloneIsolation() throws QException
+   {
+      RecordWorkflowApiTranslationCache cache = new RecordWorkflowApiTranslationCache();
+
+      QQueryFilter first = cache.translateFilter(API_NAME, V2, TABLE_NAME_PERSON, newFilter(), new ArrayList<>());
+      first.getCriteria().get(0).setFieldName("changed");
+      first.getCriteria().get(1).setValues(new ArrayList<>(List.of("Changed")));
+      first.addCriteria(new QFilterCriteria("lastName", QCriteriaOperator.EQUALS, "Added"));
+
+      QQueryFilter second = cache.translateFilter(API_NAME, V2, TABLE_NAME_PERSON, newFilter(), new ArrayList<>());
+      assertNotSame(first, second);
+      assertThat(second.getCriteria()).extracting(QFilterCriteria::getFieldName).containsExactly("birthDate", "firstName");
+      assertEquals(List.of("Tim"), second.getCriteria().get(1).getValues());
+
+      QQueryFilter third = cache.translateFilter(API_NAME, V2, TABLE_NAME_PERSON, newFilter(), new ArrayList<>());
+      assertNotSame(second, third);
+      assertNotSame(second.getCriteria().get(0), third.getCriteria().get(0));
+   }
+
+
+
+   /*******************************************************************************
+    ** the least-recently-used entries are evicted once the cache is full - and
+    ** nothing is cached at a max size of 0.
+    *******************************************************************************/
+   @Test
+   void testEviction() throws QException
+   {
+      RecordWorkflowApiTranslationCache cache = new RecordWorkflowApiTranslationCache(2);
+      cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "birthDay", "2024-01-01");
+      cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "firstName", "Tim");
+
+      //////////////////////////////////////////////////////////
+      // use birthDay again - so firstName is the one evicted //
+      // when lastName is added.                              //
+      //////////////////////////////////////////////////////////
+      cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "birthDay", "2024-01-01");
+      cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "lastName", "Chamberlain");
+      assertEquals(2, cache.size());
+
+      withEmptyInstance(() ->
+      {
+         assertEquals("birthDate", cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "birthDay", null));
+         assertEquals("lastName", cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "lastName", null));
+         assertThatThrownBy(() -> cache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "firstName", "Tim")).isInstanceOf(Exception.class);
+      });
+
+      ///////////////////////////////////////////////////////////////
+      // filters are bounded the same way (apart from field names) //
+      ///////////////////////////////////////////////////////////////
+      for(String firstName : List.of("A", "B", "C"))
+      {
+         cache.translateFilter(API_NAME, V2, TABLE_NAME_PERSON, new QQueryFilter(new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, firstName)), new ArrayList<>());
+      }
+      assertEquals(4, cache.size());
+
+      cache.invalidateAll();
+      assertEquals(0, cache.size());
+
+      RecordWorkflowApiTranslationCache noCache = new RecordWorkflowApiTranslationCache(0);
+      assertEquals("birthDate", noCache.getActualFieldName(API_NAME, V2, TABLE_NAME_PERSON, "birthDay", "2024-01-01"));
+      noCache.translateFilter(API_NAME, V2, TABLE_NAME_PERSON, newFilter(), new ArrayList<>());
+      assertEquals(0, noCache.size());
+   }
+
+
+
+   /***************************************************************************
+    * a filter using an API field name (birthDay) and a field whose name is the
+    * same in the API as in the table (firstName).
+    ***************************************************************************/
+   private static QQueryFilter newFilter()
+   {
+      return (new QQueryFilter(
+         new QFilterCriteria("birthDay", QCriteriaOperator.EQUALS, "2024-01-01"),
+         new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Tim")));
+   }
+
+
+
+   /***************************************************************************
+    * run some assertions with an empty instance in context (restoring the
+    * real one after).
+    ***************************************************************************/
+   private static void withEmptyInstance(EmptyInstanceAssertions assertions) throws QException
+   {
+      QInstance qInstance = QContext.getQInstance();
+      QSession  qSession  = QContext.getQSession();
+      QContext.init(new QInstance(), new QSession());
+      try
+      {
+         assertions.run();
+      }
+      finally
+      {
+         QContext.init(qInstance, qSession);
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @FunctionalInterface
+   private interface EmptyInstanceAssertions
+   {
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      void run() throws QException;
+   }
+
+}
\ No newline at end of file
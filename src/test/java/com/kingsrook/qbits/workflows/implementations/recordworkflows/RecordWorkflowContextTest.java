@@ -0,0 +1,187 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryJoin;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.joins.QJoinMetaData;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/*******************************************************************************
+ ** Unit test for RecordWorkflowContext 
+ *******************************************************************************/
+class RecordWorkflowContextTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** a record's loaded associations are only used as its join records when the
+    ** context says they're complete - else, the join table is queried.
+    *******************************************************************************/
+   @Test
+   void testJoinRecordsFromCompleteAssociations() throws QException
+   {
+      QRecord person = new InsertAction().execute(new InsertInput(TABLE_NAME_PERSON).withRecords(List.of(new QRecord().withValue("firstName", "Tim")))).getRecords().get(0);
+      new InsertAction().execute(new InsertInput(TABLE_NAME_PET).withRecords(List.of(new QRecord().withValue("name", "Stored").withValue("ownerPersonId", person.getValue("id")))));
+
+      //////////////////////////////////////////////////////////////////////
+      // give the record an association that differs from the backend, so //
+      // we can tell whether the join records came from a query or not    //
+      //////////////////////////////////////////////////////////////////////
+      person.setAssociatedRecords(Map.of("pets", List.of(new QRecord().withTableName(TABLE_NAME_PET).withValue("name", "Associated").withValue("ownerPersonId", person.getValue("id")))));
+
+      RecordWorkflowContext completeContext = newContext(person).withAreRecordAssociationsComplete(true);
+      assertThat(completeContext.getJoinRecords(newPetJoin())).extracting(r -> r.getValueString("name")).containsExactly("Associated");
+
+      RecordWorkflowContext defaultContext = newContext(person);
+      assertThat(defaultContext.getAreRecordAssociationsComplete()).isFalse();
+      assertThat(defaultContext.getJoinRecords(newPetJoin())).extracting(r -> r.getValueString("name")).containsExactly("Stored");
+
+      ////////////////////////////////////////////////////////////////////////
+      // complete, but without the association loaded - falls back to query //
+      ////////////////////////////////////////////////////////////////////////
+      person.setAssociatedRecords(null);
+      assertThat(newContext(person).withAreRecordAssociationsComplete(true).getJoinRecords(newPetJoin())).extracting(r -> r.getValueString("name")).containsExactly("Stored");
+   }
+
+
+
+   /*******************************************************************************
+    ** only marked fields are sent in the update - unless any step set
+    ** doesRecordNeedUpdated itself (before or after fields were marked), in
+    ** which case the full record is.
+    *******************************************************************************/
+   @Test
+   void testRecordForUpdate()
+   {
+      QRecord person = new QRecord().withTableName(TABLE_NAME_PERSON).withValue("id", 1).withValue("firstName", "Tim").withValue("lastName", "Chamberlain");
+
+      RecordWorkflowContext markedOnly = newContext(new QRecord(person));
+      markedOnly.markRecordFieldUpdated("firstName");
+      assertThat(markedOnly.getRecordForUpdate().getValues()).containsOnlyKeys("id", "firstName");
+
+      RecordWorkflowContext flagOnly = newContext(new QRecord(person));
+      flagOnly.doesRecordNeedUpdated.set(true);
+      assertThat(flagOnly.getRecordForUpdate().getValues()).containsKeys("id", "firstName", "lastName");
+
+      /////////////////////////////////////////////////////////////////////
+      // a custom step changing lastName, after an update-field step ran //
+      /////////////////////////////////////////////////////////////////////
+      RecordWorkflowContext flagAfterMark = newContext(new QRecord(person));
+      flagAfterMark.markRecordFieldUpdated("firstName");
+      flagAfterMark.record.get().setValue("lastName", "Custom");
+      flagAfterMark.doesRecordNeedUpdated.set(true);
+      assertThat(flagAfterMark.getRecordForUpdate().getValues()).containsKeys("id", "firstName").containsEntry("lastName", "Custom");
+
+      ////////////////////////////////////////////////////////////////////////
+      // and before - including setting it through the context's values map //
+      ////////////////////////////////////////////////////////////////////////
+      RecordWorkflowContext flagBeforeMark = newContext(new QRecord(person));
+      flagBeforeMark.record.get().setValue("lastName", "Custom");
+      flagBeforeMark.getValues().put(flagBeforeMark.doesRecordNeedUpdated.getKey(), true);
+      flagBeforeMark.markRecordFieldUpdated("firstName");
+      assertThat(flagBeforeMark.getRecordForUpdate().getValues()).containsEntry("lastName", "Custom");
+
+      //////////////////////////////////////////////////////////////
+      // clearing the flag (without marking again) takes the full //
+      // request back - a later mark only sends its field         //
+      //////////////////////////////////////////////////////////////
+      RecordWorkflowContext cleared = newContext(new QRecord(person));
+      cleared.doesRecordNeedUpdated.set(true);
+      cleared.doesRecordNeedUpdated.set(false);
+      cleared.markRecordFieldUpdated("firstName");
+      assertThat(cleared.getRecordForUpdate().getValues()).containsOnlyKeys("id", "firstName");
+   }
+
+
+
+   /*******************************************************************************
+    ** a run is a no-op unless it has something to write (an update, insert, or
+    ** delete) - or is a test run.
+    *******************************************************************************/
+   @Test
+   void testIsNoOpRun()
+   {
+      RecordWorkflowTypeExecutor executor = new RecordWorkflowTypeExecutor();
+      QRecord                    person   = new QRecord().withTableName(TABLE_NAME_PERSON).withValue("id", 1).withValue("firstName", "Tim");
+
+      RecordWorkflowContext untouched = newContext(new QRecord(person));
+      assertThat(executor.isNoOpRun(untouched)).isTrue();
+
+      ////////////////////////////////////////////////////////////////
+      // reading (but not filling) the lazy lists leaves it a no-op //
+      ////////////////////////////////////////////////////////////////
+      untouched.getRecordsToInsert(TABLE_NAME_PET);
+      untouched.getPrimaryKeysToDelete(TABLE_NAME_PET);
+      assertThat(executor.isNoOpRun(untouched)).isTrue();
+
+      RecordWorkflowContext updated = newContext(new QRecord(person));
+      updated.markRecordFieldUpdated("firstName");
+      assertThat(executor.isNoOpRun(updated)).isFalse();
+
+      RecordWorkflowContext inserting = newContext(new QRecord(person));
+      inserting.addRecordToInsert(TABLE_NAME_PET, new QRecord().withValue("name", "Rex"));
+      assertThat(executor.isNoOpRun(inserting)).isFalse();
+
+      RecordWorkflowContext deleting = newContext(new QRecord(person));
+      deleting.addPrimaryKeyToDelete(TABLE_NAME_PET, 1);
+      assertThat(executor.isNoOpRun(deleting)).isFalse();
+
+      RecordWorkflowContext testRun = newContext(new QRecord(person));
+      testRun.setIsTestRun(true);
+      assertThat(executor.isNoOpRun(testRun)).isFalse();
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static RecordWorkflowContext newContext(QRecord person)
+   {
+      RecordWorkflowContext context = new RecordWorkflowContext();
+      context.setWorkflow(new Workflow().withTableName(TABLE_NAME_PERSON));
+      context.record.set(person);
+      return (context);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static QueryJoin newPetJoin()
+   {
+      return (new QueryJoin(TABLE_NAME_PET).withJoinMetaData(QContext.getQInstance().getJoin(QJoinMetaData.makeInferredJoinName(TABLE_NAME_PERSON, TABLE_NAME_PET))));
+   }
+
+}
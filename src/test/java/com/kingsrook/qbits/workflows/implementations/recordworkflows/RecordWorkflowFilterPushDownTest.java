@@ -0,0 +1,318 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.WorkflowsTestDataSource;
+import com.kingsrook.qbits.workflows.execution.WorkflowExecutor;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlan;
+import com.kingsrook.qbits.workflows.execution.WorkflowPlanStep;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qbits.workflows.model.WorkflowStep;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterOrderBy;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/*******************************************************************************
+ ** Unit test for RecordWorkflowFilterPushDown 
+ **
+ ** Each filter is evaluated both ways - by the backend, for the whole page,
+ ** and in memory, for each record - and the results must be the same.
+ *******************************************************************************/
+class RecordWorkflowFilterPushDownTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** persons: Alice (pets Rex & Fido), Bob (Rex & Rex), Carol (Fido), and Dan
+    ** (no pets).
+    *******************************************************************************/
+   @BeforeEach
+   void beforeEach() throws QException
+   {
+      List<QRecord> persons = new InsertAction().execute(new InsertInput(TABLE_NAME_PERSON).withRecords(List.of(
+         new QRecord().withValue("firstName", "Alice"),
+         new QRecord().withValue("firstName", "Bob"),
+         new QRecord().withValue("firstName", "Carol"),
+         new QRecord().withValue("firstName", "Dan")))).getRecords();
+
+      new InsertAction().execute(new InsertInput(TABLE_NAME_PET).withRecords(List.of(
+         newPet("Rex", persons.get(0)),
+         newPet("Fido", persons.get(0)),
+         newPet("Rex", persons.get(1)),
+         newPet("Rex", persons.get(1)),
+         newPet("Fido", persons.get(2)))));
+   }
+
+
+
+   /*******************************************************************************
+    ** the backend's (LEFT joined, distinct) results match the in-memory walk of
+    ** each record's cross product with its join records: a record matches once
+    ** if any combination does (even if several do), and criteria that no single
+    ** join record meets together don't match.
+    *******************************************************************************/
+   @Test
+   void testLeftJoinAndDistinctMatchCrossProduct() throws QException
+   {
+      Map<String, Boolean> results = evaluateBothWays(new QQueryFilter(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Rex")));
+      assertEquals(Map.of("Alice", true, "Bob", true, "Carol", false, "Dan", false), results);
+
+      results = evaluateBothWays(new QQueryFilter(
+         new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Rex"),
+         new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Fido")));
+      assertEquals(Map.of("Alice", false, "Bob", false, "Carol", false, "Dan", false), results);
+
+      results = evaluateBothWays(new QQueryFilter()
+         .withBooleanOperator(QQueryFilter.BooleanOperator.OR)
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Fido"))
+         .withCriteria(new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Bob")));
+      assertEquals(Map.of("Alice", true, "Bob", true, "Carol", true, "Dan", false), results);
+   }
+
+
+
+   /*******************************************************************************
+    ** a record with no join records is checked with nulls for their fields - so
+    ** it can still match (as it does with the backend's LEFT join).
+    *******************************************************************************/
+   @Test
+   void testRecordsWithNoJoinRecords() throws QException
+   {
+      Map<String, Boolean> results = evaluateBothWays(new QQueryFilter()
+         .withBooleanOperator(QQueryFilter.BooleanOperator.OR)
+         .withCriteria(new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Dan"))
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Fido")));
+      assertEquals(Map.of("Alice", true, "Bob", false, "Carol", true, "Dan", true), results);
+
+      results = evaluateBothWays(new QQueryFilter(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.IS_BLANK)));
+      assertEquals(Map.of("Alice", false, "Bob", false, "Carol", false, "Dan", true), results);
+   }
+
+
+
+   /*******************************************************************************
+    ** the step makes all of its filter's criteria case-insensitive - for the
+    ** backend as well as in memory.
+    *******************************************************************************/
+   @Test
+   void testCaseInsensitiveCriteria() throws QException
+   {
+      Map<String, Boolean> results = evaluateBothWays(new QQueryFilter(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "rEX")));
+      assertEquals(Map.of("Alice", true, "Bob", true, "Carol", false, "Dan", false), results);
+
+      results = evaluateBothWays(new QQueryFilter(
+         new QFilterCriteria("firstName", QCriteriaOperator.STARTS_WITH, "c"),
+         new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "FIDO")));
+      assertEquals(Map.of("Alice", false, "Bob", false, "Carol", true, "Dan", false), results);
+   }
+
+
+
+   /*******************************************************************************
+    ** a pre-evaluated result is only used once - so if a run comes back to the
+    ** step, it's evaluated (in memory) against the record as it is then.
+    *******************************************************************************/
+   @Test
+   void testPreEvaluatedResultIsOneShot() throws QException
+   {
+      Workflow         workflow = insertFilterWorkflow(new QQueryFilter(new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Alice")));
+      WorkflowPlan     plan     = new WorkflowExecutor().getWorkflowPlan(workflow.getCurrentWorkflowRevisionId());
+      WorkflowPlanStep planStep = plan.getStartStep();
+      WorkflowStep     step     = planStep.getWorkflowStep();
+
+      RecordWorkflowContext context = newContext(workflow, queryPersons().get(0));
+      assertEquals("Alice", context.record.get().getValueString("firstName"));
+
+      ///////////////////////////////////////////////////////////////////
+      // seed the opposite of the in-memory result - which is used the //
+      // first time only.                                              //
+      ///////////////////////////////////////////////////////////////////
+      context.setPreEvaluatedFilterResult(step.getStepNo(), false);
+      InputRecordFilterStep filterStep = new InputRecordFilterStep();
+      assertEquals(false, filterStep.execute(step, planStep.getInputValues(), context).outputData());
+      assertNull(context.takePreEvaluatedFilterResult(step.getStepNo()));
+      assertEquals(true, filterStep.execute(step, planStep.getInputValues(), context).outputData());
+
+      context.setPreEvaluatedFilterResult(step.getStepNo(), true);
+      assertEquals(true, context.takePreEvaluatedFilterResult(step.getStepNo()));
+      assertNull(context.takePreEvaluatedFilterResult(step.getStepNo()));
+   }
+
+
+
+   /*******************************************************************************
+    ** records that aren't known to be as stored (e.g., given to a table trigger)
+    ** are never evaluated by the backend - the filter is evaluated against the
+    ** records as given.
+    *******************************************************************************/
+   @Test
+   void testNotPushedDownUnlessAsStored() throws QException
+   {
+      QQueryFilter filter = new QQueryFilter()
+         .withBooleanOperator(QQueryFilter.BooleanOperator.OR)
+         .withCriteria(new QFilterCriteria("firstName", QCriteriaOperator.EQUALS, "Changed"))
+         .withCriteria(new QFilterCriteria(TABLE_NAME_PET + ".name", QCriteriaOperator.EQUALS, "Nope"));
+
+      ////////////////////////////////////////////////////////
+      // if the record matches, set its lastName to Matched //
+      ////////////////////////////////////////////////////////
+      Workflow workflow = insertFilterWorkflow(filter);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(WorkflowsTestDataSource.newStep(2, UpdateInputRecordFieldStep.NAME, Map.of("fieldName", "lastName", "value", "Matched"))));
+      WorkflowsTestDataSource.insertLinks(workflow, List.of(WorkflowsTestDataSource.newLink(1, 2, true)));
+      WorkflowPlan plan = new WorkflowExecutor().getWorkflowPlan(workflow.getCurrentWorkflowRevisionId());
+
+      List<QRecord>               persons  = queryPersons();
+      List<RecordWorkflowContext> contexts = new ArrayList<>();
+      for(QRecord person : persons)
+      {
+         contexts.add(newContext(workflow, person).withAreRecordsAsStored(false));
+      }
+      assertEquals(WorkflowPlan.NO_STEP, RecordWorkflowFilterPushDown.evaluateStartFilter(plan, TABLE_NAME_PERSON, persons, contexts));
+      contexts.forEach(c -> assertNull(c.takePreEvaluatedFilterResult(1)));
+
+      contexts.forEach(c -> c.setAreRecordsAsStored(true));
+      assertNotEquals(WorkflowPlan.NO_STEP, RecordWorkflowFilterPushDown.evaluateStartFilter(plan, TABLE_NAME_PERSON, persons, contexts));
+
+      ///////////////////////////////////////////////////////////////////
+      // end to end: records whose (given) values differ from the ones //
+      // stored are filtered by the given values.                      //
+      ///////////////////////////////////////////////////////////////////
+      List<QRecord> givenRecords = new ArrayList<>();
+      for(QRecord person : persons)
+      {
+         givenRecords.add(new QRecord(person).withValue("firstName", "Changed"));
+      }
+
+      QRecord workflowRecord = GetAction.execute(Workflow.TABLE_NAME, workflow.getId());
+      RunRecordWorkflowLoadStep.executeWorkflowOnRecords(workflowRecord, givenRecords, null);
+      assertThat(queryPersons()).allMatch(p -> "Matched".equals(p.getValueString("lastName")));
+   }
+
+
+
+   /***************************************************************************
+    * evaluate the filter (as the start step of a workflow) for all of the
+    * persons, both by the backend and in memory - asserting that the backend
+    * did evaluate it, and that the results are the same - and return them by
+    * first name.
+    ***************************************************************************/
+   private static Map<String, Boolean> evaluateBothWays(QQueryFilter filter) throws QException
+   {
+      Workflow     workflow = insertFilterWorkflow(filter);
+      WorkflowPlan plan     = new WorkflowExecutor().getWorkflowPlan(workflow.getCurrentWorkflowRevisionId());
+
+      List<QRecord>               persons  = queryPersons();
+      List<RecordWorkflowContext> contexts = new ArrayList<>();
+      for(QRecord person : persons)
+      {
+         contexts.add(newContext(workflow, person));
+      }
+
+      int evaluatedStepIndex = RecordWorkflowFilterPushDown.evaluateStartFilter(plan, TABLE_NAME_PERSON, persons, contexts);
+      assertNotEquals(WorkflowPlan.NO_STEP, evaluatedStepIndex);
+
+      WorkflowPlanStep          planStep       = plan.getStep(evaluatedStepIndex);
+      CompiledInputRecordFilter compiledFilter = (CompiledInputRecordFilter) planStep.getCompiledInputValues();
+      Integer                   stepNo         = planStep.getWorkflowStep().getStepNo();
+
+      Map<String, Boolean> results = new LinkedHashMap<>();
+      for(int i = 0; i < persons.size(); i++)
+      {
+         Boolean backendResult = contexts.get(i).takePreEvaluatedFilterResult(stepNo);
+         assertNotNull(backendResult);
+
+         boolean inMemoryResult = compiledFilter.doesRecordMatch(persons.get(i), newContext(workflow, persons.get(i)));
+         assertEquals(inMemoryResult, backendResult, "Result for " + persons.get(i).getValueString("firstName"));
+
+         results.put(persons.get(i).getValueString("firstName"), backendResult);
+      }
+
+      return (results);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static Workflow insertFilterWorkflow(QQueryFilter filter) throws QException
+   {
+      Workflow workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(RecordWorkflowsDefinition.WORKFLOW_TYPE, TABLE_NAME_PERSON);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(WorkflowsTestDataSource.newStep(1, InputRecordFilterStep.NAME, Map.of("queryFilterJson", filter))));
+      return (workflow);
+   }
+
+
+
+   /***************************************************************************
+    * a context for a person as stored (as the RunRecordWorkflow process makes).
+    ***************************************************************************/
+   private static RecordWorkflowContext newContext(Workflow workflow, QRecord person)
+   {
+      RecordWorkflowContext context = new RecordWorkflowContext().withAreRecordsAsStored(true);
+      context.setWorkflow(workflow);
+      context.record.set(person);
+      return (context);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static List<QRecord> queryPersons() throws QException
+   {
+      return (QueryAction.execute(TABLE_NAME_PERSON, new QQueryFilter().withOrderBy(new QFilterOrderBy("id"))));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static QRecord newPet(String name, QRecord owner)
+   {
+      return (new QRecord().withValue("name", name).withValue("ownerPersonId", owner.getValue("id")));
+   }
+
+}
\ No newline at end of file
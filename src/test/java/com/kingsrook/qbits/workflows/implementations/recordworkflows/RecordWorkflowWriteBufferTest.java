@@ -0,0 +1,397 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.execution.WorkflowOutput;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qbits.workflows.model.WorkflowRevision;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
+import com.kingsrook.qqq.backend.core.actions.QBackendTransaction;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.AbstractActionInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.statusmessages.BadInputStatusMessage;
+import org.apache.commons.lang3.BooleanUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for RecordWorkflowWriteBuffer 
+ *******************************************************************************/
+class RecordWorkflowWriteBufferTest extends BaseTest
+{
+   private static final String BAD = "Bad";
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @BeforeEach
+   void beforeEach()
+   {
+      CapturingCustomizer.updates.clear();
+      QContext.getQInstance().getTable(TABLE_NAME_PERSON).withCustomizer(TableCustomizers.PRE_UPDATE_RECORD, new QCodeReference(CapturingCustomizer.class));
+      QContext.getQInstance().getTable(TABLE_NAME_PET).withCustomizer(TableCustomizers.PRE_INSERT_RECORD, new QCodeReference(CapturingCustomizer.class));
+   }
+
+
+
+   /*******************************************************************************
+    ** records getting the same values are updated by one action (flagged as all
+    ** the same) - the rest together in one more - all in one transaction.
+    *******************************************************************************/
+   @Test
+   void testGroupedUpdates() throws QException
+   {
+      List<QRecord> persons = insertPersons(4);
+
+      List<WorkflowOutput> outputs = List.of(
+         newOutput(persons.get(0), c -> setFirstName(c, "Same")),
+         newOutput(persons.get(1), c -> setFirstName(c, "Unique1")),
+         newOutput(persons.get(2), c -> setFirstName(c, "Same")),
+         newOutput(persons.get(3), c -> setFirstName(c, "Unique2")));
+
+      TransactionCountingExecutor executor = new TransactionCountingExecutor();
+      new RecordWorkflowWriteBuffer(executor, TABLE_NAME_PERSON, outputs).flush();
+
+      assertEquals(List.of(new CapturedUpdate(2, true), new CapturedUpdate(2, false)), CapturingCustomizer.updates);
+      assertEquals(1, executor.transactions.size());
+      assertEquals(1, executor.transactions.get(0).noOfCommits);
+      assertEquals(0, executor.transactions.get(0).noOfRollbacks);
+
+      assertEquals("Same", getFirstName(persons.get(0)));
+      assertEquals("Unique1", getFirstName(persons.get(1)));
+      assertEquals("Same", getFirstName(persons.get(2)));
+      assertEquals("Unique2", getFirstName(persons.get(3)));
+      outputs.forEach(o -> assertNull(o.getException()));
+   }
+
+
+
+   /*******************************************************************************
+    ** an error in the bulk write rolls it back - then each run is written on its
+    ** own, and only the run whose write fails is marked as failed (in its own
+    ** run log).
+    *******************************************************************************/
+   @Test
+   void testRollbackThenPerRunRewrite() throws QException
+   {
+      List<QRecord> persons = insertPersons(3);
+
+      List<WorkflowOutput> outputs = List.of(
+         newOutput(persons.get(0), c -> setFirstName(c, "Same")),
+         newOutput(persons.get(1), c -> setFirstName(c, BAD)),
+         newOutput(persons.get(2), c -> setFirstName(c, "Same")));
+
+      TransactionCountingExecutor executor = new TransactionCountingExecutor();
+      new RecordWorkflowWriteBuffer(executor, TABLE_NAME_PERSON, outputs).flush();
+
+      ////////////////////////////////////////////////////////////////////
+      // the bulk transaction, rolled back - then one per run, of which //
+      // only the bad run's is rolled back.                             //
+      ////////////////////////////////////////////////////////////////////
+      assertEquals(4, executor.transactions.size());
+      assertEquals(0, executor.transactions.get(0).noOfCommits);
+      assertEquals(1, executor.transactions.get(0).noOfRollbacks);
+      assertEquals(1, executor.transactions.get(1).noOfCommits);
+      assertEquals(1, executor.transactions.get(2).noOfRollbacks);
+      assertEquals(1, executor.transactions.get(3).noOfCommits);
+      executor.transactions.forEach(t -> assertEquals(1, t.noOfCloses));
+
+      //////////////////////////////////////////////////////////////////
+      // bulk: grouped + single - then each run's own (single) update //
+      //////////////////////////////////////////////////////////////////
+      assertEquals(List.of(new CapturedUpdate(2, true), new CapturedUpdate(1, false), new CapturedUpdate(1, false), new CapturedUpdate(1, false), new CapturedUpdate(1, false)), CapturingCustomizer.updates);
+
+      assertNull(outputs.get(0).getException());
+      assertNull(outputs.get(2).getException());
+      assertNotNull(outputs.get(1).getException());
+      assertTrue(outputs.get(1).getWorkflowRunLog().getHadError());
+      assertThat(outputs.get(1).getWorkflowRunLog().getErrorMessage()).contains("Error updating record");
+      assertThat(outputs.get(0).getWorkflowRunLog().getHadError()).isNotEqualTo(true);
+      assertThat(outputs.get(2).getWorkflowRunLog().getHadError()).isNotEqualTo(true);
+
+      assertEquals("Same", getFirstName(persons.get(0)));
+      assertEquals("Same", getFirstName(persons.get(2)));
+   }
+
+
+
+   /*******************************************************************************
+    ** an insert error is attributed to the run whose record it was - not to the
+    ** other runs inserting into the same table.
+    *******************************************************************************/
+   @Test
+   void testInsertErrorAttribution() throws QException
+   {
+      List<QRecord> persons = insertPersons(3);
+
+      List<WorkflowOutput> outputs = List.of(
+         newOutput(persons.get(0), c -> c.addRecordToInsert(TABLE_NAME_PET, new QRecord().withValue("name", "Rex").withValue("ownerPersonId", persons.get(0).getValue("id")))),
+         newOutput(persons.get(1), c -> c.addRecordToInsert(TABLE_NAME_PET, new QRecord().withValue("name", BAD).withValue("ownerPersonId", persons.get(1).getValue("id")))),
+         newOutput(persons.get(2), c -> c.addRecordToInsert(TABLE_NAME_PET, new QRecord().withValue("name", "Fido").withValue("ownerPersonId", persons.get(2).getValue("id")))));
+
+      new RecordWorkflowWriteBuffer(new TransactionCountingExecutor(), TABLE_NAME_PERSON, outputs).flush();
+
+      assertNull(outputs.get(0).getException());
+      assertNull(outputs.get(2).getException());
+      assertThat(outputs.get(1).getWorkflowRunLog().getErrorMessage()).contains("Error inserting into " + TABLE_NAME_PET);
+      assertThat(QueryAction.execute(TABLE_NAME_PET, new QQueryFilter())).extracting(r -> r.getValueString("name")).contains("Rex", "Fido").doesNotContain(BAD);
+   }
+
+
+
+   /*******************************************************************************
+    ** without a transaction (to roll back), each run is written on its own.
+    *******************************************************************************/
+   @Test
+   void testNoTransaction() throws QException
+   {
+      List<QRecord> persons = insertPersons(3);
+
+      List<WorkflowOutput> outputs = List.of(
+         newOutput(persons.get(0), c -> setFirstName(c, "Same")),
+         newOutput(persons.get(1), c -> setFirstName(c, BAD)),
+         newOutput(persons.get(2), c -> setFirstName(c, "Same")));
+
+      new RecordWorkflowWriteBuffer(new NoTransactionExecutor(), TABLE_NAME_PERSON, outputs).flush();
+
+      assertEquals(List.of(new CapturedUpdate(1, false), new CapturedUpdate(1, false), new CapturedUpdate(1, false)), CapturingCustomizer.updates);
+      assertNull(outputs.get(0).getException());
+      assertNotNull(outputs.get(1).getException());
+      assertNull(outputs.get(2).getException());
+      assertEquals("Same", getFirstName(persons.get(0)));
+      assertEquals("Same", getFirstName(persons.get(2)));
+
+      ///////////////////////////////////////////////////////////////////////////
+      // a single run never opens a bulk transaction - it's just written alone //
+      ///////////////////////////////////////////////////////////////////////////
+      CapturingCustomizer.updates.clear();
+      TransactionCountingExecutor executor = new TransactionCountingExecutor();
+      new RecordWorkflowWriteBuffer(executor, TABLE_NAME_PERSON, List.of(newOutput(persons.get(0), c -> setFirstName(c, "Alone")))).flush();
+      assertEquals(1, executor.transactions.size());
+      assertEquals(1, executor.transactions.get(0).noOfCommits);
+      assertEquals("Alone", getFirstName(persons.get(0)));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static List<QRecord> insertPersons(int count) throws QException
+   {
+      List<QRecord> persons = new ArrayList<>();
+      for(int i = 0; i < count; i++)
+      {
+         persons.add(new QRecord().withValue("firstName", "Person" + i));
+      }
+      return (new InsertAction().execute(new InsertInput(TABLE_NAME_PERSON).withRecords(persons)).getRecords());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static WorkflowOutput newOutput(QRecord person, Consumer<RecordWorkflowContext> contextConsumer)
+   {
+      RecordWorkflowContext context = new RecordWorkflowContext();
+      context.setWorkflow(new Workflow().withTableName(TABLE_NAME_PERSON));
+      context.record.set(new QRecord(person));
+      contextConsumer.accept(context);
+      return (new WorkflowOutput().withContext(context).withWorkflowRunLog(new WorkflowRunLog()));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static void setFirstName(RecordWorkflowContext context, String firstName)
+   {
+      context.record.get().setValue("firstName", firstName);
+      context.markRecordFieldUpdated("firstName");
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static String getFirstName(QRecord person) throws QException
+   {
+      return (GetAction.execute(TABLE_NAME_PERSON, person.getValue("id")).getValueString("firstName"));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private record CapturedUpdate(int noOfRecords, boolean areAllValuesBeingUpdatedTheSame)
+   {
+   }
+
+
+
+   /***************************************************************************
+    * captures the updates of the person table - and fails updates & inserts of
+    * records with a "Bad" first name / name.
+    ***************************************************************************/
+   public static class CapturingCustomizer implements TableCustomizerInterface
+   {
+      static List<CapturedUpdate> updates = new ArrayList<>();
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public List<QRecord> preInsertOrUpdate(AbstractActionInput input, List<QRecord> records, boolean isPreview, Optional<List<QRecord>> oldRecordList)
+      {
+         if(input instanceof UpdateInput updateInput)
+         {
+            updates.add(new CapturedUpdate(records.size(), BooleanUtils.isTrue(updateInput.getAreAllValuesBeingUpdatedTheSame())));
+         }
+
+         for(QRecord record : records)
+         {
+            if(BAD.equals(record.getValueString("firstName")) || BAD.equals(record.getValueString("name")))
+            {
+               record.addError(new BadInputStatusMessage("Bad record"));
+            }
+         }
+         return (records);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * gives out transactions that count what's done with them.
+    ***************************************************************************/
+   private static class TransactionCountingExecutor extends RecordWorkflowTypeExecutor
+   {
+      private final List<CountingTransaction> transactions = new ArrayList<>();
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public QBackendTransaction openTransaction(Workflow workflow, WorkflowRevision workflowRevision)
+      {
+         CountingTransaction transaction = new CountingTransaction();
+         transactions.add(transaction);
+         return (transaction);
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static class NoTransactionExecutor extends RecordWorkflowTypeExecutor
+   {
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public QBackendTransaction openTransaction(Workflow workflow, WorkflowRevision workflowRevision)
+      {
+         return (null);
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static class CountingTransaction extends QBackendTransaction
+   {
+      private int noOfCommits   = 0;
+      private int noOfRollbacks = 0;
+      private int noOfCloses    = 0;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void commit()
+      {
+         noOfCommits++;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void rollback()
+      {
+         noOfRollbacks++;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void close()
+      {
+         noOfCloses++;
+      }
+   }
+
+}
@@ -0,0 +1,429 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.implementations.recordworkflows;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.WorkflowsTestDataSource;
+import com.kingsrook.qbits.workflows.definition.OutboundLinkMode;
+import com.kingsrook.qbits.workflows.definition.WorkflowStepType;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.execution.WorkflowExecutionContext;
+import com.kingsrook.qbits.workflows.execution.WorkflowOutput;
+import com.kingsrook.qbits.workflows.execution.WorkflowStepExecutorInterface;
+import com.kingsrook.qbits.workflows.execution.WorkflowStepOutput;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qbits.workflows.model.WorkflowStep;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
+import com.kingsrook.qqq.backend.core.actions.processes.QProcessCallbackFactory;
+import com.kingsrook.qqq.backend.core.actions.processes.RunProcessAction;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.AbstractActionInput;
+import com.kingsrook.qqq.backend.core.model.actions.processes.ProcessSummaryLine;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepInput;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepOutput;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.QueryOrGetInputInterface;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.statusmessages.BadInputStatusMessage;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+/*******************************************************************************
+ ** Unit test for RunRecordWorkflowLoadStep 
+ *******************************************************************************/
+class RunRecordWorkflowLoadStepTest extends BaseTest
+{
+   private static final String RECORD_THREAD_NAME = "recordThreadName";
+
+
+
+   /*******************************************************************************
+    ** with parallelism on, records run on the shared pool of threads - and
+    ** outputs come back in the same order as the records.
+    *******************************************************************************/
+   @Test
+   void testParallelOutputOrdering() throws QException
+   {
+      WorkflowsRegistry registry = WorkflowsRegistry.of(QContext.getQInstance());
+      registry.setRecordWorkflowParallelism(1, Map.of(TABLE_NAME_PERSON, 3));
+
+      QRecord       workflow = insertThreadNameWorkflow();
+      List<QRecord> persons  = insertPersons(10);
+
+      List<WorkflowOutput> outputs     = RunRecordWorkflowLoadStep.executeWorkflowOnRecords(workflow, persons, null);
+      Set<String>          threadNames = assertOutputsMatchRecords(persons, outputs);
+      assertEquals(3, threadNames.size());
+      assertThat(threadNames).contains(Thread.currentThread().getName());
+      assertThat(threadNames).anyMatch(name -> name.startsWith("record-workflow-"));
+
+      //////////////////////////////////////////////////////////////
+      // the pool is shared - the same one is used for every page //
+      //////////////////////////////////////////////////////////////
+      assertSame(registry.getRecordWorkflowExecutorService(), registry.getRecordWorkflowExecutorService());
+   }
+
+
+
+   /*******************************************************************************
+    ** the pool bounds the number of threads used, no matter the parallelism.
+    *******************************************************************************/
+   @Test
+   void testParallelismBeyondMaxThreads() throws QException
+   {
+      WorkflowsRegistry registry = WorkflowsRegistry.of(QContext.getQInstance());
+      registry.setRecordWorkflowParallelism(5, Map.of());
+      registry.setRecordWorkflowMaxThreads(1);
+
+      QRecord       workflow = insertThreadNameWorkflow();
+      List<QRecord> persons  = insertPersons(12);
+
+      List<WorkflowOutput> outputs     = RunRecordWorkflowLoadStep.executeWorkflowOnRecords(workflow, persons, null);
+      Set<String>          threadNames = assertOutputsMatchRecords(persons, outputs);
+      assertThat(threadNames).allMatch(name -> name.equals(Thread.currentThread().getName()) || name.equals("record-workflow-1"));
+   }
+
+
+
+   /*******************************************************************************
+    ** without parallelism, everything runs on the calling thread.
+    *******************************************************************************/
+   @Test
+   void testSerial() throws QException
+   {
+      QRecord       workflow = insertThreadNameWorkflow();
+      List<QRecord> persons  = insertPersons(5);
+
+      List<WorkflowOutput> outputs = RunRecordWorkflowLoadStep.executeWorkflowOnRecords(workflow, persons, null);
+      assertEquals(Set.of(Thread.currentThread().getName()), assertOutputsMatchRecords(persons, outputs));
+   }
+
+
+
+   /*******************************************************************************
+    ** records run a page at a time by default (not one at a time) - with pages
+    ** made bigger if needed, to give each parallel thread (per the workflow's
+    ** table, as given by the extract step) a few records.
+    *******************************************************************************/
+   @Test
+   void testPageSize() throws QException
+   {
+      WorkflowsRegistry   registry = WorkflowsRegistry.of(QContext.getQInstance());
+      QRecord             workflow = insertThreadNameWorkflow();
+      RunBackendStepInput input    = new RunBackendStepInput();
+      input.addValue("workflowId", workflow.getValueInteger("id"));
+      input.addValue(RunRecordWorkflowExtractStep.FIELD_WORKFLOW_TABLE_NAME, TABLE_NAME_PERSON);
+
+      assertEquals(WorkflowsRegistry.DEFAULT_RECORD_WORKFLOW_PAGE_SIZE, new RunRecordWorkflowLoadStep().getOverrideRecordPipeCapacity(input));
+
+      registry.setRecordWorkflowParallelism(3, Map.of());
+      assertEquals(WorkflowsRegistry.DEFAULT_RECORD_WORKFLOW_PAGE_SIZE, new RunRecordWorkflowLoadStep().getOverrideRecordPipeCapacity(input));
+
+      registry.setRecordWorkflowPageSize(5);
+      assertEquals(30, new RunRecordWorkflowLoadStep().getOverrideRecordPipeCapacity(input));
+
+      registry.setRecordWorkflowParallelism(1, Map.of());
+      assertEquals(5, new RunRecordWorkflowLoadStep().getOverrideRecordPipeCapacity(input));
+
+      registry.setRecordWorkflowParallelism(1, Map.of(TABLE_NAME_PERSON, 4));
+      assertEquals(40, new RunRecordWorkflowLoadStep().getOverrideRecordPipeCapacity(input));
+   }
+
+
+
+   /*******************************************************************************
+    ** a default (serial) bulk run loads the join records its filter needs with
+    ** one query per join per page - not one per record.
+    *******************************************************************************/
+   @Test
+   void testOneJoinQueryPerPage() throws QException
+   {
+      QContext.getQInstance().getTable(TABLE_NAME_SHAPE).withCustomizer(TableCustomizers.POST_QUERY_RECORD, new QCodeReference(ShapeQueryCountingCustomizer.class));
+
+      Workflow workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(RecordWorkflowsDefinition.WORKFLOW_TYPE, TABLE_NAME_PERSON);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, InputRecordFilterStep.NAME, Map.of("queryFilterJson", new QQueryFilter(new QFilterCriteria(TABLE_NAME_SHAPE + ".name", QCriteriaOperator.EQUALS, "Square"))))
+      ));
+
+      List<QRecord> shapes = new InsertAction().execute(new InsertInput(TABLE_NAME_SHAPE).withRecords(List.of(
+         new QRecord().withValue("name", "Square"),
+         new QRecord().withValue("name", "Circle")))).getRecords();
+
+      List<QRecord> persons = new ArrayList<>();
+      for(int i = 0; i < 25; i++)
+      {
+         persons.add(new QRecord().withValue("firstName", "Person" + i).withValue("favoriteShapeId", shapes.get(i % 2).getValue("id")));
+      }
+      persons = new InsertAction().execute(new InsertInput(TABLE_NAME_PERSON).withRecords(persons)).getRecords();
+
+      /////////////////////////////////////////////////////////
+      // one page (of the default size) - so one shape query //
+      /////////////////////////////////////////////////////////
+      QRecord workflowRecord = GetAction.execute(Workflow.TABLE_NAME, workflow.getId());
+      ShapeQueryCountingCustomizer.count.set(0);
+      List<WorkflowOutput> outputs = RunRecordWorkflowLoadStep.executeWorkflowOnRecords(workflowRecord, persons, null);
+      assertEquals(1, ShapeQueryCountingCustomizer.count.get());
+      for(int i = 0; i < persons.size(); i++)
+      {
+         assertEquals(String.valueOf(i % 2 == 0), outputs.get(i).getWorkflowRunLog().getSteps().get(0).getOutputData());
+      }
+
+      ///////////////////////////////////////////////////////////////////////
+      // through the process (which pages per the load step's pipe size) - //
+      // at most one shape query per page, far fewer than one per record.  //
+      ///////////////////////////////////////////////////////////////////////
+      ShapeQueryCountingCustomizer.count.set(0);
+      RunProcessInput runProcessInput = new RunProcessInput();
+      runProcessInput.setProcessName(RunRecordWorkflowProcessMetaDataProducer.NAME);
+      runProcessInput.setCallback(QProcessCallbackFactory.forFilter(new QQueryFilter()));
+      runProcessInput.addValue("tableName", TABLE_NAME_PERSON);
+      runProcessInput.addValue("workflowId", workflow.getId());
+      runProcessInput.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+      new RunProcessAction().execute(runProcessInput);
+      assertThat(ShapeQueryCountingCustomizer.count.get()).isPositive().isLessThan(persons.size() / 2);
+   }
+
+
+
+   /*******************************************************************************
+    ** prefetched join records are found for records whose join values aren't
+    ** the join field's type (e.g., a String shape id, for an Integer id).
+    *******************************************************************************/
+   @Test
+   void testJoinPrefetchWithMismatchedKeyTypes() throws QException
+   {
+      QContext.getQInstance().getTable(TABLE_NAME_SHAPE).withCustomizer(TableCustomizers.POST_QUERY_RECORD, new QCodeReference(ShapeQueryCountingCustomizer.class));
+
+      Workflow workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(RecordWorkflowsDefinition.WORKFLOW_TYPE, TABLE_NAME_PERSON);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, InputRecordFilterStep.NAME, Map.of("queryFilterJson", new QQueryFilter(new QFilterCriteria(TABLE_NAME_SHAPE + ".name", QCriteriaOperator.EQUALS, "Square"))))
+      ));
+
+      List<QRecord> shapes = new InsertAction().execute(new InsertInput(TABLE_NAME_SHAPE).withRecords(List.of(
+         new QRecord().withValue("name", "Square"),
+         new QRecord().withValue("name", "Circle")))).getRecords();
+
+      List<QRecord> persons = List.of(
+         new QRecord().withValue("id", 1).withValue("firstName", "Stringy").withValue("favoriteShapeId", shapes.get(0).getValueString("id")),
+         new QRecord().withValue("id", 2).withValue("firstName", "Longy").withValue("favoriteShapeId", shapes.get(0).getValueLong("id")),
+         new QRecord().withValue("id", 3).withValue("firstName", "Roundy").withValue("favoriteShapeId", shapes.get(1).getValueString("id")));
+
+      QRecord workflowRecord = GetAction.execute(Workflow.TABLE_NAME, workflow.getId());
+      ShapeQueryCountingCustomizer.count.set(0);
+      List<WorkflowOutput> outputs = RunRecordWorkflowLoadStep.executeWorkflowOnRecords(workflowRecord, persons, null);
+      assertEquals(1, ShapeQueryCountingCustomizer.count.get());
+      assertEquals("true", outputs.get(0).getWorkflowRunLog().getSteps().get(0).getOutputData());
+      assertEquals("true", outputs.get(1).getWorkflowRunLog().getSteps().get(0).getOutputData());
+      assertEquals("false", outputs.get(2).getWorkflowRunLog().getSteps().get(0).getOutputData());
+   }
+
+
+
+   /*******************************************************************************
+    ** runs that failed without a stored run log are counted once each in the
+    ** summary - not once per record in their page.
+    *******************************************************************************/
+   @Test
+   void testUnloggedExceptionCount() throws QException
+   {
+      QContext.getQInstance().getTable(TABLE_NAME_PERSON).withCustomizer(TableCustomizers.PRE_UPDATE_RECORD, new QCodeReference(FailAliceUpdatesCustomizer.class));
+
+      Workflow workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(RecordWorkflowsDefinition.WORKFLOW_TYPE, TABLE_NAME_PERSON);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, UpdateInputRecordFieldStep.NAME, Map.of("fieldName", "lastName", "value", "Updated"))
+      ));
+
+      //////////////////////////////////////////////////////////////////
+      // no tracer given to the step - so no run logs are stored, and //
+      // the 2 Alices' failed updates are only counted in the summary //
+      //////////////////////////////////////////////////////////////////
+      RunBackendStepInput input = new RunBackendStepInput();
+      input.addValue("workflowId", workflow.getId());
+      input.setRecords(insertPersons(5));
+
+      RunRecordWorkflowLoadStep loadStep = new RunRecordWorkflowLoadStep();
+      RunBackendStepOutput      output   = new RunBackendStepOutput();
+      loadStep.runOnePage(input, output);
+
+      assertThat(loadStep.getProcessSummary(output, true))
+         .filteredOn(line -> line instanceof ProcessSummaryLine psl && "had an error that was not logged.".equals(psl.getMessage()))
+         .singleElement()
+         .matches(line -> ((ProcessSummaryLine) line).getCount() == 2);
+   }
+
+
+
+   /***************************************************************************
+    * assert that each output is for the record at the same index - and return
+    * the names of the threads that the runs happened on.
+    ***************************************************************************/
+   private static Set<String> assertOutputsMatchRecords(List<QRecord> persons, List<WorkflowOutput> outputs)
+   {
+      assertEquals(persons.size(), outputs.size());
+
+      Set<String> threadNames = new HashSet<>();
+      for(int i = 0; i < persons.size(); i++)
+      {
+         WorkflowOutput output   = outputs.get(i);
+         Integer        personId = persons.get(i).getValueInteger("id");
+         assertNull(output.getException());
+         assertEquals(personId, output.getWorkflowRunLog().getInputRecordId());
+         assertEquals(personId, ((RecordWorkflowContext) output.getContext()).record.get().getValueInteger("id"));
+
+         ////////////////////////////////////////////////////////////
+         // the filter step's output is for this record, too (only //
+         // odd-numbered persons have a first name starting w/ A)  //
+         ////////////////////////////////////////////////////////////
+         assertEquals(String.valueOf(i % 2 == 1), output.getWorkflowRunLog().getSteps().get(1).getOutputData());
+
+         threadNames.add((String) output.getContext().getValues().get(RECORD_THREAD_NAME));
+      }
+      return (threadNames);
+   }
+
+
+
+   /***************************************************************************
+    * insert a workflow that records the name of the thread that it ran on,
+    * then evaluates a filter on the record.
+    ***************************************************************************/
+   private static QRecord insertThreadNameWorkflow() throws QException
+   {
+      WorkflowsRegistry.of(QContext.getQInstance()).registerWorkflowStepType(new WorkflowStepType()
+         .withName(RECORD_THREAD_NAME)
+         .withLabel("Record Thread Name")
+         .withOutboundLinkMode(OutboundLinkMode.ONE)
+         .withExecutor(new QCodeReference(RecordThreadNameStep.class)));
+
+      Workflow workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(RecordWorkflowsDefinition.WORKFLOW_TYPE, TABLE_NAME_PERSON);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, RECORD_THREAD_NAME, Map.of()),
+         WorkflowsTestDataSource.newStep(2, InputRecordFilterStep.NAME, Map.of("queryFilterJson", new QQueryFilter(new QFilterCriteria("firstName", QCriteriaOperator.STARTS_WITH, "A"))))
+      ));
+      WorkflowsTestDataSource.insertLinks(workflow, List.of(WorkflowsTestDataSource.newLink(1, 2)));
+
+      return (GetAction.execute(Workflow.TABLE_NAME, workflow.getId()));
+   }
+
+
+
+   /***************************************************************************
+    * insert persons - odd-numbered ones (by index) named Alice, others Bob.
+    ***************************************************************************/
+   private static List<QRecord> insertPersons(int count) throws QException
+   {
+      List<QRecord> persons = new ArrayList<>();
+      for(int i = 0; i < count; i++)
+      {
+         persons.add(new QRecord().withValue("firstName", i % 2 == 1 ? "Alice" : "Bob").withValue("lastName", "Person" + i));
+      }
+      return (new InsertAction().execute(new InsertInput(TABLE_NAME_PERSON).withRecords(persons)).getRecords());
+   }
+
+
+
+   /***************************************************************************
+    * counts queries of the shape table.
+    ***************************************************************************/
+   public static class ShapeQueryCountingCustomizer implements TableCustomizerInterface
+   {
+      static AtomicInteger count = new AtomicInteger();
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public List<QRecord> postQuery(QueryOrGetInputInterface queryInput, List<QRecord> records)
+      {
+         count.incrementAndGet();
+         return (records);
+      }
+   }
+
+
+
+   /***************************************************************************
+    * fails updates of persons named Alice.
+    ***************************************************************************/
+   public static class FailAliceUpdatesCustomizer implements TableCustomizerInterface
+   {
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public List<QRecord> preInsertOrUpdate(AbstractActionInput input, List<QRecord> records, boolean isPreview, Optional<List<QRecord>> oldRecordList)
+      {
+         Map<Serializable, QRecord> oldRecordMap = oldRecordListToMap("id", oldRecordList).orElse(Map.of());
+         for(QRecord record : records)
+         {
+            QRecord oldRecord = oldRecordMap.get(record.getValue("id"));
+            if(oldRecord != null && "Alice".equals(oldRecord.getValueString("firstName")))
+            {
+               record.addError(new BadInputStatusMessage("Alice can't be updated"));
+            }
+         }
+         return (records);
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public static class RecordThreadNameStep implements WorkflowStepExecutorInterface
+   {
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public WorkflowStepOutput execute(WorkflowStep step, Map<String, Serializable> inputValues, WorkflowExecutionContext context)
+      {
+         context.getValues().put(RECORD_THREAD_NAME, Thread.currentThread().getName());
+         return (new WorkflowStepOutput(null));
+      }
+   }
+
+}
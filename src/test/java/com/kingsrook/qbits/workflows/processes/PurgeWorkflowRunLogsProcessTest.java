@@ -0,0 +1,338 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.processes;
+
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.TestWorkflowDefinitions;
+import com.kingsrook.qbits.workflows.WorkflowsTestDataSource;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLogStep;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepInput;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepOutput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.statusmessages.BadInputStatusMessage;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/*******************************************************************************
+ ** Unit test for PurgeWorkflowRunLogsProcess 
+ *******************************************************************************/
+class PurgeWorkflowRunLogsProcessTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testAge() throws QException
+   {
+      Integer workflowId = insertWorkflow();
+      insertRunLog(workflowId, 40, false);
+      insertRunLog(workflowId, 35, false);
+      insertRunLog(workflowId, 31, false);
+      Long keepRecent = insertRunLog(workflowId, 10, false);
+      Long keepError  = insertRunLog(workflowId, 40, true);
+
+      RunBackendStepOutput output = runPurge(30, null, null, 1000);
+      assertEquals(3L, output.getValue("runLogsDeleted"));
+      assertEquals(3L, output.getValue("runLogStepsDeleted"));
+
+      assertThat(queryRunLogIds(workflowId)).containsExactlyInAnyOrder(keepRecent, keepError);
+      assertEquals(2, QueryAction.execute(WorkflowRunLogStep.TABLE_NAME, new QQueryFilter()).size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testErrorWindow() throws QException
+   {
+      Integer workflowId = insertWorkflow();
+      insertRunLog(workflowId, 100, true);
+      Long keepRecentError = insertRunLog(workflowId, 10, true);
+      Long keepOldNoError  = insertRunLog(workflowId, 100, false);
+
+      RunBackendStepOutput output = runPurge(null, 30, null, 1000);
+      assertEquals(1L, output.getValue("runLogsDeleted"));
+      assertThat(queryRunLogIds(workflowId)).containsExactlyInAnyOrder(keepRecentError, keepOldNoError);
+
+      ///////////////////////////////////////////////////////////////
+      // a separate (longer) window for errors than for non-errors //
+      ///////////////////////////////////////////////////////////////
+      output = runPurge(5, 60, null, 1000);
+      assertEquals(1L, output.getValue("runLogsDeleted"));
+      assertThat(queryRunLogIds(workflowId)).containsExactly(keepRecentError);
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testMaxPerWorkflow() throws QException
+   {
+      Integer workflowIdA = insertWorkflow();
+      Integer workflowIdB = insertWorkflow();
+
+      List<Long> runLogIdsA = new ArrayList<>();
+      List<Long> runLogIdsB = new ArrayList<>();
+      for(int i = 0; i < 5; i++)
+      {
+         runLogIdsA.add(insertRunLog(workflowIdA, 5 - i, false));
+         runLogIdsB.add(insertRunLog(workflowIdB, 5 - i, false));
+      }
+      Long keepErrorA = insertRunLog(workflowIdA, 10, true);
+
+      RunBackendStepOutput output = runPurge(null, null, 2, 1000);
+      assertEquals(6L, output.getValue("runLogsDeleted"));
+
+      ///////////////////////////////////////////////////////////////////
+      // newest 2 per workflow are kept - and errors don't count/purge //
+      ///////////////////////////////////////////////////////////////////
+      assertThat(queryRunLogIds(workflowIdA)).containsExactlyInAnyOrder(runLogIdsA.get(3), runLogIdsA.get(4), keepErrorA);
+      assertThat(queryRunLogIds(workflowIdB)).containsExactlyInAnyOrder(runLogIdsB.get(3), runLogIdsB.get(4));
+
+      //////////////////////////////
+      // running again is a no-op //
+      //////////////////////////////
+      output = runPurge(null, null, 2, 1000);
+      assertEquals(0L, output.getValue("runLogsDeleted"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testChunking() throws QException
+   {
+      Integer workflowId = insertWorkflow();
+      for(int i = 0; i < 25; i++)
+      {
+         insertRunLog(workflowId, 40, false);
+      }
+      Long keepRecent = insertRunLog(workflowId, 1, false);
+
+      ///////////////////////////////////////
+      // 2 full chunks, then a partial one //
+      ///////////////////////////////////////
+      RunBackendStepOutput output = runPurge(30, null, null, 10);
+      assertEquals(25L, output.getValue("runLogsDeleted"));
+      assertEquals(25L, output.getValue("runLogStepsDeleted"));
+      assertThat(queryRunLogIds(workflowId)).containsExactly(keepRecent);
+
+      //////////////////////////////////////////////////////////
+      // an exact multiple of the chunk size - last one empty //
+      //////////////////////////////////////////////////////////
+      for(int i = 0; i < 20; i++)
+      {
+         insertRunLog(workflowId, 40, false);
+      }
+      output = runPurge(30, null, null, 10);
+      assertEquals(20L, output.getValue("runLogsDeleted"));
+      assertThat(queryRunLogIds(workflowId)).containsExactly(keepRecent);
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testInterruptStopsWholeProcess() throws QException
+   {
+      Integer workflowId = insertWorkflow();
+      insertRunLog(workflowId, 40, false);
+      insertRunLog(workflowId, 40, true);
+      insertRunLog(workflowId, 1, false);
+      insertRunLog(workflowId, 1, false);
+
+      RunBackendStepOutput output = new RunBackendStepOutput();
+      Thread.currentThread().interrupt();
+      try
+      {
+         assertThrows(QException.class, () -> new PurgeWorkflowRunLogsProcess().run(newInput(30, 30, 1, 1000), output));
+      }
+      finally
+      {
+         assertThat(Thread.interrupted()).isTrue();
+      }
+
+      ////////////////////////////////////////////////////////////////
+      // no phase (age, error, or max-per-workflow) should have run //
+      ////////////////////////////////////////////////////////////////
+      assertEquals(0L, output.getValue("runLogsDeleted"));
+      assertEquals(4, queryRunLogIds(workflowId).size());
+      assertFalse(Thread.currentThread().isInterrupted());
+   }
+
+
+
+   /*******************************************************************************
+    ** a chunk that doesn't fully delete stops the purge (rather than re-querying
+    ** and re-failing the same chunk forever).
+    *******************************************************************************/
+   @Test
+   void testUndeletableRunLogStopsPurge() throws QException
+   {
+      Integer workflowId = insertWorkflow();
+      insertRunLog(workflowId, 40, false);
+      insertRunLog(workflowId, 40, false);
+      Long undeletable = insertRunLog(workflowId, 40, false);
+      insertRunLog(workflowId, 40, false);
+
+      QContext.getQInstance().getTable(WorkflowRunLog.TABLE_NAME).withCustomizer(TableCustomizers.PRE_DELETE_RECORD, new QCodeReference(FailUndeletableDeletesCustomizer.class));
+      FailUndeletableDeletesCustomizer.undeletableId = undeletable;
+
+      RunBackendStepOutput output    = new RunBackendStepOutput();
+      QException           exception = assertThrows(QException.class, () -> new PurgeWorkflowRunLogsProcess().run(newInput(30, null, null, 2), output));
+      assertThat(exception.getMessage()).contains("only 1 of 2").contains("can't be deleted");
+
+      /////////////////////////////////////////////////////////////////////
+      // the first (full) chunk was deleted & reported - the bad one not //
+      /////////////////////////////////////////////////////////////////////
+      assertEquals(2L, output.getValue("runLogsDeleted"));
+      assertThat(queryRunLogIds(workflowId)).contains(undeletable);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static Integer insertWorkflow() throws QException
+   {
+      TestWorkflowDefinitions.registerTestWorkflowTypes();
+      return (WorkflowsTestDataSource.insertTestWorkflow());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static Long insertRunLog(Integer workflowId, int daysAgo, boolean hadError) throws QException
+   {
+      Instant startTimestamp = Instant.now().minus(daysAgo, ChronoUnit.DAYS);
+      List<QRecord> records = new InsertAction().execute(new InsertInput(WorkflowRunLog.TABLE_NAME).withRecordEntities(List.of(new WorkflowRunLog()
+            .withWorkflowId(workflowId)
+            .withHadError(hadError)
+            .withStartTimestamp(startTimestamp)
+            .withEndTimestamp(startTimestamp)
+            .withSteps(List.of(new WorkflowRunLogStep().withSeqNo(1).withStartTimestamp(startTimestamp).withEndTimestamp(startTimestamp))))))
+         .getRecords();
+      return (records.get(0).getValueLong("id"));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static List<Long> queryRunLogIds(Integer workflowId) throws QException
+   {
+      return (QueryAction.execute(WorkflowRunLog.TABLE_NAME, new QQueryFilter(new QFilterCriteria("workflowId", QCriteriaOperator.EQUALS, workflowId)))
+         .stream().map(r -> r.getValueLong("id")).toList());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static RunBackendStepOutput runPurge(Integer runLogRetentionDays, Integer errorRunLogRetentionDays, Integer maxRunLogsPerWorkflow, Integer chunkSize) throws QException
+   {
+      RunBackendStepOutput output = new RunBackendStepOutput();
+      new PurgeWorkflowRunLogsProcess().run(newInput(runLogRetentionDays, errorRunLogRetentionDays, maxRunLogsPerWorkflow, chunkSize), output);
+      return (output);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static RunBackendStepInput newInput(Integer runLogRetentionDays, Integer errorRunLogRetentionDays, Integer maxRunLogsPerWorkflow, Integer chunkSize)
+   {
+      RunBackendStepInput input = new RunBackendStepInput();
+      input.addValue("runLogRetentionDays", runLogRetentionDays);
+      input.addValue("errorRunLogRetentionDays", errorRunLogRetentionDays);
+      input.addValue("maxRunLogsPerWorkflow", maxRunLogsPerWorkflow);
+      input.addValue("chunkSize", chunkSize);
+      return (input);
+   }
+
+
+
+   /***************************************************************************
+    * fails deletes of one (undeletable) run log.
+    ***************************************************************************/
+   public static class FailUndeletableDeletesCustomizer implements TableCustomizerInterface
+   {
+      static Long undeletableId;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public List<QRecord> preDelete(DeleteInput deleteInput, List<QRecord> records, boolean isPreview) throws QException
+      {
+         for(QRecord record : records)
+         {
+            if(Objects.equals(undeletableId, record.getValueLong("id")))
+            {
+               record.addError(new BadInputStatusMessage("This run log can't be deleted"));
+            }
+         }
+         return (records);
+      }
+   }
+
+}
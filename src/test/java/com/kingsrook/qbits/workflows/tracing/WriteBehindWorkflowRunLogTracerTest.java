@@ -0,0 +1,357 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.tracing;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.exceptions.QRuntimeException;
+import com.kingsrook.qqq.backend.core.model.actions.AbstractActionInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.session.QSession;
+import com.kingsrook.qqq.backend.core.model.session.QSystemUserSession;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for WriteBehindWorkflowRunLogTracer 
+ *******************************************************************************/
+class WriteBehindWorkflowRunLogTracerTest extends BaseTest
+{
+   private static final long LONG_DELAY_MILLIS = 60_000;
+   private static final long WAIT_MILLIS       = 10_000;
+   private static final int  BAD_WORKFLOW_ID   = 666;
+
+
+
+   /*******************************************************************************
+    ** flush stores everything that's queued (in batches), setting ids.
+    *******************************************************************************/
+   @Test
+   void testFlush() throws QException
+   {
+      WriteBehindWorkflowRunLogTracer tracer = new WriteBehindWorkflowRunLogTracer()
+         .withBatchSize(2)
+         .withMaxDelayMillis(LONG_DELAY_MILLIS);
+
+      List<WorkflowRunLog> runLogs = handleRunLogs(tracer, 5);
+      tracer.flush();
+
+      runLogs.forEach(runLog -> assertNotNull(runLog.getId()));
+      assertEquals(5, countStoredRunLogs());
+      assertEquals(0, tracer.getDroppedCount());
+   }
+
+
+
+   /*******************************************************************************
+    ** the background thread writes as soon as a full batch is queued.
+    *******************************************************************************/
+   @Test
+   void testFlusherWritesFullBatch() throws QException
+   {
+      WriteBehindWorkflowRunLogTracer tracer = new WriteBehindWorkflowRunLogTracer()
+         .withBatchSize(3)
+         .withMaxDelayMillis(LONG_DELAY_MILLIS);
+
+      /////////////////////////////////////////////////////////////////////
+      // a partial batch sits in the queue (for up to the long delay)... //
+      /////////////////////////////////////////////////////////////////////
+      List<WorkflowRunLog> runLogs   = handleRunLogs(tracer, 2);
+      assertNull(runLogs.get(0).getId());
+
+      //////////////////////////////////////////////////////////////////
+      // ... but once the batch fills, it's written without the delay //
+      //////////////////////////////////////////////////////////////////
+      runLogs.addAll(handleRunLogs(tracer, 1));
+      assertTrue(waitFor(() -> runLogs.stream().allMatch(runLog -> runLog.getId() != null)));
+      assertEquals(3, countStoredRunLogs());
+   }
+
+
+
+   /*******************************************************************************
+    ** the background thread writes a partial batch after the max delay.
+    *******************************************************************************/
+   @Test
+   void testFlusherWritesAfterDelay() throws QException
+   {
+      WriteBehindWorkflowRunLogTracer tracer = new WriteBehindWorkflowRunLogTracer()
+         .withBatchSize(100)
+         .withMaxDelayMillis(50);
+
+      List<WorkflowRunLog> runLogs = handleRunLogs(tracer, 1);
+      assertTrue(waitFor(() -> runLogs.get(0).getId() != null));
+      assertEquals(1, countStoredRunLogs());
+   }
+
+
+
+   /*******************************************************************************
+    ** DROP overflow policy - run logs that don't fit in the queue are discarded.
+    *******************************************************************************/
+   @Test
+   void testOverflowDrop() throws QException
+   {
+      WriteBehindWorkflowRunLogTracer tracer = new WriteBehindWorkflowRunLogTracer(2)
+         .withBatchSize(100)
+         .withMaxDelayMillis(LONG_DELAY_MILLIS)
+         .withOverflowPolicy(WriteBehindWorkflowRunLogTracer.OverflowPolicy.DROP);
+
+      List<WorkflowRunLog> runLogs = handleRunLogs(tracer, 3);
+      assertEquals(1, tracer.getDroppedCount());
+
+      tracer.flush();
+      assertNotNull(runLogs.get(0).getId());
+      assertNotNull(runLogs.get(1).getId());
+      assertNull(runLogs.get(2).getId());
+      assertEquals(2, countStoredRunLogs());
+   }
+
+
+
+   /*******************************************************************************
+    ** BLOCK overflow policy - when the queue is full, the finishing thread
+    ** writes what's queued itself, so nothing is lost.
+    *******************************************************************************/
+   @Test
+   void testOverflowBlock() throws QException
+   {
+      WriteBehindWorkflowRunLogTracer tracer = new WriteBehindWorkflowRunLogTracer(2)
+         .withBatchSize(100)
+         .withMaxDelayMillis(LONG_DELAY_MILLIS);
+
+      //////////////////////////////////////////////////////////////////////
+      // the 3rd and 5th run logs find the queue full, so the 2 ahead of  //
+      // each are written on this thread - leaving only the 5th in queue. //
+      //////////////////////////////////////////////////////////////////////
+      List<WorkflowRunLog> runLogs = handleRunLogs(tracer, 5);
+      for(int i = 0; i < 4; i++)
+      {
+         assertNotNull(runLogs.get(i).getId());
+      }
+      assertNull(runLogs.get(4).getId());
+
+      tracer.flush();
+      assertNotNull(runLogs.get(4).getId());
+      assertEquals(5, countStoredRunLogs());
+      assertEquals(0, tracer.getDroppedCount());
+   }
+
+
+
+   /*******************************************************************************
+    ** when a batch fails to insert, its run logs are inserted one at a time - so
+    ** only the bad one is lost (and counted as dropped).
+    *******************************************************************************/
+   @Test
+   void testFailedBatchInsertsOneAtATime() throws QException
+   {
+      QContext.getQInstance().getTable(WorkflowRunLog.TABLE_NAME).withCustomizer(TableCustomizers.PRE_INSERT_RECORD, new QCodeReference(FailBadWorkflowInsertsCustomizer.class));
+
+      WriteBehindWorkflowRunLogTracer tracer = new WriteBehindWorkflowRunLogTracer()
+         .withBatchSize(100)
+         .withMaxDelayMillis(LONG_DELAY_MILLIS);
+
+      List<WorkflowRunLog> runLogs   = handleRunLogs(tracer, 2);
+      WorkflowRunLog       badRunLog = new WorkflowRunLog().withWorkflowId(BAD_WORKFLOW_ID).withHadError(false);
+      tracer.handleWorkflowFinish(badRunLog);
+      runLogs.addAll(handleRunLogs(tracer, 2));
+      tracer.flush();
+
+      runLogs.forEach(runLog -> assertNotNull(runLog.getId()));
+      assertNull(badRunLog.getId());
+      assertEquals(4, countStoredRunLogs());
+      assertEquals(1, tracer.getDroppedCount());
+   }
+
+
+
+   /*******************************************************************************
+    ** run logs are inserted under a system user session - both by the background
+    ** thread, and by a caller's flush - not under the caller's own session.
+    *******************************************************************************/
+   @Test
+   void testInsertsRunUnderSystemSession() throws QException
+   {
+      QContext.getQInstance().getTable(WorkflowRunLog.TABLE_NAME).withCustomizer(TableCustomizers.PRE_INSERT_RECORD, new QCodeReference(FailBadWorkflowInsertsCustomizer.class));
+      FailBadWorkflowInsertsCustomizer.sessions.clear();
+      QSession callerSession = QContext.getQSession();
+
+      /////////////////////////////////////////
+      // one insert on the background thread //
+      /////////////////////////////////////////
+      WriteBehindWorkflowRunLogTracer tracer = new WriteBehindWorkflowRunLogTracer()
+         .withBatchSize(1)
+         .withMaxDelayMillis(LONG_DELAY_MILLIS);
+      List<WorkflowRunLog> runLogs = handleRunLogs(tracer, 1);
+      assertTrue(waitFor(() -> runLogs.get(0).getId() != null));
+
+      //////////////////////////////////////
+      // and one on this thread, by flush //
+      //////////////////////////////////////
+      WriteBehindWorkflowRunLogTracer flushedTracer = new WriteBehindWorkflowRunLogTracer()
+         .withBatchSize(100)
+         .withMaxDelayMillis(LONG_DELAY_MILLIS);
+      handleRunLogs(flushedTracer, 1);
+      flushedTracer.flush();
+
+      assertThat(FailBadWorkflowInsertsCustomizer.sessions).hasSize(2).allMatch(session -> session instanceof QSystemUserSession);
+      assertSame(callerSession, QContext.getQSession());
+   }
+
+
+
+   /*******************************************************************************
+    ** the registry shares one (configured) write-behind tracer per instance.
+    *******************************************************************************/
+   @Test
+   void testRegistrySharesInstance()
+   {
+      WorkflowsRegistry registry = WorkflowsRegistry.of(QContext.getQInstance());
+      assertEquals(WriteBehindWorkflowRunLogSettings.DEFAULT, registry.getWriteBehindWorkflowRunLogSettings());
+      registry.setWriteBehindWorkflowRunLogSettings(new WriteBehindWorkflowRunLogSettings(7, 123, WriteBehindWorkflowRunLogTracer.OverflowPolicy.DROP));
+
+      QCodeReference          codeReference = new QCodeReference(WriteBehindWorkflowRunLogTracer.class);
+      WorkflowTracerInterface tracer        = registry.getWorkflowTracer(codeReference);
+      assertSame(tracer, registry.getWorkflowTracer(codeReference));
+
+      WriteBehindWorkflowRunLogTracer writeBehindTracer = (WriteBehindWorkflowRunLogTracer) tracer;
+      assertEquals(7, writeBehindTracer.getBatchSize());
+      assertEquals(123, writeBehindTracer.getMaxDelayMillis());
+      assertEquals(WriteBehindWorkflowRunLogTracer.OverflowPolicy.DROP, writeBehindTracer.getOverflowPolicy());
+
+      /////////////////////////////////////////////////////
+      // other (not write-behind) tracers are not shared //
+      /////////////////////////////////////////////////////
+      QCodeReference runLogTracerCodeReference = new QCodeReference(WorkflowRunLogTracer.class);
+      assertNotSame(registry.getWorkflowTracer(runLogTracerCodeReference), registry.getWorkflowTracer(runLogTracerCodeReference));
+      assertNull(registry.getWorkflowTracer(null));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static List<WorkflowRunLog> handleRunLogs(WriteBehindWorkflowRunLogTracer tracer, int count)
+   {
+      List<WorkflowRunLog> runLogs = new ArrayList<>();
+      for(int i = 0; i < count; i++)
+      {
+         WorkflowRunLog runLog = new WorkflowRunLog().withWorkflowId(1).withHadError(false);
+         runLogs.add(runLog);
+         tracer.handleWorkflowFinish(runLog);
+      }
+      return (runLogs);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static int countStoredRunLogs() throws QException
+   {
+      return (QueryAction.execute(WorkflowRunLog.TABLE_NAME, new QQueryFilter()).size());
+   }
+
+
+
+   /***************************************************************************
+    * wait (up to WAIT_MILLIS) for a condition to become true.
+    ***************************************************************************/
+   private static boolean waitFor(BooleanSupplier condition)
+   {
+      long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+      while(!condition.getAsBoolean())
+      {
+         if(System.currentTimeMillis() > deadline)
+         {
+            return (false);
+         }
+
+         try
+         {
+            Thread.sleep(10);
+         }
+         catch(InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            return (false);
+         }
+      }
+      return (true);
+   }
+
+
+
+   /***************************************************************************
+    * fails inserts (by throwing) of any run logs for the bad workflow id - and
+    * records the session that each insert ran under.
+    ***************************************************************************/
+   public static class FailBadWorkflowInsertsCustomizer implements TableCustomizerInterface
+   {
+      static List<QSession> sessions = new CopyOnWriteArrayList<>();
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public List<QRecord> preInsertOrUpdate(AbstractActionInput input, List<QRecord> records, boolean isPreview, Optional<List<QRecord>> oldRecordList)
+      {
+         sessions.add(QContext.getQSession());
+         for(QRecord record : records)
+         {
+            if(Objects.equals(BAD_WORKFLOW_ID, record.getValueInteger("workflowId")))
+            {
+               throw (new QRuntimeException("Run logs for workflow " + BAD_WORKFLOW_ID + " can't be inserted"));
+            }
+         }
+         return (records);
+      }
+   }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.triggers;
+
+
+import java.io.Serializable;
+import java.util.List;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/*******************************************************************************
+ ** Unit test for TableTriggerChangeDetector 
+ *******************************************************************************/
+class TableTriggerChangeDetectorTest extends BaseTest
+{
+   private static final Integer      REVISION_ID = 1;
+   private static final List<String> FIELDS      = List.of("firstName", "noOfShoes");
+
+
+
+   /*******************************************************************************
+    ** records with nothing remembered, or with changed dependency values, are
+    ** changed - ones with the same values (even if given as other types) aren't.
+    *******************************************************************************/
+   @Test
+   void testChangedAndUnchanged()
+   {
+      TableTriggerChangeDetector detector = new TableTriggerChangeDetector();
+
+      QRecord tim  = newPerson(1, "Tim", 2);
+      QRecord jane = newPerson(2, "Jane", 2);
+      assertThat(detector.getChangedRecords(REVISION_ID, FIELDS, "id", List.of(tim, jane))).containsExactly(tim, jane);
+
+      detector.remember(REVISION_ID, FIELDS, "id", tim);
+      detector.remember(REVISION_ID, FIELDS, "id", jane);
+      assertEquals(2, detector.size());
+
+      QRecord sameTim     = newPerson(1, "Tim", 2).withValue("lastName", "Other fields don't matter");
+      QRecord stringTim   = newPerson(1, "Tim", "2");
+      QRecord changedJane = newPerson(2, "Jane", 3);
+      assertThat(detector.getChangedRecords(REVISION_ID, FIELDS, "id", List.of(sameTim, stringTim, changedJane))).containsExactly(changedJane);
+
+      /////////////////////////////////////////////////////////////
+      // other revisions of the workflow have nothing remembered //
+      /////////////////////////////////////////////////////////////
+      assertThat(detector.getChangedRecords(REVISION_ID + 1, FIELDS, "id", List.of(sameTim))).containsExactly(sameTim);
+
+      detector.invalidateAll();
+      assertThat(detector.getChangedRecords(REVISION_ID, FIELDS, "id", List.of(sameTim))).containsExactly(sameTim);
+   }
+
+
+
+   /*******************************************************************************
+    ** records missing a dependency field (so, that can't be compared) are always
+    ** changed - and aren't remembered.
+    *******************************************************************************/
+   @Test
+   void testMissingFields()
+   {
+      TableTriggerChangeDetector detector = new TableTriggerChangeDetector();
+
+      QRecord tim = newPerson(1, "Tim", 2);
+      detector.remember(REVISION_ID, FIELDS, "id", tim);
+
+      QRecord partialTim = new QRecord().withValue("id", 1).withValue("firstName", "Tim");
+      assertThat(detector.getChangedRecords(REVISION_ID, FIELDS, "id", List.of(partialTim))).containsExactly(partialTim);
+
+      detector.remember(REVISION_ID, FIELDS, "id", partialTim);
+      assertEquals(0, detector.size());
+
+      ///////////////////////////////////////////////////////
+      // null is a value (the field is there), so compares //
+      ///////////////////////////////////////////////////////
+      QRecord nullShoesTim = newPerson(1, "Tim", null);
+      detector.remember(REVISION_ID, FIELDS, "id", nullShoesTim);
+      assertThat(detector.getChangedRecords(REVISION_ID, FIELDS, "id", List.of(newPerson(1, "Tim", null)))).isEmpty();
+   }
+
+
+
+   /*******************************************************************************
+    ** the cache is bounded - evicted (least recently used) records are changed.
+    *******************************************************************************/
+   @Test
+   void testMaxSize()
+   {
+      TableTriggerChangeDetector detector = new TableTriggerChangeDetector(2);
+      for(int i = 1; i <= 3; i++)
+      {
+         detector.remember(REVISION_ID, FIELDS, "id", newPerson(i, "Person", i));
+      }
+      assertEquals(2, detector.size());
+      assertThat(detector.getChangedRecords(REVISION_ID, FIELDS, "id", List.of(newPerson(1, "Person", 1), newPerson(3, "Person", 3))))
+         .extracting(r -> r.getValueInteger("id"))
+         .containsExactly(1);
+
+      TableTriggerChangeDetector disabledDetector = new TableTriggerChangeDetector(0);
+      disabledDetector.remember(REVISION_ID, FIELDS, "id", newPerson(1, "Person", 1));
+      assertEquals(0, disabledDetector.size());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static QRecord newPerson(Integer id, String firstName, Serializable noOfShoes)
+   {
+      return (new QRecord().withTableName(TABLE_NAME_PERSON).withValue("id", id).withValue("firstName", firstName).withValue("noOfShoes", noOfShoes));
+   }
+
+}
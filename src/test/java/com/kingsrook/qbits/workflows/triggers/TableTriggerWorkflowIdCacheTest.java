@@ -0,0 +1,171 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.triggers;
+
+
+import java.util.List;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.WorkflowsTestDataSource;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.implementations.recordworkflows.RecordWorkflowsDefinition;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.QueryOrGetInputInterface;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.automation.TableTrigger;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/*******************************************************************************
+ ** Unit test for TableTriggerWorkflowIdCache 
+ *******************************************************************************/
+class TableTriggerWorkflowIdCacheTest extends BaseTest
+{
+   private Integer workflowIdA;
+   private Integer workflowIdB;
+   private Integer tableTriggerId;
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @BeforeEach
+   void beforeEach() throws QException
+   {
+      WorkflowsTestDataSource.defineTableTriggerTable();
+      workflowIdA = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(RecordWorkflowsDefinition.WORKFLOW_TYPE, TABLE_NAME_PERSON).getId();
+      workflowIdB = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(RecordWorkflowsDefinition.WORKFLOW_TYPE, TABLE_NAME_PERSON).getId();
+      tableTriggerId = WorkflowsTestDataSource.insertTableTrigger(TABLE_NAME_PERSON, workflowIdA);
+      InvalidatingCustomizer.isEnabled = false;
+   }
+
+
+
+   /*******************************************************************************
+    ** updates & deletes of triggers invalidate the registry's cache.
+    *******************************************************************************/
+   @Test
+   void testInvalidation() throws QException
+   {
+      TableTriggerWorkflowIdCache cache = WorkflowsRegistry.of(QContext.getQInstance()).getTableTriggerWorkflowIdCache();
+      assertEquals(workflowIdA, cache.getWorkflowId(tableTriggerId));
+      assertEquals(1, cache.size());
+
+      new UpdateAction().execute(new UpdateInput(TableTrigger.TABLE_NAME).withRecord(new QRecord().withValue("id", tableTriggerId).withValue("workflowId", workflowIdB)));
+      assertEquals(workflowIdB, cache.getWorkflowId(tableTriggerId));
+
+      new DeleteAction().execute(new DeleteInput(TableTrigger.TABLE_NAME).withPrimaryKeys(List.of(tableTriggerId)));
+      assertNull(cache.getWorkflowId(tableTriggerId));
+      assertEquals(0, cache.size());
+
+      cache.invalidateAll();
+      assertEquals(0, cache.size());
+   }
+
+
+
+   /*******************************************************************************
+    ** a lookup that an invalidation raced with doesn't cache what it read.
+    *******************************************************************************/
+   @Test
+   void testGenerationGuard() throws QException
+   {
+      QContext.getQInstance().getTable(TableTrigger.TABLE_NAME).withCustomizer(TableCustomizers.POST_QUERY_RECORD, new QCodeReference(InvalidatingCustomizer.class));
+      TableTriggerWorkflowIdCache cache = WorkflowsRegistry.of(QContext.getQInstance()).getTableTriggerWorkflowIdCache();
+
+      InvalidatingCustomizer.isEnabled = true;
+      assertEquals(workflowIdA, cache.getWorkflowId(tableTriggerId));
+      assertEquals(0, cache.size());
+
+      InvalidatingCustomizer.isEnabled = false;
+      assertEquals(workflowIdA, cache.getWorkflowId(tableTriggerId));
+      assertEquals(1, cache.size());
+   }
+
+
+
+   /*******************************************************************************
+    ** a change this cache isn't told about (e.g., made by another server) is
+    ** seen once the entry's ttl expires it.
+    *******************************************************************************/
+   @Test
+   void testTtl() throws QException, InterruptedException
+   {
+      ///////////////////////////////////////////////////////////////////////
+      // the trigger table's customizers only invalidate the registry's    //
+      // cache - so, to these caches, the update is made "somewhere else". //
+      ///////////////////////////////////////////////////////////////////////
+      TableTriggerWorkflowIdCache longTtlCache  = new TableTriggerWorkflowIdCache(10, 60_000);
+      TableTriggerWorkflowIdCache shortTtlCache = new TableTriggerWorkflowIdCache(10, 25);
+      TableTriggerWorkflowIdCache noTtlCache    = new TableTriggerWorkflowIdCache(10, 0);
+      assertEquals(workflowIdA, longTtlCache.getWorkflowId(tableTriggerId));
+      assertEquals(workflowIdA, shortTtlCache.getWorkflowId(tableTriggerId));
+      assertEquals(workflowIdA, noTtlCache.getWorkflowId(tableTriggerId));
+      assertEquals(0, noTtlCache.size());
+
+      new UpdateAction().execute(new UpdateInput(TableTrigger.TABLE_NAME).withRecord(new QRecord().withValue("id", tableTriggerId).withValue("workflowId", workflowIdB)));
+      assertEquals(workflowIdB, noTtlCache.getWorkflowId(tableTriggerId));
+      assertEquals(workflowIdA, longTtlCache.getWorkflowId(tableTriggerId));
+
+      Thread.sleep(50);
+      assertEquals(workflowIdB, shortTtlCache.getWorkflowId(tableTriggerId));
+      assertEquals(workflowIdA, longTtlCache.getWorkflowId(tableTriggerId));
+   }
+
+
+
+   /***************************************************************************
+    * invalidates the registry's cache of the trigger being looked up - as if
+    * the trigger were changed while the lookup was running.
+    ***************************************************************************/
+   public static class InvalidatingCustomizer implements TableCustomizerInterface
+   {
+      static boolean isEnabled = false;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public List<QRecord> postQuery(QueryOrGetInputInterface queryInput, List<QRecord> records)
+      {
+         if(isEnabled)
+         {
+            records.forEach(r -> WorkflowsRegistry.of(QContext.getQInstance()).getTableTriggerWorkflowIdCache().invalidate(r.getValueInteger("id")));
+         }
+         return (records);
+      }
+   }
+
+}
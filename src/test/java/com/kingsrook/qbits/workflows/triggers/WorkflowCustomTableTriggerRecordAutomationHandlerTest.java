@@ -0,0 +1,292 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.workflows.triggers;
+
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.workflows.BaseTest;
+import com.kingsrook.qbits.workflows.WorkflowsQBitConfig;
+import com.kingsrook.qbits.workflows.WorkflowsTestDataSource;
+import com.kingsrook.qbits.workflows.definition.WorkflowsRegistry;
+import com.kingsrook.qbits.workflows.implementations.recordworkflows.RecordWorkflowsDefinition;
+import com.kingsrook.qbits.workflows.implementations.recordworkflows.UpdateInputRecordFieldStep;
+import com.kingsrook.qbits.workflows.model.Workflow;
+import com.kingsrook.qbits.workflows.model.WorkflowRevision;
+import com.kingsrook.qbits.workflows.model.WorkflowRunLog;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.audits.AuditsMetaDataProvider;
+import com.kingsrook.qqq.backend.core.model.automation.RecordAutomationInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.automation.TableAutomationAction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for WorkflowCustomTableTriggerRecordAutomationHandler 
+ *******************************************************************************/
+class WorkflowCustomTableTriggerRecordAutomationHandlerTest extends BaseTest
+{
+   private Workflow workflow;
+   private Integer  tableTriggerId;
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @BeforeEach
+   void beforeEach() throws QException
+   {
+      WorkflowsTestDataSource.defineTableTriggerTable();
+      new AuditsMetaDataProvider().defineAll(QContext.getQInstance(), MEMORY_BACKEND_NAME, null);
+
+      workflow = WorkflowsTestDataSource.insertWorkflowAndInitialRevision(RecordWorkflowsDefinition.WORKFLOW_TYPE, TABLE_NAME_PERSON);
+      WorkflowsTestDataSource.insertSteps(workflow, List.of(
+         WorkflowsTestDataSource.newStep(1, UpdateInputRecordFieldStep.NAME, Map.of("fieldName", "lastName", "value", "Triggered"))
+      ));
+
+      tableTriggerId = WorkflowsTestDataSource.insertTableTrigger(TABLE_NAME_PERSON, workflow.getId());
+   }
+
+
+
+   /*******************************************************************************
+    ** the registry and the qbit config agree on the default.
+    *******************************************************************************/
+   @Test
+   void testDefault()
+   {
+      assertTrue(WorkflowsRegistry.DEFAULT_RUN_TABLE_TRIGGER_WORKFLOWS_IN_BATCH);
+      assertEquals(WorkflowsRegistry.DEFAULT_RUN_TABLE_TRIGGER_WORKFLOWS_IN_BATCH, new WorkflowsRegistry().getRunTableTriggerWorkflowsInBatch());
+      assertEquals(WorkflowsRegistry.DEFAULT_RUN_TABLE_TRIGGER_WORKFLOWS_IN_BATCH, new WorkflowsQBitConfig().getRunTableTriggerWorkflowsInBatch());
+      assertEquals(WorkflowsRegistry.DEFAULT_RUN_TABLE_TRIGGER_WORKFLOWS_IN_BATCH, WorkflowsRegistry.of(QContext.getQInstance()).getRunTableTriggerWorkflowsInBatch());
+   }
+
+
+
+   /*******************************************************************************
+    ** in batch, the automation's records are ran through the workflow directly -
+    ** each getting one run log, and one audit (for itself).
+    *******************************************************************************/
+   @Test
+   void testInBatch() throws QException
+   {
+      WorkflowsRegistry.of(QContext.getQInstance()).setRunTableTriggerWorkflowsInBatch(true);
+      assertTriggerRunsWorkflowOnEachRecord();
+   }
+
+
+
+   /*******************************************************************************
+    ** not in batch, a runRecordWorkflow process is ran per record - with the
+    ** same results.
+    *******************************************************************************/
+   @Test
+   void testNotInBatch() throws QException
+   {
+      WorkflowsRegistry.of(QContext.getQInstance()).setRunTableTriggerWorkflowsInBatch(false);
+      assertTriggerRunsWorkflowOnEachRecord();
+   }
+
+
+
+   /*******************************************************************************
+    ** by default, every record the trigger gives is ran - even if its values
+    ** haven't changed since the workflow last ran against it.
+    *******************************************************************************/
+   @Test
+   void testUnchangedRecordsRunByDefault() throws QException
+   {
+      setFieldDependencies("lastName");
+      List<QRecord> persons = insertPersons(3);
+
+      runTrigger(persons);
+      assertEquals(3, countRunLogs());
+
+      runTrigger(queryPersons());
+      assertEquals(6, countRunLogs());
+   }
+
+
+
+   /*******************************************************************************
+    ** a workflow that opts in skips records whose dependency fields are the
+    ** same as when it last ran against them (here, as it left them).
+    *******************************************************************************/
+   @Test
+   void testSkipUnchangedRecordsWhenOptedIn() throws QException
+   {
+      new UpdateAction().execute(new UpdateInput(Workflow.TABLE_NAME).withRecord(new QRecord().withValue("id", workflow.getId()).withValue("skipUnchangedRecordsForTableTriggers", true)));
+      setFieldDependencies("lastName");
+      List<QRecord> persons = insertPersons(3);
+
+      runTrigger(persons);
+      assertEquals(3, countRunLogs());
+
+      //////////////////////////////////////////////////////////////
+      // unchanged since (the workflow set lastName to Triggered) //
+      //////////////////////////////////////////////////////////////
+      persons = queryPersons();
+      runTrigger(persons);
+      assertEquals(3, countRunLogs());
+
+      ////////////////////////////////////////
+      // one changed - only it is ran again //
+      ////////////////////////////////////////
+      persons.get(0).setValue("lastName", "Changed");
+      runTrigger(persons);
+      assertEquals(4, countRunLogs());
+
+      ////////////////////////////////////////////////////////
+      // with no known dependencies, nothing can be skipped //
+      ////////////////////////////////////////////////////////
+      setFieldDependencies(null);
+      runTrigger(queryPersons());
+      assertEquals(7, countRunLogs());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void assertTriggerRunsWorkflowOnEachRecord() throws QException
+   {
+      List<QRecord> persons = insertPersons(3);
+
+      WorkflowCustomTableTriggerRecordAutomationHandler handler = new WorkflowCustomTableTriggerRecordAutomationHandler();
+      RecordAutomationInput                             input   = newAutomationInput(persons);
+      assertTrue(handler.handlesThisInput(input));
+      handler.execute(input);
+
+      List<Integer> personIds = persons.stream().map(p -> p.getValueInteger("id")).toList();
+      assertThat(QueryAction.execute(TABLE_NAME_PERSON, new QQueryFilter()))
+         .allMatch(p -> "Triggered".equals(p.getValueString("lastName")));
+
+      List<QRecord> runLogs = QueryAction.execute(WorkflowRunLog.TABLE_NAME, new QQueryFilter(new QFilterCriteria("workflowId", QCriteriaOperator.EQUALS, workflow.getId())));
+      assertThat(runLogs).extracting(r -> r.getValueInteger("inputRecordId")).containsExactlyInAnyOrderElementsOf(personIds);
+
+      ///////////////////////////////////////////////////////////////////////
+      // one audit per record - naming the run log created for that record //
+      ///////////////////////////////////////////////////////////////////////
+      List<QRecord> audits = QueryAction.execute(AuditsMetaDataProvider.TABLE_NAME_AUDIT, new QQueryFilter());
+      assertThat(audits).extracting(r -> r.getValueInteger("recordId")).containsExactlyInAnyOrderElementsOf(personIds);
+      for(QRecord runLog : runLogs)
+      {
+         assertThat(audits)
+            .filteredOn(a -> a.getValueInteger("recordId").equals(runLog.getValueInteger("inputRecordId")))
+            .singleElement()
+            .matches(a -> a.getValueString("message").endsWith("creating Workflow Run Log: " + runLog.getValue("id")));
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void runTrigger(List<QRecord> records) throws QException
+   {
+      new WorkflowCustomTableTriggerRecordAutomationHandler().execute(newAutomationInput(records));
+   }
+
+
+
+   /***************************************************************************
+    * set the fields that the workflow's revision depends on (as storing a new
+    * revision would have).
+    ***************************************************************************/
+   private void setFieldDependencies(String fieldDependencies) throws QException
+   {
+      new UpdateAction().execute(new UpdateInput(WorkflowRevision.TABLE_NAME).withRecord(new QRecord().withValue("id", workflow.getCurrentWorkflowRevisionId()).withValue("fieldDependencies", fieldDependencies)));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private int countRunLogs() throws QException
+   {
+      return (QueryAction.execute(WorkflowRunLog.TABLE_NAME, new QQueryFilter(new QFilterCriteria("workflowId", QCriteriaOperator.EQUALS, workflow.getId()))).size());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static List<QRecord> insertPersons(int count) throws QException
+   {
+      List<QRecord> persons = new ArrayList<>();
+      for(int i = 0; i < count; i++)
+      {
+         persons.add(new QRecord().withValue("firstName", "Person" + i));
+      }
+      return (new InsertAction().execute(new InsertInput(TABLE_NAME_PERSON).withRecords(persons)).getRecords());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static List<QRecord> queryPersons() throws QException
+   {
+      return (QueryAction.execute(TABLE_NAME_PERSON, new QQueryFilter()));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private RecordAutomationInput newAutomationInput(List<QRecord> records)
+   {
+      Map<String, Serializable> actionValues = new HashMap<>();
+      actionValues.put("tableTriggerId", tableTriggerId);
+
+      RecordAutomationInput input = new RecordAutomationInput();
+      input.setTableName(TABLE_NAME_PERSON);
+      input.setAction(new TableAutomationAction().withValues(actionValues));
+      input.setRecordList(records);
+      return (input);
+   }
+
+}